@@ -5,8 +5,11 @@ import org.jolokia.detector.ServerHandle;
 import org.jolokia.history.HistoryStore;
 import org.jolokia.restrictor.AllowAllRestrictor;
 import org.jolokia.restrictor.Restrictor;
+import org.jolokia.sampler.Sampler;
+import org.jolokia.subscription.SubscriptionManager;
 import org.jolokia.util.*;
 import org.jolokia.request.JmxRequest;
+import org.jolokia.request.JmxSampleRequest;
 import org.json.simple.JSONObject;
 
 import javax.management.*;
@@ -61,12 +64,21 @@ public class BackendManager {
     // Storage for storing debug information
     private DebugStore debugStore;
 
+    // Last values of delta encoded read requests
+    private DeltaStore deltaStore;
+
     // Loghandler for dispatching logs
     private LogHandler logHandler;
 
     // List of RequestDispatchers to consult
     private List<RequestDispatcher> requestDispatchers;
 
+    // Manager for subscriptions, which handles subscribe, unsubscribe and poll requests
+    private SubscriptionManager subscriptionManager;
+
+    // Sampler for attributes sampled periodically by the agent
+    private Sampler sampler;
+
     /**
      * Constrcuct a new backend manager with the given configuration and which allows
      * every operation (no restrictor)
@@ -99,15 +111,20 @@ public class BackendManager {
         // Create and remember request dispatchers
         localDispatcher = new LocalRequestDispatcher(converters,
                                                      restrictor,
-                                                     pConfig.get(ConfigKey.MBEAN_QUALIFIER),
+                                                     pConfig,
                                                      logHandler);
         ServerHandle serverHandle = localDispatcher.getServerInfo();
         requestDispatchers = createRequestDispatchers(DISPATCHER_CLASSES.getValue(pConfig),
-                                                      converters,serverHandle,restrictor);
+                                                      converters,serverHandle,restrictor,pConfig);
         requestDispatchers.add(localDispatcher);
 
+        sampler = new Sampler(this,restrictor,pConfig);
+
         // Backendstore for remembering agent state
         initStores(pConfig);
+
+        subscriptionManager = new SubscriptionManager(this,converters,restrictor,
+                                                      localDispatcher.getMBeanServers(),pConfig);
     }
 
     // Construct configured dispatchers by reflection. Returns always
@@ -115,23 +132,39 @@ public class BackendManager {
     private List<RequestDispatcher> createRequestDispatchers(String pClasses,
                                                              Converters pConverters,
                                                              ServerHandle pServerHandle,
-                                                             Restrictor pRestrictor) {
+                                                             Restrictor pRestrictor,
+                                                             Map<ConfigKey, String> pConfig) {
         List<RequestDispatcher> ret = new ArrayList<RequestDispatcher>();
         if (pClasses != null && pClasses.length() > 0) {
             String[] names = pClasses.split("\\s*,\\s*");
             for (String name : names) {
-                ret.add(createDispatcher(name, pConverters, pServerHandle, pRestrictor));
+                ret.add(createDispatcher(name, pConverters, pServerHandle, pRestrictor, pConfig));
             }
         }
         return ret;
     }
 
-    // Create a single dispatcher
+    // Create a single dispatcher. A constructor which takes the configuration as additional
+    // argument is preferred.
     private RequestDispatcher createDispatcher(String pDispatcherClass,
                                                Converters pConverters,
-                                               ServerHandle pServerHandle, Restrictor pRestrictor) {
+                                               ServerHandle pServerHandle, Restrictor pRestrictor,
+                                               Map<ConfigKey, String> pConfig) {
         try {
             Class clazz = this.getClass().getClassLoader().loadClass(pDispatcherClass);
+            try {
+                Constructor constructor = clazz.getConstructor(Converters.class,
+                                                               ServerHandle.class,
+                                                               Restrictor.class,
+                                                               Map.class);
+                return (RequestDispatcher)
+                        constructor.newInstance(pConverters,
+                                                pServerHandle,
+                                                pRestrictor,
+                                                pConfig);
+            } catch (NoSuchMethodException exp) {
+                // Fall back to the constructor without configuration
+            }
             Constructor constructor = clazz.getConstructor(Converters.class,
                                                            ServerHandle.class,
                                                            Restrictor.class);
@@ -172,10 +205,20 @@ public class BackendManager {
         if (debug) {
             time = System.currentTimeMillis();
         }
-        JSONObject json = callRequestDispatcher(pJmxReq);
+        JSONObject json;
+        if (subscriptionManager.canHandle(pJmxReq)) {
+            json = subscriptionManager.handleRequest(pJmxReq);
+        } else if (sampler.canHandle(pJmxReq)) {
+            json = sampler.handleRequest((JmxSampleRequest) pJmxReq);
+        } else {
+            json = callRequestDispatcher(pJmxReq);
+        }
 
         // Update global history store
         historyStore.updateAndAdd(pJmxReq,json);
+
+        // Reduce to the changes since the client's last response, if requested
+        deltaStore.encode(pJmxReq,json);
         json.put("status",200 /* success */);
 
         if (debug) {
@@ -186,6 +229,54 @@ public class BackendManager {
         return json;
     }
 
+    /**
+     * Handle a request issued by the agent itself, like the periodic reads of the sampler or of
+     * subscriptions. It is dispatched like a request of a client, so that the same restrictions
+     * apply, but it is neither recorded in the history nor delta encoded nor logged for debugging.
+     *
+     * @param pJmxReq request to perform
+     * @return the already converted answer with status 200
+     * @throws InstanceNotFoundException
+     * @throws AttributeNotFoundException
+     * @throws ReflectionException
+     * @throws MBeanException
+     */
+    public JSONObject handleInternalRequest(JmxRequest pJmxReq) throws InstanceNotFoundException, AttributeNotFoundException,
+            ReflectionException, MBeanException, IOException {
+        JSONObject json = callRequestDispatcher(pJmxReq);
+        json.put("status",200 /* success */);
+        return json;
+    }
+
+    /**
+     * Get the generation of the local MBean registry on which the answer to the given request
+     * depends. It is only available for <code>list</code>, <code>search</code> and <code>version</code>
+     * requests which are answered from the local MBeanServers. As long as the generation doesn't change,
+     * the answer to such a request stays the same.
+     *
+     * @param pJmxReq request to check
+     * @return the generation of the registry or -1 if the answer to this request is not determined
+     *         by the local registry alone, if registry changes are not tracked or if the request
+     *         is not allowed
+     */
+    public long getRegistryGeneration(JmxRequest pJmxReq) {
+        RequestType type = pJmxReq.getType();
+        if (type != RequestType.LIST && type != RequestType.SEARCH && type != RequestType.VERSION) {
+            return -1;
+        }
+        // A client's copy must not be confirmed if the current policy denies the request
+        if (!restrictor.isTypeAllowed(type) || !restrictor.isHttpMethodAllowed(pJmxReq.getHttpMethod())) {
+            return -1;
+        }
+        for (RequestDispatcher dispatcher : requestDispatchers) {
+            if (dispatcher.canHandle(pJmxReq)) {
+                return dispatcher == localDispatcher ?
+                        localDispatcher.getRegistryGeneration(type == RequestType.LIST) : -1;
+            }
+        }
+        return -1;
+    }
+
     // call the an appropriate request dispatcher
     private JSONObject callRequestDispatcher(JmxRequest pJmxReq)
             throws InstanceNotFoundException, AttributeNotFoundException, ReflectionException, MBeanException, IOException {
@@ -208,8 +299,9 @@ public class BackendManager {
 
     // init various application wide stores for handling history and debug output.
     private void initStores(Map<ConfigKey, String> pConfig) {
-        int maxEntries = getIntConfigValue(pConfig, HISTORY_MAX_ENTRIES);
-        int maxDebugEntries = getIntConfigValue(pConfig,DEBUG_MAX_ENTRIES);
+        int maxEntries = HISTORY_MAX_ENTRIES.getIntValue(pConfig);
+        int maxHistorySize = HISTORY_MAX_SIZE.getIntValue(pConfig);
+        int maxDebugEntries = DEBUG_MAX_ENTRIES.getIntValue(pConfig);
 
         String doDebug = DEBUG.getValue(pConfig);
         boolean debug = false;
@@ -218,11 +310,12 @@ public class BackendManager {
         }
 
 
-        historyStore = new HistoryStore(maxEntries);
+        historyStore = new HistoryStore(maxEntries,maxHistorySize);
         debugStore = new DebugStore(maxDebugEntries,debug);
+        deltaStore = new DeltaStore(DELTA_MAX_ENTRIES.getIntValue(pConfig));
 
         try {
-            localDispatcher.init(historyStore,debugStore);
+            localDispatcher.init(historyStore,debugStore,sampler);
         } catch (NotCompliantMBeanException e) {
             intError("Error registering config MBean: " + e, e);
         } catch (MBeanRegistrationException e) {
@@ -240,25 +333,18 @@ public class BackendManager {
         debugStore.log(message, t);
     }
 
-
-    private int getIntConfigValue(Map<ConfigKey, String> pConfig, ConfigKey pKey) {
-        int ret;
-        try {
-            ret = Integer.parseInt(pKey.getValue(pConfig));
-        } catch (NumberFormatException exp) {
-            ret = Integer.parseInt(pKey.getDefaultValue());
-        }
-        return ret;
-    }
-
     /**
-     * Remove MBeans
+     * Remove MBeans, stop all subscriptions and sampling and free the resources held by the dispatchers
      */
     public void destroy() {
-        try {
-            localDispatcher.destroy();
-        } catch (JMException e) {
-            error("Cannot unregister MBean: " + e,e);
+        subscriptionManager.destroy();
+        sampler.destroy();
+        for (RequestDispatcher dispatcher : requestDispatchers) {
+            try {
+                dispatcher.destroy();
+            } catch (JMException e) {
+                error("Cannot unregister MBean: " + e,e);
+            }
         }
     }
 
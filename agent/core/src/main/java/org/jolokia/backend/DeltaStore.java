@@ -0,0 +1,180 @@
+package org.jolokia.backend;
+
+import java.util.*;
+
+import org.jolokia.request.JmxRequest;
+import org.jolokia.util.ConfigKey;
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Store for the last value returned for a read request with a delta token, so that the next
+ * response to the same request contains only the changes. The value of such a response is a tree
+ * of the leaves which have changed or have been added, and the paths of the keys which have been
+ * removed are returned separately. Every response gets a generation number, which the client sends
+ * back as delta base. If the store doesn't hold this generation for the token and the request
+ * (e.g. because the client missed a response or the entry has been evicted), or if the value is
+ * not a JSON object, the full value is returned.
+ *
+ * Entries are kept per token and request and the least recently used entry is removed
+ * if the maximum number of entries is exceeded.
+ *
+ * @author roland
+ * @since 03.10.11
+ */
+public class DeltaStore {
+
+    // Maximum number of values to keep
+    private final int maxEntries;
+
+    // Last value per token and request in access order
+    private final Map<String, Response> entries;
+
+    // Last generation handed out, shared by all entries so that a base never matches
+    // an entry which has been evicted and created again
+    private long generation;
+
+    /**
+     * Constructor
+     *
+     * @param pMaxEntries maximum number of values to keep. If 0, responses are never delta encoded.
+     */
+    public DeltaStore(int pMaxEntries) {
+        maxEntries = pMaxEntries;
+        entries = new LinkedHashMap<String, Response>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Response> pEldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Replace the value of the given response with the changes since the client's delta base,
+     * if the request carries a delta token. The key <code>delta</code> is added to the response with
+     * the generation of this response and whether it contains the <code>full</code> value. A delta
+     * response additionally contains the <code>base</code> generation and the paths of the
+     * <code>removed</code> keys, each as an array of keys.
+     *
+     * @param pRequest request which has been executed
+     * @param pJson response, which gets updated
+     */
+    public void encode(JmxRequest pRequest, JSONObject pJson) {
+        String token = pRequest.getProcessingConfig(ConfigKey.DELTA_TOKEN);
+        if (token == null || maxEntries <= 0 || pRequest.getType() != RequestType.READ) {
+            return;
+        }
+        Long base = getBase(pRequest);
+        Object value = pJson.get("value");
+        String key = token + "\n" + pRequest.toJSON().toJSONString();
+
+        Response previous;
+        long current;
+        synchronized (entries) {
+            previous = entries.get(key);
+            current = ++generation;
+            entries.put(key, new Response(current, value));
+        }
+
+        JSONObject delta = new JSONObject();
+        delta.put("generation", current);
+        if (previous != null && base != null && previous.generation == base &&
+            previous.value instanceof Map && value instanceof Map) {
+            JSONArray removed = new JSONArray();
+            pJson.put("value", diff((Map) previous.value, (Map) value, new ArrayList<String>(), removed));
+            delta.put("base", base);
+            delta.put("removed", removed);
+            delta.put("full", false);
+        } else {
+            delta.put("full", true);
+        }
+        pJson.put("delta", delta);
+    }
+
+    /**
+     * Get the number of values currently kept
+     *
+     * @return number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Collect the leaves of the new tree which differ from the old one. Nested maps present in both
+    // trees are compared recursively, everything else is compared as a whole.
+    private JSONObject diff(Map pOld, Map pNew, List<String> pPath, JSONArray pRemoved) {
+        JSONObject ret = new JSONObject();
+        for (Object e : pNew.entrySet()) {
+            Map.Entry entry = (Map.Entry) e;
+            Object key = entry.getKey();
+            Object newValue = entry.getValue();
+            if (!pOld.containsKey(key)) {
+                ret.put(key, newValue);
+                continue;
+            }
+            Object oldValue = pOld.get(key);
+            if (oldValue instanceof Map && newValue instanceof Map) {
+                pPath.add(key.toString());
+                JSONObject inner = diff((Map) oldValue, (Map) newValue, pPath, pRemoved);
+                pPath.remove(pPath.size() - 1);
+                if (!inner.isEmpty()) {
+                    ret.put(key, inner);
+                }
+            } else if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+                ret.put(key, newValue);
+            }
+        }
+        for (Object key : pOld.keySet()) {
+            if (!pNew.containsKey(key)) {
+                JSONArray path = new JSONArray();
+                path.addAll(pPath);
+                path.add(key.toString());
+                pRemoved.add(path);
+            }
+        }
+        return ret;
+    }
+
+    private Long getBase(JmxRequest pRequest) {
+        String base = pRequest.getProcessingConfig(ConfigKey.DELTA_BASE);
+        if (base == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(base);
+        } catch (NumberFormatException exp) {
+            throw new IllegalArgumentException("Invalid value " + base + " for " +
+                                               ConfigKey.DELTA_BASE.getKeyValue() + " (must be a generation number)",exp);
+        }
+    }
+
+    // Value returned for a token and request
+    private static final class Response {
+        private final long generation;
+        private final Object value;
+
+        private Response(long pGeneration, Object pValue) {
+            generation = pGeneration;
+            value = pValue;
+        }
+    }
+}
@@ -16,16 +16,22 @@ package org.jolokia.backend;
  *  limitations under the License.
  */
 
+import java.util.Map;
+import java.util.Set;
+
 import javax.management.*;
 
 import org.jolokia.converter.Converters;
 import org.jolokia.detector.ServerHandle;
 import org.jolokia.handler.JsonRequestHandler;
 import org.jolokia.handler.RequestHandlerManager;
+import org.jolokia.handler.list.MBeanListCache;
 import org.jolokia.history.HistoryStore;
 import org.jolokia.mbean.Config;
 import org.jolokia.request.JmxRequest;
 import org.jolokia.restrictor.Restrictor;
+import org.jolokia.sampler.Sampler;
+import org.jolokia.util.ConfigKey;
 import org.jolokia.util.DebugStore;
 import org.jolokia.util.LogHandler;
 
@@ -42,6 +48,9 @@ public class LocalRequestDispatcher implements RequestDispatcher {
 
     private RequestHandlerManager requestHandlerManager;
 
+    // Cached tree of MBean meta data for list requests, null if switched off
+    private MBeanListCache listCache;
+
     // An (optional) qualifier for registering MBeans.
     private String qualifier;
 
@@ -50,18 +59,28 @@ public class LocalRequestDispatcher implements RequestDispatcher {
      *
      * @param pConverters object/string converters
      * @param pRestrictor restrictor which checks the access for various operations
-     * @param pQualifier optional qualifier for registering own MBean to allow for multiple J4P instances in the VM
+     * @param pConfig global configuration
      * @param pLogHandler local handler used for logging out errors and warnings
      */
-    public LocalRequestDispatcher(Converters pConverters, Restrictor pRestrictor, String pQualifier, LogHandler pLogHandler) {
+    public LocalRequestDispatcher(Converters pConverters, Restrictor pRestrictor, Map<ConfigKey, String> pConfig,
+                                  LogHandler pLogHandler) {
+        qualifier = pConfig.get(ConfigKey.MBEAN_QUALIFIER);
+
         // Get all MBean servers we can find. This is done by a dedicated
         // handler object
-        mBeanServerHandler = new MBeanServerHandler(pQualifier,pLogHandler);
-        qualifier = pQualifier;
+        mBeanServerHandler = new MBeanServerHandler(qualifier,ConfigKey.MBEAN_INFO_CACHE_SIZE.getIntValue(pConfig),pLogHandler);
+
+        if (Boolean.valueOf(ConfigKey.LIST_CACHE.getValue(pConfig))) {
+            listCache = new MBeanListCache();
+            for (MBeanServer server : mBeanServerHandler.getMBeanServers()) {
+                listCache.addMBeanServer(server);
+            }
+        }
 
         // Request handling manager 
         requestHandlerManager =
-                new RequestHandlerManager(pConverters,mBeanServerHandler.getServerHandle(),pRestrictor);
+                new RequestHandlerManager(pConverters,mBeanServerHandler.getServerHandle(),pRestrictor,pConfig,
+                                          mBeanServerHandler.getMBeanInfoCache(),listCache);
     }
 
     // Can handle any request
@@ -89,34 +108,39 @@ public class LocalRequestDispatcher implements RequestDispatcher {
      *
      * @param pHistoryStore history store to be managed from within an MBean
      * @param pDebugStore managed debug store
+     * @param pSampler sampler to be managed from within an MBean
      * @throws MalformedObjectNameException if our MBean's name is wrong (which cannot happen)
      * @throws MBeanRegistrationException if registration fails
      * @throws InstanceAlreadyExistsException if a config MBean is already present
      * @throws NotCompliantMBeanException if we have a non compliant MBean (cannot happen, too)
      */
-    public void init(HistoryStore pHistoryStore, DebugStore pDebugStore)
+    public void init(HistoryStore pHistoryStore, DebugStore pDebugStore, Sampler pSampler)
             throws MalformedObjectNameException, MBeanRegistrationException, InstanceAlreadyExistsException, NotCompliantMBeanException {
         mBeanServerHandler.init();
 
         // Register the Config MBean
         String oName = createObjectNameWithQualifier(Config.OBJECT_NAME);
-        Config config = new Config(pHistoryStore,pDebugStore,oName);
+        Config config = new Config(pHistoryStore,pDebugStore,mBeanServerHandler.getMBeanInfoCache(),pSampler,oName);
         mBeanServerHandler.registerMBean(config,oName);
 
         // Register another Config MBean (which dispatched to the stores anyway) for access by
         // jmx4perl version < 0.80
         String legacyOName = createObjectNameWithQualifier(Config.LEGACY_OBJECT_NAME);
-        Config legacyConfig = new Config(pHistoryStore,pDebugStore,legacyOName);
+        Config legacyConfig = new Config(pHistoryStore,pDebugStore,mBeanServerHandler.getMBeanInfoCache(),pSampler,legacyOName);
         mBeanServerHandler.registerMBean(legacyConfig,legacyOName);
     }
 
     /**
      * Unregister the config MBean
      *
-     * @throws JMException is unregistration fails
+     * {@inheritDoc}
      */
     public void destroy() throws JMException {
-        mBeanServerHandler.unregisterMBeans();
+        requestHandlerManager.destroy();
+        if (listCache != null) {
+            listCache.removeMBeanServers();
+        }
+        mBeanServerHandler.destroy();
     }
 
     /**
@@ -127,6 +151,31 @@ public class LocalRequestDispatcher implements RequestDispatcher {
         return mBeanServerHandler.getServerHandle();
     }
 
+    /**
+     * Get all local MBeanServers
+     *
+     * @return set of MBeanServers
+     */
+    public Set<MBeanServer> getMBeanServers() {
+        return mBeanServerHandler.getMBeanServers();
+    }
+
+    /**
+     * Get the generation of the MBean registry of all local MBeanServers, which changes
+     * whenever an MBean gets registered or unregistered
+     *
+     * @param pIncludeMetaData whether a change of the meta data of an MBean should change the
+     *        generation, too, as required for <code>list</code> requests
+     * @return the generation or -1 if registry changes are not tracked because the list cache
+     *         is switched off
+     */
+    public long getRegistryGeneration(boolean pIncludeMetaData) {
+        if (listCache == null) {
+            return -1;
+        }
+        return pIncludeMetaData ? listCache.getListGeneration() : listCache.getGeneration();
+    }
+
     private String createObjectNameWithQualifier(String pOName) {
         return pOName + (qualifier != null ? "," + qualifier : "");
     }
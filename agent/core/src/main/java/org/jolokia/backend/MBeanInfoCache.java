@@ -0,0 +1,267 @@
+package org.jolokia.backend;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.*;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Cache for {@link MBeanInfo}s of MBeans registered at local {@link MBeanServer}s.
+ * Fetching the meta data can be quite expensive on some application servers,
+ * so it is looked up only once per MBean. Since the info of a dynamic MBean might
+ * change at any time, only infos which declare themselves as immutable via the
+ * descriptor field <code>immutableInfo</code> are cached (which is the case for all
+ * standard MBeans and MXBeans). Only servers which have been added via
+ * {@link #addMBeanServer(MBeanServer)} are cached. An entry is evicted when its MBean gets
+ * registered or unregistered (as notified by the server's {@link MBeanServerDelegate})
+ * or when the cache exceeds its maximum size, in which case the least recently
+ * used entry is removed.
+ *
+ * @author roland
+ * @since 02.08.11
+ */
+public class MBeanInfoCache {
+
+    // Maximum number of MBeanInfos to cache
+    private final int maxEntries;
+
+    // Cached infos in access order
+    private final Map<EntryKey, MBeanInfo> entries;
+
+    // Servers for which caching is enabled along with the listener for their MBeanServerDelegate
+    private final Map<MBeanServerConnection, DelegateListener> servers =
+            new ConcurrentHashMap<MBeanServerConnection, DelegateListener>();
+
+    // Incremented on every invalidation so that an info fetched concurrently to an
+    // (un-)registration doesn't get cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param pMaxEntries maximum number of MBeanInfos to keep. If 0, nothing is cached.
+     */
+    public MBeanInfoCache(int pMaxEntries) {
+        maxEntries = pMaxEntries;
+        entries = new LinkedHashMap<EntryKey, MBeanInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EntryKey, MBeanInfo> pEldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Enable caching for the given server. This registers a listener at the server's
+     * {@link MBeanServerDelegate} for evicting outdated entries. If this fails, MBeanInfos for
+     * this server are not cached.
+     *
+     * @param pServer server to add
+     * @return true if caching has been enabled for this server
+     */
+    public boolean addMBeanServer(MBeanServer pServer) {
+        if (maxEntries <= 0 || servers.containsKey(pServer)) {
+            return false;
+        }
+        DelegateListener listener = new DelegateListener(pServer);
+        try {
+            pServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, null, null);
+        } catch (InstanceNotFoundException exp) {
+            // No delegate, no caching
+            return false;
+        }
+        servers.put(pServer, listener);
+        return true;
+    }
+
+    /**
+     * Disable caching for all servers, remove the registered listeners and clear the cache.
+     */
+    public void removeMBeanServers() {
+        for (Map.Entry<MBeanServerConnection, DelegateListener> entry : servers.entrySet()) {
+            try {
+                ((MBeanServer) entry.getKey()).removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, entry.getValue());
+            } catch (InstanceNotFoundException exp) {
+                // Delegate gone, nothing to remove
+            } catch (ListenerNotFoundException exp) {
+                // Already removed
+            }
+        }
+        servers.clear();
+        clear();
+    }
+
+    /**
+     * Get the MBeanInfo for an MBean, either from the cache or from the given server. The
+     * cache is bypassed for servers which have not been added.
+     *
+     * @param pServer server to query
+     * @param pName name of the MBean
+     * @return the MBeanInfo
+     * @throws InstanceNotFoundException if the MBean is not registered at the given server
+     * @throws IntrospectionException if an error occurs during introspection
+     * @throws ReflectionException if an error occurs when calling the MBean's getMBeanInfo()
+     * @throws IOException for remote servers
+     */
+    public MBeanInfo getMBeanInfo(MBeanServerConnection pServer, ObjectName pName)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+        if (!servers.containsKey(pServer)) {
+            return pServer.getMBeanInfo(pName);
+        }
+        EntryKey key = new EntryKey(pServer, pName);
+        MBeanInfo info;
+        synchronized (entries) {
+            info = entries.get(key);
+        }
+        if (info != null) {
+            hits.incrementAndGet();
+            return info;
+        }
+        misses.incrementAndGet();
+        long generation = invalidations.get();
+        info = pServer.getMBeanInfo(pName);
+        synchronized (entries) {
+            if (generation == invalidations.get() && isImmutable(info)) {
+                entries.put(key, info);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Check whether an MBeanInfo never changes during the lifetime of its MBean, i.e. whether
+     * its descriptor contains the field <code>immutableInfo</code> with a value of
+     * <code>true</code>. Only such infos may be cached.
+     *
+     * @param pInfo info to check
+     * @return true if the info is immutable
+     */
+    public static boolean isImmutable(MBeanInfo pInfo) {
+        try {
+            Descriptor descriptor = pInfo.getDescriptor();
+            Object immutable = descriptor != null ? descriptor.getFieldValue("immutableInfo") : null;
+            return immutable != null && Boolean.valueOf(immutable.toString());
+        } catch (NoSuchMethodError error) {
+            // No descriptors for MBeanInfos before Java 6
+            return false;
+        }
+    }
+
+    /**
+     * Remove all cached entries and reset the statistics
+     */
+    public void clear() {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Number of lookups which could be served from the cache
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups which required a call to the MBeanServer
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of MBeanInfos currently cached
+     *
+     * @return cache size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Evict a single entry
+    private void invalidate(MBeanServerConnection pServer, ObjectName pName) {
+        EntryKey key = new EntryKey(pServer, pName);
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.remove(key);
+        }
+    }
+
+    // ==================================================================================
+
+    // Listener for registration notifications of a single server
+    private final class DelegateListener implements NotificationListener {
+        private final MBeanServerConnection server;
+
+        private DelegateListener(MBeanServerConnection pServer) {
+            server = pServer;
+        }
+
+        /** {@inheritDoc} */
+        public void handleNotification(Notification pNotification, Object pHandback) {
+            if (pNotification instanceof MBeanServerNotification) {
+                invalidate(server, ((MBeanServerNotification) pNotification).getMBeanName());
+            }
+        }
+    }
+
+    // Cache key, the server is compared by identity
+    private static final class EntryKey {
+        private final MBeanServerConnection server;
+        private final ObjectName name;
+
+        private EntryKey(MBeanServerConnection pServer, ObjectName pName) {
+            server = pServer;
+            name = pName;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey other = (EntryKey) pOther;
+            return server == other.server && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(server) + name.hashCode();
+        }
+    }
+}
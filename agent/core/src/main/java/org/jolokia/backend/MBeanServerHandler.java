@@ -7,6 +7,7 @@ import java.util.*;
 import javax.management.*;
 
 import org.jolokia.request.JmxRequest;
+import org.jolokia.util.ConfigKey;
 import org.jolokia.util.LogHandler;
 import org.jolokia.detector.*;
 import org.jolokia.handler.JsonRequestHandler;
@@ -48,6 +49,9 @@ public class MBeanServerHandler implements MBeanServerHandlerMBean,MBeanRegistra
     // Information about the server environment
     private ServerHandle serverHandle;
 
+    // Cache for the meta data of local MBeans
+    private MBeanInfoCache mBeanInfoCache;
+
     /**
      * Initialise this server handler and register as an MBean
      *
@@ -79,10 +83,25 @@ public class MBeanServerHandler implements MBeanServerHandlerMBean,MBeanRegistra
      * @param pLogHandler log handler used for logging purpooses
      */
     public MBeanServerHandler(String pQualifier,LogHandler pLogHandler) {
+        this(pQualifier,Integer.parseInt(ConfigKey.MBEAN_INFO_CACHE_SIZE.getDefaultValue()),pLogHandler);
+    }
+
+    /**
+     * Create a new MBeanServer handler who is responsible for managing multiple intra VM {@link MBeanServer} at once
+     *
+     * @param pQualifier optional qualifier used for registering this object as an MBean (can be null)
+     * @param pMBeanInfoCacheSize maximum number of MBeanInfos to cache, 0 for switching off caching
+     * @param pLogHandler log handler used for logging purpooses
+     */
+    public MBeanServerHandler(String pQualifier,int pMBeanInfoCacheSize,LogHandler pLogHandler) {
         List<ServerDetector> detectors = lookupDetectors();
         initMBeanServers(detectors);
         serverHandle = detectServers(detectors,pLogHandler);
         qualifier = pQualifier;
+        mBeanInfoCache = new MBeanInfoCache(pMBeanInfoCacheSize);
+        for (MBeanServer server : mBeanServers) {
+            mBeanInfoCache.addMBeanServer(server);
+        }
     }
 
     /**
@@ -201,6 +220,26 @@ public class MBeanServerHandler implements MBeanServerHandlerMBean,MBeanRegistra
         }
     }
 
+    /**
+     * Unregister all MBeans registered by this handler and stop caching MBeanInfos
+     *
+     * @throws JMException if an exception occurs during unregistration
+     */
+    public void destroy() throws JMException {
+        mBeanInfoCache.removeMBeanServers();
+        unregisterMBeans();
+    }
+
+    /**
+     * Get the cache holding the {@link MBeanInfo}s of the MBeans registered at
+     * the local MBeanServers
+     *
+     * @return the cache
+     */
+    public MBeanInfoCache getMBeanInfoCache() {
+        return mBeanInfoCache;
+    }
+
     /**
      * Get the set of MBeanServers found
      *
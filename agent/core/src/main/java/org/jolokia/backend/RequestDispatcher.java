@@ -62,4 +62,12 @@ public interface RequestDispatcher {
      *         the request should be respected.
      */
     boolean useReturnValueWithPath(JmxRequest pJmxRequest);
+
+    /**
+     * Free up any resources held by this dispatcher. Called when the agent
+     * is shut down.
+     *
+     * @throws JMException if MBeans registered by this dispatcher cannot be unregistered
+     */
+    void destroy() throws JMException;
 }
@@ -2,15 +2,14 @@ package org.jolokia.converter.json;
 
 import org.jolokia.converter.object.StringToObjectConverter;
 import org.jolokia.request.ValueFaultHandler;
+import org.jolokia.util.WeakClassCache;
 import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
 
 import javax.management.AttributeNotFoundException;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.*;
 
 /*
@@ -50,11 +49,10 @@ public class BeanExtractor implements Extractor {
             Boolean.class
     ));
 
-    private static final Set<String> IGNORE_METHODS = new HashSet<String>(Arrays.asList(
-            "getClass"
-    ));
-
-    private static final String[] GETTER_PREFIX = new String[] { "get", "is", "has"};
+    // Introspection models of all classes seen so far. The models are referenced softly, since they
+    // in turn reference their (weakly referenced) class via the getter and setter methods.
+    private final WeakClassCache<SoftReference<BeanPropertyModel>> models =
+            new WeakClassCache<SoftReference<BeanPropertyModel>>();
 
     /** {@inheritDoc} */
     public Class getType() {
@@ -87,40 +85,23 @@ public class BeanExtractor implements Extractor {
     /** {@inheritDoc} */
     public Object setObjectValue(StringToObjectConverter pConverter,Object pInner, String pAttribute, Object pValue)
             throws IllegalAccessException, InvocationTargetException {
-        // Move this to plain object handler
-        String rest = new StringBuffer(pAttribute.substring(0,1).toUpperCase())
-                .append(pAttribute.substring(1)).toString();
-        String setter = new StringBuffer("set").append(rest).toString();
-        String getter = new StringBuffer("get").append(rest).toString();
-
         Class clazz = pInner.getClass();
-        Method found = null;
-        for (Method method : clazz.getMethods()) {
-            if (method.getName().equals(setter)) {
-                found = method;
-                break;
-            }
-        }
+        BeanPropertyModel model = getModel(clazz);
+        Method found = model.getSetter(pAttribute);
         if (found == null) {
             throw new IllegalArgumentException(
-                    "No Method " + setter + " known for object of type " + clazz.getName());
+                    "No Method set" + pAttribute.substring(0,1).toUpperCase() + pAttribute.substring(1) +
+                    " known for object of type " + clazz.getName());
         }
         Class params[] = found.getParameterTypes();
         if (params.length != 1) {
             throw new IllegalArgumentException(
-                    "Invalid parameter signature for " + setter + " known for object of type "
+                    "Invalid parameter signature for " + found.getName() + " known for object of type "
                             + clazz.getName() + ". Setter must take exactly one parameter.");
         }
-        Object oldValue;
-        try {
-            final Method getMethod = clazz.getMethod(getter);
-            AccessController.doPrivileged(new SetMethodAccessibleAction(getMethod));
-            oldValue = getMethod.invoke(pInner);
-        } catch (NoSuchMethodException exp) {
-            // Ignored, we simply dont return an old value
-            oldValue = null;
-        }
-        AccessController.doPrivileged(new SetMethodAccessibleAction(found));
+        Method getMethod = model.getGetterForSetter(pAttribute);
+        // If there is no getter, we simply dont return an old value
+        Object oldValue = getMethod != null ? getMethod.invoke(pInner) : null;
         found.invoke(pInner,pConverter.prepareValue(params[0].getName(), pValue));
         return oldValue;
     }
@@ -140,7 +121,7 @@ public class BeanExtractor implements Extractor {
             return pValue;
         } else {
             // For the rest we build up a JSON map with the attributes as keys and the value are
-            List<String> attributes = extractBeanAttributes(pValue);
+            List<String> attributes = getModel(pValue.getClass()).getAttributes();
             if (attributes != null && attributes.size() > 0) {
                 Map ret = new JSONObject();
                 for (String attribute : attributes) {
@@ -170,70 +151,14 @@ public class BeanExtractor implements Extractor {
         }
     }
 
-    // Extract all attributes from a given bean
-    private List<String> extractBeanAttributes(Object pValue) {
-        List<String> attrs = new ArrayList<String>();
-        for (Method method : pValue.getClass().getMethods()) {
-            if (!Modifier.isStatic(method.getModifiers()) && !IGNORE_METHODS.contains(method.getName())) {
-                addAttributes(attrs, method);
-            }
-        }
-        return attrs;
-    }
-
-    // Add attributes, which are taken from get methods to the given list
-    @SuppressWarnings("PMD.UnnecessaryCaseChange")
-    private void addAttributes(List<String> pAttrs, Method pMethod) {
-        String name = pMethod.getName();
-        for (String pref : GETTER_PREFIX) {
-            if (name.startsWith(pref) && name.length() > pref.length()
-                    && pMethod.getParameterTypes().length == 0) {
-                int len = pref.length();
-                String firstLetter = name.substring(len,len+1);
-                // Only for getter compliant to the beans conventions (first letter after prefix is upper case)
-                if (firstLetter.toUpperCase().equals(firstLetter)) {
-                    String attribute =
-                            new StringBuffer(firstLetter.toLowerCase()).
-                                    append(name.substring(len+1)).toString();
-                    pAttrs.add(attribute);
-                }
-            }
-        }
-    }
-
     private Object extractBeanPropertyValue(Object pValue, String pAttribute, ValueFaultHandler pFaultHandler)
             throws AttributeNotFoundException {
-        Class clazz = pValue.getClass();
-
-        Method method = null;
-
-        String suffix = new StringBuilder(pAttribute.substring(0,1).toUpperCase()).append(pAttribute.substring(1)).toString();
-        for (String pref : GETTER_PREFIX) {
-            try {
-                String methodName = new StringBuilder(pref).append(suffix).toString();
-                method = clazz.getMethod(methodName);
-            } catch (NoSuchMethodException e) {
-                // Try next one
-                continue;
-            }
-            // We found a valid method
-            break;
-        }
-        // Finally, try the attribute name directly
-        if (method == null) {
-            try {
-                method = clazz.getMethod(new StringBuilder(pAttribute.substring(0,1).toLowerCase())
-                        .append(pAttribute.substring(1)).toString());
-            } catch (NoSuchMethodException exp) {
-                method = null;
-            }
-        }
+        Method method = getModel(pValue.getClass()).getGetter(pAttribute);
         if (method == null) {
             return pFaultHandler.handleException(new AttributeNotFoundException(
                     "No getter known for attribute " + pAttribute + " for class " + pValue.getClass().getName()));
         }
         try {
-            method.setAccessible(true);
             return method.invoke(pValue);
         } catch (IllegalAccessException e) {
             return pFaultHandler.handleException(new IllegalStateException("Error while extracting " + pAttribute
@@ -244,25 +169,14 @@ public class BeanExtractor implements Extractor {
         }
     }
 
-    /**
-     * Privileged action for setting the accesibility mode for a method to true
-     */
-    private static class SetMethodAccessibleAction implements PrivilegedAction<Void> {
-        private final Method getMethod;
-
-        /**
-         * Which method to set accessible
-         *
-         * @param pMethod  method to set accessible
-         */
-        public SetMethodAccessibleAction(Method pMethod) {
-            getMethod = pMethod;
-        }
-
-        /** {@inheritDoc} */
-        public Void run() {
-            getMethod.setAccessible(true);
-            return null;
+    // Get the cached property model for a class or create a new one
+    private BeanPropertyModel getModel(Class pClass) {
+        SoftReference<BeanPropertyModel> ref = models.get(pClass);
+        BeanPropertyModel model = ref != null ? ref.get() : null;
+        if (model == null) {
+            model = new BeanPropertyModel(pClass);
+            models.set(pClass, new SoftReference<BeanPropertyModel>(model));
         }
+        return model;
     }
 }
@@ -0,0 +1,221 @@
+package org.jolokia.converter.json;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Reflective model of a bean class as used by the {@link BeanExtractor}. It holds the
+ * names of all readable properties and the getter and setter methods, which are looked
+ * up only once per property and made accessible when resolved.
+ *
+ * @author roland
+ * @since 02.08.11
+ */
+final class BeanPropertyModel {
+
+    private static final Set<String> IGNORE_METHODS = new HashSet<String>(Arrays.asList(
+            "getClass"
+    ));
+
+    private static final String[] GETTER_PREFIX = new String[] { "get", "is", "has"};
+
+    // Class for which this model has been build up
+    private final Class beanClass;
+
+    // Property names as extracted from the getters
+    private final List<String> attributes;
+
+    // Resolved methods, keyed by the name under which they have been requested
+    private final Map<String, Method> getters = new ConcurrentHashMap<String, Method>();
+    private final Map<String, Method> setters = new ConcurrentHashMap<String, Method>();
+    private final Map<String, Method> oldValueGetters = new ConcurrentHashMap<String, Method>();
+
+    /**
+     * Introspect the given class
+     *
+     * @param pClass class to examine
+     */
+    BeanPropertyModel(Class pClass) {
+        beanClass = pClass;
+        attributes = Collections.unmodifiableList(extractBeanAttributes(pClass));
+    }
+
+    /**
+     * Get all property names for which getters exist
+     *
+     * @return list of property names
+     */
+    List<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Get the getter for an attribute, which is already set accessible. The getter
+     * is looked up by trying the prefixes "get", "is" and "has" and finally the
+     * attribute name itself as method name.
+     *
+     * @param pAttribute attribute to lookup
+     * @return getter or null if no such getter exists
+     */
+    Method getGetter(String pAttribute) {
+        Method method = getters.get(pAttribute);
+        if (method == null) {
+            method = lookupGetter(pAttribute);
+            if (method != null) {
+                makeAccessible(method);
+                getters.put(pAttribute, method);
+            }
+        }
+        return method;
+    }
+
+    /**
+     * Get the setter for an attribute, which is already set accessible.
+     *
+     * @param pAttribute attribute to lookup
+     * @return setter or null if no such setter exists
+     */
+    Method getSetter(String pAttribute) {
+        Method method = setters.get(pAttribute);
+        if (method == null) {
+            method = lookupSetter(pAttribute);
+            if (method != null) {
+                makeAccessible(method);
+                setters.put(pAttribute, method);
+            }
+        }
+        return method;
+    }
+
+    /**
+     * Get the getter for the old value when setting a value. Only "get" is used
+     * as prefix here.
+     *
+     * @param pAttribute attribute to lookup
+     * @return getter or null if no such getter exists
+     */
+    Method getGetterForSetter(String pAttribute) {
+        Method method = oldValueGetters.get(pAttribute);
+        if (method == null) {
+            try {
+                method = beanClass.getMethod("get" + capitalize(pAttribute));
+            } catch (NoSuchMethodException exp) {
+                return null;
+            }
+            makeAccessible(method);
+            oldValueGetters.put(pAttribute, method);
+        }
+        return method;
+    }
+
+    // =====================================================================================================
+
+    // Extract all attributes from a given bean class
+    private static List<String> extractBeanAttributes(Class pClass) {
+        List<String> attrs = new ArrayList<String>();
+        for (Method method : pClass.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && !IGNORE_METHODS.contains(method.getName())) {
+                addAttributes(attrs, method);
+            }
+        }
+        return attrs;
+    }
+
+    // Add attributes, which are taken from get methods to the given list
+    @SuppressWarnings("PMD.UnnecessaryCaseChange")
+    private static void addAttributes(List<String> pAttrs, Method pMethod) {
+        String name = pMethod.getName();
+        for (String pref : GETTER_PREFIX) {
+            if (name.startsWith(pref) && name.length() > pref.length()
+                    && pMethod.getParameterTypes().length == 0) {
+                int len = pref.length();
+                String firstLetter = name.substring(len,len+1);
+                // Only for getter compliant to the beans conventions (first letter after prefix is upper case)
+                if (firstLetter.toUpperCase().equals(firstLetter)) {
+                    String attribute =
+                            new StringBuffer(firstLetter.toLowerCase()).
+                                    append(name.substring(len+1)).toString();
+                    pAttrs.add(attribute);
+                }
+            }
+        }
+    }
+
+    private Method lookupGetter(String pAttribute) {
+        String suffix = capitalize(pAttribute);
+        for (String pref : GETTER_PREFIX) {
+            try {
+                return beanClass.getMethod(new StringBuilder(pref).append(suffix).toString());
+            } catch (NoSuchMethodException e) {
+                // Try next one
+            }
+        }
+        // Finally, try the attribute name directly
+        try {
+            return beanClass.getMethod(new StringBuilder(pAttribute.substring(0,1).toLowerCase())
+                    .append(pAttribute.substring(1)).toString());
+        } catch (NoSuchMethodException exp) {
+            return null;
+        }
+    }
+
+    private Method lookupSetter(String pAttribute) {
+        String setter = "set" + capitalize(pAttribute);
+        for (Method method : beanClass.getMethods()) {
+            if (method.getName().equals(setter)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private String capitalize(String pAttribute) {
+        return new StringBuilder(pAttribute.substring(0,1).toUpperCase()).append(pAttribute.substring(1)).toString();
+    }
+
+    private void makeAccessible(Method pMethod) {
+        AccessController.doPrivileged(new SetMethodAccessibleAction(pMethod));
+    }
+
+    /**
+     * Privileged action for setting the accesibility mode for a method to true
+     */
+    private static class SetMethodAccessibleAction implements PrivilegedAction<Void> {
+        private final Method method;
+
+        /**
+         * Which method to set accessible
+         *
+         * @param pMethod  method to set accessible
+         */
+        public SetMethodAccessibleAction(Method pMethod) {
+            method = pMethod;
+        }
+
+        /** {@inheritDoc} */
+        public Void run() {
+            method.setAccessible(true);
+            return null;
+        }
+    }
+}
@@ -49,6 +49,13 @@ public final class ObjectToJsonConverter {
 
     private ArrayExtractor arrayExtractor;
 
+    // Cache for the handlers responsible for a certain class, so that the list of
+    // handlers doesn't need to be scanned for every value to serialize
+    private WeakClassCache<Extractor> extractorCache = new WeakClassCache<Extractor>();
+
+    // Same for handlers which are able to set a value
+    private WeakClassCache<Extractor> setValueExtractorCache = new WeakClassCache<Extractor>();
+
     // Thread-Local set in order to prevent infinite recursions
     private ThreadLocal<ObjectSerializationContext> stackContextLocal = new ThreadLocal<ObjectSerializationContext>();
 
@@ -292,10 +299,23 @@ public final class ObjectToJsonConverter {
 
     // =================================================================================
 
-    // Get the extractor for a certain class
+    // Get the extractor for a certain class which is able to set a value
     private Extractor getExtractor(Class pClazz) {
+        Extractor handler = setValueExtractorCache.get(pClazz);
+        if (handler == null) {
+            handler = lookupExtractor(pClazz,true);
+            if (handler != null) {
+                handler = setValueExtractorCache.put(pClazz,handler);
+            }
+        }
+        return handler;
+    }
+
+    // Scan all handlers for the first which is responsible for the given class
+    private Extractor lookupExtractor(Class pClazz, boolean pMustSetValue) {
         for (Extractor handler : handlers) {
-            if (handler.canSetValue() && handler.getType() != null && handler.getType().isAssignableFrom(pClazz)) {
+            if ((!pMustSetValue || handler.canSetValue()) &&
+                handler.getType() != null && handler.getType().isAssignableFrom(pClazz)) {
                 return handler;
             }
         }
@@ -344,11 +364,16 @@ public final class ObjectToJsonConverter {
     private Object callHandler(Object pValue, Stack<String> pExtraArgs, boolean pJsonify)
             throws AttributeNotFoundException {
         Class pClazz = pValue.getClass();
-        for (Extractor handler : handlers) {
-            if (handler.getType() != null && handler.getType().isAssignableFrom(pClazz)) {
-                return handler.extractObject(this,pValue,pExtraArgs,pJsonify);
+        Extractor handler = extractorCache.get(pClazz);
+        if (handler == null) {
+            handler = lookupExtractor(pClazz,false);
+            if (handler != null) {
+                handler = extractorCache.put(pClazz,handler);
             }
         }
+        if (handler != null) {
+            return handler.extractObject(this,pValue,pExtraArgs,pJsonify);
+        }
         throw new IllegalStateException(
                 "Internal error: No handler found for class " + pClazz +
                     " (object: " + pValue + ", extraArgs: " + pExtraArgs + ")");
@@ -159,7 +159,7 @@ public class ExecHandler extends JsonRequestHandler<JmxExecRequest> {
                                                                   String pOperation)
             throws InstanceNotFoundException, ReflectionException, IOException {
         try {
-            MBeanInfo mBeanInfo = pServer.getMBeanInfo(pRequest.getObjectName());
+            MBeanInfo mBeanInfo = getMBeanInfo(pServer, pRequest.getObjectName());
             List<MBeanParameterInfo[]> paramInfos = new ArrayList<MBeanParameterInfo[]>();
             for (MBeanOperationInfo opInfo : mBeanInfo.getOperations()) {
                 if (opInfo.getName().equals(pOperation)) {
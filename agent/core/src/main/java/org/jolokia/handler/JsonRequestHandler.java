@@ -1,5 +1,6 @@
 package org.jolokia.handler;
 
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.request.*;
 import org.jolokia.restrictor.Restrictor;
 import org.jolokia.util.RequestType;
@@ -35,6 +36,9 @@ public abstract class JsonRequestHandler<R extends JmxRequest> {
 
     private final Restrictor restrictor;
 
+    // Optional cache for MBeanInfos
+    private MBeanInfoCache mBeanInfoCache;
+
     protected JsonRequestHandler(Restrictor pRestrictor) {
         restrictor = pRestrictor;
     }
@@ -184,6 +188,40 @@ public abstract class JsonRequestHandler<R extends JmxRequest> {
         return true;
     }
 
+    /**
+     * Release any resources held by this handler. Called when the agent is shut down.
+     * Does nothing by default.
+     */
+    public void destroy() {
+    }
+
+    /**
+     * Set the cache to use for looking up {@link MBeanInfo}s
+     *
+     * @param pMBeanInfoCache cache to use or null if the MBeanInfo should be always fetched from the server
+     */
+    public void setMBeanInfoCache(MBeanInfoCache pMBeanInfoCache) {
+        mBeanInfoCache = pMBeanInfoCache;
+    }
+
+    /**
+     * Get the {@link MBeanInfo} of an MBean, possibly from the cache
+     *
+     * @param pServer server to query
+     * @param pName name of the MBean
+     * @return the MBeanInfo
+     * @throws InstanceNotFoundException if the MBean is not registered at the given server
+     * @throws IntrospectionException if an error occurs during introspection
+     * @throws ReflectionException if an error occurs when calling the MBean's getMBeanInfo()
+     * @throws IOException for remote servers
+     */
+    protected MBeanInfo getMBeanInfo(MBeanServerConnection pServer, ObjectName pName)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+        return mBeanInfoCache != null ?
+                mBeanInfoCache.getMBeanInfo(pServer, pName) :
+                pServer.getMBeanInfo(pName);
+    }
+
     /**
      * Get the restrictor which is currently active
      *
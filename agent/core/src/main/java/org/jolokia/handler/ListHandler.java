@@ -7,6 +7,7 @@ import java.util.*;
 import javax.management.*;
 
 import org.jolokia.handler.list.MBeanInfoData;
+import org.jolokia.handler.list.MBeanListCache;
 import org.jolokia.request.JmxListRequest;
 import org.jolokia.restrictor.Restrictor;
 import org.jolokia.util.*;
@@ -37,6 +38,8 @@ import org.jolokia.util.*;
  */
 public class ListHandler extends JsonRequestHandler<JmxListRequest> {
 
+    // Cached tree of the local MBeans, null if not available
+    private MBeanListCache listCache;
 
     /** {@inheritDoc} */
     public RequestType getType() {
@@ -49,7 +52,19 @@ public class ListHandler extends JsonRequestHandler<JmxListRequest> {
      * @param pRestrictor restrictor to apply
      */
     public ListHandler(Restrictor pRestrictor) {
+        this(pRestrictor, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pRestrictor restrictor to apply
+     * @param pListCache cached tree which is used if the request is for the servers covered
+     *        by this cache. Can be null.
+     */
+    public ListHandler(Restrictor pRestrictor, MBeanListCache pListCache) {
         super(pRestrictor);
+        listCache = pListCache;
     }
 
     /**
@@ -78,9 +93,18 @@ public class ListHandler extends JsonRequestHandler<JmxListRequest> {
         ObjectName oName = null;
         try {
             Stack<String> pathStack = (Stack<String>) originalPathStack.clone();
-            MBeanInfoData infoMap = new MBeanInfoData(maxDepth,pathStack);
-
             oName = objectNameFromPath(pathStack);
+
+            boolean useCache = listCache != null && listCache.covers(pServers);
+            if (useCache) {
+                checkIfModifiedSince(pRequest);
+                if (pathStack.size() <= 2 && (oName == null || !oName.isDomainPattern())) {
+                    // The path doesn't point into an MBean, so the cached tree can be used directly
+                    return getFromCache(oName, maxDepth);
+                }
+            }
+
+            MBeanInfoData infoMap = new MBeanInfoData(maxDepth,pathStack);
             if (oName == null || oName.isPattern()) {
                 // MBean pattern for MBean can match at multiple servers
                 addMBeansFromPattern(infoMap,pServers,oName);
@@ -120,6 +144,33 @@ public class ListHandler extends JsonRequestHandler<JmxListRequest> {
 
     // ==========================================================================================================
 
+    // Throw a NotChangedException if no MBean has been registered or unregistered since the time
+    // given by the client. A change within the same second as the given time always counts as a change.
+    private void checkIfModifiedSince(JmxListRequest pRequest) {
+        String ifModifiedSince = pRequest.getProcessingConfig(ConfigKey.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            long since;
+            try {
+                since = Long.parseLong(ifModifiedSince) * 1000;
+            } catch (NumberFormatException exp) {
+                throw new IllegalArgumentException("Invalid value " + ifModifiedSince + " for " +
+                                                   ConfigKey.IF_MODIFIED_SINCE.getKeyValue() + " (must be seconds since the epoch)",exp);
+            }
+            if (listCache.getLastChange() < since) {
+                throw new NotChangedException(pRequest);
+            }
+        }
+    }
+
+    // Get the tree for all MBeans, a domain or a single MBean from the cache
+    private Object getFromCache(ObjectName pName, int pMaxDepth) {
+        Object ret = listCache.getTree(pName, pMaxDepth);
+        if (ret == null) {
+            throw new IllegalArgumentException("Invalid object name '" + pName + "': Instance not found");
+        }
+        return ret;
+    }
+
     // Lookup MBeans from a pattern, and for each found extract the required information
     private void addMBeansFromPattern(MBeanInfoData pInfoMap,
                                       Set<MBeanServerConnection> pServers,
@@ -163,7 +214,7 @@ public class ListHandler extends JsonRequestHandler<JmxListRequest> {
     private void addMBeanInfo(MBeanInfoData pInfoMap, MBeanServerConnection  server, ObjectName pName)
             throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
         try {
-            MBeanInfo mBeanInfo = server.getMBeanInfo(pName);
+            MBeanInfo mBeanInfo = getMBeanInfo(server, pName);
             pInfoMap.addMBeanInfo(mBeanInfo,pName);
         } catch (IOException exp) {
             pInfoMap.handleException(pName,exp);
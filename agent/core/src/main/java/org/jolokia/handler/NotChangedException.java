@@ -0,0 +1,55 @@
+package org.jolokia.handler;
+
+import org.jolokia.request.JmxRequest;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Exception thrown by a request handler when the requested value has not changed
+ * since the time given by the client with the processing parameter
+ * <code>ifModifiedSince</code>. It results in a response with status 304 which
+ * carries no value.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class NotChangedException extends RuntimeException {
+
+    private static final long serialVersionUID = 42L;
+
+    // The request which was not answered
+    private final transient JmxRequest request;
+
+    /**
+     * Constructor
+     *
+     * @param pRequest the request whose value has not changed
+     */
+    public NotChangedException(JmxRequest pRequest) {
+        super("Not changed");
+        request = pRequest;
+    }
+
+    /**
+     * Get the request whose value has not changed
+     *
+     * @return request
+     */
+    public JmxRequest getRequest() {
+        return request;
+    }
+}
@@ -2,11 +2,15 @@ package org.jolokia.handler;
 
 import org.jolokia.request.*;
 import org.jolokia.restrictor.Restrictor;
+import org.jolokia.util.ConfigKey;
+import org.jolokia.util.ExecutorUtil;
 import org.jolokia.util.RequestType;
 
 import javax.management.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -33,13 +37,36 @@ import java.util.*;
  */
 public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
 
+    // Upper limit of threads used by a single pattern read request
+    private final int maxReadThreads;
+
+    // Executor used for parallel reads, created on demand
+    private ThreadPoolExecutor readExecutor;
+
+    // Set when the handler is shut down, no executor is created afterwards
+    private boolean destroyed;
+
     /**
      * Read handler constructor
      *
      * @param pRestrictor access restriction to apply
      */
     public ReadHandler(Restrictor pRestrictor) {
+        this(pRestrictor, null);
+    }
+
+    /**
+     * Read handler constructor
+     *
+     * @param pRestrictor access restriction to apply
+     * @param pConfig global configuration, used for the limit of parallel reads. Can be null.
+     */
+    public ReadHandler(Restrictor pRestrictor, Map<ConfigKey,String> pConfig) {
         super(pRestrictor);
+        String maxThreads = pConfig != null ?
+                ConfigKey.MAX_READ_THREADS.getValue(pConfig) :
+                ConfigKey.MAX_READ_THREADS.getDefaultValue();
+        maxReadThreads = maxThreads != null ? Integer.parseInt(maxThreads) : 0;
     }
 
     /** {@inheritDoc} */
@@ -95,11 +122,29 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
     private Object fetchAttributesForMBeanPattern(Set<MBeanServerConnection> pServers, JmxReadRequest pRequest)
             throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
         ObjectName objectName = pRequest.getObjectName();
-        ValueFaultHandler faultHandler = pRequest.getValueFaultHandler();
         Set<ObjectName> names = searchMBeans(pServers, objectName);
+        int nrThreads = getNrOfReadThreads(pRequest, names.size());
+        Map<String,Object> ret = nrThreads > 1 ?
+                fetchAttributesForMBeansInParallel(pServers, names, pRequest, nrThreads) :
+                fetchAttributesForMBeans(pServers, new LinkedList<ObjectName>(names), pRequest, null);
+        if (ret.size() == 0) {
+            throw new IllegalArgumentException("No matching attributes " +
+                    pRequest.getAttributeNames() + " found on MBeans " + names);
+        }
+        return ret;
+    }
+
+    // Fetch the attributes of all MBeans taken from the given queue. The queue
+    // must be thread safe if used by multiple threads. If the given flag is set,
+    // the fetching stops as soon as possible.
+    private Map<String,Object> fetchAttributesForMBeans(Set<MBeanServerConnection> pServers, Queue<ObjectName> pNames,
+                                                        JmxReadRequest pRequest, AtomicBoolean pStopFlag)
+            throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
+        ValueFaultHandler faultHandler = pRequest.getValueFaultHandler();
         Map<String,Object> ret = new HashMap<String, Object>();
         List<String> attributeNames = pRequest.getAttributeNames();
-        for (ObjectName name : names) {
+        ObjectName name;
+        while ((pStopFlag == null || !pStopFlag.get()) && (name = pNames.poll()) != null) {
             if (!pRequest.hasAttribute()) {
                 Map values = (Map) fetchAttributes(pServers,name, null, faultHandler);
                 if (values != null && values.size() > 0) {
@@ -114,13 +159,91 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
                         fetchAttributes(pServers,name,filteredAttributeNames, faultHandler));
             }
         }
-        if (ret.size() == 0) {
-            throw new IllegalArgumentException("No matching attributes " +
-                    pRequest.getAttributeNames() + " found on MBeans " + names);
+        return ret;
+    }
+
+    // Distribute the MBeans to read over multiple threads. The calling thread takes part in the
+    // work, too. If the executor is saturated, the work is done by the calling thread as well.
+    private Map<String,Object> fetchAttributesForMBeansInParallel(Set<MBeanServerConnection> pServers, Set<ObjectName> pNames,
+                                                                  JmxReadRequest pRequest, int pNrThreads)
+            throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
+        Queue<ObjectName> names = new ConcurrentLinkedQueue<ObjectName>(pNames);
+        AtomicBoolean stopFlag = new AtomicBoolean(false);
+        ExecutorService executor = getReadExecutor();
+        List<Future<Map<String,Object>>> futures = new ArrayList<Future<Map<String, Object>>>();
+        for (int i = 1; i < pNrThreads; i++) {
+            futures.add(executor.submit(new PatternReadWorker(pServers, names, pRequest, stopFlag)));
+        }
+
+        Map<String,Object> ret = new HashMap<String, Object>();
+        Throwable error = null;
+        try {
+            ret.putAll(new PatternReadWorker(pServers, names, pRequest, stopFlag).call());
+        } catch (Throwable exp) {
+            error = exp;
+        }
+        for (Future<Map<String,Object>> future : futures) {
+            try {
+                ret.putAll(future.get());
+            } catch (ExecutionException exp) {
+                if (error == null) {
+                    error = exp.getCause();
+                }
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                stopFlag.set(true);
+                throw new IllegalStateException("Interrupted while reading attributes for " + pRequest.getObjectName(),exp);
+            }
+        }
+        if (error != null) {
+            rethrow(error);
         }
         return ret;
     }
 
+    // Number of threads to use for the given request
+    private int getNrOfReadThreads(JmxReadRequest pRequest, int pNrOfMBeans) {
+        Integer requested = pRequest.getProcessingConfigAsInt(ConfigKey.MAX_READ_THREADS);
+        if (requested == null || maxReadThreads <= 1) {
+            return 1;
+        }
+        return Math.min(Math.min(requested, maxReadThreads), pNrOfMBeans);
+    }
+
+    // Get the executor used for parallel reads, which is created lazily
+    private synchronized ExecutorService getReadExecutor() {
+        if (destroyed) {
+            throw new IllegalStateException("Parallel reads are not available after shutdown");
+        }
+        if (readExecutor == null) {
+            // No queueing, a request which doesn't get a thread does the reading on its own
+            readExecutor = ExecutorUtil.createCallerRunsExecutor(maxReadThreads, "jolokia-read-");
+        }
+        return readExecutor;
+    }
+
+    // Rethrow an exception which occured in a worker thread
+    private void rethrow(Throwable pError)
+            throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
+        if (pError instanceof IOException) {
+            throw (IOException) pError;
+        } else if (pError instanceof InstanceNotFoundException) {
+            throw (InstanceNotFoundException) pError;
+        } else if (pError instanceof ReflectionException) {
+            throw (ReflectionException) pError;
+        } else if (pError instanceof AttributeNotFoundException) {
+            throw (AttributeNotFoundException) pError;
+        } else if (pError instanceof MBeanException) {
+            throw (MBeanException) pError;
+        } else if (pError instanceof RuntimeException) {
+            throw (RuntimeException) pError;
+        } else if (pError instanceof Error) {
+            throw (Error) pError;
+        } else {
+            throw new IllegalStateException("Error while reading attributes: " + pError,pError);
+        }
+    }
+
     private Set<ObjectName> searchMBeans(Set<MBeanServerConnection> pServers, ObjectName pObjectName) throws IOException, InstanceNotFoundException {
         Set<ObjectName> names = new HashSet<ObjectName>();
         for (MBeanServerConnection server : pServers) {
@@ -159,9 +282,29 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
         }
         Map<String,Object> ret = new HashMap<String, Object>();
 
+        List<String> allowedAttributes = new ArrayList<String>(attributes.size());
         for (String attribute : attributes) {
             try {
                 checkRestriction(pMBeanName, attribute);
+                allowedAttributes.add(attribute);
+            } catch (RuntimeException e) {
+                ret.put(attribute, pFaultHandler.handleException(e));
+            }
+        }
+
+        // Fetch all attributes at once, which is only a single roundtrip for remote servers
+        Map<String,Object> values = allowedAttributes.size() > 1 ?
+                getAttributes(pServers, pMBeanName, allowedAttributes) :
+                Collections.<String, Object>emptyMap();
+
+        for (String attribute : allowedAttributes) {
+            if (values.containsKey(attribute)) {
+                ret.put(attribute, values.get(attribute));
+                continue;
+            }
+            // Fallback for the attributes missing in the bulk response. Fetching them
+            // one by one gives us the exception for the fault handler.
+            try {
                 ret.put(attribute,getAttribute(pServers, pMBeanName, attribute));
             } catch (MBeanException e) {
                 // The fault handler might to decide to rethrow the
@@ -197,7 +340,7 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
             IntrospectionException, InstanceNotFoundException, IOException, ReflectionException {
         for (MBeanServerConnection server : pServers) {
             try {
-                return server.getMBeanInfo(pObjectName);
+                return getMBeanInfo(server, pObjectName);
             } catch (InstanceNotFoundException exp) {
                 // Ok, we try the next server ....
             }
@@ -222,6 +365,36 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
         throw new InstanceNotFoundException("No MBean with ObjectName " + pMBeanName + " found at any known MBeanServer");
     }
 
+    // Fetch multiple attributes with a single call. Attributes which could not be fetched are missing in
+    // the returned map, which is empty if the bulk call itself fails.
+    private Map<String,Object> getAttributes(Set<MBeanServerConnection> pServers, ObjectName pMBeanName,
+                                             List<String> pAttributes) {
+        Map<String,Object> ret = new HashMap<String, Object>();
+        String[] names = pAttributes.toArray(new String[pAttributes.size()]);
+        for (MBeanServerConnection server : pServers) {
+            try {
+                AttributeList attributes = server.getAttributes(pMBeanName, names);
+                if (attributes != null) {
+                    for (Object attribute : attributes) {
+                        Attribute attr = (Attribute) attribute;
+                        ret.put(attr.getName(), attr.getValue());
+                    }
+                }
+                return ret;
+            } catch (InstanceNotFoundException exp) {
+                // Try the next server
+            } catch (ReflectionException exp) {
+                // Fallback to single attribute fetching
+                return ret;
+            } catch (IOException exp) {
+                return ret;
+            } catch (RuntimeException exp) {
+                return ret;
+            }
+        }
+        return ret;
+    }
+
     // Return a set of attributes as a map with the attribute name as key and their values as values
     private List<String> getAllAttributesNames(Set<MBeanServerConnection> pServers, ObjectName pObjectName)
             throws InstanceNotFoundException, IOException, ReflectionException {
@@ -239,6 +412,18 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
         }
     }
 
+    /**
+     * Shutdown the threads used for parallel reads
+     */
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        if (readExecutor != null) {
+            readExecutor.shutdownNow();
+            readExecutor = null;
+        }
+    }
+
     private void checkRestriction(ObjectName mBeanName, String attribute) {
         if (!getRestrictor().isAttributeReadAllowed(mBeanName,attribute)) {
             throw new SecurityException("Reading attribute " + attribute +
@@ -254,4 +439,33 @@ public class ReadHandler extends JsonRequestHandler<JmxReadRequest> {
     protected void checkForRestriction(JmxReadRequest pRequest) {
 
     }
+
+    // ==============================================================================================
+
+    // Worker fetching the attributes of MBeans as long as there are names left
+    private final class PatternReadWorker implements Callable<Map<String,Object>> {
+        private final Set<MBeanServerConnection> servers;
+        private final Queue<ObjectName> names;
+        private final JmxReadRequest request;
+        private final AtomicBoolean stopFlag;
+
+        private PatternReadWorker(Set<MBeanServerConnection> pServers, Queue<ObjectName> pNames,
+                                  JmxReadRequest pRequest, AtomicBoolean pStopFlag) {
+            servers = pServers;
+            names = pNames;
+            request = pRequest;
+            stopFlag = pStopFlag;
+        }
+
+        /** {@inheritDoc} */
+        public Map<String, Object> call() throws Exception {
+            try {
+                return fetchAttributesForMBeans(servers, names, request, stopFlag);
+            } catch (Exception exp) {
+                // Let the other workers stop early, the request will fail anyway
+                stopFlag.set(true);
+                throw exp;
+            }
+        }
+    }
 }
@@ -17,8 +17,11 @@ package org.jolokia.handler;
  */
 
 import org.jolokia.converter.*;
+import org.jolokia.backend.MBeanInfoCache;
+import org.jolokia.handler.list.MBeanListCache;
 import org.jolokia.restrictor.Restrictor;
 import org.jolokia.detector.ServerHandle;
+import org.jolokia.util.ConfigKey;
 import org.jolokia.util.RequestType;
 
 import java.util.HashMap;
@@ -45,15 +48,59 @@ public class RequestHandlerManager {
      * @param pRestrictor handler for access restrictions
      */
     public RequestHandlerManager(Converters pConverters,ServerHandle pServerHandle, Restrictor pRestrictor) {
+        this(pConverters, pServerHandle, pRestrictor, null);
+    }
+
+    /**
+     * Manager and dispatcher for incoming requests
+     *
+     * @param pConverters string/object converters
+     * @param pServerHandle server handle for obtaining MBeanServer
+     * @param pRestrictor handler for access restrictions
+     * @param pConfig global configuration for tuning the handlers. Can be null.
+     */
+    public RequestHandlerManager(Converters pConverters,ServerHandle pServerHandle, Restrictor pRestrictor,
+                                 Map<ConfigKey, String> pConfig) {
+        this(pConverters, pServerHandle, pRestrictor, pConfig, null);
+    }
+
+    /**
+     * Manager and dispatcher for incoming requests
+     *
+     * @param pConverters string/object converters
+     * @param pServerHandle server handle for obtaining MBeanServer
+     * @param pRestrictor handler for access restrictions
+     * @param pConfig global configuration for tuning the handlers. Can be null.
+     * @param pMBeanInfoCache cache used by the handlers for looking up MBeanInfos. Can be null.
+     */
+    public RequestHandlerManager(Converters pConverters,ServerHandle pServerHandle, Restrictor pRestrictor,
+                                 Map<ConfigKey, String> pConfig, MBeanInfoCache pMBeanInfoCache) {
+        this(pConverters, pServerHandle, pRestrictor, pConfig, pMBeanInfoCache, null);
+    }
+
+    /**
+     * Manager and dispatcher for incoming requests
+     *
+     * @param pConverters string/object converters
+     * @param pServerHandle server handle for obtaining MBeanServer
+     * @param pRestrictor handler for access restrictions
+     * @param pConfig global configuration for tuning the handlers. Can be null.
+     * @param pMBeanInfoCache cache used by the handlers for looking up MBeanInfos. Can be null.
+     * @param pListCache cached MBean tree used for list requests. Can be null.
+     */
+    public RequestHandlerManager(Converters pConverters,ServerHandle pServerHandle, Restrictor pRestrictor,
+                                 Map<ConfigKey, String> pConfig, MBeanInfoCache pMBeanInfoCache,
+                                 MBeanListCache pListCache) {
         JsonRequestHandler handlers[] = {
-                new ReadHandler(pRestrictor),
+                new ReadHandler(pRestrictor, pConfig),
                 new WriteHandler(pRestrictor, pConverters),
                 new ExecHandler(pRestrictor, pConverters),
-                new ListHandler(pRestrictor),
+                new ListHandler(pRestrictor, pListCache),
                 new VersionHandler(pRestrictor, pServerHandle),
                 new SearchHandler(pRestrictor)
         };
         for (JsonRequestHandler handler : handlers) {
+            handler.setMBeanInfoCache(pMBeanInfoCache);
             requestHandlerMap.put(handler.getType(),handler);
         }
     }
@@ -72,4 +119,13 @@ public class RequestHandlerManager {
         return handler;
     }
 
+    /**
+     * Release the resources held by the request handlers
+     */
+    public void destroy() {
+        for (JsonRequestHandler handler : requestHandlerMap.values()) {
+            handler.destroy();
+        }
+    }
+
 }
@@ -96,7 +96,7 @@ public class WriteHandler extends JsonRequestHandler<JmxWriteRequest> {
         // Old value, will throw an exception if attribute is not known. That's good.
         Object oldValue = server.getAttribute(request.getObjectName(), request.getAttributeName());
 
-        MBeanInfo mInfo = server.getMBeanInfo(request.getObjectName());
+        MBeanInfo mInfo = getMBeanInfo(server, request.getObjectName());
         MBeanAttributeInfo aInfo = null;
         
         for (MBeanAttributeInfo i : mInfo.getAttributes()) {
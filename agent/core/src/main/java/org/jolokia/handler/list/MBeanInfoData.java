@@ -222,9 +222,48 @@ public class MBeanInfoData {
         }
     }
 
+    /**
+     * Create the complete meta data of a single MBean as it appears below its domain and
+     * property list in the tree.
+     *
+     * @param pMBeanInfo info to extract from
+     * @return the MBean's meta data
+     */
+    static JSONObject createMBeanMap(MBeanInfo pMBeanInfo) {
+        JSONObject ret = new JSONObject();
+        addFullMBeanInfo(ret, pMBeanInfo);
+        return ret;
+    }
+
+    /**
+     * Create a copy of a tree truncated to the given depth. Maps below this depth
+     * are replaced by a dummy value.
+     *
+     * @param pValue tree to truncate
+     * @param pMaxDepth maximum depth
+     * @return the truncated copy
+     */
+    static Object truncateJSONObject(JSONObject pValue, int pMaxDepth) {
+        if (pMaxDepth == 0) {
+            return 1;
+        }
+        JSONObject ret = new JSONObject();
+        Set<Map.Entry> entries = pValue.entrySet();
+        for (Map.Entry entry : entries) {
+            Object value = entry.getValue();
+            Object key = entry.getKey();
+            if (value instanceof JSONObject) {
+                ret.put(key, truncateJSONObject((JSONObject) value, pMaxDepth - 1));
+            } else {
+                ret.put(key,value);
+            }
+        }
+        return ret;
+    }
+
     // =====================================================================================================
 
-    private void addFullMBeanInfo(JSONObject pMBeanMap, MBeanInfo pMBeanInfo) {
+    private static void addFullMBeanInfo(JSONObject pMBeanMap, MBeanInfo pMBeanInfo) {
         for (DataUpdater updater : UPDATERS.values()) {
             updater.update(pMBeanMap,pMBeanInfo,null);
         }
@@ -249,24 +288,6 @@ public class MBeanInfoData {
         return nMap;
     }
 
-    private Object truncateJSONObject(JSONObject pValue, int pMaxDepth) {
-        if (pMaxDepth == 0) {
-            return 1;
-        }
-        JSONObject ret = new JSONObject();
-        Set<Map.Entry> entries = pValue.entrySet();
-        for (Map.Entry entry : entries) {
-            Object value = entry.getValue();
-            Object key = entry.getKey();
-            if (value instanceof JSONObject) {
-                ret.put(key, truncateJSONObject((JSONObject) value, pMaxDepth - 1));
-            } else {
-                ret.put(key,value);
-            }
-        }
-        return ret;
-    }
-
     // Trim down the stack by some value or return an empty stack
     private Stack<String> truncatePathStack(int pLevel) {
         if (pathStack.size() < pLevel) {
@@ -0,0 +1,436 @@
+package org.jolokia.handler.list;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.*;
+
+import org.jolokia.backend.MBeanInfoCache;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Cache holding the complete tree of MBean meta data as returned by a <code>list</code> request
+ * (see {@link MBeanInfoData} for its structure) for the MBeans of local {@link MBeanServer}s.
+ *
+ * The tree is built up when it is requested for the first time. Afterwards it is kept up to date
+ * by listening to the registration notifications of each server's {@link MBeanServerDelegate}.
+ * A notification only marks the MBean as changed, the new meta data is fetched when the tree is
+ * requested the next time. The meta data of MBeans whose {@link MBeanInfo} is not marked as
+ * immutable (see {@link MBeanInfoCache#isImmutable(MBeanInfo)}) can change while they are registered,
+ * so it is fetched again when the tree is requested, but at most once per refresh interval.
+ * An updated tree is a new copy of the previous tree sharing all unchanged parts, so a tree handed
+ * out once is never modified afterwards and can be serialized without holding a lock.
+ *
+ * Each registration or unregistration increments a generation counter, which depends only on the
+ * notifications and can be used by clients to find out cheaply whether the set of MBeans has changed.
+ * The list generation additionally changes whenever a changed meta data of a mutable MBean has been
+ * detected, so it covers the complete tree.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class MBeanListCache {
+
+    /**
+     * Default minimal time in milliseconds between two checks of the meta data of MBeans
+     * with a mutable {@link MBeanInfo}
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 5000L;
+
+    // Servers covered by this cache along with the listener for their MBeanServerDelegate,
+    // in the order in which they are queried
+    private final List<ServerEntry> servers = new CopyOnWriteArrayList<ServerEntry>();
+
+    // The tree of domains, MBeans and their meta data. Null if not yet built. Guarded by 'this'.
+    private JSONObject tree;
+
+    // MBeans which have been registered or unregistered since the tree was updated the last time.
+    // Guarded by itself, since notifications must not wait for a tree update.
+    private final Set<ObjectName> changedNames = new LinkedHashSet<ObjectName>();
+
+    // MBeans in the tree whose meta data can change while they are registered. Guarded by 'this'.
+    private final Set<ObjectName> mutableNames = new HashSet<ObjectName>();
+
+    // Incremented on every registration or unregistration of an MBean
+    private final AtomicLong generation = new AtomicLong();
+
+    // Incremented on every detected change of the meta data of a mutable MBean
+    private final AtomicLong infoGeneration = new AtomicLong();
+
+    // Time in milliseconds of the last change of the MBean registry or of the meta data
+    private volatile long lastChange = System.currentTimeMillis();
+
+    // Minimal time in milliseconds between two checks of the mutable MBeans
+    private final long refreshInterval;
+
+    // Time in milliseconds when the mutable MBeans have been checked the last time. Guarded by 'this'.
+    private long lastRefresh;
+
+    /**
+     * Create a cache which checks the meta data of mutable MBeans at most
+     * every {@link #DEFAULT_REFRESH_INTERVAL} milliseconds
+     */
+    public MBeanListCache() {
+        this(DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Create a cache with a given refresh interval for mutable MBeans
+     *
+     * @param pRefreshInterval minimal time in milliseconds between two checks of the meta data
+     *        of MBeans with a mutable {@link MBeanInfo}
+     */
+    public MBeanListCache(long pRefreshInterval) {
+        refreshInterval = pRefreshInterval;
+    }
+
+    /**
+     * Add a server whose MBeans should be included in the tree. This registers a listener at the
+     * server's {@link MBeanServerDelegate}, if this fails, the server is not added.
+     *
+     * @param pServer server to add
+     * @return true if the server has been added
+     */
+    public boolean addMBeanServer(MBeanServer pServer) {
+        if (getServerEntry(pServer) != null) {
+            return false;
+        }
+        DelegateListener listener = new DelegateListener();
+        try {
+            pServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, null, null);
+        } catch (InstanceNotFoundException exp) {
+            // No delegate, no caching
+            return false;
+        }
+        servers.add(new ServerEntry(pServer, listener));
+        markAllChanged();
+        return true;
+    }
+
+    /**
+     * Remove all servers along with their listeners and drop the tree
+     */
+    public void removeMBeanServers() {
+        for (ServerEntry entry : servers) {
+            try {
+                entry.server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, entry.listener);
+            } catch (InstanceNotFoundException exp) {
+                // Delegate gone, nothing to remove
+            } catch (ListenerNotFoundException exp) {
+                // Already removed
+            }
+        }
+        servers.clear();
+        markAllChanged();
+    }
+
+    /**
+     * Check whether the tree of this cache covers exactly the given set of servers,
+     * so that it can be used for answering a list request on these servers
+     *
+     * @param pServers servers to check
+     * @return true if the tree covers the MBeans of exactly these servers
+     */
+    public boolean covers(Set<? extends MBeanServerConnection> pServers) {
+        if (servers.isEmpty() || pServers.size() != servers.size()) {
+            return false;
+        }
+        for (MBeanServerConnection server : pServers) {
+            if (!(server instanceof MBeanServer) || getServerEntry((MBeanServer) server) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the meta data for all MBeans, for all MBeans of a domain or for a single MBean,
+     * truncated to a maximum depth.
+     *
+     * @param pName either null for all MBeans, a pattern of the form <code>domain:*</code> for all
+     *        MBeans of a domain or the name of a single MBean
+     * @param pMaxDepth maximum depth of the returned tree, 0 if it should not be truncated
+     * @return the requested part of the tree, which is an empty map if the domain does not exist,
+     *         or null if the single MBean requested is not registered
+     */
+    public Object getTree(ObjectName pName, int pMaxDepth) {
+        JSONObject value = getTree();
+        if (pName != null) {
+            value = (JSONObject) value.get(pName.getDomain());
+            if (!pName.isPattern()) {
+                if (value == null) {
+                    return null;
+                }
+                value = (JSONObject) value.get(pName.getCanonicalKeyPropertyListString());
+                if (value == null) {
+                    return null;
+                }
+            } else if (value == null) {
+                return new JSONObject();
+            }
+        }
+        return pMaxDepth > 0 ? MBeanInfoData.truncateJSONObject(value, pMaxDepth) : value;
+    }
+
+    /**
+     * Get the current tree, updated with all changes happened since the last call. The returned tree
+     * must not be modified.
+     *
+     * @return tree of all MBeans
+     */
+    public synchronized JSONObject getTree() {
+        Set<ObjectName> changed;
+        synchronized (changedNames) {
+            changed = new LinkedHashSet<ObjectName>(changedNames);
+            changedNames.clear();
+        }
+        if (tree == null) {
+            tree = buildTree();
+            lastRefresh = System.currentTimeMillis();
+        } else {
+            if (!changed.isEmpty()) {
+                tree = updateTree(tree, changed);
+            }
+            refreshMutableMBeans();
+        }
+        return tree;
+    }
+
+    /**
+     * Get the generation of the MBean registry, which gets incremented on every registration
+     * or unregistration of an MBean. It doesn't depend on the meta data of the MBeans.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Get the generation of the tree, which changes on every registration or unregistration of an
+     * MBean and whenever a changed meta data of an MBean in the tree has been detected. The meta data of
+     * mutable MBeans is checked here, too, but not more often than the refresh interval allows.
+     *
+     * @return the current generation of the tree
+     */
+    public long getListGeneration() {
+        synchronized (this) {
+            if (tree != null) {
+                refreshMutableMBeans();
+            }
+        }
+        // Both counters only grow, so their sum changes whenever one of them does
+        return generation.get() + infoGeneration.get();
+    }
+
+    /**
+     * Time of the last registration or unregistration of an MBean or of the last detected change of
+     * the meta data of an MBean in the tree
+     *
+     * @return time in milliseconds since the epoch
+     */
+    public long getLastChange() {
+        getListGeneration();
+        return lastChange;
+    }
+
+    // ===================================================================================
+
+    // Create the complete tree from scratch. Only the first server holding an MBean
+    // of a certain name contributes to the tree.
+    private JSONObject buildTree() {
+        synchronized (changedNames) {
+            // The full tree includes everything changed so far
+            changedNames.clear();
+        }
+        mutableNames.clear();
+        JSONObject ret = new JSONObject();
+        for (ServerEntry entry : servers) {
+            for (Object nameObject : entry.server.queryNames(null, null)) {
+                ObjectName name = (ObjectName) nameObject;
+                JSONObject mBeansMap = (JSONObject) ret.get(name.getDomain());
+                if (mBeansMap == null) {
+                    mBeansMap = new JSONObject();
+                    ret.put(name.getDomain(), mBeansMap);
+                }
+                String key = name.getCanonicalKeyPropertyListString();
+                if (!mBeansMap.containsKey(key)) {
+                    JSONObject mBeanMap = createMBeanMap(entry.server, name);
+                    if (mBeanMap != null) {
+                        mBeansMap.put(key, mBeanMap);
+                    }
+                }
+            }
+        }
+        removeEmptyDomains(ret);
+        return ret;
+    }
+
+    // Create a copy of the given tree with the changed MBeans updated. Only the domains containing
+    // changed MBeans are copied, all other parts are shared with the previous tree.
+    private JSONObject updateTree(JSONObject pTree, Set<ObjectName> pChanged) {
+        JSONObject ret = new JSONObject(pTree);
+        Set<String> copiedDomains = new HashSet<String>();
+        for (ObjectName name : pChanged) {
+            String domain = name.getDomain();
+            JSONObject mBeansMap = (JSONObject) ret.get(domain);
+            if (!copiedDomains.contains(domain)) {
+                mBeansMap = mBeansMap != null ? new JSONObject(mBeansMap) : new JSONObject();
+                ret.put(domain, mBeansMap);
+                copiedDomains.add(domain);
+            }
+            JSONObject mBeanMap = lookupMBeanMap(name);
+            if (mBeanMap != null) {
+                mBeansMap.put(name.getCanonicalKeyPropertyListString(), mBeanMap);
+            } else {
+                mBeansMap.remove(name.getCanonicalKeyPropertyListString());
+                mutableNames.remove(name);
+            }
+        }
+        removeEmptyDomains(ret);
+        return ret;
+    }
+
+    // Fetch the meta data of MBeans with a mutable MBeanInfo again and update the tree
+    // if it differs from the cached one. Skipped if the last check is too recent.
+    private synchronized void refreshMutableMBeans() {
+        long now = System.currentTimeMillis();
+        if (mutableNames.isEmpty() || now - lastRefresh < refreshInterval) {
+            return;
+        }
+        lastRefresh = now;
+        Set<ObjectName> modified = new HashSet<ObjectName>();
+        for (ObjectName name : new ArrayList<ObjectName>(mutableNames)) {
+            JSONObject mBeansMap = (JSONObject) tree.get(name.getDomain());
+            Object current = mBeansMap != null ? mBeansMap.get(name.getCanonicalKeyPropertyListString()) : null;
+            JSONObject mBeanMap = lookupMBeanMap(name);
+            if (mBeanMap == null ? current != null : !mBeanMap.equals(current)) {
+                modified.add(name);
+            }
+        }
+        if (!modified.isEmpty()) {
+            tree = updateTree(tree, modified);
+            infoGeneration.incrementAndGet();
+            lastChange = System.currentTimeMillis();
+        }
+    }
+
+    // Get the meta data of an MBean from the first server which has it registered,
+    // null if none has
+    private JSONObject lookupMBeanMap(ObjectName pName) {
+        for (ServerEntry entry : servers) {
+            if (entry.server.isRegistered(pName)) {
+                JSONObject ret = createMBeanMap(entry.server, pName);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Create the meta data for a single MBean. Errors are put into the tree like I/O errors
+    // when listing without cache, so that a single broken MBean doesn't spoil the whole tree.
+    // Returns null if the MBean has been unregistered in the meantime.
+    private JSONObject createMBeanMap(MBeanServer pServer, ObjectName pName) {
+        try {
+            MBeanInfo info = pServer.getMBeanInfo(pName);
+            if (MBeanInfoCache.isImmutable(info)) {
+                mutableNames.remove(pName);
+            } else {
+                mutableNames.add(pName);
+            }
+            return MBeanInfoData.createMBeanMap(info);
+        } catch (InstanceNotFoundException exp) {
+            // A notification about the unregistration is on its way
+            return null;
+        } catch (JMException exp) {
+            return createErrorMap(pName, exp);
+        } catch (RuntimeException exp) {
+            return createErrorMap(pName, exp);
+        }
+    }
+
+    // An error is kept until the MBean gets registered again
+    private JSONObject createErrorMap(ObjectName pName, Exception pExp) {
+        mutableNames.remove(pName);
+        JSONObject ret = new JSONObject();
+        ret.put(DataKeys.ERROR.getKey(), pExp);
+        return ret;
+    }
+
+    private void removeEmptyDomains(JSONObject pTree) {
+        Iterator it = pTree.values().iterator();
+        while (it.hasNext()) {
+            if (((JSONObject) it.next()).isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    // Remember a change of the registry
+    private void markChanged(ObjectName pName) {
+        synchronized (changedNames) {
+            changedNames.add(pName);
+        }
+        generation.incrementAndGet();
+        lastChange = System.currentTimeMillis();
+    }
+
+    // Force a rebuild of the tree
+    private void markAllChanged() {
+        synchronized (this) {
+            tree = null;
+        }
+        generation.incrementAndGet();
+        lastChange = System.currentTimeMillis();
+    }
+
+    private ServerEntry getServerEntry(MBeanServer pServer) {
+        for (ServerEntry entry : servers) {
+            if (entry.server == pServer) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    // ==================================================================================
+
+    // Listener for registration notifications of a single server
+    private final class DelegateListener implements NotificationListener {
+        /** {@inheritDoc} */
+        public void handleNotification(Notification pNotification, Object pHandback) {
+            if (pNotification instanceof MBeanServerNotification) {
+                markChanged(((MBeanServerNotification) pNotification).getMBeanName());
+            }
+        }
+    }
+
+    private static final class ServerEntry {
+        private final MBeanServer server;
+        private final DelegateListener listener;
+
+        private ServerEntry(MBeanServer pServer, DelegateListener pListener) {
+            server = pServer;
+            listener = pListener;
+        }
+    }
+}
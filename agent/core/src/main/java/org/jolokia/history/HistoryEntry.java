@@ -1,10 +1,10 @@
 package org.jolokia.history;
 
 import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
-import java.util.LinkedList;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -29,6 +29,14 @@ import java.io.Serializable;
  * is keyed with the attribute/operation which was called. It has a maximum  number of values
  * which are stored and truncates the oldest one if more values are added.
  *
+ * The values are kept in a ring buffer along with their timestamps. As long as only integral
+ * numbers (or only doubles) are added, they are stored in a primitive array so that adding
+ * a value doesn't allocate any memory. As soon as another kind of value is added, the entry
+ * switches to store plain objects.
+ *
+ * An entry keeps track of its (estimated) memory usage while values are added, so
+ * that the {@link HistoryStore} can enforce a memory budget without traversing all values.
+ *
  * @author roland
  * @since Jun 12, 2009
  */
@@ -36,11 +44,34 @@ class HistoryEntry implements Serializable {
 
     private static final long serialVersionUID = 42L;
 
+    // How the values are stored
+    private enum Mode { LONG, DOUBLE, OBJECT }
 
-    @SuppressWarnings("PMD.LooseCoupling")
-    private LinkedList<ValueEntry> values;
     private int maxEntries;
 
+    // Ring buffer, the next value is stored at position 'head'. Only one of the
+    // value arrays is used, depending on the mode.
+    private Mode mode;
+    private long[] timestamps;
+    private long[] longValues;
+    private double[] doubleValues;
+    private Object[] objectValues;
+    private int head;
+    private int size;
+
+    // Estimated sizes of the stored objects when in OBJECT mode and their sum
+    private int[] objectSizes;
+    private long objectValuesSize;
+
+    // Set when this entry has been removed from the store
+    private transient boolean removed;
+
+    // Rough estimates for memory usage in bytes
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int ARRAY_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+
     /**
      * Constructor
      *
@@ -48,26 +79,22 @@ class HistoryEntry implements Serializable {
      */
     HistoryEntry(int pMaxEntries) {
         maxEntries = pMaxEntries;
-        values = new LinkedList<ValueEntry>();
     }
 
     /**
-     * Get an JSON array with values (along with their timestamps)
+     * Get an JSON array with values (along with their timestamps), the latest value first
      *
      * @return array of values
      */
     public JSONArray jsonifyValues() {
         JSONArray jValues = new JSONArray();
-        for (ValueEntry vEntry : values) {
-            JSONObject o = new JSONObject();
-            o.put("value",vEntry.getValue());
-            o.put("timestamp",vEntry.getTimestamp());
-            jValues.add(o);
+        for (int i = 0; i < size; i++) {
+            int idx = index(i);
+            jValues.add(new ValueEntry(getValue(idx),timestamps[idx]));
         }
         return jValues;
     }
 
-
     /**
      * Set the maximum number of entries and truncate if necessary
      *
@@ -75,7 +102,9 @@ class HistoryEntry implements Serializable {
      */
     public void setMaxEntries(int pMaxEntries) {
         maxEntries = pMaxEntries;
-        trim();
+        if (mode != null && timestamps.length != maxEntries) {
+            resize(mode);
+        }
     }
 
     /**
@@ -85,23 +114,166 @@ class HistoryEntry implements Serializable {
      * @param pTime timestamp
      */
     public void add(Object pObject, long pTime) {
-        values.addFirst(new ValueEntry(pObject,pTime));
-        trim();
+        if (maxEntries <= 0) {
+            return;
+        }
+        if (mode == null) {
+            resize(getMode(pObject));
+        } else if (mode != Mode.OBJECT && getMode(pObject) != mode) {
+            resize(Mode.OBJECT);
+        }
+        switch (mode) {
+            case LONG:
+                longValues[head] = ((Number) pObject).longValue();
+                break;
+            case DOUBLE:
+                doubleValues[head] = (Double) pObject;
+                break;
+            default:
+                int valueSize = estimateSize(pObject);
+                objectValuesSize += valueSize - objectSizes[head];
+                objectSizes[head] = valueSize;
+                objectValues[head] = pObject;
+        }
+        timestamps[head] = pTime;
+        head = (head + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Get the estimated memory used by this entry
+     *
+     * @return size in bytes
+     */
+    long getSize() {
+        long ret = ENTRY_OVERHEAD;
+        if (mode != null) {
+            int capacity = timestamps.length;
+            // timestamps plus the value array
+            ret += 2 * (ARRAY_OVERHEAD + 8L * capacity);
+            if (mode == Mode.OBJECT) {
+                ret += ARRAY_OVERHEAD + 4L * capacity + objectValuesSize;
+            }
+        }
+        return ret;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+
+    void setRemoved() {
+        removed = true;
+    }
+
+    /**
+     * Estimate the memory used by a value. This is only a rough guess which is good enough for
+     * keeping the store within its limits, the JSON friendly values stored here are traversed
+     * without any further checks.
+     *
+     * @param pValue value to estimate
+     * @return estimated size in bytes
+     */
+    static int estimateSize(Object pValue) {
+        if (pValue == null) {
+            return 0;
+        } else if (pValue instanceof String) {
+            return OBJECT_OVERHEAD + ARRAY_OVERHEAD + 8 + 2 * ((String) pValue).length();
+        } else if (pValue instanceof Number || pValue instanceof Boolean || pValue instanceof Character) {
+            return OBJECT_OVERHEAD + 8;
+        } else if (pValue instanceof Map) {
+            int ret = OBJECT_OVERHEAD + ARRAY_OVERHEAD + 32;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) pValue).entrySet()) {
+                ret += 2 * OBJECT_OVERHEAD + REFERENCE_SIZE + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return ret;
+        } else if (pValue instanceof Collection) {
+            int ret = OBJECT_OVERHEAD + ARRAY_OVERHEAD + 16;
+            for (Object element : (Collection<?>) pValue) {
+                ret += REFERENCE_SIZE + estimateSize(element);
+            }
+            return ret;
+        } else if (pValue instanceof Object[]) {
+            int ret = ARRAY_OVERHEAD;
+            for (Object element : (Object[]) pValue) {
+                ret += REFERENCE_SIZE + estimateSize(element);
+            }
+            return ret;
+        } else {
+            return 4 * OBJECT_OVERHEAD;
+        }
+    }
+
+    // Mode to use for storing the given value
+    private Mode getMode(Object pValue) {
+        if (pValue instanceof Long || pValue instanceof Integer || pValue instanceof Short || pValue instanceof Byte) {
+            return Mode.LONG;
+        } else if (pValue instanceof Double) {
+            return Mode.DOUBLE;
+        } else {
+            return Mode.OBJECT;
+        }
+    }
+
+    // Array index of the i-th latest value
+    private int index(int i) {
+        return (head - 1 - i + 2 * timestamps.length) % timestamps.length;
+    }
+
+    private Object getValue(int pIdx) {
+        switch (mode) {
+            case LONG:
+                return longValues[pIdx];
+            case DOUBLE:
+                return doubleValues[pIdx];
+            default:
+                return objectValues[pIdx];
+        }
     }
 
-    // Truncate list so that no more than max entries are stored in the list
-    private void trim() {
-        // Trim
-        while (values.size() > maxEntries) {
-            values.removeLast();
+    // Copy the latest values into new arrays for the given mode and the current maximum
+    // number of entries
+    private void resize(Mode pMode) {
+        int capacity = Math.max(maxEntries, 0);
+        int newSize = Math.min(size, capacity);
+        long[] newTimestamps = new long[capacity];
+        long[] newLongValues = pMode == Mode.LONG ? new long[capacity] : null;
+        double[] newDoubleValues = pMode == Mode.DOUBLE ? new double[capacity] : null;
+        Object[] newObjectValues = pMode == Mode.OBJECT ? new Object[capacity] : null;
+        int[] newObjectSizes = pMode == Mode.OBJECT ? new int[capacity] : null;
+        long newObjectValuesSize = 0;
+        // Oldest value kept first
+        for (int i = 0; i < newSize; i++) {
+            int idx = index(newSize - 1 - i);
+            newTimestamps[i] = timestamps[idx];
+            if (pMode == Mode.LONG) {
+                newLongValues[i] = longValues[idx];
+            } else if (pMode == Mode.DOUBLE) {
+                newDoubleValues[i] = doubleValues[idx];
+            } else {
+                newObjectValues[i] = getValue(idx);
+                newObjectSizes[i] = mode == Mode.OBJECT ? objectSizes[idx] : estimateSize(newObjectValues[i]);
+                newObjectValuesSize += newObjectSizes[i];
+            }
         }
+        mode = pMode;
+        timestamps = newTimestamps;
+        longValues = newLongValues;
+        doubleValues = newDoubleValues;
+        objectValues = newObjectValues;
+        objectSizes = newObjectSizes;
+        objectValuesSize = newObjectValuesSize;
+        size = newSize;
+        head = capacity > 0 ? newSize % capacity : 0;
     }
 
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append("HistoryEntry");
-        sb.append("{values=").append(values);
+        sb.append("{values=").append(mode != null ? jsonifyValues() : "[]");
         sb.append(", maxEntries=").append(maxEntries);
         sb.append('}');
         return sb.toString();
@@ -162,6 +162,25 @@ public class HistoryKey implements Serializable {
         return mBean.apply(pKey.mBean);
     }
 
+    /**
+     * Get the MBean name of this key
+     *
+     * @return MBean name, which might be a pattern
+     */
+    ObjectName getMBean() {
+        return mBean;
+    }
+
+    /**
+     * Get the estimated memory used by this key including the map entry holding it
+     *
+     * @return size in bytes
+     */
+    long getEstimatedSize() {
+        return 64 + HistoryEntry.estimateSize(type) + HistoryEntry.estimateSize(mBean.getCanonicalName()) +
+               HistoryEntry.estimateSize(secondary) + HistoryEntry.estimateSize(path) + HistoryEntry.estimateSize(target);
+    }
+
     // CHECKSTYLE:OFF
     /** {@inheritDoc} */
     @Override
@@ -1,7 +1,10 @@
 package org.jolokia.history;
 
-import java.io.*;
+import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -31,6 +34,19 @@ import org.json.simple.JSONObject;
  * Store for remembering values which has been fetched through a previous
  * request.
  *
+ * Updates don't lock the store as a whole: The entries are kept in a concurrent map and
+ * each entry is locked on its own while it gets updated. Changing the configuration
+ * is synchronized, though. When no history is configured at all, an update only adds
+ * the timestamp.
+ *
+ * The (estimated) memory used by the entries is kept up to date with every update. If a
+ * maximum size is set and this size is exceeded, the entries which has not been updated
+ * for the longest time are removed. For this, the keys are additionally kept in the order
+ * of their last update, which is maintained under a small lock of its own, so that finding
+ * the oldest entry doesn't need a scan of the store. Since entries are created lazily according to the
+ * configuration, an evicted entry starts over with an empty history when it is
+ * updated the next time.
+ *
  * @author roland
  * @since Jun 12, 2009
  */
@@ -40,10 +56,21 @@ public class HistoryStore implements Serializable {
     private static final long serialVersionUID = 42L;
 
     // Hard limit for number of entries for a single history track
-    private int globalMaxEntries;
+    private volatile int globalMaxEntries;
+
+    // Limit for the estimated memory used by all entries in bytes, 0 if unlimited
+    private volatile long maxSize;
+
+    private final ConcurrentMap<HistoryKey, HistoryEntry> historyStore;
+
+    // Configured keys and patterns, replaced as a whole when the configuration changes
+    private volatile HistoryConfig config;
 
-    private Map<HistoryKey, HistoryEntry> historyStore;
-    private Map<HistoryKey, Integer /* max entries */> patterns;
+    // Estimated size of all entries in bytes
+    private final AtomicLong size = new AtomicLong();
+
+    // Stored entries, the least recently updated first. Also the lock for this order.
+    private final LinkedHashMap<HistoryKey, HistoryEntry> updateOrder = new LinkedHashMap<HistoryKey, HistoryEntry>();
 
     // Keys used in JSON representation
     private static final String KEY_HISTORY = "history";
@@ -59,9 +86,21 @@ public class HistoryStore implements Serializable {
      *        be overwritten. This is a hard limit.
      */
     public HistoryStore(int pTotalMaxEntries) {
+        this(pTotalMaxEntries,0);
+    }
+
+    /**
+     * Constructor for a history store
+     *
+     * @param pTotalMaxEntries number of entries to hold at max. Even when configured, this maximum can not
+     *        be overwritten. This is a hard limit.
+     * @param pMaxSize maximum estimated size of the store in bytes. 0 means no limit.
+     */
+    public HistoryStore(int pTotalMaxEntries, long pMaxSize) {
         globalMaxEntries = pTotalMaxEntries;
-        historyStore = new HashMap<HistoryKey, HistoryEntry>();
-        patterns = new HashMap<HistoryKey, Integer>();
+        maxSize = pMaxSize;
+        historyStore = new ConcurrentHashMap<HistoryKey, HistoryEntry>();
+        config = new HistoryConfig(new HashMap<HistoryKey, Integer>(),new HashMap<HistoryKey, Integer>());
         initHistoryUpdaters();
     }
 
@@ -70,7 +109,7 @@ public class HistoryStore implements Serializable {
      *
      * @return the maximum number of entries
      */
-    public synchronized int getGlobalMaxEntries() {
+    public int getGlobalMaxEntries() {
         return globalMaxEntries;
     }
 
@@ -82,11 +121,36 @@ public class HistoryStore implements Serializable {
     public synchronized void setGlobalMaxEntries(int pGlobalMaxEntries) {
         globalMaxEntries = pGlobalMaxEntries;
         // Refresh all entries
+        Map<HistoryKey, Integer> keys = new HashMap<HistoryKey, Integer>();
+        for (HistoryKey key : config.maxEntriesByKey.keySet()) {
+            keys.put(key,globalMaxEntries);
+        }
+        config = new HistoryConfig(keys,config.maxEntriesByPattern);
         for (HistoryEntry entry : historyStore.values()) {
-            entry.setMaxEntries(globalMaxEntries);
+            setMaxEntries(entry,globalMaxEntries);
         }
     }
 
+    /**
+     * Get the maximum estimated size of this store
+     *
+     * @return maximum size in bytes or 0 if there is no limit
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum estimated size of this store. If the store is larger, the entries
+     * updated least recently are removed.
+     *
+     * @param pMaxSize maximum size in bytes, 0 for no limit
+     */
+    public void setMaxSize(long pMaxSize) {
+        maxSize = pMaxSize;
+        evictIfNecessary(null);
+    }
+
     /**
      * Configure the history length for a specific entry. If the length
      * is 0 disable history for this key.
@@ -103,22 +167,24 @@ public class HistoryStore implements Serializable {
             removeEntries(pKey);
             return;
         }
+        Map<HistoryKey, Integer> keys = new HashMap<HistoryKey, Integer>(config.maxEntriesByKey);
+        Map<HistoryKey, Integer> patterns = new HashMap<HistoryKey, Integer>(config.maxEntriesByPattern);
         if (pKey.isMBeanPattern()) {
             patterns.put(pKey,maxEntries);
-            // Trim all already stored keys
-            for (HistoryKey key : historyStore.keySet()) {
-                if (pKey.matches(key)) {
-                    HistoryEntry entry = historyStore.get(key);
-                    entry.setMaxEntries(maxEntries);
+            // Trim all already configured keys
+            for (Map.Entry<HistoryKey, Integer> keyEntry : keys.entrySet()) {
+                if (pKey.matches(keyEntry.getKey())) {
+                    keyEntry.setValue(maxEntries);
                 }
             }
         } else {
-            HistoryEntry entry = historyStore.get(pKey);
-            if (entry != null) {
-                entry.setMaxEntries(maxEntries);
-            } else {
-                entry = new HistoryEntry(maxEntries);
-                historyStore.put(pKey,entry);
+            keys.put(pKey,maxEntries);
+        }
+        config = new HistoryConfig(keys,patterns);
+        // Trim all already stored entries
+        for (Map.Entry<HistoryKey, HistoryEntry> storeEntry : historyStore.entrySet()) {
+            if (pKey.isMBeanPattern() ? pKey.matches(storeEntry.getKey()) : pKey.equals(storeEntry.getKey())) {
+                setMaxEntries(storeEntry.getValue(),maxEntries);
             }
         }
     }
@@ -127,8 +193,10 @@ public class HistoryStore implements Serializable {
      * Reset the complete store.
      */
     public synchronized void reset() {
-        historyStore = new HashMap<HistoryKey, HistoryEntry>();
-        patterns = new HashMap<HistoryKey, Integer>();
+        config = new HistoryConfig(new HashMap<HistoryKey, Integer>(),new HashMap<HistoryKey, Integer>());
+        for (Map.Entry<HistoryKey, HistoryEntry> storeEntry : historyStore.entrySet()) {
+            removeEntry(storeEntry.getKey(),storeEntry.getValue());
+        }
     }
 
     /**
@@ -138,10 +206,15 @@ public class HistoryStore implements Serializable {
      * @param pJmxReq request for which an entry should be added in this history store
      * @param pJson the JSONObject to which to add the history.
      */
-    public synchronized void updateAndAdd(JmxRequest pJmxReq, JSONObject pJson) {
+    public void updateAndAdd(JmxRequest pJmxReq, JSONObject pJson) {
         long timestamp = System.currentTimeMillis() / 1000;
         pJson.put(KEY_TIMESTAMP,timestamp);
 
+        if (config.isEmpty()) {
+            // No history configured
+            return;
+        }
+
         RequestType type  = pJmxReq.getType();
         HistoryUpdater updater = historyUpdaters.get(type);
         if (updater != null) {
@@ -150,20 +223,13 @@ public class HistoryStore implements Serializable {
     }
 
     /**
-     * Get the size of this history store in bytes
+     * Get the estimated size of this history store in bytes. The size is not calculated
+     * but kept up to date with every update, so this call is cheap.
      *
      * @return size in bytes
      */
-    public synchronized int getSize() {
-        try {
-            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-            ObjectOutputStream oOut = new ObjectOutputStream(bOut);
-            oOut.writeObject(historyStore);
-            bOut.close();
-            return bOut.size();
-        } catch (IOException e) {
-            throw new IllegalStateException("Cannot serialize internal store: " + e,e);
-        }
+    public int getSize() {
+        return (int) Math.min(size.get(),Integer.MAX_VALUE);
     }
 
     // =======================================================================================================
@@ -192,12 +258,10 @@ public class HistoryStore implements Serializable {
                             new HistoryUpdater<JmxExecRequest>() {
                                 /** {@inheritDoc} */
                                 public void updateHistory(JSONObject pJson,JmxExecRequest request, long pTimestamp) {
-                                    HistoryEntry entry = historyStore.get(new HistoryKey(request));
+                                    HistoryKey key = new HistoryKey(request);
+                                    HistoryEntry entry = getEntry(key,false);
                                     if (entry != null) {
-                                        synchronized(entry) {
-                                            pJson.put(KEY_HISTORY,entry.jsonifyValues());
-                                            entry.add(pJson.get(KEY_VALUE),pTimestamp);
-                                        }
+                                        updateEntry(key,entry,pJson,KEY_HISTORY,pJson.get(KEY_VALUE),pTimestamp);
                                     }
                                 }
                             });
@@ -205,12 +269,10 @@ public class HistoryStore implements Serializable {
                             new HistoryUpdater<JmxWriteRequest>() {
                                 /** {@inheritDoc} */
                                 public void updateHistory(JSONObject pJson,JmxWriteRequest request, long pTimestamp) {
-                                    HistoryEntry entry = historyStore.get(new HistoryKey(request));
+                                    HistoryKey key = new HistoryKey(request);
+                                    HistoryEntry entry = getEntry(key,false);
                                     if (entry != null) {
-                                        synchronized(entry) {
-                                            pJson.put(KEY_HISTORY,entry.jsonifyValues());
-                                            entry.add(request.getValue(),pTimestamp);
-                                        }
+                                        updateEntry(key,entry,pJson,KEY_HISTORY,request.getValue(),pTimestamp);
                                     }
                                 }
                             });
@@ -227,22 +289,23 @@ public class HistoryStore implements Serializable {
 
     // Remove entries
     private void removeEntries(HistoryKey pKey) {
+        Map<HistoryKey, Integer> keys = new HashMap<HistoryKey, Integer>(config.maxEntriesByKey);
+        Map<HistoryKey, Integer> patterns = new HashMap<HistoryKey, Integer>(config.maxEntriesByPattern);
         if (pKey.isMBeanPattern()) {
             patterns.remove(pKey);
-            List<HistoryKey> toRemove = new ArrayList<HistoryKey>();
-            for (HistoryKey key : historyStore.keySet()) {
-                if (pKey.matches(key)) {
-                    toRemove.add(key);
+            Iterator<HistoryKey> it = keys.keySet().iterator();
+            while (it.hasNext()) {
+                if (pKey.matches(it.next())) {
+                    it.remove();
                 }
             }
-            // Avoid concurrent modification exceptions
-            for (HistoryKey key : toRemove) {
-                historyStore.remove(key);
-            }
         } else {
-            HistoryEntry entry = historyStore.get(pKey);
-            if (entry != null) {
-                historyStore.remove(pKey);
+            keys.remove(pKey);
+        }
+        config = new HistoryConfig(keys,patterns);
+        for (Map.Entry<HistoryKey, HistoryEntry> storeEntry : historyStore.entrySet()) {
+            if (pKey.isMBeanPattern() ? pKey.matches(storeEntry.getKey()) : pKey.equals(storeEntry.getKey())) {
+                removeEntry(storeEntry.getKey(),storeEntry.getValue());
             }
         }
     }
@@ -320,30 +383,172 @@ public class HistoryStore implements Serializable {
 
     private void addAttributeFromSingleValue(JSONObject pHistMap, String pAttrName, HistoryKey pKey,
                                              Object pValue, long pTimestamp) {
-        HistoryEntry entry = getEntry(pKey,pValue,pTimestamp);
+        HistoryEntry entry = getEntry(pKey,true);
         if (entry != null) {
-            synchronized (entry) {
-                pHistMap.put(pAttrName,entry.jsonifyValues());
-                entry.add(pValue,pTimestamp);
+            updateEntry(pKey,entry,pHistMap,pAttrName,pValue,pTimestamp);
+        }
+    }
+
+    // Add the history of an entry to the given JSON object and then add the new value to the entry
+    private void updateEntry(HistoryKey pKey, HistoryEntry pEntry, JSONObject pHistMap, String pHistKey,
+                             Object pValue, long pTimestamp) {
+        synchronized (pEntry) {
+            pHistMap.put(pHistKey,pEntry.jsonifyValues());
+            long oldSize = pEntry.getSize();
+            pEntry.add(pValue,pTimestamp);
+            if (!pEntry.isRemoved()) {
+                size.addAndGet(pEntry.getSize() - oldSize);
+                markUpdated(pKey,pEntry);
             }
         }
+        evictIfNecessary(pKey);
     }
 
-    private HistoryEntry getEntry(HistoryKey pKey,Object pValue,long pTimestamp) {
+    // Lookup an entry or create it if it is configured
+    private HistoryEntry getEntry(HistoryKey pKey, boolean pUsePatterns) {
         HistoryEntry entry = historyStore.get(pKey);
         if (entry != null) {
             return entry;
         }
-        // Now try all known patterns and add lazily the key
-        for (HistoryKey key : patterns.keySet()) {
-            if (key.matches(pKey)) {
-                entry = new HistoryEntry(patterns.get(key));
-                entry.add(pValue,pTimestamp);
-                historyStore.put(pKey,entry);
-                return entry;
+        HistoryConfig historyConfig = config;
+        Integer maxEntries = historyConfig.getMaxEntries(pKey,pUsePatterns);
+        if (maxEntries == null) {
+            return null;
+        }
+        entry = new HistoryEntry(maxEntries);
+        HistoryEntry existing = addEntry(pKey,entry);
+        if (existing != null) {
+            return existing;
+        }
+        if (historyConfig != config) {
+            // Configuration changed in the meantime, so our entry might be outdated
+            removeEntry(pKey,entry);
+            return getEntry(pKey,pUsePatterns);
+        }
+        return entry;
+    }
+
+    // Add a new entry unless there is already one for the key, which is returned then.
+    private HistoryEntry addEntry(HistoryKey pKey, HistoryEntry pEntry) {
+        synchronized (pEntry) {
+            HistoryEntry existing = historyStore.putIfAbsent(pKey,pEntry);
+            if (existing == null) {
+                size.addAndGet(pKey.getEstimatedSize() + pEntry.getSize());
+                markUpdated(pKey,pEntry);
+            }
+            return existing;
+        }
+    }
+
+    // Remove an entry if it is still stored
+    private void removeEntry(HistoryKey pKey, HistoryEntry pEntry) {
+        if (historyStore.remove(pKey,pEntry)) {
+            synchronized (pEntry) {
+                pEntry.setRemoved();
+                size.addAndGet(-(pKey.getEstimatedSize() + pEntry.getSize()));
+            }
+            synchronized (updateOrder) {
+                // A new entry might have been stored for this key in the meantime
+                if (updateOrder.get(pKey) == pEntry) {
+                    updateOrder.remove(pKey);
+                }
+            }
+        }
+    }
+
+    // Move an entry to the end of the update order. Called while holding the lock of the entry
+    // so that an entry which is removed concurrently is not added again.
+    private void markUpdated(HistoryKey pKey, HistoryEntry pEntry) {
+        synchronized (updateOrder) {
+            updateOrder.remove(pKey);
+            updateOrder.put(pKey,pEntry);
+        }
+    }
+
+    private void setMaxEntries(HistoryEntry pEntry, int pMaxEntries) {
+        synchronized (pEntry) {
+            long oldSize = pEntry.getSize();
+            pEntry.setMaxEntries(pMaxEntries);
+            if (!pEntry.isRemoved()) {
+                size.addAndGet(pEntry.getSize() - oldSize);
+            }
+        }
+    }
+
+    // Remove the least recently updated entries until the store fits into its limit again. The
+    // given key (the one updated last) is never removed.
+    private void evictIfNecessary(HistoryKey pKeepKey) {
+        while (maxSize > 0 && size.get() > maxSize) {
+            HistoryKey oldestKey = null;
+            HistoryEntry oldestEntry = null;
+            synchronized (updateOrder) {
+                // The kept key has just been moved to the end, so usually the first key is taken
+                for (Map.Entry<HistoryKey, HistoryEntry> orderEntry : updateOrder.entrySet()) {
+                    if (!orderEntry.getKey().equals(pKeepKey)) {
+                        oldestKey = orderEntry.getKey();
+                        oldestEntry = orderEntry.getValue();
+                        break;
+                    }
+                }
+                if (oldestKey == null) {
+                    return;
+                }
+                // Taken out right away so that concurrent evictions pick different entries
+                updateOrder.remove(oldestKey);
+            }
+            removeEntry(oldestKey,oldestEntry);
+        }
+    }
+
+    // Immutable configuration of keys and patterns along with the results of previous pattern lookups
+    private static final class HistoryConfig implements Serializable {
+
+        private static final long serialVersionUID = 42L;
+
+        // Upper limit for the number of remembered lookups
+        private static final int MAX_LOOKUPS = 1000;
+
+        // Marker for MBean names which match no pattern
+        private static final Integer NO_MATCH = -1;
+
+        private final Map<HistoryKey, Integer /* max entries */> maxEntriesByKey;
+        private final Map<HistoryKey, Integer /* max entries */> maxEntriesByPattern;
+
+        // Patterns match on the MBean name only, so this is the key for remembering lookups
+        private final ConcurrentMap<ObjectName, Integer> lookups = new ConcurrentHashMap<ObjectName, Integer>();
+
+        private HistoryConfig(Map<HistoryKey, Integer> pMaxEntriesByKey, Map<HistoryKey, Integer> pMaxEntriesByPattern) {
+            maxEntriesByKey = pMaxEntriesByKey;
+            maxEntriesByPattern = pMaxEntriesByPattern;
+        }
+
+        private boolean isEmpty() {
+            return maxEntriesByKey.isEmpty() && maxEntriesByPattern.isEmpty();
+        }
+
+        // Get the maximum number of entries for a key as configured for the key itself or by
+        // the first matching pattern. Returns null if history is not switched on for this key.
+        private Integer getMaxEntries(HistoryKey pKey, boolean pUsePatterns) {
+            Integer maxEntries = maxEntriesByKey.get(pKey);
+            if (maxEntries != null || !pUsePatterns || maxEntriesByPattern.isEmpty()) {
+                return maxEntries;
+            }
+            ObjectName mBean = pKey.getMBean();
+            maxEntries = lookups.get(mBean);
+            if (maxEntries == null) {
+                maxEntries = NO_MATCH;
+                for (Map.Entry<HistoryKey, Integer> entry : maxEntriesByPattern.entrySet()) {
+                    if (entry.getKey().matches(pKey)) {
+                        maxEntries = entry.getValue();
+                        break;
+                    }
+                }
+                if (lookups.size() < MAX_LOOKUPS) {
+                    lookups.put(mBean,maxEntries);
+                }
             }
+            return NO_MATCH.equals(maxEntries) ? null : maxEntries;
         }
-        return null;
     }
 
 }
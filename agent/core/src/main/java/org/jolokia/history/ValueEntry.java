@@ -1,6 +1,13 @@
 package org.jolokia.history;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
+import java.util.*;
+
+import org.json.simple.JSONAware;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.JSONValue;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -20,13 +27,22 @@ import java.io.Serializable;
 
 
 /**
+ * A single historical value along with its timestamp. It renders itself
+ * as a JSON object with the keys "value" and "timestamp" and can be
+ * accessed as a read-only map with these keys, too. Writers for other
+ * formats should prefer the accessors.
+ *
  * @author roland
 * @since Jun 12, 2009
 */
-class ValueEntry implements Serializable {
+public class ValueEntry extends AbstractMap<String, Object> implements Serializable, JSONAware, JSONStreamAware {
 
     private static final long serialVersionUID = 42L;
 
+    // Keys when used as map
+    private static final String KEY_VALUE = "value";
+    private static final String KEY_TIMESTAMP = "timestamp";
+
     private Object value;
     private long timestamp;
 
@@ -35,14 +51,67 @@ class ValueEntry implements Serializable {
         timestamp = pTimestamp;
     }
 
+    /**
+     * Get the historical value
+     *
+     * @return value, might be null
+     */
     public Object getValue() {
         return value;
     }
 
+    /**
+     * Get the time when the value was recorded
+     *
+     * @return timestamp in seconds since the epoch
+     */
     public long getTimestamp() {
         return timestamp;
     }
 
+    @Override
+    public int size() {
+        return 2;
+    }
+
+    @Override
+    public boolean containsKey(Object pKey) {
+        return KEY_VALUE.equals(pKey) || KEY_TIMESTAMP.equals(pKey);
+    }
+
+    @Override
+    public Object get(Object pKey) {
+        if (KEY_VALUE.equals(pKey)) {
+            return value;
+        } else if (KEY_TIMESTAMP.equals(pKey)) {
+            return timestamp;
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put(KEY_VALUE, value);
+        ret.put(KEY_TIMESTAMP, timestamp);
+        return Collections.unmodifiableMap(ret).entrySet();
+    }
+
+    /** {@inheritDoc} */
+    public String toJSONString() {
+        return "{\"value\":" + JSONValue.toJSONString(value) + ",\"timestamp\":" + timestamp + "}";
+    }
+
+    /** {@inheritDoc} */
+    public void writeJSONString(Writer pOut) throws IOException {
+        pOut.write("{\"value\":");
+        JSONValue.writeJSONString(value,pOut);
+        pOut.write(",\"timestamp\":");
+        pOut.write(Long.toString(timestamp));
+        pOut.write('}');
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
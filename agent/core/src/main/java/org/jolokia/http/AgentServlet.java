@@ -9,11 +9,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.*;
 
 import org.jolokia.backend.BackendManager;
+import org.jolokia.request.JmxRequest;
 import org.jolokia.restrictor.*;
 import org.jolokia.util.ConfigKey;
 import org.jolokia.util.LogHandler;
 import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -49,6 +51,9 @@ public class AgentServlet extends HttpServlet {
 
     private static final long serialVersionUID = 42L;
 
+    // Size of the buffer used when streaming out a compressed answer
+    private static final int RESPONSE_BUFFER_SIZE = 8192;
+
     // POST- and GET- HttpRequestHandler
     private ServletRequestHandler httpGetHandler, httpPostHandler;
 
@@ -64,6 +69,9 @@ public class AgentServlet extends HttpServlet {
     // Restrictor to use as given in the constructor
     private Restrictor restrictor;
 
+    // Interval in seconds for reloading the policy file, 0 if it should be read only once
+    private int policyReloadInterval;
+
     /**
      * No argument constructor, used e.g. by an servlet
      * descriptor when creating the servlet out of web.xml
@@ -95,8 +103,9 @@ public class AgentServlet extends HttpServlet {
      * Create a restrictor restrictor to use. By default, a policy file
      * is looked up (with the URL given by the init parameter {@link ConfigKey#POLICY_LOCATION}
      * or "/jolokia-access.xml" by default) and if not found an {@link AllowAllRestrictor} is
-     * used by default. This method is called during the {@link #init(ServletConfig)} when initializing
-     * the subsystems and can be overridden for custom restrictor creation.
+     * used by default. If the init parameter {@link ConfigKey#POLICY_RELOAD_INTERVAL} is set, the policy
+     * file is reloaded when it changes. This method is called during the {@link #init(ServletConfig)} when
+     * initializing the subsystems and can be overridden for custom restrictor creation.
      *
      * @param pLocation location to lookup the restrictor
      * @return the restrictor to use.
@@ -104,7 +113,8 @@ public class AgentServlet extends HttpServlet {
     protected Restrictor createRestrictor(String pLocation) {
         LogHandler log = getLogHandler();
         try {
-            Restrictor newRestrictor = RestrictorFactory.lookupPolicyRestrictor(pLocation);
+            Restrictor newRestrictor =
+                    RestrictorFactory.lookupPolicyRestrictor(pLocation, policyReloadInterval, log);
             if (newRestrictor != null) {
                 log.info("Using access restrictor " + pLocation);
                 return newRestrictor;
@@ -138,12 +148,13 @@ public class AgentServlet extends HttpServlet {
 
         Map<ConfigKey,String> config = servletConfigAsMap(pServletConfig);
         if (restrictor == null) {
+            policyReloadInterval = ConfigKey.POLICY_RELOAD_INTERVAL.getIntValue(config);
             restrictor = createRestrictor(ConfigKey.POLICY_LOCATION.getValue(config));
         } else {
             logHandler.info("Using custom access restriction provided by " + restrictor);
         }
         backendManager = new BackendManager(config,logHandler, restrictor);
-        requestHandler = new HttpRequestHandler(backendManager,logHandler);
+        requestHandler = new HttpRequestHandler(backendManager,logHandler,config);
     }
 
 
@@ -177,7 +188,11 @@ public class AgentServlet extends HttpServlet {
     /** {@inheritDoc} */
     @Override
     public void destroy() {
+        requestHandler.destroy();
         backendManager.destroy();
+        if (restrictor instanceof ReloadingPolicyRestrictor) {
+            ((ReloadingPolicyRestrictor) restrictor).stop();
+        }
         super.destroy();
     }
 
@@ -197,24 +212,39 @@ public class AgentServlet extends HttpServlet {
 
     @SuppressWarnings({ "PMD.AvoidCatchingThrowable", "PMD.AvoidInstanceofChecksInCatchClause" })
     private void handle(ServletRequestHandler pReqHandler,HttpServletRequest pReq, HttpServletResponse pResp) throws IOException {
+        // Format of the answer. JSONP answers are always JSON.
+        String callback = pReq.getParameter(ConfigKey.CALLBACK.getKeyValue());
+        String format = callback == null ? pReq.getParameter(ConfigKey.FORMAT.getKeyValue()) : null;
+        String accept = callback == null ? pReq.getHeader("Accept") : null;
+        boolean cbor = callback == null && CborWriter.isRequested(format, accept);
+
         JSONAware json = null;
         try {
             // Check access policy
             requestHandler.checkClientIPAccess(pReq.getRemoteHost(),pReq.getRemoteAddr());
 
             // Dispatch for the proper HTTP request method
-            json = pReqHandler.handleRequest(pReq,pResp);
+            json = pReqHandler.handleRequest(pReq,pResp,cbor);
         } catch (Throwable exp) {
             JSONObject error = requestHandler.handleThrowable(
                     exp instanceof RuntimeMBeanException ? ((RuntimeMBeanException) exp).getTargetException() : exp);
             json = error;
         } finally {
-            String callback = pReq.getParameter(ConfigKey.CALLBACK.getKeyValue());
-            if (callback != null) {
-                // Send a JSONP response
-                sendResponse(pResp, "text/javascript",callback + "(" + json.toJSONString() +  ");");
+            String vary = requestHandler.getVary(callback, format, accept);
+            if (vary != null) {
+                pResp.setHeader("Vary", vary);
+            }
+            if (json == null) {
+                sendNotModified(pResp);
             } else {
-                sendResponse(pResp, "text/plain",json.toJSONString());
+                if (callback != null) {
+                    // Send a JSONP response
+                    sendResponse(pReq, pResp, "text/javascript", callback, json);
+                } else if (cbor) {
+                    sendResponse(pReq, pResp, CborWriter.MIME_TYPE, null, json);
+                } else {
+                    sendResponse(pReq, pResp, "text/plain", null, json);
+                }
             }
         }
     }
@@ -224,10 +254,12 @@ public class AgentServlet extends HttpServlet {
          * Handle a request and return the answer as a JSON structure
          * @param pReq request arrived
          * @param pResp response to return
-         * @return the JSON representation for the answer
+         * @param pCbor whether the answer is sent as CBOR
+         * @return the JSON representation for the answer or null if the client's copy of the answer
+         *         is still valid
          * @throws IOException if handling of an input or output stream failed
          */
-        JSONAware handleRequest(HttpServletRequest pReq, HttpServletResponse pResp)
+        JSONAware handleRequest(HttpServletRequest pReq, HttpServletResponse pResp, boolean pCbor)
                 throws IOException;
     }
 
@@ -235,7 +267,7 @@ public class AgentServlet extends HttpServlet {
     private ServletRequestHandler newPostHttpRequestHandler() {
         return new ServletRequestHandler() {
             /** {@inheritDoc} */
-             public JSONAware handleRequest(HttpServletRequest pReq, HttpServletResponse pResp)
+             public JSONAware handleRequest(HttpServletRequest pReq, HttpServletResponse pResp, boolean pCbor)
                     throws IOException {
                  String encoding = pReq.getCharacterEncoding();
                  InputStream is = pReq.getInputStream();
@@ -248,8 +280,20 @@ public class AgentServlet extends HttpServlet {
     private ServletRequestHandler newGetHttpRequestHandler() {
         return new ServletRequestHandler() {
             /** {@inheritDoc} */
-            public JSONAware handleRequest(HttpServletRequest pReq, HttpServletResponse pResp) {
-                return requestHandler.handleGetRequest(pReq.getRequestURI(),pReq.getPathInfo(), getParameterMap(pReq));
+            public JSONAware handleRequest(HttpServletRequest pReq, HttpServletResponse pResp, boolean pCbor) {
+                JmxRequest jmxReq = requestHandler.parseGetRequest(pReq.getRequestURI(), pReq.getPathInfo(),
+                                                                   getParameterMap(pReq));
+                // Calculated before executing the request so that it is never newer than the answer
+                String eTag = requestHandler.getETag(jmxReq, pCbor);
+                if (eTag != null && HttpRequestHandler.matchesETag(pReq.getHeader("If-None-Match"), eTag)) {
+                    pResp.setHeader("ETag", eTag);
+                    return null;
+                }
+                JSONAware json = requestHandler.handleGetRequest(jmxReq);
+                if (eTag != null && HttpRequestHandler.isSuccess(json)) {
+                    pResp.setHeader("ETag", eTag);
+                }
+                return json;
             }
         };
     }
@@ -288,11 +332,75 @@ public class AgentServlet extends HttpServlet {
         return ret;
     }
 
-    private void sendResponse(HttpServletResponse pResp, String pContentType, String pJsonTxt) throws IOException {
-        setContentType(pResp, pContentType);
+    // Stream the JSON answer directly to the response writer without rendering it into
+    // an intermediate String first. The container takes care of chunking the output.
+    // If the client accepts it, large answers are compressed on the fly. A CBOR answer is
+    // binary and hence always written to the output stream.
+    private void sendResponse(HttpServletRequest pReq, final HttpServletResponse pResp, String pContentType,
+                              String pCallback, JSONAware pJson) throws IOException {
+        boolean cbor = CborWriter.MIME_TYPE.equals(pContentType);
+        if (cbor) {
+            pResp.setContentType(pContentType);
+        } else {
+            setContentType(pResp, pContentType);
+        }
         pResp.setStatus(200);
-        PrintWriter writer = pResp.getWriter();
-        writer.write(pJsonTxt);
+        String encoding = requestHandler.getResponseEncoding(pReq.getHeader("Accept-Encoding"));
+        if (encoding == null && !cbor) {
+            PrintWriter writer = pResp.getWriter();
+            writeResponse(writer, pCallback, pJson);
+            writer.flush();
+        } else {
+            OutputStream out = new CompressingOutputStream(encoding, requestHandler.getCompressionMinSize()) {
+                @Override
+                protected OutputStream openStream(String pContentEncoding, int pLength) throws IOException {
+                    if (pContentEncoding != null) {
+                        pResp.setHeader("Content-Encoding", pContentEncoding);
+                    } else if (pLength >= 0) {
+                        pResp.setContentLength(pLength);
+                    }
+                    return pResp.getOutputStream();
+                }
+            };
+            try {
+                if (cbor) {
+                    OutputStream bufferedOut = new BufferedOutputStream(out, RESPONSE_BUFFER_SIZE);
+                    new CborWriter(bufferedOut).write(pJson);
+                    bufferedOut.flush();
+                } else {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), RESPONSE_BUFFER_SIZE);
+                    writeResponse(writer, pCallback, pJson);
+                    writer.flush();
+                }
+            } finally {
+                // Finishes the compressed content
+                out.close();
+            }
+        }
+    }
+
+    // Tell the client that its copy of the answer is still valid
+    private void sendNotModified(HttpServletResponse pResp) {
+        pResp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    private void writeResponse(Writer pWriter, String pCallback, JSONAware pJson) throws IOException {
+        if (pCallback != null) {
+            pWriter.write(pCallback);
+            pWriter.write("(");
+        }
+        writeJson(pWriter, pJson);
+        if (pCallback != null) {
+            pWriter.write(");");
+        }
+    }
+
+    private void writeJson(Writer pWriter, JSONAware pJson) throws IOException {
+        if (pJson instanceof JSONStreamAware) {
+            ((JSONStreamAware) pJson).writeJSONString(pWriter);
+        } else {
+            pWriter.write(pJson.toJSONString());
+        }
     }
 
     private void setContentType(HttpServletResponse pResp, String pContentType) {
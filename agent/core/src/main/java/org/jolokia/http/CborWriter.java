@@ -0,0 +1,258 @@
+package org.jolokia.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jolokia.history.ValueEntry;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Writer for answers in the binary CBOR format (RFC 7049) as a compact alternative to JSON.
+ * It takes the same object tree which is otherwise serialized to JSON (maps, lists, strings,
+ * numbers, booleans and null) and writes it directly to a stream. Integers keep their
+ * integer type and floating point numbers are written in their binary representation, so no
+ * number has to be formatted on the agent or parsed on the client. {@link BigInteger}s which don't
+ * fit into a long are written as bignums (tags 2 and 3), {@link BigDecimal}s as decimal fractions
+ * (tag 4), so that they keep their precision. Entries of a history are written as maps with
+ * their value and timestamp. Objects of any other type are written as their string representation.
+ *
+ * This writer does not buffer, so it should be given a buffered stream.
+ *
+ * @author roland
+ * @since 17.10.11
+ */
+public class CborWriter {
+
+    /**
+     * Content type of a CBOR answer
+     */
+    public static final String MIME_TYPE = "application/cbor";
+
+    /**
+     * Value of the processing parameter <code>format</code> for requesting a CBOR answer
+     */
+    public static final String FORMAT = "cbor";
+
+    // Major types
+    private static final int UNSIGNED_INT = 0;
+    private static final int NEGATIVE_INT = 1;
+    private static final int BYTE_STRING = 2;
+    private static final int TEXT_STRING = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+
+    // Tags for numbers which don't fit into the basic types
+    private static final int POSITIVE_BIGNUM = 2;
+    private static final int NEGATIVE_BIGNUM = 3;
+    private static final int DECIMAL_FRACTION = 4;
+
+    // Simple values and floating point numbers (major type 7)
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT = 0xfa;
+    private static final int DOUBLE = 0xfb;
+
+    // Stream to write to
+    private final OutputStream out;
+
+    /**
+     * Constructor
+     *
+     * @param pOut stream to write to
+     */
+    public CborWriter(OutputStream pOut) {
+        out = pOut;
+    }
+
+    /**
+     * Check whether a client asks for a CBOR answer. This is the case if the processing parameter
+     * <code>format</code> is set to <code>cbor</code> or, if this parameter is not given, the
+     * <code>Accept</code> header prefers <code>application/cbor</code> over
+     * <code>application/json</code> and <code>text/plain</code>.
+     *
+     * @param pFormat value of the processing parameter <code>format</code>, might be null
+     * @param pAccept value of the <code>Accept</code> header, might be null
+     * @return true if the answer should be written as CBOR
+     */
+    public static boolean isRequested(String pFormat, String pAccept) {
+        if (pFormat != null) {
+            return FORMAT.equalsIgnoreCase(pFormat.trim());
+        }
+        if (pAccept == null) {
+            return false;
+        }
+        float cborQuality = 0;
+        float jsonQuality = 0;
+        for (String part : pAccept.split(",")) {
+            String[] params = part.split(";");
+            String type = params[0].trim().toLowerCase(Locale.ENGLISH);
+            if (MIME_TYPE.equals(type)) {
+                cborQuality = Math.max(cborQuality,CompressingOutputStream.extractQuality(params));
+            } else if ("application/json".equals(type) || "text/plain".equals(type)) {
+                jsonQuality = Math.max(jsonQuality,CompressingOutputStream.extractQuality(params));
+            }
+        }
+        return cborQuality > 0 && cborQuality >= jsonQuality;
+    }
+
+    /**
+     * Write a value along with all nested values
+     *
+     * @param pValue value to write
+     * @throws IOException if writing to the stream fails
+     */
+    public void write(Object pValue) throws IOException {
+        if (pValue == null) {
+            out.write(NULL);
+        } else if (pValue instanceof String) {
+            writeString((String) pValue);
+        } else if (pValue instanceof Boolean) {
+            out.write(((Boolean) pValue).booleanValue() ? TRUE : FALSE);
+        } else if (pValue instanceof Number) {
+            writeNumber((Number) pValue);
+        } else if (pValue instanceof ValueEntry) {
+            writeValueEntry((ValueEntry) pValue);
+        } else if (pValue instanceof Map) {
+            writeMap((Map<?, ?>) pValue);
+        } else if (pValue instanceof Collection) {
+            writeCollection((Collection<?>) pValue);
+        } else {
+            writeString(pValue.toString());
+        }
+    }
+
+    // ==========================================================================================
+
+    private void writeMap(Map<?, ?> pMap) throws IOException {
+        writeHead(MAP,pMap.size());
+        for (Map.Entry<?, ?> entry : pMap.entrySet()) {
+            writeString(String.valueOf(entry.getKey()));
+            write(entry.getValue());
+        }
+    }
+
+    private void writeCollection(Collection<?> pCollection) throws IOException {
+        writeHead(ARRAY,pCollection.size());
+        for (Object value : pCollection) {
+            write(value);
+        }
+    }
+
+    // Same structure as the JSON representation of a history entry
+    private void writeValueEntry(ValueEntry pEntry) throws IOException {
+        writeHead(MAP,2);
+        writeString("value");
+        write(pEntry.getValue());
+        writeString("timestamp");
+        writeLong(pEntry.getTimestamp());
+    }
+
+    private void writeString(String pString) throws IOException {
+        byte[] bytes = pString.getBytes("UTF-8");
+        writeHead(TEXT_STRING,bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeNumber(Number pNumber) throws IOException {
+        if (pNumber instanceof Long || pNumber instanceof Integer ||
+            pNumber instanceof Short || pNumber instanceof Byte ||
+            pNumber instanceof AtomicLong || pNumber instanceof AtomicInteger) {
+            writeLong(pNumber.longValue());
+        } else if (pNumber instanceof BigInteger) {
+            writeBigInteger((BigInteger) pNumber);
+        } else if (pNumber instanceof BigDecimal) {
+            // Decimal fraction [ exponent, mantissa ] with value = mantissa * 10 ^ exponent
+            BigDecimal decimal = (BigDecimal) pNumber;
+            writeHead(TAG,DECIMAL_FRACTION);
+            writeHead(ARRAY,2);
+            writeLong(-(long) decimal.scale());
+            writeBigInteger(decimal.unscaledValue());
+        } else if (pNumber instanceof Float) {
+            out.write(FLOAT);
+            writeBytes(Float.floatToIntBits(pNumber.floatValue()),4);
+        } else {
+            out.write(DOUBLE);
+            writeBytes(Double.doubleToLongBits(pNumber.doubleValue()),8);
+        }
+    }
+
+    private void writeLong(long pValue) throws IOException {
+        if (pValue >= 0) {
+            writeHead(UNSIGNED_INT,pValue);
+        } else {
+            // Stored as -1 - n, which is never negative for a long
+            writeHead(NEGATIVE_INT,-1 - pValue);
+        }
+    }
+
+    private void writeBigInteger(BigInteger pValue) throws IOException {
+        if (pValue.bitLength() < 64) {
+            writeLong(pValue.longValue());
+            return;
+        }
+        BigInteger magnitude;
+        if (pValue.signum() >= 0) {
+            writeHead(TAG,POSITIVE_BIGNUM);
+            magnitude = pValue;
+        } else {
+            // Stored as -1 - n like negative integers
+            writeHead(TAG,NEGATIVE_BIGNUM);
+            magnitude = pValue.not();
+        }
+        byte[] bytes = magnitude.toByteArray();
+        // Skip the sign byte
+        int offset = bytes[0] == 0 ? 1 : 0;
+        writeHead(BYTE_STRING,bytes.length - offset);
+        out.write(bytes,offset,bytes.length - offset);
+    }
+
+    // Write the initial byte of a data item along with its argument, which is either the
+    // integer value itself or the length of a string, array or map
+    private void writeHead(int pMajorType, long pArgument) throws IOException {
+        int major = pMajorType << 5;
+        if (pArgument < 24) {
+            out.write(major | (int) pArgument);
+        } else if (pArgument <= 0xffL) {
+            out.write(major | 24);
+            writeBytes(pArgument,1);
+        } else if (pArgument <= 0xffffL) {
+            out.write(major | 25);
+            writeBytes(pArgument,2);
+        } else if (pArgument <= 0xffffffffL) {
+            out.write(major | 26);
+            writeBytes(pArgument,4);
+        } else {
+            out.write(major | 27);
+            writeBytes(pArgument,8);
+        }
+    }
+
+    // Write the lowest bytes of a value in network byte order
+    private void writeBytes(long pValue, int pNrOfBytes) throws IOException {
+        for (int i = pNrOfBytes - 1; i >= 0; i--) {
+            out.write((int) (pValue >>> (i * 8)) & 0xff);
+        }
+    }
+}
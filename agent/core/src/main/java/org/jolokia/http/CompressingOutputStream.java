@@ -0,0 +1,209 @@
+package org.jolokia.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Output stream for writing a response which gets compressed with the content encoding
+ * negotiated with the client, but only if it reaches a minimum size. Until this size is
+ * reached, the content is buffered. Only then it is decided whether to compress, so that
+ * small answers are sent as they are.
+ *
+ * The real response stream is obtained lazily via {@link #openStream(String, int)} as soon
+ * as this decision has been made. Since the response headers must be set before the body
+ * is written, subclasses set the <code>Content-Encoding</code> header there.
+ *
+ * {@link #close()} must be called in any case in order to finish the compressed content.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public abstract class CompressingOutputStream extends OutputStream {
+
+    /**
+     * Content encoding for gzip compression
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * Content encoding for deflate (zlib) compression
+     */
+    public static final String DEFLATE = "deflate";
+
+    // Size of the buffer used for compression
+    private static final int COMPRESSION_BUFFER_SIZE = 8192;
+
+    // Encoding to use or null if the content should never be compressed
+    private final String encoding;
+
+    // Minimum size of the content before it gets compressed
+    private final int minSize;
+
+    // Content collected as long as the decision about compression is pending
+    private ByteArrayOutputStream buffer;
+
+    // Stream to write to, null as long as it is not decided whether to compress
+    private OutputStream out;
+
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param pEncoding content encoding as returned by {@link #selectEncoding(String)}. If null,
+     *        the content is written uncompressed without any buffering.
+     * @param pMinSize minimum size in bytes of the content in order to get compressed
+     */
+    protected CompressingOutputStream(String pEncoding, int pMinSize) {
+        encoding = pEncoding;
+        minSize = pMinSize;
+        if (encoding != null) {
+            buffer = new ByteArrayOutputStream(Math.min(Math.max(pMinSize,32),COMPRESSION_BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Select the content encoding to use from the value of an <code>Accept-Encoding</code>
+     * request header. Among the supported encodings, the one with the highest quality is chosen,
+     * preferring gzip if both have the same quality.
+     *
+     * @param pAcceptEncoding header value, might be null
+     * @return {@link #GZIP}, {@link #DEFLATE} or null if no supported encoding is accepted
+     */
+    public static String selectEncoding(String pAcceptEncoding) {
+        if (pAcceptEncoding == null) {
+            return null;
+        }
+        String ret = null;
+        float bestQuality = 0;
+        for (String part : pAcceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ENGLISH);
+            if ("x-gzip".equals(coding)) {
+                coding = GZIP;
+            }
+            if (!GZIP.equals(coding) && !DEFLATE.equals(coding)) {
+                continue;
+            }
+            float quality = extractQuality(params);
+            if (quality > bestQuality || (quality > 0 && quality == bestQuality && GZIP.equals(coding))) {
+                ret = coding;
+                bestQuality = quality;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Open the stream to which the content is written. This is called exactly once, when the
+     * content either exceeded the minimum size or the stream gets closed.
+     *
+     * @param pContentEncoding content encoding of the data written to the returned stream or null
+     *        if it is uncompressed
+     * @param pLength length of the complete content if known in advance, -1 otherwise
+     * @return the response stream
+     * @throws IOException if the stream cannot be opened
+     */
+    protected abstract OutputStream openStream(String pContentEncoding, int pLength) throws IOException;
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b },0,1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (out == null) {
+            if (encoding == null) {
+                out = openStream(null,-1);
+            } else if (buffer.size() + len < minSize) {
+                buffer.write(b,off,len);
+                return;
+            } else {
+                out = startCompression();
+            }
+        }
+        out.write(b,off,len);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() throws IOException {
+        // Nothing to flush as long as the content is buffered
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (out == null) {
+            // Too small for compression, the length is known now
+            byte[] content = buffer != null ? buffer.toByteArray() : new byte[0];
+            buffer = null;
+            out = openStream(null,content.length);
+            out.write(content);
+        }
+        // Finishes the compressed content, too
+        out.close();
+    }
+
+    // Open the response stream for compressed content and write out what has been buffered so far
+    private OutputStream startCompression() throws IOException {
+        OutputStream raw = openStream(encoding,-1);
+        OutputStream ret = GZIP.equals(encoding) ?
+                new GZIPOutputStream(raw,COMPRESSION_BUFFER_SIZE) :
+                new DeflaterOutputStream(raw);
+        buffer.writeTo(ret);
+        buffer = null;
+        return ret;
+    }
+
+    /**
+     * Get the value of the 'q' parameter of an element of an <code>Accept</code> or
+     * <code>Accept-Encoding</code> header
+     *
+     * @param pParams the element split at ';', the first entry is the value itself
+     * @return the quality, which is 1 if not given and 0 if it is invalid
+     */
+    static float extractQuality(String[] pParams) {
+        for (int i = 1; i < pParams.length; i++) {
+            String param = pParams[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException exp) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
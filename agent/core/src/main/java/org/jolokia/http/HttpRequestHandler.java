@@ -1,14 +1,19 @@
 package org.jolokia.http;
 
 import java.io.*;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.*;
 
 import org.jolokia.backend.BackendManager;
+import org.jolokia.handler.NotChangedException;
 import org.jolokia.request.JmxRequest;
 import org.jolokia.request.JmxRequestFactory;
+import org.jolokia.request.ProxyTargetConfig;
+import org.jolokia.util.ConfigKey;
+import org.jolokia.util.ExecutorUtil;
 import org.jolokia.util.LogHandler;
 import org.json.simple.*;
 import org.json.simple.parser.JSONParser;
@@ -46,6 +51,18 @@ public class HttpRequestHandler {
     // Logging abstraction
     private LogHandler logHandler;
 
+    // Upper limit of threads used for a single bulk request
+    private final int maxBulkThreads;
+
+    // Executor used for parallel bulk requests, created on demand
+    private ThreadPoolExecutor bulkExecutor;
+
+    // Minimum size of a response for getting compressed, negative if compression is switched off
+    private final int compressionMinSize;
+
+    // Prefix for entity tags, unique for this handler so that the tags of a restarted agent differ
+    private final String eTagPrefix = Long.toHexString(System.currentTimeMillis());
+
     /**
      * Request handler for parsing HTTP request and dispatching to the appropriate
      * request handler (with help of the backend manager)
@@ -54,8 +71,131 @@ public class HttpRequestHandler {
      * @param pLogHandler log handler to where to put out logging
      */
     public HttpRequestHandler(BackendManager pBackendManager, LogHandler pLogHandler) {
+        this(pBackendManager, pLogHandler, null);
+    }
+
+    /**
+     * Request handler for parsing HTTP request and dispatching to the appropriate
+     * request handler (with help of the backend manager)
+     *
+     * @param pBackendManager backend manager to user
+     * @param pLogHandler log handler to where to put out logging
+     * @param pConfig global configuration, used for the limit of parallel bulk requests and
+     *                the compression of responses. Can be null.
+     */
+    public HttpRequestHandler(BackendManager pBackendManager, LogHandler pLogHandler, Map<ConfigKey, String> pConfig) {
         backendManager = pBackendManager;
         logHandler = pLogHandler;
+        String maxThreads = pConfig != null ?
+                ConfigKey.MAX_BULK_THREADS.getValue(pConfig) :
+                ConfigKey.MAX_BULK_THREADS.getDefaultValue();
+        maxBulkThreads = Integer.parseInt(maxThreads);
+        String minSize = pConfig != null ?
+                ConfigKey.COMPRESSION_MIN_SIZE.getValue(pConfig) :
+                ConfigKey.COMPRESSION_MIN_SIZE.getDefaultValue();
+        compressionMinSize = Integer.parseInt(minSize);
+    }
+
+    /**
+     * Whether responses get compressed at all if the client accepts it. If so, the
+     * response should carry a <code>Vary: Accept-Encoding</code> header.
+     *
+     * @return true if compression is switched on
+     */
+    public boolean isCompressionEnabled() {
+        return compressionMinSize >= 0;
+    }
+
+    /**
+     * Get the content encoding with which a response should be compressed
+     *
+     * @param pAcceptEncoding value of the request's <code>Accept-Encoding</code> header, might be null
+     * @return the encoding to use or null if the response should not be compressed, either
+     *         because the client doesn't accept a supported encoding or compression is switched off
+     */
+    public String getResponseEncoding(String pAcceptEncoding) {
+        return isCompressionEnabled() ? CompressingOutputStream.selectEncoding(pAcceptEncoding) : null;
+    }
+
+    /**
+     * Get the value of the <code>Vary</code> header of a response. It lists the request headers
+     * used for choosing the representation of the answer: <code>Accept-Encoding</code> if compression
+     * is switched on and <code>Accept</code> if the format (JSON or CBOR) is chosen by this header,
+     * i.e. if neither a JSONP callback nor an explicit format is requested.
+     *
+     * @param pCallback JSONP callback requested, might be null
+     * @param pFormat value of the processing parameter <code>format</code>, might be null
+     * @param pAccept value of the request's <code>Accept</code> header, might be null
+     * @return the header value or null if the representation doesn't depend on request headers
+     */
+    public String getVary(String pCallback, String pFormat, String pAccept) {
+        boolean formatByAccept = pCallback == null && pFormat == null && pAccept != null;
+        if (isCompressionEnabled()) {
+            return formatByAccept ? "Accept-Encoding, Accept" : "Accept-Encoding";
+        } else {
+            return formatByAccept ? "Accept" : null;
+        }
+    }
+
+    /**
+     * Minimum size in bytes a response must have in order to get compressed
+     *
+     * @return minimum size, negative if compression is switched off
+     */
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    /**
+     * Get the entity tag for the answer to a GET request. An entity tag is only available for
+     * <code>list</code>, <code>search</code> and <code>version</code> requests on the local MBeanServers
+     * and changes whenever an MBean is registered or unregistered. It must be calculated before the
+     * request is executed. The JSON and the CBOR representation of the same answer have different
+     * entity tags.
+     *
+     * @param pJmxReq request as parsed by {@link #parseGetRequest(String, String, Map)}
+     * @param pCbor whether the answer is sent as CBOR
+     * @return a weak entity tag suitable for an <code>ETag</code> header or null if the answer to this
+     *         request cannot be validated with an entity tag
+     */
+    public String getETag(JmxRequest pJmxReq, boolean pCbor) {
+        long generation = backendManager.getRegistryGeneration(pJmxReq);
+        if (generation < 0) {
+            return null;
+        }
+        return "W/\"" + eTagPrefix + "-" + Long.toHexString(generation) + (pCbor ? "-" + CborWriter.FORMAT : "") + "\"";
+    }
+
+    /**
+     * Check whether an entity tag matches the value of an <code>If-None-Match</code> request header.
+     * Weak comparison is used as it is required for this header.
+     *
+     * @param pIfNoneMatch header value, might be null
+     * @param pETag entity tag as returned by {@link #getETag(JmxRequest, boolean)}
+     * @return true if the client has an up to date copy of the answer
+     */
+    public static boolean matchesETag(String pIfNoneMatch, String pETag) {
+        if (pIfNoneMatch == null || pETag == null) {
+            return false;
+        }
+        String opaqueTag = stripWeakIndicator(pETag);
+        for (String tag : pIfNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || opaqueTag.equals(stripWeakIndicator(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether an answer is a successful one. Only these should be sent along with an entity tag.
+     *
+     * @param pJson answer to check
+     * @return true if it is a single response with status 200
+     */
+    public static boolean isSuccess(JSONAware pJson) {
+        return pJson instanceof JSONObject && Integer.valueOf(200).equals(((JSONObject) pJson).get("status"));
     }
 
     /**
@@ -66,6 +206,19 @@ public class HttpRequestHandler {
      * @param pParameterMap parameters of the GET request  @return the response
      */
     public JSONAware handleGetRequest(String pUri, String pPathInfo, Map<String, String[]> pParameterMap) {
+        return handleGetRequest(parseGetRequest(pUri, pPathInfo, pParameterMap));
+    }
+
+    /**
+     * Parse a GET request. The parsed request can be used both for looking up its entity tag
+     * and for executing it.
+     *
+     * @param pUri URI leading to this request
+     * @param pPathInfo path of the request
+     * @param pParameterMap parameters of the GET request
+     * @return the parsed request
+     */
+    public JmxRequest parseGetRequest(String pUri, String pPathInfo, Map<String, String[]> pParameterMap) {
         JmxRequest jmxReq =
                 JmxRequestFactory.createGetRequest(pPathInfo,pParameterMap);
 
@@ -74,8 +227,17 @@ public class HttpRequestHandler {
             logHandler.debug("Path-Info: " + pPathInfo);
             logHandler.debug("Request: " + jmxReq.toString());
         }
+        return jmxReq;
+    }
 
-        return executeRequest(jmxReq);
+    /**
+     * Handle a GET request which has already been parsed
+     *
+     * @param pJmxReq request as parsed by {@link #parseGetRequest(String, String, Map)}
+     * @return the response
+     */
+    public JSONAware handleGetRequest(JmxRequest pJmxReq) {
+        return executeRequest(pJmxReq);
     }
 
     /**
@@ -101,14 +263,14 @@ public class HttpRequestHandler {
         if (jsonRequest instanceof JSONArray) {
             List<JmxRequest> jmxRequests = JmxRequestFactory.createPostRequests((List) jsonRequest,pParameterMap);
 
+            List<List<Integer>> units = groupByTarget(jmxRequests);
+            int nrThreads = getNrOfBulkThreads(pParameterMap, units.size());
+            if (nrThreads > 1) {
+                return executeRequestsInParallel(jmxRequests, units, nrThreads);
+            }
             JSONArray responseList = new JSONArray();
             for (JmxRequest jmxReq : jmxRequests) {
-                if (backendManager.isDebug()) {
-                    logHandler.debug("Request: " + jmxReq.toString());
-                }
-                // Call handler and retrieve return value
-                JSONObject resp = executeRequest(jmxReq);
-                responseList.add(resp);
+                responseList.add(executeBulkRequestEntry(jmxReq));
             }
             return responseList;
         } else if (jsonRequest instanceof JSONObject) {
@@ -119,6 +281,101 @@ public class HttpRequestHandler {
         }
     }
 
+    /**
+     * Shutdown the threads used for parallel bulk requests
+     */
+    public synchronized void destroy() {
+        if (bulkExecutor != null) {
+            bulkExecutor.shutdownNow();
+            bulkExecutor = null;
+        }
+    }
+
+    // Split the requests of a bulk request into units which can be executed in parallel. Requests
+    // for the same JSR-160 target are put into the same unit and are executed one after another,
+    // so that they can reuse a single pooled connection to the target instead of connecting
+    // concurrently. Each local request is a unit on its own. Returns the indexes of the
+    // requests for each unit.
+    private List<List<Integer>> groupByTarget(List<JmxRequest> pJmxRequests) {
+        List<List<Integer>> units = new ArrayList<List<Integer>>();
+        Map<ProxyTargetConfig, List<Integer>> unitsByTarget = new HashMap<ProxyTargetConfig, List<Integer>>();
+        for (int i = 0; i < pJmxRequests.size(); i++) {
+            ProxyTargetConfig target = pJmxRequests.get(i).getTargetConfig();
+            List<Integer> unit = target != null ? unitsByTarget.get(target) : null;
+            if (unit == null) {
+                unit = new ArrayList<Integer>();
+                units.add(unit);
+                if (target != null) {
+                    unitsByTarget.put(target, unit);
+                }
+            }
+            unit.add(i);
+        }
+        return units;
+    }
+
+    // Execute the units of a bulk request with multiple threads. The calling thread takes
+    // part in the work, too. The responses are returned in the order of the requests.
+    private JSONArray executeRequestsInParallel(List<JmxRequest> pJmxRequests, List<List<Integer>> pUnits, int pNrThreads) {
+        JSONObject[] responses = new JSONObject[pJmxRequests.size()];
+        AtomicInteger nextIndex = new AtomicInteger(0);
+        ExecutorService executor = getBulkExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 1; i < pNrThreads; i++) {
+            futures.add(executor.submit(new BulkWorker(pJmxRequests, pUnits, responses, nextIndex)));
+        }
+        new BulkWorker(pJmxRequests, pUnits, responses, nextIndex).run();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException exp) {
+                // Only errors can get here, exceptions are converted to error responses
+                Throwable cause = exp.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Error while executing bulk request: " + cause,cause);
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                // No new requests for the other workers
+                nextIndex.set(pUnits.size());
+                throw new IllegalStateException("Interrupted while executing bulk request",exp);
+            }
+        }
+        JSONArray responseList = new JSONArray();
+        for (JSONObject response : responses) {
+            responseList.add(response);
+        }
+        return responseList;
+    }
+
+    // Number of threads to use for a bulk request with the given number of units
+    private int getNrOfBulkThreads(Map<String, String[]> pParameterMap, int pNrOfUnits) {
+        if (maxBulkThreads <= 1 || pNrOfUnits <= 1) {
+            return 1;
+        }
+        int nrThreads = Math.min(maxBulkThreads, pNrOfUnits);
+        String[] requested = pParameterMap != null ? pParameterMap.get(ConfigKey.MAX_BULK_THREADS.getKeyValue()) : null;
+        if (requested != null && requested.length > 0) {
+            try {
+                nrThreads = Math.min(nrThreads, Integer.parseInt(requested[0]));
+            } catch (NumberFormatException exp) {
+                throw new IllegalArgumentException("Invalid value " + requested[0] + " for " +
+                                                   ConfigKey.MAX_BULK_THREADS.getKeyValue(),exp);
+            }
+        }
+        return nrThreads;
+    }
+
+    // Get the executor used for parallel bulk requests, which is created lazily
+    private synchronized ExecutorService getBulkExecutor() {
+        if (bulkExecutor == null) {
+            // No queueing, a bulk request which doesn't get a thread does the work on its own
+            bulkExecutor = ExecutorUtil.createCallerRunsExecutor(maxBulkThreads, "jolokia-bulk-");
+        }
+        return bulkExecutor;
+    }
+
     private Object extractJsonRequest(InputStream pInputStream, String pEncoding) throws IOException {
         InputStreamReader reader = null;
         try {
@@ -146,6 +403,8 @@ public class HttpRequestHandler {
         // Call handler and retrieve return value
         try {
             return backendManager.handleRequest(pJmxReq);
+        } catch (NotChangedException e) {
+            return getNotChangedJSON(e.getRequest());
         } catch (ReflectionException e) {
             return getErrorJSON(404,e);
         } catch (InstanceNotFoundException e) {
@@ -170,6 +429,20 @@ public class HttpRequestHandler {
     }
 
 
+    // Execute a single request of a bulk request. Any runtime exception is converted into an
+    // error response for this request, so that a single request doesn't spoil the others. This
+    // is the same whether the bulk request is executed sequentially or in parallel.
+    private JSONObject executeBulkRequestEntry(JmxRequest pJmxReq) {
+        if (backendManager.isDebug()) {
+            logHandler.debug("Request: " + pJmxReq.toString());
+        }
+        try {
+            return executeRequest(pJmxReq);
+        } catch (RuntimeException exp) {
+            return handleThrowable(exp);
+        }
+    }
+
     /**
      * Utility method for handling single runtime exceptions and errors. This method is called
      * in addition to and after {@link #executeRequest(JmxRequest)} to catch additional errors.
@@ -219,6 +492,21 @@ public class HttpRequestHandler {
     }
 
 
+    /**
+     * Get the JSON representation for a request whose value has not changed since the time
+     * requested by the client. It has the status 304 and no value.
+     *
+     * @param pJmxReq request which has not changed
+     * @return the json representation
+     */
+    public JSONObject getNotChangedJSON(JmxRequest pJmxReq) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("request",pJmxReq.toJSON());
+        jsonObject.put("status",304);
+        jsonObject.put("timestamp",System.currentTimeMillis() / 1000);
+        return jsonObject;
+    }
+
     /**
      * Check whether the given host and/or address is allowed to access this agent.
      *
@@ -231,12 +519,42 @@ public class HttpRequestHandler {
         }
     }
 
+    private static String stripWeakIndicator(String pTag) {
+        return pTag.startsWith("W/") ? pTag.substring(2) : pTag;
+    }
+
     // Extract class and exception message for an error message
     private String getExceptionMessage(Throwable pException) {
         String message = pException.getLocalizedMessage();
         return pException.getClass().getName() + (message != null ? " : " + message : "");
     }
 
+    // Worker executing the units of a bulk request as long as there are units left
+    private final class BulkWorker implements Runnable {
+        private final List<JmxRequest> jmxRequests;
+        private final List<List<Integer>> units;
+        private final JSONObject[] responses;
+        private final AtomicInteger nextIndex;
+
+        private BulkWorker(List<JmxRequest> pJmxRequests, List<List<Integer>> pUnits,
+                           JSONObject[] pResponses, AtomicInteger pNextIndex) {
+            jmxRequests = pJmxRequests;
+            units = pUnits;
+            responses = pResponses;
+            nextIndex = pNextIndex;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            int unitIdx;
+            while ((unitIdx = nextIndex.getAndIncrement()) < units.size()) {
+                for (int idx : units.get(unitIdx)) {
+                    responses[idx] = executeBulkRequestEntry(jmxRequests.get(idx));
+                }
+            }
+        }
+    }
+
     // Unwrap an exception to get to the 'real' exception
     // and extract the error code accordingly
     private JSONObject errorForUnwrappedException(Exception e) {
@@ -2,8 +2,10 @@ package org.jolokia.mbean;
 
 import javax.management.*;
 
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.history.HistoryKey;
 import org.jolokia.history.HistoryStore;
+import org.jolokia.sampler.Sampler;
 import org.jolokia.util.DebugStore;
 
 /*
@@ -35,6 +37,8 @@ public class Config implements ConfigMBean,MBeanRegistration {
     // Stores for various informations
     private HistoryStore historyStore;
     private DebugStore debugStore;
+    private MBeanInfoCache mBeanInfoCache;
+    private Sampler sampler;
 
     // MBean Objectname under which this bean should be registered
     private String objectName;
@@ -44,11 +48,16 @@ public class Config implements ConfigMBean,MBeanRegistration {
      *
      * @param pHistoryStore history store where to hold historical values
      * @param pDebugStore debug store for holding debug messages
+     * @param pMBeanInfoCache cache for MBeanInfos, whose statistics are exported (can be null)
+     * @param pSampler sampler for periodically sampled attributes
      * @param pOName object name under which to register this MBean
      */
-    public Config(HistoryStore pHistoryStore, DebugStore pDebugStore, String pOName) {
+    public Config(HistoryStore pHistoryStore, DebugStore pDebugStore, MBeanInfoCache pMBeanInfoCache,
+                  Sampler pSampler, String pOName) {
         historyStore = pHistoryStore;
         debugStore = pDebugStore;
+        mBeanInfoCache = pMBeanInfoCache;
+        sampler = pSampler;
         objectName = pOName;
     }
 
@@ -70,6 +79,17 @@ public class Config implements ConfigMBean,MBeanRegistration {
         historyStore.reset();
     }
 
+    /** {@inheritDoc} */
+    public void setSamplingForAttribute(String pMBean, String pAttribute, String pPath, String pTarget, boolean pEnabled)
+            throws MalformedObjectNameException {
+        sampler.configure(pMBean,pAttribute,pPath,pTarget,pEnabled);
+    }
+
+    /** {@inheritDoc} */
+    public void resetSampling() {
+        sampler.reset();
+    }
+
     /** {@inheritDoc} */
     public String debugInfo() {
         return debugStore.debugInfo();
@@ -115,6 +135,38 @@ public class Config implements ConfigMBean,MBeanRegistration {
         return historyStore.getSize();
     }
 
+    /** {@inheritDoc} */
+    public long getHistoryMaxSize() {
+        return historyStore.getMaxSize();
+    }
+
+    /** {@inheritDoc} */
+    public void setHistoryMaxSize(long pMaxSize) {
+        historyStore.setMaxSize(pMaxSize);
+    }
+
+    /** {@inheritDoc} */
+    public void resetMBeanInfoCache() {
+        if (mBeanInfoCache != null) {
+            mBeanInfoCache.clear();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getMBeanInfoCacheHits() {
+        return mBeanInfoCache != null ? mBeanInfoCache.getHits() : 0;
+    }
+
+    /** {@inheritDoc} */
+    public long getMBeanInfoCacheMisses() {
+        return mBeanInfoCache != null ? mBeanInfoCache.getMisses() : 0;
+    }
+
+    /** {@inheritDoc} */
+    public int getMBeanInfoCacheSize() {
+        return mBeanInfoCache != null ? mBeanInfoCache.size() : 0;
+    }
+
     // ========================================================================
 
     // Provide our own name on registration
@@ -64,6 +64,24 @@ public interface ConfigMBean {
      */
     void resetHistoryEntries();
 
+    /**
+     * Switch on or off periodic sampling of a numeric attribute by the agent. Aggregated samples
+     * can be fetched with a <code>sample</code> request.
+     *
+     * @param pMBean MBean object name
+     * @param pAttribute attribute name
+     * @param pPath inner path (optional)
+     * @param pTarget remote target or null for a local mbean
+     * @param pEnabled whether to sample the attribute
+     * @throws MalformedObjectNameException if the given name is not proper object name
+     */
+    void setSamplingForAttribute(String pMBean,String pAttribute,String pPath,String pTarget,boolean pEnabled) throws MalformedObjectNameException;
+
+    /**
+     * Stop sampling of all attributes and remove all samples
+     */
+    void resetSampling();
+
     /**
      * Get latest debug information if debugging is switched on. The returned output
      * will not take more than {@link #getMaxDebugEntries()} lines.
@@ -77,16 +95,36 @@ public interface ConfigMBean {
      */
     void resetDebugInfo();
 
+    /**
+     * Remove all cached MBeanInfos and reset the cache statistics
+     */
+    void resetMBeanInfoCache();
+
     // Attributes
 
     /**
-     * Get the size in bytes which the history mechanism requires in total if serialized.
+     * Get the estimated size in bytes of the memory which the history mechanism requires in total.
      *
      * @return size of the complete history in bytes
-     * @throws IOException if serialization (which is required for the size determination) fails.
+     * @throws IOException not thrown anymore since the size is estimated without serialization
      */
     int getHistorySize() throws IOException;
 
+    /**
+     * Get the maximum estimated size in bytes of the history. If this size is exceeded, the histories
+     * which have not been updated for the longest time are removed.
+     *
+     * @return maximum size in bytes or 0 if there is no limit
+     */
+    long getHistoryMaxSize();
+
+    /**
+     * Set the maximum estimated size of the history
+     *
+     * @param pMaxSize maximum size in bytes, 0 for no limit
+     */
+    void setHistoryMaxSize(long pMaxSize);
+
     /**
      * Number of global limit for history entries. No attribute historization can exceed this
      * limit (i.e if in {@link #setHistoryEntriesForAttribute(String, String, String, String, int)}
@@ -126,4 +164,25 @@ public interface ConfigMBean {
      * @param pNumber entries to set
      */
     void setMaxDebugEntries(int pNumber);
+
+    /**
+     * Number of MBeanInfo lookups which has been served from the cache
+     *
+     * @return cache hits
+     */
+    long getMBeanInfoCacheHits();
+
+    /**
+     * Number of MBeanInfo lookups which had to query the MBeanServer
+     *
+     * @return cache misses
+     */
+    long getMBeanInfoCacheMisses();
+
+    /**
+     * Number of MBeanInfos currently cached
+     *
+     * @return cache size
+     */
+    int getMBeanInfoCacheSize();
 }
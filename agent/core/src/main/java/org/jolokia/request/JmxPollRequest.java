@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.request;
+
+import java.util.Map;
+import java.util.Stack;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONObject;
+
+/**
+ * A JMX request for a <code>poll</code> operation, which fetches the events collected for
+ * a client. If there are none yet, the request waits for at most the given timeout until
+ * an event arrives (long polling).
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class JmxPollRequest extends JmxRequest {
+
+    // Client whose events are fetched
+    private String clientId;
+
+    // Maximum time in seconds to wait for events, null for not waiting
+    private Integer timeout;
+
+    /**
+     * Constructor for GET requests. The timeout is taken from the query parameter
+     * <code>timeout</code>.
+     *
+     * @param pClientId id of the client
+     * @param pParams optional processing parameters
+     */
+    JmxPollRequest(String pClientId, Map<String, String> pParams) {
+        super(RequestType.POLL, null, pParams);
+        clientId = pClientId;
+        timeout = pParams != null ? parseTimeout(pParams.get("timeout")) : null;
+    }
+
+    /**
+     * Constructor for POST requests
+     *
+     * @param pRequestMap object representation of the request with the keys <code>client</code>
+     *        and optionally <code>timeout</code>
+     * @param pParams processing parameters
+     */
+    JmxPollRequest(Map<String, ?> pRequestMap, Map<String, String> pParams) {
+        super(pRequestMap, pParams);
+        clientId = (String) pRequestMap.get("client");
+        timeout = parseTimeout(pRequestMap.get("timeout"));
+    }
+
+    /**
+     * Id of the client
+     *
+     * @return client id
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Maximum time to wait for events
+     *
+     * @return timeout in seconds or null if the request should not wait
+     */
+    public Integer getTimeout() {
+        return timeout;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JSONObject toJSON() {
+        JSONObject ret = super.toJSON();
+        ret.put("client", clientId);
+        if (timeout != null) {
+            ret.put("timeout", timeout);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "JmxPollRequest[client=" + clientId + ", timeout=" + timeout + "]";
+    }
+
+    // =================================================================
+
+    /**
+     * Creator for {@link JmxPollRequest}s
+     *
+     * @return the creator implementation
+     */
+    static RequestCreator<JmxPollRequest> newCreator() {
+        return new RequestCreator<JmxPollRequest>() {
+            /** {@inheritDoc} */
+            public JmxPollRequest create(Stack<String> pStack, Map<String, String> pParams) throws MalformedObjectNameException {
+                return new JmxPollRequest(pStack.pop(), pParams);
+            }
+
+            /** {@inheritDoc} */
+            public JmxPollRequest create(Map<String, ?> requestMap, Map<String, String> pParams)
+                    throws MalformedObjectNameException {
+                return new JmxPollRequest(requestMap,pParams);
+            }
+        };
+    }
+
+    private static Integer parseTimeout(Object pTimeout) {
+        if (pTimeout == null) {
+            return null;
+        }
+        try {
+            int ret = pTimeout instanceof Number ? ((Number) pTimeout).intValue() : Integer.parseInt(pTimeout.toString());
+            if (ret < 0) {
+                throw new IllegalArgumentException("Timeout must not be negative, not " + pTimeout);
+            }
+            return ret;
+        } catch (NumberFormatException exp) {
+            throw new IllegalArgumentException("Invalid timeout " + pTimeout,exp);
+        }
+    }
+}
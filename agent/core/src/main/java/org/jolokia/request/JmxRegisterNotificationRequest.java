@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.request;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * A JMX request for a <code>regnotif</code> operation, which registers a notification listener
+ * on an MBean on behalf of a client. Notifications received are queued for the client, which
+ * fetches them with a <code>poll</code> request.
+ *
+ * @author roland
+ * @since 28.09.11
+ */
+public class JmxRegisterNotificationRequest extends JmxObjectNameRequest {
+
+    // Id of the client for which the listener is registered, null if a new client should be created
+    private String clientId;
+
+    // Notification type prefixes to listen to, null for all notifications
+    private List<String> filter;
+
+    /**
+     * Constructor for GET requests. The client and the filter are taken from the
+     * query parameters <code>client</code> and <code>filter</code>, the latter being a
+     * comma separated list of notification types.
+     *
+     * @param pObjectName object name of the MBean emitting notifications
+     * @param pParams optional processing parameters
+     * @throws MalformedObjectNameException if the name is not a proper object name.
+     */
+    JmxRegisterNotificationRequest(String pObjectName, Map<String, String> pParams) throws MalformedObjectNameException {
+        super(RequestType.REGNOTIF, pObjectName, null, pParams);
+        if (pParams != null) {
+            clientId = pParams.get("client");
+            filter = parseFilter(pParams.get("filter"));
+        }
+    }
+
+    /**
+     * Constructor for POST requests. Beside the key <code>mbean</code>, the request map can
+     * contain a <code>client</code> and a <code>filter</code>, which is either a single
+     * notification type or a list of types.
+     *
+     * @param pRequestMap object representation of the request
+     * @param pParams processing parameters
+     * @throws MalformedObjectNameException if the name is not a proper object name.
+     */
+    JmxRegisterNotificationRequest(Map<String, ?> pRequestMap, Map<String, String> pParams) throws MalformedObjectNameException {
+        super(pRequestMap, pParams);
+        clientId = (String) pRequestMap.get("client");
+        filter = parseFilter(pRequestMap.get("filter"));
+    }
+
+    /**
+     * Id of the client
+     *
+     * @return client id or null if a new client should be created
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Notification types to listen to. A notification is forwarded if its type starts
+     * with one of these types.
+     *
+     * @return list of types or null if all notifications should be forwarded
+     */
+    public List<String> getFilter() {
+        return filter;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JSONObject toJSON() {
+        JSONObject ret = super.toJSON();
+        if (clientId != null) {
+            ret.put("client", clientId);
+        }
+        if (filter != null) {
+            JSONArray types = new JSONArray();
+            types.addAll(filter);
+            ret.put("filter", types);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer ret = new StringBuffer("JmxRegisterNotificationRequest[");
+        ret.append("client=").append(clientId)
+           .append(", filter=").append(filter);
+        String baseInfo = getInfo();
+        if (baseInfo != null) {
+            ret.append(", ").append(baseInfo);
+        }
+        ret.append("]");
+        return ret.toString();
+    }
+
+    // =================================================================
+
+    /**
+     * Creator for {@link JmxRegisterNotificationRequest}s
+     *
+     * @return the creator implementation
+     */
+    static RequestCreator<JmxRegisterNotificationRequest> newCreator() {
+        return new RequestCreator<JmxRegisterNotificationRequest>() {
+            /** {@inheritDoc} */
+            public JmxRegisterNotificationRequest create(Stack<String> pStack, Map<String, String> pParams) throws MalformedObjectNameException {
+                return new JmxRegisterNotificationRequest(pStack.pop(), pParams);
+            }
+
+            /** {@inheritDoc} */
+            public JmxRegisterNotificationRequest create(Map<String, ?> requestMap, Map<String, String> pParams)
+                    throws MalformedObjectNameException {
+                return new JmxRegisterNotificationRequest(requestMap,pParams);
+            }
+        };
+    }
+
+    private static List<String> parseFilter(Object pFilter) {
+        if (pFilter == null) {
+            return null;
+        }
+        List<String> ret = new ArrayList<String>();
+        if (pFilter instanceof Collection) {
+            for (Object type : (Collection) pFilter) {
+                ret.add(type.toString());
+            }
+        } else {
+            for (String type : pFilter.toString().split("\\s*,\\s*")) {
+                if (type.length() > 0) {
+                    ret.add(type);
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.request;
+
+import java.util.Map;
+import java.util.Stack;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONObject;
+
+/**
+ * A JMX request for a <code>remnotif</code> operation, which removes a notification listener
+ * registered with a <code>regnotif</code> request.
+ *
+ * @author roland
+ * @since 28.09.11
+ */
+public class JmxRemoveNotificationRequest extends JmxRequest {
+
+    // Client owning the listener
+    private String clientId;
+
+    // Id of the listener registration
+    private String listenerId;
+
+    /**
+     * Constructor for GET requests
+     *
+     * @param pClientId id of the client
+     * @param pListenerId id of the listener as returned when registering
+     * @param pParams optional processing parameters
+     */
+    JmxRemoveNotificationRequest(String pClientId, String pListenerId, Map<String, String> pParams) {
+        super(RequestType.REMNOTIF, null, pParams);
+        clientId = pClientId;
+        listenerId = pListenerId;
+    }
+
+    /**
+     * Constructor for POST requests
+     *
+     * @param pRequestMap object representation of the request with the keys <code>client</code>
+     *        and <code>id</code>
+     * @param pParams processing parameters
+     */
+    JmxRemoveNotificationRequest(Map<String, ?> pRequestMap, Map<String, String> pParams) {
+        super(pRequestMap, pParams);
+        clientId = (String) pRequestMap.get("client");
+        Object id = pRequestMap.get("id");
+        listenerId = id != null ? id.toString() : null;
+    }
+
+    /**
+     * Id of the client
+     *
+     * @return client id
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Id of the listener registration to remove
+     *
+     * @return listener id
+     */
+    public String getListenerId() {
+        return listenerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JSONObject toJSON() {
+        JSONObject ret = super.toJSON();
+        ret.put("client", clientId);
+        ret.put("id", listenerId);
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "JmxRemoveNotificationRequest[client=" + clientId + ", id=" + listenerId + "]";
+    }
+
+    // =================================================================
+
+    /**
+     * Creator for {@link JmxRemoveNotificationRequest}s
+     *
+     * @return the creator implementation
+     */
+    static RequestCreator<JmxRemoveNotificationRequest> newCreator() {
+        return new RequestCreator<JmxRemoveNotificationRequest>() {
+            /** {@inheritDoc} */
+            public JmxRemoveNotificationRequest create(Stack<String> pStack, Map<String, String> pParams) throws MalformedObjectNameException {
+                return new JmxRemoveNotificationRequest(pStack.pop(), popOrNull(pStack), pParams);
+            }
+
+            /** {@inheritDoc} */
+            public JmxRemoveNotificationRequest create(Map<String, ?> requestMap, Map<String, String> pParams)
+                    throws MalformedObjectNameException {
+                return new JmxRemoveNotificationRequest(requestMap,pParams);
+            }
+        };
+    }
+}
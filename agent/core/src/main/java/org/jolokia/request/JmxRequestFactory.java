@@ -76,6 +76,23 @@ public final class JmxRequestFactory {
      *        Parameters: none
      *    <li>Type: <b>search</b> ({@link RequestType#SEARCH}<br/>
      *        Parameters: <code>param1</code> = MBean name pattern
+     *    <li>Type: <b>subscribe</b> ({@link RequestType#SUBSCRIBE}<br/>
+     *        Parameters: same as for <b>read</b>. The query parameters <code>client</code>
+     *        and <code>period</code> select the client and the period of the subscription.
+     *    <li>Type: <b>unsubscribe</b> ({@link RequestType#UNSUBSCRIBE}<br/>
+     *        Parameters: <code>param1</code> = client id, <code>param2</code> = optional
+     *        subscription id
+     *    <li>Type: <b>poll</b> ({@link RequestType#POLL}<br/>
+     *        Parameters: <code>param1</code> = client id. The query parameter <code>timeout</code>
+     *        is the maximum time in seconds to wait for events.
+     *    <li>Type: <b>regnotif</b> ({@link RequestType#REGNOTIF}<br/>
+     *        Parameters: <code>param1</code> = MBean name. The query parameters <code>client</code>
+     *        and <code>filter</code> select the client and the notification types to listen to.
+     *    <li>Type: <b>remnotif</b> ({@link RequestType#REMNOTIF}<br/>
+     *        Parameters: <code>param1</code> = client id, <code>param2</code> = listener id
+     *    <li>Type: <b>sample</b> ({@link RequestType#SAMPLE}<br/>
+     *        Parameters: <code>param1</code> = MBean name, <code>param2</code> = attribute name,
+     *        <code>param3 ... paramN</code> = inner path of the sampled value
      * </ul>
      * @param pPathInfo path info of HTTP request
      * @param pParameterMap HTTP Query parameters
@@ -222,6 +239,12 @@ public final class JmxRequestFactory {
         CREATOR_MAP.put(RequestType.LIST, JmxListRequest.newCreator());
         CREATOR_MAP.put(RequestType.VERSION, JmxVersionRequest.newCreator());
         CREATOR_MAP.put(RequestType.SEARCH, JmxSearchRequest.newCreator());
+        CREATOR_MAP.put(RequestType.SUBSCRIBE, JmxSubscribeRequest.newCreator());
+        CREATOR_MAP.put(RequestType.UNSUBSCRIBE, JmxUnsubscribeRequest.newCreator());
+        CREATOR_MAP.put(RequestType.POLL, JmxPollRequest.newCreator());
+        CREATOR_MAP.put(RequestType.REGNOTIF, JmxRegisterNotificationRequest.newCreator());
+        CREATOR_MAP.put(RequestType.REMNOTIF, JmxRemoveNotificationRequest.newCreator());
+        CREATOR_MAP.put(RequestType.SAMPLE, JmxSampleRequest.newCreator());
     }
 
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.request;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONObject;
+
+/**
+ * A JMX request for a <code>sample</code> operation, which returns aggregated values
+ * of an attribute sampled periodically by the agent.
+ *
+ * @author roland
+ * @since 06.10.11
+ */
+public class JmxSampleRequest extends JmxObjectNameRequest {
+
+    // Name of the sampled attribute
+    private String attributeName;
+
+    /**
+     * Constructor for GET requests
+     *
+     * @param pObjectName object name of the MBean
+     * @param pAttribute name of the sampled attribute
+     * @param pPathParts optional path parts of the sampled value
+     * @param pParams optional processing parameters
+     * @throws MalformedObjectNameException if the name is not a proper object name.
+     */
+    JmxSampleRequest(String pObjectName, String pAttribute, List<String> pPathParts, Map<String, String> pParams)
+            throws MalformedObjectNameException {
+        super(RequestType.SAMPLE, pObjectName, pPathParts, pParams);
+        attributeName = pAttribute;
+    }
+
+    /**
+     * Constructor for POST requests with the keys <code>mbean</code>, <code>attribute</code>
+     * and optionally <code>path</code> and <code>target</code>
+     *
+     * @param pRequestMap object representation of the request
+     * @param pParams processing parameters
+     * @throws MalformedObjectNameException if the name is not a proper object name.
+     */
+    JmxSampleRequest(Map<String, ?> pRequestMap, Map<String, String> pParams) throws MalformedObjectNameException {
+        super(pRequestMap, pParams);
+        attributeName = (String) pRequestMap.get("attribute");
+    }
+
+    /**
+     * Name of the sampled attribute
+     *
+     * @return attribute name
+     */
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JSONObject toJSON() {
+        JSONObject ret = super.toJSON();
+        ret.put("attribute", attributeName);
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer ret = new StringBuffer("JmxSampleRequest[");
+        ret.append("attribute=").append(attributeName);
+        String baseInfo = getInfo();
+        if (baseInfo != null) {
+            ret.append(", ").append(baseInfo);
+        }
+        ret.append("]");
+        return ret.toString();
+    }
+
+    // =================================================================
+
+    /**
+     * Creator for {@link JmxSampleRequest}s
+     *
+     * @return the creator implementation
+     */
+    static RequestCreator<JmxSampleRequest> newCreator() {
+        return new RequestCreator<JmxSampleRequest>() {
+            /** {@inheritDoc} */
+            public JmxSampleRequest create(Stack<String> pStack, Map<String, String> pParams) throws MalformedObjectNameException {
+                return new JmxSampleRequest(
+                        pStack.pop(), // object name
+                        pStack.pop(), // attribute
+                        prepareExtraArgs(pStack), // path
+                        pParams);
+            }
+
+            /** {@inheritDoc} */
+            public JmxSampleRequest create(Map<String, ?> requestMap, Map<String, String> pParams)
+                    throws MalformedObjectNameException {
+                return new JmxSampleRequest(requestMap,pParams);
+            }
+        };
+    }
+}
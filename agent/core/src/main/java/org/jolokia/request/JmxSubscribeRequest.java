@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.request;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONObject;
+
+/**
+ * A JMX request for a <code>subscribe</code> operation, which registers a read request
+ * to be executed periodically by the agent. The value read is pushed to the client
+ * whenever it has changed.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class JmxSubscribeRequest extends JmxRequest {
+
+    // The read request to execute periodically
+    private JmxReadRequest readRequest;
+
+    // Id of the client for which the subscription is done, null if a new client should be created
+    private String clientId;
+
+    // Period in milliseconds, null if the default should be used
+    private Integer period;
+
+    /**
+     * Constructor for GET requests. The client and the period are taken from the
+     * query parameters <code>client</code> and <code>period</code>.
+     *
+     * @param pObjectName object name of MBean to read attributes from
+     * @param pAttribute one or more attributes to read (see {@link JmxReadRequest})
+     * @param pPathParts optional path parts for filtering the value read
+     * @param pParams optional processing parameters
+     * @throws MalformedObjectNameException if the name is not a proper object name.
+     */
+    JmxSubscribeRequest(String pObjectName, String pAttribute, List<String> pPathParts,
+                        Map<String, String> pParams) throws MalformedObjectNameException {
+        super(RequestType.SUBSCRIBE, null, pParams);
+        readRequest = new JmxReadRequest(pObjectName, pAttribute, pPathParts, pParams);
+        if (pParams != null) {
+            clientId = pParams.get("client");
+            period = parsePeriod(pParams.get("period"));
+        }
+    }
+
+    /**
+     * Constructor for POST requests. Beside the keys of a <code>read</code> request, the request
+     * map can contain a <code>client</code> and a <code>period</code>.
+     *
+     * @param pRequestMap object representation of the request
+     * @param pParams processing parameters
+     * @throws MalformedObjectNameException if the name is not a proper object name.
+     */
+    JmxSubscribeRequest(Map<String, ?> pRequestMap, Map<String, String> pParams) throws MalformedObjectNameException {
+        super(pRequestMap, pParams);
+        Map<String, Object> readMap = new HashMap<String, Object>(pRequestMap);
+        readMap.put("type", RequestType.READ.getName());
+        readRequest = new JmxReadRequest(readMap, pParams);
+        clientId = (String) pRequestMap.get("client");
+        period = parsePeriod(pRequestMap.get("period"));
+    }
+
+    /**
+     * Get the read request to be executed periodically
+     *
+     * @return read request
+     */
+    public JmxReadRequest getReadRequest() {
+        return readRequest;
+    }
+
+    /**
+     * Id of the client
+     *
+     * @return client id or null if a new client should be created
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Period in milliseconds between two reads
+     *
+     * @return period or null if none is given
+     */
+    public Integer getPeriod() {
+        return period;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JSONObject toJSON() {
+        JSONObject ret = readRequest.toJSON();
+        ret.put("type", RequestType.SUBSCRIBE.getName());
+        if (clientId != null) {
+            ret.put("client", clientId);
+        }
+        if (period != null) {
+            ret.put("period", period);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer ret = new StringBuffer("JmxSubscribeRequest[");
+        ret.append("client=").append(clientId)
+           .append(", period=").append(period)
+           .append(", read=").append(readRequest)
+           .append("]");
+        return ret.toString();
+    }
+
+    // =================================================================
+
+    /**
+     * Creator for {@link JmxSubscribeRequest}s
+     *
+     * @return the creator implementation
+     */
+    static RequestCreator<JmxSubscribeRequest> newCreator() {
+        return new RequestCreator<JmxSubscribeRequest>() {
+            /** {@inheritDoc} */
+            public JmxSubscribeRequest create(Stack<String> pStack, Map<String, String> pParams) throws MalformedObjectNameException {
+                return new JmxSubscribeRequest(
+                        pStack.pop(),  // object name
+                        popOrNull(pStack), // attribute(s) (can be null)
+                        prepareExtraArgs(pStack), // path
+                        pParams);
+            }
+
+            /** {@inheritDoc} */
+            public JmxSubscribeRequest create(Map<String, ?> requestMap, Map<String, String> pParams)
+                    throws MalformedObjectNameException {
+                return new JmxSubscribeRequest(requestMap,pParams);
+            }
+        };
+    }
+
+    private static Integer parsePeriod(Object pPeriod) {
+        if (pPeriod == null) {
+            return null;
+        }
+        try {
+            int ret = pPeriod instanceof Number ? ((Number) pPeriod).intValue() : Integer.parseInt(pPeriod.toString());
+            if (ret <= 0) {
+                throw new IllegalArgumentException("Period must be positive, not " + pPeriod);
+            }
+            return ret;
+        } catch (NumberFormatException exp) {
+            throw new IllegalArgumentException("Invalid period " + pPeriod,exp);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.request;
+
+import java.util.Map;
+import java.util.Stack;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONObject;
+
+/**
+ * A JMX request for an <code>unsubscribe</code> operation, which removes a single subscription
+ * or a client along with all its subscriptions.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class JmxUnsubscribeRequest extends JmxRequest {
+
+    // Client to unsubscribe
+    private String clientId;
+
+    // Subscription to remove, null if the whole client should be removed
+    private String subscriptionId;
+
+    /**
+     * Constructor for GET requests
+     *
+     * @param pClientId id of the client
+     * @param pSubscriptionId id of the subscription or null if all subscriptions and
+     *        the client itself should be removed
+     * @param pParams optional processing parameters
+     */
+    JmxUnsubscribeRequest(String pClientId, String pSubscriptionId, Map<String, String> pParams) {
+        super(RequestType.UNSUBSCRIBE, null, pParams);
+        clientId = pClientId;
+        subscriptionId = pSubscriptionId;
+    }
+
+    /**
+     * Constructor for POST requests
+     *
+     * @param pRequestMap object representation of the request with the keys <code>client</code>
+     *        and optionally <code>id</code>
+     * @param pParams processing parameters
+     */
+    JmxUnsubscribeRequest(Map<String, ?> pRequestMap, Map<String, String> pParams) {
+        super(pRequestMap, pParams);
+        clientId = (String) pRequestMap.get("client");
+        Object id = pRequestMap.get("id");
+        subscriptionId = id != null ? id.toString() : null;
+    }
+
+    /**
+     * Id of the client
+     *
+     * @return client id
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Id of the subscription to remove
+     *
+     * @return subscription id or null if the client should be removed
+     */
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public JSONObject toJSON() {
+        JSONObject ret = super.toJSON();
+        ret.put("client", clientId);
+        if (subscriptionId != null) {
+            ret.put("id", subscriptionId);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "JmxUnsubscribeRequest[client=" + clientId + ", id=" + subscriptionId + "]";
+    }
+
+    // =================================================================
+
+    /**
+     * Creator for {@link JmxUnsubscribeRequest}s
+     *
+     * @return the creator implementation
+     */
+    static RequestCreator<JmxUnsubscribeRequest> newCreator() {
+        return new RequestCreator<JmxUnsubscribeRequest>() {
+            /** {@inheritDoc} */
+            public JmxUnsubscribeRequest create(Stack<String> pStack, Map<String, String> pParams) throws MalformedObjectNameException {
+                return new JmxUnsubscribeRequest(pStack.pop(), popOrNull(pStack), pParams);
+            }
+
+            /** {@inheritDoc} */
+            public JmxUnsubscribeRequest create(Map<String, ?> requestMap, Map<String, String> pParams)
+                    throws MalformedObjectNameException {
+                return new JmxUnsubscribeRequest(requestMap,pParams);
+            }
+        };
+    }
+}
@@ -88,6 +88,30 @@ public class ProxyTargetConfig {
         return ret;
     }
 
+    /**
+     * Two configurations are equal if they point to the same URL with the same
+     * credentials, so that connections to the target can be shared.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object pOther) {
+        if (this == pOther) {
+            return true;
+        }
+        if (!(pOther instanceof ProxyTargetConfig)) {
+            return false;
+        }
+        ProxyTargetConfig other = (ProxyTargetConfig) pOther;
+        return url.equals(other.url) && (env != null ? env.equals(other.env) : other.env == null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return 31 * url.hashCode() + (env != null ? env.hashCode() : 0);
+    }
+
     @Override
     public String toString() {
         return "TargetConfig[" +
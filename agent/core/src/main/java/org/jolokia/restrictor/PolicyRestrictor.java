@@ -5,6 +5,7 @@ import java.io.InputStream;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -13,6 +14,8 @@ import org.jolokia.util.HttpMethod;
 import org.jolokia.util.RequestType;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -62,8 +65,15 @@ public class PolicyRestrictor implements Restrictor {
             throw new SecurityException("No policy file given");
         }
         try {
-            Document doc =
-                    DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(pInput);
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            // Errors are reported by the exception thrown, not on the console
+            builder.setErrorHandler(new DefaultHandler() {
+                @Override
+                public void fatalError(SAXParseException e) throws SAXException {
+                    throw e;
+                }
+            });
+            Document doc = builder.parse(pInput);
             requestTypeChecker = new RequestTypeChecker(doc);
             httpChecker = new HttpMethodChecker(doc);
             networkChecker = new NetworkChecker(doc);
@@ -0,0 +1,188 @@
+package org.jolokia.restrictor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.jolokia.util.*;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Restrictor based on a policy file which gets reloaded when the file changes.
+ *
+ * The modification time of the policy file is checked periodically by a background thread. If it
+ * has changed, the new policy is parsed into a fresh {@link PolicyRestrictor}, which then replaces
+ * the current one in a single step. Access checks only read the reference to the current policy,
+ * so they never wait for a reload. If the changed policy cannot be read or parsed, the error is
+ * logged once and the previous policy stays active. Loading is retried on every check until it
+ * succeeds, so a policy file which was caught while being written gets picked up even if its
+ * modification time doesn't change anymore.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class ReloadingPolicyRestrictor implements Restrictor {
+
+    // Location of the policy file
+    private final URL url;
+
+    // Where to log reloads and errors
+    private final LogHandler logHandler;
+
+    // The currently active policy, replaced as a whole on reload
+    private volatile PolicyRestrictor policyRestrictor;
+
+    // Modification time of the policy file when it was read successfully the last time.
+    // Only accessed by the reload thread after construction.
+    private long lastModified;
+
+    // Modification time of the policy file for which a failed reload has already been reported,
+    // -1 if the last reload succeeded. Only accessed by the reload thread.
+    private long reportedModified = -1;
+
+    // Executor for checking the policy file
+    private final ScheduledExecutorService reloadExecutor;
+
+    /**
+     * Construct a restrictor reading its policy from the given URL and start watching
+     * this URL for changes
+     *
+     * @param pUrl location of the policy file
+     * @param pInterval interval in seconds for checking whether the policy file has changed
+     * @param pLogHandler log handler used for reporting reloads
+     * @throws IOException if the policy file cannot be read initially
+     * @throws SecurityException if the policy file cannot be parsed initially
+     */
+    public ReloadingPolicyRestrictor(URL pUrl, int pInterval, LogHandler pLogHandler) throws IOException {
+        url = pUrl;
+        logHandler = pLogHandler;
+        load();
+        reloadExecutor = ExecutorUtil.createScheduledExecutor("jolokia-policy-reload-");
+        reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+            /** {@inheritDoc} */
+            public void run() {
+                checkForUpdate();
+            }
+        }, pInterval, pInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop watching the policy file. The policy read last stays active.
+     */
+    public void stop() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Reload the policy file if it has been modified since it was read the last time.
+     * This is called periodically by the background thread.
+     *
+     * @return true if a new policy has been activated
+     */
+    boolean checkForUpdate() {
+        long modified = -1;
+        try {
+            modified = getLastModified();
+            if (modified == lastModified) {
+                return false;
+            }
+            load();
+            reportedModified = -1;
+            logHandler.info("Reloaded access restrictor " + url);
+            return true;
+        } catch (IOException exp) {
+            reportReloadError(modified, exp);
+        } catch (SecurityException exp) {
+            reportReloadError(modified, exp);
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isHttpMethodAllowed(HttpMethod pMethod) {
+        return policyRestrictor.isHttpMethodAllowed(pMethod);
+    }
+
+    /** {@inheritDoc} */
+    public boolean isTypeAllowed(RequestType pType) {
+        return policyRestrictor.isTypeAllowed(pType);
+    }
+
+    /** {@inheritDoc} */
+    public boolean isAttributeReadAllowed(ObjectName pName, String pAttribute) {
+        return policyRestrictor.isAttributeReadAllowed(pName, pAttribute);
+    }
+
+    /** {@inheritDoc} */
+    public boolean isAttributeWriteAllowed(ObjectName pName, String pAttribute) {
+        return policyRestrictor.isAttributeWriteAllowed(pName, pAttribute);
+    }
+
+    /** {@inheritDoc} */
+    public boolean isOperationAllowed(ObjectName pName, String pOperation) {
+        return policyRestrictor.isOperationAllowed(pName, pOperation);
+    }
+
+    /** {@inheritDoc} */
+    public boolean isRemoteAccessAllowed(String... pHostOrAddress) {
+        return policyRestrictor.isRemoteAccessAllowed(pHostOrAddress);
+    }
+
+    // ====================================================================================
+
+    // Read and parse the policy and make it the active one. The modification time is remembered
+    // only if this succeeds, so that a failed load is retried on the next check.
+    private void load() throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        long modified = connection.getLastModified();
+        InputStream is = connection.getInputStream();
+        try {
+            policyRestrictor = new PolicyRestrictor(is);
+        } finally {
+            is.close();
+        }
+        lastModified = modified;
+    }
+
+    // Log a failed reload, but only once for each modification time of the policy file
+    private void reportReloadError(long pModified, Exception pExp) {
+        if (pModified != reportedModified) {
+            reportedModified = pModified;
+            logHandler.error("Cannot reload access restrictor " + url + ", keeping previous policy: " + pExp, pExp);
+        }
+    }
+
+    private long getLastModified() throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        long modified = connection.getLastModified();
+        try {
+            // Fetching the header opens a stream for some protocols
+            connection.getInputStream().close();
+        } catch (IOException exp) {
+            // The policy file has vanished, this gets reported when loading it
+        }
+        return modified;
+    }
+}
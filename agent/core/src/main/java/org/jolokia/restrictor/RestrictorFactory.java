@@ -2,8 +2,11 @@ package org.jolokia.restrictor;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 
+import org.jolokia.util.LogHandler;
+
 /*
  *  Copyright 2009-2010 Roland Huss
  *
@@ -40,17 +43,49 @@ public final class RestrictorFactory {
      * @throws IOException if reading of the policy stream failed
      */
     public static PolicyRestrictor lookupPolicyRestrictor(String pLocation) throws IOException {
-        InputStream is = null;
+        URL url = lookupPolicyUrl(pLocation);
+        if (url == null) {
+            return null;
+        }
+        InputStream is = url.openStream();
+        try {
+            return new PolicyRestrictor(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Lookup a restrictor based on an URL, which optionally gets reloaded when the policy changes
+     *
+     * @param pLocation classpath or URL representing the location of the policy restrictor
+     * @param pReloadInterval interval in seconds for checking the policy for changes. If 0 or less, the
+     *        policy is read only once.
+     * @param pLogHandler log handler for reporting reloads
+     *
+     * @return the restrictor created or <code>null</code> if none could be found.
+     * @throws IOException if reading of the policy stream failed
+     */
+    public static Restrictor lookupPolicyRestrictor(String pLocation, int pReloadInterval, LogHandler pLogHandler)
+            throws IOException {
+        if (pReloadInterval <= 0) {
+            return lookupPolicyRestrictor(pLocation);
+        }
+        URL url = lookupPolicyUrl(pLocation);
+        return url != null ? new ReloadingPolicyRestrictor(url, pReloadInterval, pLogHandler) : null;
+    }
+
+    // Resolve a location to an URL, null if a classpath resource could not be found
+    private static URL lookupPolicyUrl(String pLocation) throws MalformedURLException {
         if (pLocation.startsWith("classpath:")) {
             String path = pLocation.substring("classpath:".length());
-            is =  Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
-            if (is == null) {
-                is = RestrictorFactory.class.getResourceAsStream(path);
+            URL url = Thread.currentThread().getContextClassLoader().getResource(path);
+            if (url == null) {
+                url = RestrictorFactory.class.getResource(path);
             }
+            return url;
         } else {
-            URL url = new URL(pLocation);
-            is = url.openStream();
+            return new URL(pLocation);
         }
-        return is != null ? new PolicyRestrictor(is) : null;
     }
 }
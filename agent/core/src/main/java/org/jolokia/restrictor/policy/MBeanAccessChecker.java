@@ -16,8 +16,7 @@ package org.jolokia.restrictor.policy;
  *  limitations under the License.
  */
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -55,10 +54,22 @@ import org.w3c.dom.*;
  */
 public class MBeanAccessChecker extends AbstractChecker<MBeanAccessChecker.Arg> {
 
+    // Maximum number of access decisions to remember
+    private static final int MAX_CACHED_DECISIONS = 1000;
+
     // Configuration for allowed and denied MBean attributes and operations.
     private MBeanPolicyConfig allow;
     private MBeanPolicyConfig deny;
 
+    // Decisions already made, in access order. Since the configuration never changes,
+    // a decision stays valid forever.
+    private final Map<Arg,Boolean> decisions = new LinkedHashMap<Arg, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Arg, Boolean> pEldest) {
+            return size() > MAX_CACHED_DECISIONS;
+        }
+    };
+
     /**
      * Constructor which extracts the information relevant for this checker from the given document.
      *
@@ -86,6 +97,23 @@ public class MBeanAccessChecker extends AbstractChecker<MBeanAccessChecker.Arg>
     /** {@inheritDoc} */
     @Override
     public boolean check(Arg pArg) {
+        Boolean decision;
+        synchronized (decisions) {
+            decision = decisions.get(pArg);
+        }
+        if (decision == null) {
+            decision = decide(pArg);
+            synchronized (decisions) {
+                decisions.put(pArg,decision);
+            }
+        }
+        return decision;
+    }
+
+    // =======================================================================================
+
+    // Check against the configuration, bypassing the decision cache
+    private boolean decide(Arg pArg) {
         if (pArg.isTypeAllowed()) {
             // Its allowed in general, so we only need to check
             // the denied section, whether its forbidded
@@ -97,8 +125,6 @@ public class MBeanAccessChecker extends AbstractChecker<MBeanAccessChecker.Arg>
         }
     }
 
-    // =======================================================================================
-
     // Extract configuration and put it into a given MBeanPolicyConfig
     private void extractMbeanConfiguration(NodeList pNodes,MBeanPolicyConfig pConfig) throws MalformedObjectNameException {
         for (int i = 0;i< pNodes.getLength();i++) {
@@ -166,24 +192,14 @@ public class MBeanAccessChecker extends AbstractChecker<MBeanAccessChecker.Arg>
     // Lookup methods
     private boolean matches(MBeanPolicyConfig pConfig, Arg pArg) {
 
-        Set<String> values = pConfig.getValues(pArg.getType(),pArg.getName());
+        MBeanPolicyConfig.Values values = pConfig.getValues(pArg.getType(),pArg.getName());
         if (values == null) {
             ObjectName pattern = pConfig.findMatchingMBeanPattern(pArg.getName());
             if (pattern != null) {
                 values = pConfig.getValues(pArg.getType(),pattern);
             }
         }
-        return values != null && (values.contains(pArg.getValue()) || wildcardMatch(values,pArg.getValue()));
-    }
-
-    // Check whether a value matches patterns in pValues
-    private boolean wildcardMatch(Set<String> pValues, String pValue) {
-        for (String pattern : pValues) {
-            if (pattern.contains("*") && pValue.matches(pattern.replaceAll("\\*",".*"))) {
-                return true;
-            }
-        }
-        return false;
+        return values != null && values.matches(pArg.getValue());
     }
 
 
@@ -248,5 +264,31 @@ public class MBeanAccessChecker extends AbstractChecker<MBeanAccessChecker.Arg>
         public String getValue() {
             return value;
         }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (pOther == null || getClass() != pOther.getClass()) {
+                return false;
+            }
+            Arg other = (Arg) pOther;
+            return isTypeAllowed == other.isTypeAllowed &&
+                   type == other.type &&
+                   (name != null ? name.equals(other.name) : other.name == null) &&
+                   (value != null ? value.equals(other.value) : other.value == null);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            int result = isTypeAllowed ? 1 : 0;
+            result = 31 * result + (type != null ? type.hashCode() : 0);
+            result = 31 * result + (name != null ? name.hashCode() : 0);
+            result = 31 * result + (value != null ? value.hashCode() : 0);
+            return result;
+        }
     }
 }
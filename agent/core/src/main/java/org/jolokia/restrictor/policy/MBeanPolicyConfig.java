@@ -1,6 +1,7 @@
 package org.jolokia.restrictor.policy;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 import javax.management.ObjectName;
 
@@ -26,16 +27,26 @@ import org.jolokia.util.RequestType;
  * Class combining various maps for attributes, operations and name patterns. It is used
  * internally by {@libk MBeanAccessChecker} to store the policy configuration.
  *
+ * Everything which can be prepared is done when the configuration is read: Attribute and
+ * operation names containing wildcards are compiled into regular expressions once, and
+ * MBean name patterns are indexed by their domain so that only the patterns of the
+ * MBean's domain (and those with a wildcard domain) need to be tried.
+ *
  * @author roland
  * @since 03.09.11
  */
 
 class MBeanPolicyConfig {
 
-    private Set<ObjectName>             patterns = new HashSet<ObjectName>();
-    private Map<ObjectName,Set<String>> readAttributes = new HashMap<ObjectName, Set<String>>();
-    private Map<ObjectName,Set<String>> writeAttributes = new HashMap<ObjectName, Set<String>>();
-    private Map<ObjectName,Set<String>> operations = new HashMap<ObjectName, Set<String>>();
+    // Patterns with a fixed domain, keyed by domain, in the order in which they were added
+    private Map<String,List<ObjectName>> patternsByDomain = new HashMap<String, List<ObjectName>>();
+
+    // Patterns with a wildcard in their domain
+    private List<ObjectName> domainPatterns = new ArrayList<ObjectName>();
+
+    private Map<ObjectName,Values> readAttributes = new HashMap<ObjectName, Values>();
+    private Map<ObjectName,Values> writeAttributes = new HashMap<ObjectName, Values>();
+    private Map<ObjectName,Values> operations = new HashMap<ObjectName, Values>();
 
     /**
      * Add a object name pattern
@@ -43,7 +54,19 @@ class MBeanPolicyConfig {
      * @param pObjectName pattern to add
      */
     void addPattern(ObjectName pObjectName) {
-        patterns.add(pObjectName);
+        List<ObjectName> patterns;
+        if (pObjectName.isDomainPattern()) {
+            patterns = domainPatterns;
+        } else {
+            patterns = patternsByDomain.get(pObjectName.getDomain());
+            if (patterns == null) {
+                patterns = new ArrayList<ObjectName>();
+                patternsByDomain.put(pObjectName.getDomain(),patterns);
+            }
+        }
+        if (!patterns.contains(pObjectName)) {
+            patterns.add(pObjectName);
+        }
     }
 
     /**
@@ -55,22 +78,22 @@ class MBeanPolicyConfig {
      * @param pOperations operations
      */
     void addValues(ObjectName pOName, Set<String> pReadAttributes, Set<String> pWriteAttributes, Set<String> pOperations) {
-        readAttributes.put(pOName,pReadAttributes);
-        writeAttributes.put(pOName,pWriteAttributes);
-        operations.put(pOName,pOperations);
+        readAttributes.put(pOName,new Values(pReadAttributes));
+        writeAttributes.put(pOName,new Values(pWriteAttributes));
+        operations.put(pOName,new Values(pOperations));
         if (pOName.isPattern()) {
             addPattern(pOName);
         }
     }
 
     /**
-     * Get the set of stored values for a given MBean and type (read/write/exec)
+     * Get the stored values for a given MBean and type (read/write/exec)
      *
      * @param pType request type for which the previously added values should be retrieved.
      * @param pName MBean
-     * @return set of previously added value or <code>null</code> if none has been added for this MBean/type.
+     * @return values previously added or <code>null</code> if none has been added for this MBean/type.
      */
-    Set<String> getValues(RequestType pType, ObjectName pName) {
+    Values getValues(RequestType pType, ObjectName pName) {
         if (RequestType.READ == pType) {
             return readAttributes.get(pName);
         } else if (RequestType.WRITE == pType) {
@@ -84,18 +107,72 @@ class MBeanPolicyConfig {
 
     /**
      * Given a MBean name return a pattern previously added and which matches this MBean name. Note,
-     * that patterns might not overlap since the order in which they are tried is undefined.
+     * that patterns should not overlap since only the first matching pattern is returned. Patterns with a
+     * fixed domain are tried before patterns with a wildcard domain.
      *
      * @param pName name to match against
      * @return the pattern found or <code>null</code> if none has been found.
      */
     ObjectName findMatchingMBeanPattern(ObjectName pName) {
-        // Check all stored patterns for a match and return the pattern if one is found
-        for (ObjectName pattern : patterns) {
+        List<ObjectName> patterns = patternsByDomain.get(pName.getDomain());
+        if (patterns != null) {
+            ObjectName pattern = findMatchingMBeanPattern(patterns, pName);
+            if (pattern != null) {
+                return pattern;
+            }
+        }
+        return findMatchingMBeanPattern(domainPatterns, pName);
+    }
+
+    private ObjectName findMatchingMBeanPattern(List<ObjectName> pPatterns, ObjectName pName) {
+        for (ObjectName pattern : pPatterns) {
             if (pattern.apply(pName)) {
                 return pattern;
             }
         }
         return null;
     }
+
+    // ===========================================================================================
+
+    /**
+     * Attribute or operation names configured for an MBean. Names with a wildcard <code>*</code>
+     * are precompiled into regular expressions.
+     */
+    static final class Values {
+
+        // Plain names
+        private final Set<String> names = new HashSet<String>();
+
+        // Names with wildcards
+        private final List<Pattern> wildcards = new ArrayList<Pattern>();
+
+        private Values(Set<String> pValues) {
+            for (String value : pValues) {
+                if (value.contains("*")) {
+                    wildcards.add(Pattern.compile(value.replaceAll("\\*",".*")));
+                } else {
+                    names.add(value);
+                }
+            }
+        }
+
+        /**
+         * Check whether a name matches one of the configured names
+         *
+         * @param pValue attribute or operation name to check
+         * @return true if it matches
+         */
+        boolean matches(String pValue) {
+            if (names.contains(pValue)) {
+                return true;
+            }
+            for (Pattern wildcard : wildcards) {
+                if (wildcard.matcher(pValue).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -16,18 +16,18 @@ package org.jolokia.restrictor.policy;
  *  limitations under the License.
  */
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Pattern;
-
+import java.util.*;
 
 import org.jolokia.util.IpChecker;
+import org.jolokia.util.SubnetTrie;
 import org.w3c.dom.*;
 
 /**
  * Check whether a host is allowed to access the agent. The restriction
  * can be specified in the policy file with the <code>&lt;remote&gt;</code>
- * tag. Either plain host or subnet (in the CIDR notation) can be specified
+ * tag. Either plain host, IPv4 or IPv6 address or subnet (in the CIDR notation)
+ * can be specified. Addresses and subnets are kept in a {@link SubnetTrie} and
+ * recent decisions are cached.
  * <br/>
  * Example:
  * <pre>
@@ -36,6 +36,7 @@ import org.w3c.dom.*;
  *   &lt;host&gt;10.0.11.125&lt;/host&gt;
  *   &lt;host&gt;11.0.0.0/16&lt;/host&gt;
  *   &lt;host&gt;192.168.15.3/255.255.255.0&lt;/host&gt;
+ *   &lt;host&gt;2001:db8::/32&lt;/host&gt;
  * &lt;/remote&gt;
  * </pre>
  *
@@ -45,12 +46,25 @@ import org.w3c.dom.*;
  */
 public class NetworkChecker extends AbstractChecker<String[]> {
 
+    // Maximum number of decisions to remember
+    private static final int MAX_CACHED_DECISIONS = 1000;
+
     private Set<String> allowedHostsSet;
-    private Set<String> allowedSubnetsSet;
 
-    // Simple patterns, could be mor specific
-    private static final Pattern IP_PATTERN = Pattern.compile("^[\\d.]+$");
-    private static final Pattern SUBNET_PATTERN = Pattern.compile("^[\\d.]+/[\\d.]+$");
+    // Allowed addresses and subnets
+    private SubnetTrie allowedSubnets;
+
+    // IPv4 subnets with a netmask whose bits are not contiguous, these can't be
+    // stored in the trie
+    private Set<String> allowedMaskedSubnetsSet;
+
+    // Decisions for single host names or addresses, most recently used last
+    private final Map<String,Boolean> decisions = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> pEldest) {
+            return size() > MAX_CACHED_DECISIONS;
+        }
+    };
 
     /**
      * Construct this checker from a given document
@@ -66,6 +80,7 @@ public class NetworkChecker extends AbstractChecker<String[]> {
         }
 
         allowedHostsSet = new HashSet<String>();
+        allowedSubnets = new SubnetTrie();
         for (int i = 0;i<nodes.getLength();i++) {
             Node node = nodes.item(i);
             NodeList childs = node.getChildNodes();
@@ -76,13 +91,15 @@ public class NetworkChecker extends AbstractChecker<String[]> {
                 }
                 assertNodeName(hostNode,"host");
                 String host = hostNode.getTextContent().trim().toLowerCase();
-                if (SUBNET_PATTERN.matcher(host).matches()) {
-                    if (allowedSubnetsSet == null) {
-                        allowedSubnetsSet = new HashSet<String>();
-                    }
-                    allowedSubnetsSet.add(host);
+                if (host.indexOf('/') != -1) {
+                    addSubnet(host);
                 } else {
                     allowedHostsSet.add(host);
+                    byte[] address = IpChecker.parseAddress(host);
+                    if (address != null) {
+                        // Matches other notations of the same address, too
+                        allowedSubnets.add(address, address.length * 8);
+                    }
                 }
             }
         }
@@ -100,17 +117,64 @@ public class NetworkChecker extends AbstractChecker<String[]> {
             return true;
         }
         for (String addr : pHostOrAddresses) {
-            if (allowedHostsSet.contains(addr)) {
+            if (addr != null && isAllowed(addr)) {
                 return true;
             }
-            if (allowedSubnetsSet != null && IP_PATTERN.matcher(addr).matches()) {
-                for (String subnet : allowedSubnetsSet) {
-                    if (IpChecker.matches(subnet, addr)) {
-                        return true;
-                    }
+        }
+        return false;
+    }
+
+    private boolean isAllowed(String pHostOrAddress) {
+        Boolean decision;
+        synchronized (decisions) {
+            decision = decisions.get(pHostOrAddress);
+        }
+        if (decision == null) {
+            decision = allowedHostsSet.contains(pHostOrAddress) || matchesSubnet(pHostOrAddress);
+            synchronized (decisions) {
+                decisions.put(pHostOrAddress,decision);
+            }
+        }
+        return decision;
+    }
+
+    private boolean matchesSubnet(String pHostOrAddress) {
+        byte[] address = IpChecker.parseAddress(pHostOrAddress);
+        if (address == null) {
+            return false;
+        }
+        if (allowedSubnets.contains(address)) {
+            return true;
+        }
+        if (allowedMaskedSubnetsSet != null && address.length == 4) {
+            for (String subnet : allowedMaskedSubnetsSet) {
+                if (IpChecker.matches(subnet, pHostOrAddress)) {
+                    return true;
                 }
             }
         }
         return false;
     }
+
+    private void addSubnet(String pSubnet) {
+        String[] parts = pSubnet.split("/",2);
+        byte[] address = IpChecker.parseAddress(parts[0]);
+        if (address == null) {
+            throw new SecurityException("Invalid subnet " + pSubnet + " given in <remote>");
+        }
+        int prefixLength;
+        try {
+            prefixLength = IpChecker.getPrefixLength(parts[1], address.length);
+        } catch (IllegalArgumentException exp) {
+            throw new SecurityException("Invalid subnet " + pSubnet + " given in <remote>: " + exp.getMessage());
+        }
+        if (prefixLength >= 0) {
+            allowedSubnets.add(address, prefixLength);
+        } else {
+            if (allowedMaskedSubnetsSet == null) {
+                allowedMaskedSubnetsSet = new HashSet<String>();
+            }
+            allowedMaskedSubnetsSet.add(pSubnet);
+        }
+    }
 }
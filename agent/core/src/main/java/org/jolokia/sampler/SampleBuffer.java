@@ -0,0 +1,140 @@
+package org.jolokia.sampler;
+
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Ring buffer holding the samples of a single value. When full, a new sample
+ * overwrites the oldest one.
+ *
+ * @author roland
+ * @since 06.10.11
+ */
+final class SampleBuffer {
+
+    // Time of each sample in milliseconds
+    private final long[] times;
+
+    // Sampled values
+    private final double[] values;
+
+    // Index of the slot for the next sample
+    private int next;
+
+    // Number of samples stored
+    private int size;
+
+    // Error of the last sample, null if it was successful
+    private String lastError;
+
+    /**
+     * Constructor
+     *
+     * @param pCapacity maximum number of samples to keep
+     */
+    SampleBuffer(int pCapacity) {
+        times = new long[pCapacity];
+        values = new double[pCapacity];
+    }
+
+    /**
+     * Add a sample
+     *
+     * @param pTime time of the sample in milliseconds
+     * @param pValue value sampled
+     */
+    synchronized void add(long pTime, double pValue) {
+        times[next] = pTime;
+        values[next] = pValue;
+        next = (next + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+        lastError = null;
+    }
+
+    /**
+     * Remember that sampling failed
+     *
+     * @param pError error message
+     */
+    synchronized void setError(String pError) {
+        lastError = pError;
+    }
+
+    /**
+     * Get the error of the last sample
+     *
+     * @return error message or null if the last sample was successful
+     */
+    synchronized String getError() {
+        return lastError;
+    }
+
+    /**
+     * Aggregate the samples taken within the given window. The result contains the number of
+     * samples (<code>count</code>) and, if there is at least one, <code>min</code>, <code>max</code>,
+     * <code>avg</code> and <code>last</code>. If there are at least two samples, the average change
+     * per second between the first and the last sample is returned as <code>rate</code>.
+     *
+     * @param pNow current time in milliseconds
+     * @param pWindow length of the window in milliseconds
+     * @return aggregated values
+     */
+    synchronized JSONObject aggregate(long pNow, long pWindow) {
+        JSONObject ret = new JSONObject();
+        long start = pNow - pWindow;
+        int count = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        double last = 0;
+        double first = 0;
+        long lastTime = 0;
+        long firstTime = 0;
+        // Walk backwards from the newest sample
+        for (int i = 0; i < size; i++) {
+            int idx = (next - 1 - i + times.length) % times.length;
+            if (times[idx] < start) {
+                break;
+            }
+            double value = values[idx];
+            if (count == 0) {
+                last = value;
+                lastTime = times[idx];
+            }
+            first = value;
+            firstTime = times[idx];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+        ret.put("count", count);
+        if (count > 0) {
+            ret.put("min", min);
+            ret.put("max", max);
+            ret.put("avg", sum / count);
+            ret.put("last", last);
+        }
+        if (count > 1 && lastTime > firstTime) {
+            ret.put("rate", (last - first) * 1000 / (lastTime - firstTime));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,238 @@
+package org.jolokia.sampler;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.backend.BackendManager;
+import org.jolokia.history.HistoryKey;
+import org.jolokia.request.*;
+import org.jolokia.restrictor.Restrictor;
+import org.jolokia.util.*;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Sampler which reads configured numeric attributes at a fixed rate, independent of any client
+ * requests. The samples are kept in a ring buffer per attribute, which covers the largest
+ * aggregation window. A <code>sample</code> request returns the minimum, maximum, average,
+ * last value and rate of change over the last 1, 5 and 15 minutes, so that any number of
+ * clients can share the cost of sampling.
+ *
+ * Attributes are configured like the history via the {@link org.jolokia.mbean.ConfigMBean}. The
+ * reads are done through the {@link BackendManager}, so the same restrictions apply as for an
+ * ordinary read request. The samples are not recorded in the history, though.
+ *
+ * @author roland
+ * @since 06.10.11
+ */
+public class Sampler {
+
+    // Names and lengths in seconds of the aggregation windows
+    private static final String[] WINDOW_NAMES = { "1m", "5m", "15m" };
+    private static final int[] WINDOWS = { 60, 300, 900 };
+
+    // Backend used for reading the values
+    private final BackendManager backendManager;
+
+    // Restrictor for checking whether sample requests are allowed
+    private final Restrictor restrictor;
+
+    // Sampling interval in seconds
+    private final int interval;
+
+    // Maximum number of sampled attributes
+    private final int maxAttributes;
+
+    // Sampled attributes
+    private final Map<HistoryKey, SampledAttribute> attributes = new ConcurrentHashMap<HistoryKey, SampledAttribute>();
+
+    // Executor for sampling, created when the first attribute is configured
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor
+     *
+     * @param pBackendManager backend used for reading the values
+     * @param pRestrictor restrictor for checking access
+     * @param pConfig configuration
+     */
+    public Sampler(BackendManager pBackendManager, Restrictor pRestrictor, Map<ConfigKey, String> pConfig) {
+        backendManager = pBackendManager;
+        restrictor = pRestrictor;
+        interval = Math.max(1, ConfigKey.SAMPLER_INTERVAL.getIntValue(pConfig));
+        maxAttributes = ConfigKey.SAMPLER_MAX_ATTRIBUTES.getIntValue(pConfig);
+    }
+
+    /**
+     * Switch sampling on or off for an attribute
+     *
+     * @param pMBean MBean name
+     * @param pAttribute attribute name
+     * @param pPath optional inner path of a numeric value within the attribute
+     * @param pTarget optional proxy target URL
+     * @param pEnabled whether to sample this attribute
+     * @throws MalformedObjectNameException if the MBean name is invalid
+     */
+    public synchronized void configure(String pMBean, String pAttribute, String pPath, String pTarget, boolean pEnabled)
+            throws MalformedObjectNameException {
+        HistoryKey key = new HistoryKey(pMBean, pAttribute, pPath, pTarget);
+        if (key.isMBeanPattern()) {
+            throw new IllegalArgumentException("Cannot sample MBean pattern " + pMBean);
+        }
+        if (!pEnabled) {
+            attributes.remove(key);
+            return;
+        }
+        if (attributes.containsKey(key)) {
+            return;
+        }
+        if (attributes.size() >= maxAttributes) {
+            throw new IllegalArgumentException("Maximum number of " + maxAttributes + " sampled attributes reached");
+        }
+        Map<String, Object> readMap = new HashMap<String, Object>();
+        readMap.put("type", RequestType.READ.getName());
+        readMap.put("mbean", pMBean);
+        readMap.put("attribute", pAttribute);
+        if (pPath != null) {
+            readMap.put("path", pPath);
+        }
+        if (pTarget != null) {
+            Map<String, Object> target = new HashMap<String, Object>();
+            target.put("url", pTarget);
+            readMap.put("target", target);
+        }
+        JmxReadRequest request = JmxRequestFactory.createPostRequest(readMap, null);
+        int capacity = WINDOWS[WINDOWS.length - 1] / interval + 1;
+        attributes.put(key, new SampledAttribute(request, new SampleBuffer(capacity)));
+        startScheduler();
+    }
+
+    /**
+     * Stop sampling of all attributes and remove all samples
+     */
+    public void reset() {
+        attributes.clear();
+    }
+
+    /**
+     * Check whether the given request is handled by this sampler
+     *
+     * @param pJmxReq request to check
+     * @return true if this is a <code>sample</code> request
+     */
+    public boolean canHandle(JmxRequest pJmxReq) {
+        return pJmxReq.getType() == RequestType.SAMPLE;
+    }
+
+    /**
+     * Get the aggregated samples of an attribute
+     *
+     * @param pJmxReq <code>sample</code> request
+     * @return the answer with the keys <code>value</code> and <code>request</code>
+     */
+    public JSONObject handleRequest(JmxSampleRequest pJmxReq) {
+        if (!restrictor.isTypeAllowed(RequestType.SAMPLE)) {
+            throw new SecurityException("Type " + RequestType.SAMPLE + " is not allowed");
+        }
+        if (!restrictor.isHttpMethodAllowed(pJmxReq.getHttpMethod())) {
+            throw new SecurityException("HTTP method " + pJmxReq.getHttpMethod() + " is not allowed");
+        }
+        HistoryKey key;
+        try {
+            key = new HistoryKey(pJmxReq.getObjectNameAsString(), pJmxReq.getAttributeName(), pJmxReq.getPath(),
+                                 pJmxReq.getTargetConfig() != null ? pJmxReq.getTargetConfig().getUrl() : null);
+        } catch (MalformedObjectNameException exp) {
+            // Cannot happen, since the name has already been parsed by the request
+            throw new IllegalArgumentException("Invalid object name. " + exp.getMessage(),exp);
+        }
+        SampledAttribute attribute = attributes.get(key);
+        if (attribute == null) {
+            throw new IllegalArgumentException("Attribute " + pJmxReq.getAttributeName() + " of " +
+                                               pJmxReq.getObjectNameAsString() + " is not sampled");
+        }
+        long now = System.currentTimeMillis();
+        JSONObject value = new JSONObject();
+        value.put("interval", interval);
+        for (int i = 0; i < WINDOWS.length; i++) {
+            value.put(WINDOW_NAMES[i], attribute.buffer.aggregate(now, WINDOWS[i] * 1000L));
+        }
+        String error = attribute.buffer.getError();
+        if (error != null) {
+            value.put("error", error);
+        }
+        JSONObject json = new JSONObject();
+        json.put("value", value);
+        json.put("request", pJmxReq.toJSON());
+        return json;
+    }
+
+    /**
+     * Stop sampling
+     */
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        attributes.clear();
+    }
+
+    /**
+     * Take a sample of every configured attribute
+     */
+    void sampleAll() {
+        for (SampledAttribute attribute : attributes.values()) {
+            try {
+                Object value = backendManager.handleInternalRequest(attribute.request).get("value");
+                if (value instanceof Number) {
+                    attribute.buffer.add(System.currentTimeMillis(), ((Number) value).doubleValue());
+                } else {
+                    attribute.buffer.setError("Value " + value + " is not a number");
+                }
+            } catch (Exception exp) {
+                attribute.buffer.setError(exp.getMessage() != null ? exp.getMessage() : exp.getClass().getName());
+            }
+        }
+    }
+
+    // ===========================================================================================
+
+    private void startScheduler() {
+        if (scheduler == null) {
+            scheduler = ExecutorUtil.createScheduledExecutor("jolokia-sampler-");
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    sampleAll();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    // An attribute's read request along with its samples
+    private static final class SampledAttribute {
+        private final JmxReadRequest request;
+        private final SampleBuffer buffer;
+
+        private SampledAttribute(JmxReadRequest pRequest, SampleBuffer pBuffer) {
+            request = pRequest;
+            buffer = pBuffer;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.jolokia.subscription;
+
+import java.util.*;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * A client of the subscription subsystem. It holds the client's subscriptions and a bounded
+ * queue of events which have not yet been fetched. If the queue is full, the oldest event
+ * is dropped and counted.
+ *
+ * All state is guarded by the client's monitor, which is also used for waking up a waiting
+ * poll request when a new event arrives.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+final class Client {
+
+    // Unique id of this client
+    private final String id;
+
+    // Maximum number of events to keep
+    private final int maxEvents;
+
+    // Maximum number of subscriptions
+    private final int maxSubscriptions;
+
+    // Events not yet fetched, oldest first
+    private final LinkedList<JSONObject> events = new LinkedList<JSONObject>();
+
+    // Number of events dropped since the last fetch
+    private long dropped;
+
+    // Subscriptions by id
+    private final Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+
+    // Counter for subscription ids
+    private int subscriptionCounter;
+
+    // Time in milliseconds when this client has been seen the last time
+    private long lastAccess;
+
+    // Number of poll requests currently waiting for events
+    private int waiting;
+
+    // Set when the client has been removed
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param pId id of the client
+     * @param pMaxEvents maximum number of events to keep
+     * @param pMaxSubscriptions maximum number of subscriptions
+     */
+    Client(String pId, int pMaxEvents, int pMaxSubscriptions) {
+        id = pId;
+        maxEvents = pMaxEvents;
+        maxSubscriptions = pMaxSubscriptions;
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the id of this client
+     *
+     * @return client id
+     */
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Add a subscription and assign an id to it
+     *
+     * @param pSubscription subscription to add
+     * @return the id of the subscription
+     * @throws IllegalArgumentException if the client has been removed in the meantime or if it
+     *         has already the maximum number of subscriptions
+     */
+    synchronized String addSubscription(Subscription pSubscription) {
+        if (closed) {
+            throw new IllegalArgumentException("Unknown client " + id);
+        }
+        if (subscriptions.size() >= maxSubscriptions) {
+            throw new IllegalArgumentException("Maximum number of " + maxSubscriptions +
+                                               " subscriptions reached for client " + id);
+        }
+        String subscriptionId = Integer.toString(++subscriptionCounter);
+        subscriptions.put(subscriptionId, pSubscription);
+        return subscriptionId;
+    }
+
+    /**
+     * Remove a subscription
+     *
+     * @param pSubscriptionId id of the subscription
+     * @return the subscription removed or null if there is none with this id
+     */
+    synchronized Subscription removeSubscription(String pSubscriptionId) {
+        return subscriptions.remove(pSubscriptionId);
+    }
+
+    /**
+     * Remove all subscriptions, wake up waiting poll requests and refuse further events
+     *
+     * @return the subscriptions removed
+     */
+    synchronized Collection<Subscription> close() {
+        closed = true;
+        List<Subscription> ret = new ArrayList<Subscription>(subscriptions.values());
+        subscriptions.clear();
+        events.clear();
+        notifyAll();
+        return ret;
+    }
+
+    /**
+     * Add an event. The oldest event is dropped if the maximum number of events is reached.
+     *
+     * @param pEvent event to add
+     */
+    synchronized void addEvent(JSONObject pEvent) {
+        if (closed) {
+            return;
+        }
+        if (events.size() >= maxEvents) {
+            events.removeFirst();
+            dropped++;
+        }
+        events.add(pEvent);
+        notifyAll();
+    }
+
+    /**
+     * Fetch all events, waiting at most the given time if there are none. Fetched events
+     * are removed from this client.
+     *
+     * @param pTimeout maximum time in milliseconds to wait for an event, 0 for not waiting at all
+     * @return the events fetched along with the number of dropped events
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized JSONObject fetchEvents(long pTimeout) throws InterruptedException {
+        touch();
+        waiting++;
+        try {
+            long deadline = System.currentTimeMillis() + pTimeout;
+            long remaining = pTimeout;
+            while (events.isEmpty() && !closed && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        } finally {
+            waiting--;
+            touch();
+        }
+        JSONObject ret = new JSONObject();
+        JSONArray fetched = new JSONArray();
+        fetched.addAll(events);
+        events.clear();
+        ret.put("client", id);
+        ret.put("events", fetched);
+        ret.put("dropped", dropped);
+        dropped = 0;
+        return ret;
+    }
+
+    /**
+     * Remember that the client has been seen
+     */
+    synchronized void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Check whether this client has neither been seen nor waited for events since the given time
+     *
+     * @param pTime time in milliseconds
+     * @return true if the client has been idle since then
+     */
+    synchronized boolean isIdleSince(long pTime) {
+        return waiting == 0 && lastAccess < pTime;
+    }
+}
@@ -0,0 +1,108 @@
+package org.jolokia.subscription;
+
+import java.util.List;
+
+import javax.management.*;
+
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * A notification listener registered on behalf of a client. Received notifications are queued
+ * as events for the client without any conversion, since the listener is called by the thread
+ * emitting the notification. They are converted to JSON when the client fetches them.
+ *
+ * @author roland
+ * @since 28.09.11
+ */
+final class NotificationSubscription extends Subscription implements NotificationListener {
+
+    // Server on which the listener is registered
+    private final MBeanServer server;
+
+    // MBean emitting the notifications
+    private final ObjectName name;
+
+    // Filter for the notification types, null if all notifications are forwarded
+    private final NotificationFilterSupport filter;
+
+    // Client receiving the notifications and the id of this subscription. Set when registering.
+    private volatile Client client;
+    private volatile String id;
+
+    // Set when the subscription has been cancelled. Guarded by 'this'.
+    private boolean cancelled;
+
+    /**
+     * Constructor
+     *
+     * @param pServer server holding the MBean
+     * @param pName name of the MBean emitting the notifications
+     * @param pTypes notification type prefixes to forward or null for forwarding all notifications
+     */
+    NotificationSubscription(MBeanServer pServer, ObjectName pName, List<String> pTypes) {
+        server = pServer;
+        name = pName;
+        if (pTypes != null) {
+            filter = new NotificationFilterSupport();
+            for (String type : pTypes) {
+                filter.enableType(type);
+            }
+        } else {
+            filter = null;
+        }
+    }
+
+    /**
+     * Add this listener to the MBean
+     *
+     * @param pClient client to forward notifications to
+     * @param pId id of this subscription
+     * @throws InstanceNotFoundException if the MBean has been unregistered in the meantime
+     */
+    synchronized void register(Client pClient, String pId) throws InstanceNotFoundException {
+        client = pClient;
+        id = pId;
+        // Removed already while subscribing
+        if (!cancelled) {
+            server.addNotificationListener(name, this, filter, null);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    synchronized void cancel() {
+        cancelled = true;
+        try {
+            server.removeNotificationListener(name, this, filter, null);
+        } catch (InstanceNotFoundException exp) {
+            // MBean is already gone, and so is the listener
+        } catch (ListenerNotFoundException exp) {
+            // Never registered or already removed
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void handleNotification(Notification pNotification, Object pHandback) {
+        JSONObject event = new JSONObject();
+        event.put("id", id);
+        event.put("notification", pNotification);
+        event.put("timestamp", System.currentTimeMillis() / 1000);
+        client.addEvent(event);
+    }
+}
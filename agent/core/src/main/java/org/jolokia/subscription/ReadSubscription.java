@@ -0,0 +1,140 @@
+package org.jolokia.subscription;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.jolokia.request.JmxReadRequest;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * A subscription for a read request which is executed periodically. It remembers the outcome of the
+ * last execution so that an event is only created when the value or the error has changed.
+ *
+ * The result is only accessed by the thread executing the read, the scheduled execution
+ * doesn't run concurrently with itself.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+final class ReadSubscription extends Subscription {
+
+    // Request to execute
+    private final JmxReadRequest request;
+
+    // Handle of the periodic execution, null if not scheduled yet. Guarded by 'this'.
+    private ScheduledFuture<?> future;
+
+    // Set when the subscription has been cancelled. Guarded by 'this'.
+    private boolean cancelled;
+
+    // Value read the last time
+    private Object lastValue;
+
+    // Error message of the last read, null if it was successful
+    private String lastError;
+
+    /**
+     * Constructor
+     *
+     * @param pRequest read request to execute
+     * @param pInitialValue value already read, which is not reported as change
+     */
+    ReadSubscription(JmxReadRequest pRequest, Object pInitialValue) {
+        request = pRequest;
+        lastValue = pInitialValue;
+    }
+
+    /**
+     * Get the read request
+     *
+     * @return request to execute
+     */
+    JmxReadRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Remember the result of a successful read
+     *
+     * @param pValue value read
+     * @return true if the value differs from the last outcome
+     */
+    boolean updateValue(Object pValue) {
+        boolean changed = lastError != null || (lastValue == null ? pValue != null : !lastValue.equals(pValue));
+        lastValue = pValue;
+        lastError = null;
+        return changed;
+    }
+
+    /**
+     * Remember the error of a failed read
+     *
+     * @param pError error message
+     * @return true if the error differs from the last outcome
+     */
+    boolean updateError(String pError) {
+        boolean changed = !pError.equals(lastError);
+        lastValue = null;
+        lastError = pError;
+        return changed;
+    }
+
+    /**
+     * Set the handle of the periodic execution. If the subscription has already been cancelled
+     * (e.g. because its client expired while subscribing), the execution is stopped right away.
+     *
+     * @param pFuture handle
+     */
+    synchronized void setFuture(ScheduledFuture<?> pFuture) {
+        future = pFuture;
+        if (cancelled) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Stop the periodic execution
+     */
+    @Override
+    synchronized void cancel() {
+        cancelled = true;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Create an event for the client
+     *
+     * @param pId id of this subscription
+     * @param pValue value read or null
+     * @param pError error occurred or null
+     * @return the event
+     */
+    static JSONObject createEvent(String pId, Object pValue, String pError) {
+        JSONObject event = new JSONObject();
+        event.put("id", pId);
+        if (pError != null) {
+            event.put("error", pError);
+        } else {
+            event.put("value", pValue);
+        }
+        event.put("timestamp", System.currentTimeMillis() / 1000);
+        return event;
+    }
+}
@@ -0,0 +1,33 @@
+package org.jolokia.subscription;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Something a client has subscribed to and which creates events for this client, either
+ * a periodically executed read request or a JMX notification listener.
+ *
+ * @author roland
+ * @since 28.09.11
+ */
+abstract class Subscription {
+
+    /**
+     * Stop creating events for the client. Called when the subscription or
+     * the client has been removed.
+     */
+    abstract void cancel();
+}
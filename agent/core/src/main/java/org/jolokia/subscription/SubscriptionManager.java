@@ -0,0 +1,411 @@
+package org.jolokia.subscription;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+import org.jolokia.backend.BackendManager;
+import org.jolokia.converter.Converters;
+import org.jolokia.request.*;
+import org.jolokia.restrictor.Restrictor;
+import org.jolokia.util.*;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Manager for subscriptions to attribute values and JMX notifications. A client subscribes with
+ * a read request, which is then executed periodically by the agent. Whenever the value read (or
+ * the error) changes, an event is queued for the client. Likewise, a client can register a
+ * notification listener on a local MBean, which queues every notification received as event.
+ * The client fetches its events with a <code>poll</code> request. A poll request waits for a
+ * limited time if there are no events yet, so that a client gets changes as soon as they are
+ * detected without hammering the agent with requests.
+ *
+ * The periodic reads are done through the {@link BackendManager}, so the same restrictions apply
+ * as for an ordinary read request. They are not recorded in the history, though. Clients which haven't been seen for some time are removed
+ * along with their subscriptions and notification listeners.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public class SubscriptionManager {
+
+    // Backend used for executing the read requests
+    private final BackendManager backendManager;
+
+    // Converters used for serializing notifications
+    private final Converters converters;
+
+    // Local MBeanServers on which notification listeners are registered
+    private final Set<MBeanServer> mBeanServers;
+
+    // Restrictor for checking whether subscriptions are allowed at all
+    private final Restrictor restrictor;
+
+    // Maximum number of clients, 0 if subscriptions are switched off
+    private final int maxClients;
+
+    // Maximum number of events kept per client
+    private final int maxEvents;
+
+    // Maximum number of subscriptions per client
+    private final int maxSubscriptions;
+
+    // Number of threads for the periodic reads
+    private final int nrThreads;
+
+    // Minimum period between two reads in milliseconds
+    private final int minPeriod;
+
+    // Time in milliseconds after which an idle client is removed
+    private final long clientTimeout;
+
+    // Maximum time in seconds a poll request waits for events
+    private final int maxPollTimeout;
+
+    // All known clients
+    private final Map<String, Client> clients = new ConcurrentHashMap<String, Client>();
+
+    // Executor for the periodic reads and for removing idle clients. Created lazily when
+    // the first client is created. A slow read blocks only one of its threads.
+    private ScheduledExecutorService scheduler;
+
+    // Set when the manager is shut down, no executor is created afterwards
+    private boolean destroyed;
+
+    /**
+     * Constructor
+     *
+     * @param pBackendManager backend manager used for reading the values
+     * @param pConverters converters for serializing notifications
+     * @param pRestrictor restrictor for checking access
+     * @param pMBeanServers local MBeanServers for registering notification listeners
+     * @param pConfig configuration
+     */
+    public SubscriptionManager(BackendManager pBackendManager, Converters pConverters, Restrictor pRestrictor,
+                               Set<MBeanServer> pMBeanServers, Map<ConfigKey, String> pConfig) {
+        backendManager = pBackendManager;
+        converters = pConverters;
+        mBeanServers = pMBeanServers;
+        restrictor = pRestrictor;
+        maxClients = ConfigKey.SUBSCRIPTION_MAX_CLIENTS.getIntValue(pConfig);
+        maxEvents = Math.max(1, ConfigKey.SUBSCRIPTION_MAX_EVENTS.getIntValue(pConfig));
+        maxSubscriptions = Math.max(1, ConfigKey.SUBSCRIPTION_MAX_PER_CLIENT.getIntValue(pConfig));
+        nrThreads = Math.max(1, ConfigKey.SUBSCRIPTION_THREADS.getIntValue(pConfig));
+        minPeriod = Math.max(1, ConfigKey.SUBSCRIPTION_MIN_PERIOD.getIntValue(pConfig));
+        clientTimeout = Math.max(1, ConfigKey.SUBSCRIPTION_CLIENT_TIMEOUT.getIntValue(pConfig)) * 1000L;
+        maxPollTimeout = Math.max(0, ConfigKey.POLL_MAX_TIMEOUT.getIntValue(pConfig));
+    }
+
+    /**
+     * Check whether the given request is handled by this manager
+     *
+     * @param pJmxReq request to check
+     * @return true if this is a <code>subscribe</code>, <code>unsubscribe</code>, <code>poll</code>,
+     *         <code>regnotif</code> or <code>remnotif</code> request
+     */
+    public boolean canHandle(JmxRequest pJmxReq) {
+        RequestType type = pJmxReq.getType();
+        return type == RequestType.SUBSCRIBE || type == RequestType.UNSUBSCRIBE || type == RequestType.POLL ||
+               type == RequestType.REGNOTIF || type == RequestType.REMNOTIF;
+    }
+
+    /**
+     * Handle a <code>subscribe</code>, <code>unsubscribe</code>, <code>poll</code>, <code>regnotif</code>
+     * or <code>remnotif</code> request.
+     *
+     * @param pJmxReq request to handle
+     * @return the answer with the keys <code>value</code> and <code>request</code>
+     * @throws InstanceNotFoundException if the initial read of a subscription fails or if the MBean
+     *         for a notification listener doesn't exist
+     * @throws AttributeNotFoundException if the initial read of a subscription fails
+     * @throws ReflectionException if the initial read of a subscription fails
+     * @throws MBeanException if the initial read of a subscription fails
+     * @throws IOException if the initial read of a subscription fails
+     */
+    public JSONObject handleRequest(JmxRequest pJmxReq)
+            throws InstanceNotFoundException, AttributeNotFoundException, ReflectionException, MBeanException, IOException {
+        if (maxClients <= 0) {
+            throw new UnsupportedOperationException("Subscriptions are switched off");
+        }
+        RequestType type = pJmxReq.getType();
+        if (!restrictor.isTypeAllowed(type)) {
+            throw new SecurityException("Type " + type + " is not allowed");
+        }
+        if (!restrictor.isHttpMethodAllowed(pJmxReq.getHttpMethod())) {
+            throw new SecurityException("HTTP method " + pJmxReq.getHttpMethod() + " is not allowed");
+        }
+
+        Object value;
+        if (type == RequestType.SUBSCRIBE) {
+            value = subscribe((JmxSubscribeRequest) pJmxReq);
+        } else if (type == RequestType.UNSUBSCRIBE) {
+            value = unsubscribe((JmxUnsubscribeRequest) pJmxReq);
+        } else if (type == RequestType.REGNOTIF) {
+            value = addNotificationListener((JmxRegisterNotificationRequest) pJmxReq);
+        } else if (type == RequestType.REMNOTIF) {
+            JmxRemoveNotificationRequest request = (JmxRemoveNotificationRequest) pJmxReq;
+            if (request.getListenerId() == null) {
+                throw new IllegalArgumentException("No listener id given");
+            }
+            removeSubscription(getClient(request.getClientId()), request.getListenerId());
+            value = null;
+        } else {
+            value = poll((JmxPollRequest) pJmxReq);
+        }
+        JSONObject json = new JSONObject();
+        json.put("value", value);
+        json.put("request", pJmxReq.toJSON());
+        return json;
+    }
+
+    /**
+     * Stop all periodic reads, remove all clients and wake up waiting poll requests
+     */
+    public void destroy() {
+        synchronized (this) {
+            destroyed = true;
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        for (String id : new ArrayList<String>(clients.keySet())) {
+            removeClient(id);
+        }
+    }
+
+    /**
+     * Get the number of clients currently known
+     *
+     * @return number of clients
+     */
+    public int getNrOfClients() {
+        return clients.size();
+    }
+
+    // ===========================================================================================
+
+    private JSONObject subscribe(JmxSubscribeRequest pRequest)
+            throws InstanceNotFoundException, AttributeNotFoundException, ReflectionException, MBeanException, IOException {
+        JmxReadRequest readRequest = pRequest.getReadRequest();
+
+        // Initial read, which also verifies that the value can be read at all
+        Object initialValue = backendManager.handleInternalRequest(readRequest).get("value");
+
+        ScheduledExecutorService executor = getScheduler();
+        Client client = pRequest.getClientId() != null ? getClient(pRequest.getClientId()) : createClient();
+        final ReadSubscription subscription = new ReadSubscription(readRequest, initialValue);
+        final String subscriptionId = client.addSubscription(subscription);
+
+        int period = pRequest.getPeriod() != null ? Math.max(pRequest.getPeriod(), minPeriod) : minPeriod;
+        final Client target = client;
+        subscription.setFuture(executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sample(target, subscriptionId, subscription);
+            }
+        }, period, period, TimeUnit.MILLISECONDS));
+
+        JSONObject ret = new JSONObject();
+        ret.put("client", client.getId());
+        ret.put("id", subscriptionId);
+        ret.put("period", period);
+        ret.put("value", initialValue);
+        return ret;
+    }
+
+    private Object unsubscribe(JmxUnsubscribeRequest pRequest) {
+        Client client = getClient(pRequest.getClientId());
+        if (pRequest.getSubscriptionId() == null) {
+            removeClient(client.getId());
+        } else {
+            removeSubscription(client, pRequest.getSubscriptionId());
+        }
+        return null;
+    }
+
+    private JSONObject addNotificationListener(JmxRegisterNotificationRequest pRequest) throws InstanceNotFoundException {
+        if (pRequest.getTargetConfig() != null) {
+            throw new UnsupportedOperationException("Notifications are not supported for proxy requests");
+        }
+        ObjectName name = pRequest.getObjectName();
+        if (name.isPattern()) {
+            throw new IllegalArgumentException("Cannot register a notification listener on a pattern " + name);
+        }
+        MBeanServer server = findMBeanServer(name);
+        try {
+            if (!server.isInstanceOf(name, NotificationBroadcaster.class.getName())) {
+                throw new IllegalArgumentException("MBean " + name + " does not emit notifications");
+            }
+        } catch (InstanceNotFoundException exp) {
+            // Unregistered in the meantime, registration below will fail in this case
+        }
+
+        Client client = pRequest.getClientId() != null ? getClient(pRequest.getClientId()) : createClient();
+        NotificationSubscription subscription = new NotificationSubscription(server, name, pRequest.getFilter());
+        String subscriptionId = client.addSubscription(subscription);
+        try {
+            subscription.register(client, subscriptionId);
+        } catch (InstanceNotFoundException exp) {
+            client.removeSubscription(subscriptionId);
+            throw exp;
+        }
+
+        JSONObject ret = new JSONObject();
+        ret.put("client", client.getId());
+        ret.put("id", subscriptionId);
+        return ret;
+    }
+
+    private JSONObject poll(JmxPollRequest pRequest) {
+        Client client = getClient(pRequest.getClientId());
+        int timeout = pRequest.getTimeout() != null ? Math.min(pRequest.getTimeout(), maxPollTimeout) : 0;
+        JSONObject ret;
+        try {
+            ret = client.fetchEvents(timeout * 1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for events of client " + client.getId(), e);
+        }
+        // Notifications are serialized only now in the context of the poll request
+        for (Object event : (List) ret.get("events")) {
+            Map<String, Object> eventMap = (Map<String, Object>) event;
+            Object notification = eventMap.get("notification");
+            if (notification instanceof Notification) {
+                eventMap.put("notification", convertNotification((Notification) notification, pRequest));
+            }
+        }
+        return ret;
+    }
+
+    private JSONObject convertNotification(Notification pNotification, JmxRequest pRequest) {
+        JSONObject ret = new JSONObject();
+        ret.put("type", pNotification.getType());
+        ret.put("message", pNotification.getMessage());
+        ret.put("sequenceNumber", pNotification.getSequenceNumber());
+        ret.put("timeStamp", pNotification.getTimeStamp());
+        Object source = pNotification.getSource();
+        ret.put("source", source instanceof ObjectName ?
+                ((ObjectName) source).getCanonicalName() :
+                source != null ? source.toString() : null);
+        if (pNotification.getUserData() != null) {
+            try {
+                ret.put("userData", converters.getToJsonConverter()
+                                              .extractObjectWithContext(pRequest, pNotification.getUserData(), null, true));
+            } catch (AttributeNotFoundException exp) {
+                // Cannot happen, since no path is given
+                throw new IllegalStateException("Internal: Cannot serialize user data of " + pNotification, exp);
+            }
+        }
+        return ret;
+    }
+
+    // Find the local MBeanServer holding the given MBean
+    private MBeanServer findMBeanServer(ObjectName pName) throws InstanceNotFoundException {
+        for (MBeanServer server : mBeanServers) {
+            if (server.isRegistered(pName)) {
+                return server;
+            }
+        }
+        throw new InstanceNotFoundException("No MBean " + pName + " found");
+    }
+
+    // Read the value of a subscription and queue an event if it has changed
+    private void sample(Client pClient, String pSubscriptionId, ReadSubscription pSubscription) {
+        try {
+            Object value = backendManager.handleInternalRequest(pSubscription.getRequest()).get("value");
+            if (pSubscription.updateValue(value)) {
+                pClient.addEvent(ReadSubscription.createEvent(pSubscriptionId, value, null));
+            }
+        } catch (Exception exp) {
+            // Errors are reported to the client, which can decide to unsubscribe
+            String error = exp.getMessage() != null ? exp.getMessage() : exp.getClass().getName();
+            if (pSubscription.updateError(error)) {
+                pClient.addEvent(ReadSubscription.createEvent(pSubscriptionId, null, error));
+            }
+        }
+    }
+
+    private Client getClient(String pClientId) {
+        if (pClientId == null) {
+            throw new IllegalArgumentException("No client given");
+        }
+        Client client = clients.get(pClientId);
+        if (client == null) {
+            throw new IllegalArgumentException("Unknown client " + pClientId);
+        }
+        client.touch();
+        return client;
+    }
+
+    private synchronized Client createClient() {
+        if (clients.size() >= maxClients) {
+            throw new IllegalArgumentException("Maximum number of " + maxClients + " subscription clients reached");
+        }
+        // Start expiring idle clients
+        getScheduler();
+        Client client = new Client(UUID.randomUUID().toString(), maxEvents, maxSubscriptions);
+        clients.put(client.getId(), client);
+        return client;
+    }
+
+    private void removeSubscription(Client pClient, String pSubscriptionId) {
+        Subscription subscription = pClient.removeSubscription(pSubscriptionId);
+        if (subscription == null) {
+            throw new IllegalArgumentException("No subscription " + pSubscriptionId + " for client " + pClient.getId());
+        }
+        subscription.cancel();
+    }
+
+    private void removeClient(String pClientId) {
+        Client client = clients.remove(pClientId);
+        if (client != null) {
+            for (Subscription subscription : client.close()) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    // Remove clients which neither polled nor subscribed for longer than the client timeout
+    private void expireClients() {
+        long limit = System.currentTimeMillis() - clientTimeout;
+        for (Map.Entry<String, Client> entry : clients.entrySet()) {
+            if (entry.getValue().isIdleSince(limit)) {
+                removeClient(entry.getKey());
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (destroyed) {
+            throw new IllegalStateException("Subscriptions are not available after shutdown");
+        }
+        if (scheduler == null) {
+            scheduler = ExecutorUtil.createScheduledExecutor(nrThreads, "jolokia-subscription-");
+            long interval = Math.min(clientTimeout, 60 * 1000L);
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    expireClients();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return scheduler;
+    }
+}
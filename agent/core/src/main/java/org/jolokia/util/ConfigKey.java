@@ -34,6 +34,12 @@ public enum ConfigKey {
      */
     HISTORY_MAX_ENTRIES("historyMaxEntries",true, false, "10"),
 
+    /**
+     * Maximum estimated memory in bytes to use for the history. If exceeded,
+     * the least recently updated histories are removed. 0 means no limit.
+     */
+    HISTORY_MAX_SIZE("historyMaxSize",true, false, "0"),
+
     /**
      * Whether debug is switched on or not
      */
@@ -65,11 +71,137 @@ public enum ConfigKey {
      */
     MAX_OBJECTS("maxObjects",true, true, null),
 
+    /**
+     * Number of threads a pattern read request may use for fetching the attributes of
+     * the matching MBeans in parallel. Given as processing parameter, it switches on
+     * parallel reads for a request. As global configuration, it is the upper limit
+     * for the number of threads used by a single request. "0" or "1" means that attributes
+     * are always read sequentially.
+     */
+    MAX_READ_THREADS("maxReadThreads",true, true, "4"),
+
+    /**
+     * Number of threads used for executing the requests of a bulk request in parallel.
+     * As global configuration it is the size of the thread pool shared by all bulk
+     * requests and the upper limit for a single bulk request. "0" (the default)
+     * switches parallel execution off. Given as processing parameter of a bulk
+     * request, it can reduce the number of threads used for this bulk request.
+     */
+    MAX_BULK_THREADS("maxBulkThreads",true, true, "0"),
+
+    /**
+     * Maximum number of MBeanInfos cached for local MBeans. "0" switches off caching.
+     */
+    MBEAN_INFO_CACHE_SIZE("mbeanInfoCacheSize",true, false, "500"),
+
+    /**
+     * Maximum number of idle JSR-160 connections kept per target by the proxy.
+     * "0" switches off pooling so that a connection is opened for every request.
+     */
+    JSR160_POOL_MAX_IDLE("jsr160PoolMaxIdle",true, false, "4"),
+
+    /**
+     * Time in seconds after which an idle JSR-160 connection of the proxy gets closed
+     */
+    JSR160_POOL_IDLE_TIMEOUT("jsr160PoolIdleTimeout",true, false, "60"),
+
+    /**
+     * Minimum size in bytes of a response before it gets compressed with gzip or deflate,
+     * if the client accepts it. A negative value switches off compression.
+     */
+    COMPRESSION_MIN_SIZE("compressionMinSize",true, false, "1024"),
+
+    /**
+     * Whether to keep the meta data of all local MBeans as returned by a list request in memory.
+     * The cached tree is updated when MBeans get registered or unregistered.
+     */
+    LIST_CACHE("listCache",true, false, "true"),
+
+    /**
+     * Runtime configuration for list requests: Time in seconds since the epoch. If no MBean
+     * has been registered or unregistered since then, the request is answered with a status
+     * 304 and without any value.
+     */
+    IF_MODIFIED_SINCE("ifModifiedSince", false, true),
+
+    /**
+     * Runtime configuration for read requests: Token chosen by the client for receiving only the
+     * changes since a previous response to the same request.
+     */
+    DELTA_TOKEN("deltaToken", false, true),
+
+    /**
+     * Runtime configuration for read requests: Generation of the previous response the client
+     * holds for its delta token. If it doesn't match, the full value is returned.
+     */
+    DELTA_BASE("deltaBase", false, true),
+
+    /**
+     * Maximum number of responses kept for delta encoded read requests. "0" switches off
+     * delta encoding.
+     */
+    DELTA_MAX_ENTRIES("deltaMaxEntries",true, false, "100"),
+
+    /**
+     * Maximum number of clients with subscriptions. "0" switches off subscriptions.
+     */
+    SUBSCRIPTION_MAX_CLIENTS("subscriptionMaxClients",true, false, "100"),
+
+    /**
+     * Maximum number of events kept for a subscription client until they are fetched. If exceeded,
+     * the oldest events are dropped.
+     */
+    SUBSCRIPTION_MAX_EVENTS("subscriptionMaxEvents",true, false, "1000"),
+
+    /**
+     * Maximum number of subscriptions and notification listeners of a single client.
+     */
+    SUBSCRIPTION_MAX_PER_CLIENT("subscriptionMaxPerClient",true, false, "50"),
+
+    /**
+     * Number of threads executing the periodic reads of subscriptions, so that a slow
+     * read delays only the reads waiting for the same thread.
+     */
+    SUBSCRIPTION_THREADS("subscriptionThreads",true, false, "4"),
+
+    /**
+     * Minimum period in milliseconds for a subscription, shorter periods are raised to this value.
+     * Also the default period if a subscription doesn't specify one.
+     */
+    SUBSCRIPTION_MIN_PERIOD("subscriptionMinPeriod",true, false, "1000"),
+
+    /**
+     * Time in seconds after which a subscription client which has not polled for its events
+     * is removed along with its subscriptions.
+     */
+    SUBSCRIPTION_CLIENT_TIMEOUT("subscriptionClientTimeout",true, false, "300"),
+
+    /**
+     * Maximum time in seconds a poll request waits for events.
+     */
+    POLL_MAX_TIMEOUT("pollMaxTimeout",true, false, "30"),
+
+    /**
+     * Interval in seconds between two samples of the attributes sampled by the agent
+     */
+    SAMPLER_INTERVAL("samplerInterval",true, false, "10"),
+
+    /**
+     * Maximum number of attributes sampled by the agent
+     */
+    SAMPLER_MAX_ATTRIBUTES("samplerMaxAttributes",true, false, "100"),
+
     /**
      * Init parameter for the location of the policy file
      */
     POLICY_LOCATION("policyLocation",true,false,"classpath:/jolokia-access.xml"),
 
+    /**
+     * Interval in seconds for checking whether the policy file has changed. A changed policy
+     * is reloaded and replaces the current one. "0" switches off reloading.
+     */
+    POLICY_RELOAD_INTERVAL("policyReloadInterval",true,false,"0"),
+
     /**
      * Runtime configuration (i.e. must come in with a request)
      * for ignoring errors during JMX operations and JSON serialization.
@@ -89,6 +221,13 @@ public enum ConfigKey {
      */
     CALLBACK("callback", false, true),
 
+    /**
+     * Format of the answer, either <code>json</code> (default) or the binary
+     * format <code>cbor</code>. If not given, the format is selected via the
+     * <code>Accept</code> header. Ignored for JSONP requests.
+     */
+    FORMAT("format", false, true),
+
     // ================================================================================
     // Configuration relevant for OSGI container
 
@@ -231,6 +370,21 @@ public enum ConfigKey {
         return value;
     }
 
+    /**
+     * Extract an integer value from map. The default value is used if
+     * the value is not set or is not a valid integer.
+     *
+     * @param pConfig configuration map
+     * @return the integer value
+     */
+    public int getIntValue(Map<ConfigKey, String> pConfig) {
+        try {
+            return Integer.parseInt(getValue(pConfig));
+        } catch (NumberFormatException exp) {
+            return Integer.parseInt(getDefaultValue());
+        }
+    }
+
     /**
      * Extract config options from a given map
      *
@@ -74,7 +74,7 @@ public class DebugStore {
      *
      * @return debug string
      */
-    public String debugInfo() {
+    public synchronized String debugInfo() {
         if (!isDebug) {
             return "";
         }
@@ -94,7 +94,7 @@ public class DebugStore {
     /**
      * Reset debug info
      */
-    public void resetDebugInfo() {
+    public synchronized void resetDebugInfo() {
         debugEntries.clear();
     }
 
@@ -133,18 +133,18 @@ public class DebugStore {
      *
      * @param pNumber the maximal number of debug entries
      */
-    public void setMaxDebugEntries(int pNumber) {
+    public synchronized void setMaxDebugEntries(int pNumber) {
         maxDebugEntries = pNumber;
         trim();
     }
 
     // add a message along with a time stamp
-    private void add(long pTime,String message) {
+    private synchronized void add(long pTime,String message) {
         debugEntries.addFirst(new Entry(pTime,message));
         trim();
     }
 
-    private void add(long pTimestamp, String pMessage, Throwable pThrowable) {
+    private synchronized void add(long pTimestamp, String pMessage, Throwable pThrowable) {
         debugEntries.addFirst(new Entry(pTimestamp,pMessage,pThrowable));
         trim();
     }
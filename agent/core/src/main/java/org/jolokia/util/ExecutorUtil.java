@@ -0,0 +1,141 @@
+package org.jolokia.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Utility for creating the thread pools used for processing parts of a request
+ * in parallel and for background tasks.
+ *
+ * @author roland
+ * @since 02.08.11
+ */
+public final class ExecutorUtil {
+
+    // Seconds an idle thread is kept
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private ExecutorUtil() {
+    }
+
+    /**
+     * Create an executor with at most <code>pMaxThreads</code> daemon threads, which are
+     * created on demand. Tasks are not queued: if no thread is available, a task is run by
+     * the submitting thread. This also happens when the executor has been shut down, so
+     * that nobody waits forever for a task which never gets executed.
+     *
+     * @param pMaxThreads maximum number of threads
+     * @param pThreadPrefix prefix for the thread names, which get a running number appended
+     * @return the executor
+     */
+    public static ThreadPoolExecutor createCallerRunsExecutor(int pMaxThreads, String pThreadPrefix) {
+        return new ThreadPoolExecutor(0, pMaxThreads,
+                                      KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                      new SynchronousQueue<Runnable>(),
+                                      new DaemonThreadFactory(pThreadPrefix),
+                                      new CallerRunsAlwaysPolicy());
+    }
+
+    /**
+     * Create an executor with a fixed number of daemon threads and a bounded queue. If all threads
+     * are busy and the queue is full, a task is rejected with a {@link RejectedExecutionException}.
+     *
+     * @param pNrThreads number of threads
+     * @param pQueueSize maximum number of tasks waiting for a thread. If 0, tasks are only accepted
+     *        if a thread is idle.
+     * @param pThreadPrefix prefix for the thread names, which get a running number appended
+     * @return the executor
+     */
+    public static ThreadPoolExecutor createBoundedExecutor(int pNrThreads, int pQueueSize, String pThreadPrefix) {
+        BlockingQueue<Runnable> queue = pQueueSize > 0 ?
+                new ArrayBlockingQueue<Runnable>(pQueueSize) :
+                new SynchronousQueue<Runnable>();
+        return new ThreadPoolExecutor(pNrThreads, pNrThreads,
+                                      KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                      queue,
+                                      new DaemonThreadFactory(pThreadPrefix),
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Create an executor with a fixed number of daemon threads and an unbounded queue. Submitting
+     * a task never blocks and never runs the task in the submitting thread. Only when the executor
+     * has been shut down, a task is rejected with a {@link RejectedExecutionException}.
+     *
+     * @param pNrThreads number of threads
+     * @param pThreadPrefix prefix for the thread names, which get a running number appended
+     * @return the executor
+     */
+    public static ThreadPoolExecutor createQueueingExecutor(int pNrThreads, String pThreadPrefix) {
+        return new ThreadPoolExecutor(pNrThreads, pNrThreads,
+                                      KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                      new LinkedBlockingQueue<Runnable>(),
+                                      new DaemonThreadFactory(pThreadPrefix),
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Create an executor with a single daemon thread for running periodic background tasks.
+     *
+     * @param pThreadPrefix prefix for the thread name, which gets a running number appended
+     * @return the executor
+     */
+    public static ScheduledExecutorService createScheduledExecutor(String pThreadPrefix) {
+        return Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(pThreadPrefix));
+    }
+
+    /**
+     * Create an executor with a fixed number of daemon threads for running periodic background tasks.
+     * A periodic task never runs concurrently with itself, but a long running task occupies only one
+     * of the threads.
+     *
+     * @param pNrThreads number of threads
+     * @param pThreadPrefix prefix for the thread names, which get a running number appended
+     * @return the executor
+     */
+    public static ScheduledExecutorService createScheduledExecutor(int pNrThreads, String pThreadPrefix) {
+        return Executors.newScheduledThreadPool(pNrThreads, new DaemonThreadFactory(pThreadPrefix));
+    }
+
+    // Run a rejected task in the calling thread. In contrast to ThreadPoolExecutor.CallerRunsPolicy
+    // this is done even when the executor has been shut down.
+    private static final class CallerRunsAlwaysPolicy implements RejectedExecutionHandler {
+        /** {@inheritDoc} */
+        public void rejectedExecution(Runnable pRunnable, ThreadPoolExecutor pExecutor) {
+            pRunnable.run();
+        }
+    }
+
+    // Daemon threads with a common name prefix
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadNr = new AtomicInteger(0);
+
+        private DaemonThreadFactory(String pPrefix) {
+            prefix = pPrefix;
+        }
+
+        /** {@inheritDoc} */
+        public Thread newThread(Runnable pRunnable) {
+            Thread thread = new Thread(pRunnable, prefix + threadNr.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.jolokia.util;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
 /*
  *  Copyright 2009-2010 Roland Huss
  *
@@ -27,8 +31,85 @@ package org.jolokia.util;
 
 public final class IpChecker {
 
+    // Textual representations of IP addresses. Only strings matching these are parsed, so that
+    // parsing never triggers a name lookup.
+    private static final Pattern IPV4_PATTERN = Pattern.compile("^\\d{1,3}(\\.\\d{1,3}){3}$");
+    private static final Pattern IPV6_PATTERN = Pattern.compile("^[0-9a-fA-F:][0-9a-fA-F:.]*(%[\\w.-]+)?$");
+
     private IpChecker() { }
 
+    /**
+     * Parse the textual representation of an IPv4 or IPv6 address. Host names are not
+     * resolved. IPv6 addresses can be given in brackets and with a zone index, which is ignored.
+     * IPv4 mapped IPv6 addresses result in the IPv4 address.
+     *
+     * @param pAddress address to parse
+     * @return the address as 4 or 16 bytes or <code>null</code> if the given string is not an IP address
+     */
+    public static byte[] parseAddress(String pAddress) {
+        if (pAddress == null) {
+            return null;
+        }
+        String address = pAddress;
+        if (address.startsWith("[") && address.endsWith("]")) {
+            address = address.substring(1, address.length() - 1);
+        }
+        if (IPV4_PATTERN.matcher(address).matches()) {
+            int[] tuple;
+            try {
+                tuple = convertToIntTuple(address);
+            } catch (IllegalArgumentException exp) {
+                return null;
+            }
+            byte[] ret = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                ret[i] = (byte) tuple[i];
+            }
+            return ret;
+        } else if (address.indexOf(':') != -1 && IPV6_PATTERN.matcher(address).matches()) {
+            int zoneIdx = address.indexOf('%');
+            try {
+                // In brackets, the address is parsed as IPv6 literal or rejected, but never looked up
+                return InetAddress.getByName("[" + (zoneIdx != -1 ? address.substring(0, zoneIdx) : address) + "]").getAddress();
+            } catch (UnknownHostException exp) {
+                // Looks like an address but is none
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the length of the network prefix from the network part of a subnet specification
+     *
+     * @param pNetPart either the number of bits in the prefix (e.g. "24") or, for IPv4 only,
+     *        a netmask (e.g. "255.255.255.0")
+     * @param pAddressLength length in bytes of the addresses of the subnet
+     * @return the prefix length or -1 if a netmask is given whose bits set are not contiguous
+     * @throws IllegalArgumentException if the network part is invalid
+     */
+    public static int getPrefixLength(String pNetPart, int pAddressLength) {
+        if (pNetPart.indexOf('.') == -1) {
+            try {
+                int ret = Integer.parseInt(pNetPart);
+                if (ret < 0 || ret > pAddressLength * 8) {
+                    throw new IllegalArgumentException("Invalid netmask specification " + pNetPart);
+                }
+                return ret;
+            } catch (NumberFormatException exp) {
+                throw new IllegalArgumentException("Invalid netmask specification " + pNetPart,exp);
+            }
+        }
+        if (pAddressLength != 4) {
+            throw new IllegalArgumentException("Netmask " + pNetPart + " can only be used for IPv4 addresses");
+        }
+        int[] mask = convertToIntTuple(pNetPart);
+        int bits = (mask[0] << 24) | (mask[1] << 16) | (mask[2] << 8) | mask[3];
+        int ret = Integer.bitCount(bits);
+        // Contiguous if all bits set are leading
+        return bits == (ret == 0 ? 0 : -1 << (32 - ret)) ? ret : -1;
+    }
+
     /**
      * Check whether a given IP Adress falls within a subnet or is equal to
      *
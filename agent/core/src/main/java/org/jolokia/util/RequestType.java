@@ -30,10 +30,12 @@ public enum RequestType {
     EXEC("exec"),
     VERSION("version"),
     SEARCH("search"),
-
-    // Unsupported:
+    SUBSCRIBE("subscribe"),
+    UNSUBSCRIBE("unsubscribe"),
+    POLL("poll"),
     REGNOTIF("regnotif"),
-    REMNOTIF("remnotif");
+    REMNOTIF("remnotif"),
+    SAMPLE("sample");
 
     private String name;
 
@@ -0,0 +1,99 @@
+package org.jolokia.util;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Set of IPv4 and IPv6 subnets stored as binary prefix trie. Checking whether an address
+ * falls within one of the subnets takes at most as many steps as the address has bits,
+ * independent of the number of subnets.
+ *
+ * A trie is filled once and must not be modified while it is being queried.
+ *
+ * @author roland
+ * @since 23.09.11
+ */
+public final class SubnetTrie {
+
+    // Separate tries for IPv4 and IPv6 addresses
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    /**
+     * Add a subnet
+     *
+     * @param pAddress an address within the subnet as 4 or 16 bytes (see {@link IpChecker#parseAddress(String)})
+     * @param pPrefixLength number of leading bits which make up the network prefix. If it is
+     *        the full length of the address, only this single address is added.
+     */
+    public void add(byte[] pAddress, int pPrefixLength) {
+        if (pPrefixLength < 0 || pPrefixLength > pAddress.length * 8) {
+            throw new IllegalArgumentException("Invalid prefix length " + pPrefixLength);
+        }
+        Node node = getRoot(pAddress);
+        for (int i = 0; i < pPrefixLength && !node.terminal; i++) {
+            int bit = getBit(pAddress, i);
+            if (node.children[bit] == null) {
+                node.children[bit] = new Node();
+            }
+            node = node.children[bit];
+        }
+        // Subnets within this subnet are not needed anymore
+        node.terminal = true;
+        node.children[0] = node.children[1] = null;
+    }
+
+    /**
+     * Check whether an address falls within one of the subnets
+     *
+     * @param pAddress address to check as 4 or 16 bytes
+     * @return true if a subnet contains this address
+     */
+    public boolean contains(byte[] pAddress) {
+        Node node = getRoot(pAddress);
+        int len = pAddress.length * 8;
+        for (int i = 0; node != null; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == len) {
+                return false;
+            }
+            node = node.children[getBit(pAddress, i)];
+        }
+        return false;
+    }
+
+    private Node getRoot(byte[] pAddress) {
+        if (pAddress.length == 4) {
+            return ipv4Root;
+        } else if (pAddress.length == 16) {
+            return ipv6Root;
+        } else {
+            throw new IllegalArgumentException("Address must have 4 or 16 bytes, not " + pAddress.length);
+        }
+    }
+
+    private static int getBit(byte[] pAddress, int pIdx) {
+        return (pAddress[pIdx >> 3] >> (7 - (pIdx & 7))) & 1;
+    }
+
+    private static final class Node {
+        private final Node[] children = new Node[2];
+        // true if the path to this node is the prefix of a subnet
+        private boolean terminal;
+    }
+}
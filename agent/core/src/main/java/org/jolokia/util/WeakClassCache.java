@@ -0,0 +1,153 @@
+package org.jolokia.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Concurrent cache which uses classes as keys. The classes are only referenced
+ * weakly so that the cache doesn't prevent the class (and its class loader)
+ * from being garbage collected, e.g. after a web application has been redeployed.
+ * Lookups don't lock.
+ *
+ * @author roland
+ * @since 02.08.11
+ */
+public class WeakClassCache<V> {
+
+    private final ConcurrentMap<Object, V> cache = new ConcurrentHashMap<Object, V>();
+
+    // Queue getting notified when a class has been collected
+    private final ReferenceQueue<Class> queue = new ReferenceQueue<Class>();
+
+    /**
+     * Lookup a cached value
+     *
+     * @param pClass class to lookup
+     * @return the value cached or null if no value is cached for the given class
+     */
+    public V get(Class pClass) {
+        return cache.get(new LookupKey(pClass));
+    }
+
+    /**
+     * Cache a value for a class. If there is already a value cached, this
+     * value is kept and returned
+     *
+     * @param pClass class for which to cache a value
+     * @param pValue value to cache, must not be null
+     * @return the value which is finally cached
+     */
+    public V put(Class pClass, V pValue) {
+        expungeStaleEntries();
+        V old = cache.putIfAbsent(new ClassKey(pClass, queue), pValue);
+        return old != null ? old : pValue;
+    }
+
+    /**
+     * Cache a value for a class, replacing any previously cached value
+     *
+     * @param pClass class for which to cache a value
+     * @param pValue value to cache, must not be null
+     */
+    public void set(Class pClass, V pValue) {
+        expungeStaleEntries();
+        cache.put(new ClassKey(pClass, queue), pValue);
+    }
+
+    /**
+     * Remove all cached values
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Number of cached entries
+     *
+     * @return size of this cache
+     */
+    public int size() {
+        expungeStaleEntries();
+        return cache.size();
+    }
+
+    // Remove all entries whose classes has been garbage collected
+    private void expungeStaleEntries() {
+        Object key;
+        while ((key = queue.poll()) != null) {
+            cache.remove(key);
+        }
+    }
+
+    // ======================================================================================
+
+    // Key stored within the map
+    private static final class ClassKey extends WeakReference<Class> {
+        private final int hash;
+
+        private ClassKey(Class pClass, ReferenceQueue<Class> pQueue) {
+            super(pClass, pQueue);
+            hash = System.identityHashCode(pClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            Class clazz = get();
+            if (clazz == null) {
+                return false;
+            }
+            if (obj instanceof ClassKey) {
+                return clazz == ((ClassKey) obj).get();
+            } else if (obj instanceof LookupKey) {
+                return clazz == ((LookupKey) obj).clazz;
+            }
+            return false;
+        }
+    }
+
+    // Short living key used for lookups, avoiding the creation of a weak reference
+    private static final class LookupKey {
+        private final Class clazz;
+
+        private LookupKey(Class pClass) {
+            clazz = pClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(clazz);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ClassKey ? obj.equals(this) :
+                    obj instanceof LookupKey && ((LookupKey) obj).clazz == clazz;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.jolokia.backend;
  */
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,7 +27,8 @@ import org.jolokia.converter.Converters;
 import org.jolokia.detector.ServerHandle;
 import org.jolokia.request.JmxRequest;
 import org.jolokia.request.JmxRequestBuilder;
-import org.jolokia.restrictor.Restrictor;
+import org.jolokia.request.JmxRequestFactory;
+import org.jolokia.restrictor.*;
 import org.jolokia.util.*;
 import org.json.simple.JSONObject;
 import org.testng.annotations.Test;
@@ -118,6 +120,25 @@ public class BackendManagerTest implements LogHandler {
         backendManager.destroy();
     }
 
+    @Test
+    public void registryGenerationOnlyForAllowedRequests() {
+        JmxRequest req = JmxRequestFactory.createGetRequest("/version",new HashMap<String, String[]>());
+
+        BackendManager backendManager = new BackendManager(new HashMap<ConfigKey, String>(),this,new AllowAllRestrictor());
+        assertTrue(backendManager.getRegistryGeneration(req) >= 0);
+        backendManager.destroy();
+
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(),this,new DenyAllRestrictor());
+        assertEquals(backendManager.getRegistryGeneration(req),-1L);
+        backendManager.destroy();
+
+        // Policy allows version requests, but only via POST
+        InputStream is = getClass().getResourceAsStream("/access-sample1.xml");
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(),this,new PolicyRestrictor(is));
+        assertEquals(backendManager.getRegistryGeneration(req),-1L);
+        backendManager.destroy();
+    }
+
     public void debug(String message) {
         System.out.println("D> " + message);
     }
@@ -159,6 +180,9 @@ public class BackendManagerTest implements LogHandler {
         public boolean useReturnValueWithPath(JmxRequest pJmxRequest) {
             return false;
         }
+
+        public void destroy() throws JMException {
+        }
     }
 
     // ========================================================
@@ -178,6 +202,9 @@ public class BackendManagerTest implements LogHandler {
         public boolean useReturnValueWithPath(JmxRequest pJmxRequest) {
             return false;
         }
+
+        public void destroy() throws JMException {
+        }
     }
 
 
@@ -0,0 +1,163 @@
+package org.jolokia.backend;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.request.JmxRequest;
+import org.jolokia.request.JmxRequestBuilder;
+import org.jolokia.util.ConfigKey;
+import org.jolokia.util.RequestType;
+import org.json.simple.JSONObject;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 03.10.11
+ */
+public class DeltaStoreTest {
+
+    @Test
+    public void delta() throws MalformedObjectNameException {
+        DeltaStore store = new DeltaStore(10);
+
+        JSONObject json = response(tree("a", 1L, "b", tree("c", "x", "d", 2L), "e", "gone"));
+        store.encode(request("t1", null), json);
+        Map delta = (Map) json.get("delta");
+        assertEquals(delta.get("full"), true);
+        long generation = (Long) delta.get("generation");
+        assertEquals(((Map) json.get("value")).get("a"), 1L);
+
+        json = response(tree("a", 1L, "b", tree("c", "y", "d", 2L), "f", true));
+        store.encode(request("t1", generation), json);
+        delta = (Map) json.get("delta");
+        assertEquals(delta.get("full"), false);
+        assertEquals(delta.get("base"), generation);
+        assertTrue((Long) delta.get("generation") > generation);
+        assertEquals(json.get("value"), tree("b", tree("c", "y"), "f", true));
+        assertEquals(delta.get("removed"), Arrays.asList(Arrays.asList("e")));
+        generation = (Long) delta.get("generation");
+
+        // Nothing changed
+        json = response(tree("a", 1L, "b", tree("c", "y", "d", 2L), "f", true));
+        store.encode(request("t1", generation), json);
+        assertEquals(json.get("value"), new JSONObject());
+        assertEquals(((Map) json.get("delta")).get("removed"), new ArrayList());
+
+        // Nested removal
+        generation = (Long) ((Map) json.get("delta")).get("generation");
+        json = response(tree("a", 1L, "b", tree("c", "y"), "f", true));
+        store.encode(request("t1", generation), json);
+        assertEquals(json.get("value"), new JSONObject());
+        assertEquals(((Map) json.get("delta")).get("removed"), Arrays.asList(Arrays.asList("b", "d")));
+    }
+
+    @Test
+    public void resync() throws MalformedObjectNameException {
+        DeltaStore store = new DeltaStore(10);
+        JSONObject json = response(tree("a", 1L));
+        store.encode(request("t1", null), json);
+        long generation = (Long) ((Map) json.get("delta")).get("generation");
+
+        // Stale base
+        json = response(tree("a", 2L));
+        store.encode(request("t1", generation - 1), json);
+        assertEquals(((Map) json.get("delta")).get("full"), true);
+        assertEquals(json.get("value"), tree("a", 2L));
+
+        // Other token
+        json = response(tree("a", 3L));
+        store.encode(request("t2", generation), json);
+        assertEquals(((Map) json.get("delta")).get("full"), true);
+
+        // No map value
+        json = response(42L);
+        store.encode(request("t1", null), json);
+        generation = (Long) ((Map) json.get("delta")).get("generation");
+        json = response(43L);
+        store.encode(request("t1", generation), json);
+        assertEquals(((Map) json.get("delta")).get("full"), true);
+        assertEquals(json.get("value"), 43L);
+    }
+
+    @Test
+    public void eviction() throws MalformedObjectNameException {
+        DeltaStore store = new DeltaStore(1);
+        JSONObject json = response(tree("a", 1L));
+        store.encode(request("t1", null), json);
+        long generation = (Long) ((Map) json.get("delta")).get("generation");
+        store.encode(request("t2", null), response(tree("a", 1L)));
+        assertEquals(store.size(), 1);
+
+        json = response(tree("a", 1L));
+        store.encode(request("t1", generation), json);
+        assertEquals(((Map) json.get("delta")).get("full"), true);
+    }
+
+    @Test
+    public void noToken() throws MalformedObjectNameException {
+        DeltaStore store = new DeltaStore(10);
+        JmxRequest req = new JmxRequestBuilder(RequestType.READ, "java.lang:type=Memory").build();
+        JSONObject json = response(tree("a", 1L));
+        store.encode(req, json);
+        assertNull(json.get("delta"));
+        assertEquals(store.size(), 0);
+
+        store = new DeltaStore(0);
+        store.encode(request("t1", null), json);
+        assertNull(json.get("delta"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidBase() throws MalformedObjectNameException {
+        DeltaStore store = new DeltaStore(10);
+        JmxRequest req = new JmxRequestBuilder(RequestType.READ, "java.lang:type=Memory")
+                .option(ConfigKey.DELTA_TOKEN, "t1")
+                .option(ConfigKey.DELTA_BASE, "blub")
+                .build();
+        store.encode(req, response(tree("a", 1L)));
+    }
+
+    // ============================================================================
+
+    private JmxRequest request(String pToken, Long pBase) throws MalformedObjectNameException {
+        JmxRequestBuilder builder = new JmxRequestBuilder(RequestType.READ, "java.lang:type=Memory")
+                .option(ConfigKey.DELTA_TOKEN, pToken);
+        if (pBase != null) {
+            builder.option(ConfigKey.DELTA_BASE, pBase.toString());
+        }
+        return builder.build();
+    }
+
+    private JSONObject response(Object pValue) {
+        JSONObject ret = new JSONObject();
+        ret.put("value", pValue);
+        return ret;
+    }
+
+    private JSONObject tree(Object... pKeyValues) {
+        JSONObject ret = new JSONObject();
+        for (int i = 0; i < pKeyValues.length; i += 2) {
+            ret.put(pKeyValues[i], pKeyValues[i + 1]);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,157 @@
+package org.jolokia.backend;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import javax.management.*;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 02.08.11
+ */
+public class MBeanInfoCacheTest {
+
+    private MBeanServer server;
+    private MBeanInfoCache cache;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        server = MBeanServerFactory.newMBeanServer();
+        for (int i = 0; i < 3; i++) {
+            server.registerMBean(new Simple(), new ObjectName("jolokia.test:type=simple,idx=" + i));
+        }
+        cache = new MBeanInfoCache(2);
+        assertTrue(cache.addMBeanServer(server));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        cache.removeMBeanServers();
+    }
+
+    @Test
+    public void hitAndMiss() throws Exception {
+        ObjectName name = new ObjectName("jolokia.test:type=simple,idx=0");
+        MBeanInfo info = cache.getMBeanInfo(server, name);
+        assertEquals(info.getClassName(), Simple.class.getName());
+        assertSame(cache.getMBeanInfo(server, name), info);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void unregistration() throws Exception {
+        ObjectName name = new ObjectName("jolokia.test:type=simple,idx=0");
+        cache.getMBeanInfo(server, name);
+        server.unregisterMBean(name);
+        assertEquals(cache.size(), 0);
+        try {
+            cache.getMBeanInfo(server, name);
+            fail("MBean is not registered anymore");
+        } catch (InstanceNotFoundException exp) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void maxEntries() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            cache.getMBeanInfo(server, new ObjectName("jolokia.test:type=simple,idx=" + i));
+        }
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getMisses(), 3);
+    }
+
+    @Test
+    public void uncachedServer() throws Exception {
+        MBeanServer other = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName("jolokia.test:type=simple");
+        other.registerMBean(new Simple(), name);
+        cache.getMBeanInfo(other, name);
+        cache.getMBeanInfo(other, name);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getHits(), 0);
+    }
+
+    @Test
+    public void mutableInfo() throws Exception {
+        ObjectName name = new ObjectName("jolokia.test:type=dynamic");
+        Dynamic dynamic = new Dynamic();
+        server.registerMBean(dynamic, name);
+        assertEquals(cache.getMBeanInfo(server, name).getAttributes().length, 0);
+        dynamic.attributes = new MBeanAttributeInfo[] {
+                new MBeanAttributeInfo("Added", "java.lang.String", "Added attribute", true, false, false)
+        };
+        assertEquals(cache.getMBeanInfo(server, name).getAttributes().length, 1);
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void disabled() {
+        MBeanInfoCache disabled = new MBeanInfoCache(0);
+        assertFalse(disabled.addMBeanServer(server));
+    }
+
+    // ==================================================================
+
+    public interface SimpleMBean {
+        String getName();
+    }
+
+    // Standard MBean, whose info is immutable
+    public static class Simple implements SimpleMBean {
+        public String getName() {
+            return "simple";
+        }
+    }
+
+    // MBean whose info changes without re-registration
+    public static class Dynamic implements DynamicMBean {
+
+        private MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[0];
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName());
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            return new AttributeList();
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(Dynamic.class.getName(), "Dynamic MBean", attributes, null, null, null);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package org.jolokia.config;
 
+import java.util.Arrays;
+
 import org.jolokia.util.IpChecker;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.fail;
-import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.*;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -90,5 +92,35 @@ public class IpCheckerTest {
 
     }
 
-}
+    @Test
+    public void parseAddress() {
+        assertTrue(Arrays.equals(IpChecker.parseAddress("10.0.15.16"), new byte[] { 10, 0, 15, 16 }));
+        assertEquals(16, IpChecker.parseAddress("2001:db8::1").length);
+        assertEquals(16, IpChecker.parseAddress("[::1]").length);
+        assertEquals(16, IpChecker.parseAddress("fe80::1%eth0").length);
+        assertEquals(4, IpChecker.parseAddress("::ffff:10.0.15.16").length);
+        assertNull(IpChecker.parseAddress("10.0.15.256"));
+        assertNull(IpChecker.parseAddress("10.0.15"));
+        assertNull(IpChecker.parseAddress("2001:db8:::1"));
+        assertNull(IpChecker.parseAddress("planck"));
+        assertNull(IpChecker.parseAddress("cafe"));
+        assertNull(IpChecker.parseAddress(null));
+    }
 
+    @Test
+    public void prefixLength() {
+        assertEquals(16, IpChecker.getPrefixLength("16", 4));
+        assertEquals(64, IpChecker.getPrefixLength("64", 16));
+        assertEquals(24, IpChecker.getPrefixLength("255.255.255.0", 4));
+        assertEquals(0, IpChecker.getPrefixLength("0.0.0.0", 4));
+        assertEquals(32, IpChecker.getPrefixLength("255.255.255.255", 4));
+        assertEquals(-1, IpChecker.getPrefixLength("255.255.1.0", 4));
+        for (String[] invalid : new String[][] { { "33", "4" }, { "129", "16" }, { "-1", "4" }, { "bla", "4" },
+                                                 { "255.255.0.0", "16" }, { "255.255.0", "4" } }) {
+            try {
+                IpChecker.getPrefixLength(invalid[0], Integer.parseInt(invalid[1]));
+                fail("Invalid netmask " + invalid[0]);
+            } catch (IllegalArgumentException exp) {}
+        }
+    }
+}
@@ -74,6 +74,50 @@ public class PolicyBasedRestrictorTest {
         }
     }
 
+    @Test
+    public void restrictIpv6() {
+        InputStream is = getClass().getResourceAsStream("/access-sample7.xml");
+        PolicyRestrictor restrictor = new PolicyRestrictor(is);
+
+        String ips[][] = {
+                { "2001:db8:1:ffff::17", "true" },
+                { "2001:DB8:1:0:0:0:0:1", "true" },
+                { "[2001:db8:1::1]", "true" },
+                { "2001:db8:2::1", "false" },
+                { "fe80:0:0:0:0:0:0:1%eth0", "true" },
+                { "fe80::2", "false" },
+                { "10.200.1.1", "true" },
+                { "::ffff:10.200.1.1", "true" },
+                { "11.0.0.1", "false" },
+                { "172.1.0.1", "true" },
+                { "172.1.16.1", "false" },
+                { "localhost", "false" }
+        };
+
+        // Twice for checking cached decisions
+        for (int i = 0; i < 2; i++) {
+            for (String check[] : ips) {
+                String res = restrictor.isRemoteAccessAllowed(check[0]) ? "true" : "false";
+                assertEquals("Ip " + check[0] + " is " +
+                        (check[1].equals("false") ? "not " : "") +
+                        "allowed",check[1],res);
+            }
+        }
+        assertTrue(restrictor.isRemoteAccessAllowed("localhost", "10.1.2.3"));
+        assertTrue(restrictor.isRemoteAccessAllowed(null, "10.1.2.3"));
+    }
+
+    @Test
+    public void illegalSubnet() {
+        InputStream is = getClass().getResourceAsStream("/illegal7.xml");
+        try {
+            new PolicyRestrictor(is);
+            fail("Could parse illegal subnet");
+        } catch (SecurityException exp) {
+            assertTrue(exp.getMessage().contains("2001:db8::/129"));
+        }
+    }
+
     @Test
     public void patterns() throws MalformedObjectNameException {
         InputStream is = getClass().getResourceAsStream("/access-sample2.xml");
@@ -134,6 +178,31 @@ public class PolicyBasedRestrictorTest {
         assertFalse(restrictor.isOperationAllowed(new ObjectName("java.lang:type=Blubber,name=x"),"xavier"));
     }
 
+    @Test
+    public void domainPatterns() throws MalformedObjectNameException {
+        InputStream is = getClass().getResourceAsStream("/access-sample6.xml");
+        PolicyRestrictor restrictor = new PolicyRestrictor(is);
+        // Patterns with a fixed domain win
+        assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Memory"),"HeapMemoryUsage"));
+        assertFalse(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Memory"),"Verbose"));
+        assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("jolokia:type=Memory,name=x"),"Verbose"));
+        assertFalse(restrictor.isAttributeReadAllowed(new ObjectName("jolokia:type=Memory,name=x"),"HeapMemoryUsage"));
+
+        assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Threading"),"ThreadCount"));
+        assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("java.nio:type=Threading"),"ThreadPeakCount"));
+        assertFalse(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Threading"),"DaemonThreadCount"));
+        assertFalse(restrictor.isAttributeReadAllowed(new ObjectName("jolokia:type=Threading"),"ThreadCount"));
+
+        assertTrue(restrictor.isOperationAllowed(new ObjectName("java.lang:type=Threading"),"dumpAllThreads"));
+        assertFalse(restrictor.isOperationAllowed(new ObjectName("java.lang:type=Threading"),"resetPeakThreadCount"));
+
+        // Decisions are cached, asking again gives the same answer
+        for (int i = 0; i < 2; i++) {
+            assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Threading"),"ThreadCount"));
+            assertFalse(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Threading"),"DaemonThreadCount"));
+        }
+    }
+
     @Test
     public void illegalXml() {
         InputStream is = getClass().getResourceAsStream("/illegal1.xml");
@@ -23,6 +23,7 @@ import java.util.*;
 import javax.management.*;
 
 import org.easymock.EasyMock;
+import org.jolokia.handler.list.MBeanListCache;
 import org.jolokia.request.JmxListRequest;
 import org.jolokia.request.JmxRequestBuilder;
 import org.jolokia.restrictor.AllowAllRestrictor;
@@ -232,6 +233,77 @@ public class ListHandlerTest {
         assertEquals(res.size(),0);
     }
 
+    @Test
+    public void cachedList() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        MBeanListCache cache = new MBeanListCache();
+        cache.addMBeanServer(server);
+        try {
+            ListHandler cachedHandler = new ListHandler(new AllowAllRestrictor(), cache);
+            String[][] paths = new String[][] {
+                    { },
+                    { "java.lang" },
+                    { "java.lang", "type=Memory" },
+                    { "java.lang", "type=Memory", "attr" },
+                    { "bullerbue" }
+            };
+            for (String[] path : paths) {
+                for (String depth : new String[] { "0", "1", "2" }) {
+                    JmxListRequest request = new JmxRequestBuilder(RequestType.LIST)
+                            .pathParts(path)
+                            .option(ConfigKey.MAX_DEPTH, depth)
+                            .build();
+                    assertEquals(cachedHandler.handleRequest(asSet(server), request),
+                                 handler.handleRequest(asSet(server), request));
+                }
+            }
+        } finally {
+            cache.removeMBeanServers();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*not found.*")
+    public void cachedListUnknownMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        MBeanListCache cache = new MBeanListCache();
+        cache.addMBeanServer(server);
+        try {
+            JmxListRequest request = new JmxRequestBuilder(RequestType.LIST)
+                    .pathParts("bullerbue", "country=sweden")
+                    .build();
+            new ListHandler(new AllowAllRestrictor(), cache).handleRequest(asSet(server), request);
+        } finally {
+            cache.removeMBeanServers();
+        }
+    }
+
+    @Test
+    public void ifModifiedSince() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        MBeanListCache cache = new MBeanListCache();
+        cache.addMBeanServer(server);
+        try {
+            ListHandler cachedHandler = new ListHandler(new AllowAllRestrictor(), cache);
+            long lastChange = cache.getLastChange() / 1000;
+            JmxListRequest request = new JmxRequestBuilder(RequestType.LIST)
+                    .option(ConfigKey.IF_MODIFIED_SINCE, "" + lastChange)
+                    .build();
+            // Changed within the same second
+            assertTrue(cachedHandler.handleRequest(asSet(server), request) instanceof Map);
+            request = new JmxRequestBuilder(RequestType.LIST)
+                    .option(ConfigKey.IF_MODIFIED_SINCE, "" + (lastChange + 1))
+                    .build();
+            try {
+                cachedHandler.handleRequest(asSet(server), request);
+                fail("Not changed");
+            } catch (NotChangedException exp) {
+                assertSame(exp.getRequest(), request);
+            }
+        } finally {
+            cache.removeMBeanServers();
+        }
+    }
+
     @Test
     public void singleMBeanMultipleServers() throws MalformedObjectNameException, InstanceNotFoundException, IOException, AttributeNotFoundException, ReflectionException, MBeanException, IntrospectionException {
         JmxListRequest request = new JmxRequestBuilder(RequestType.LIST)
@@ -19,6 +19,7 @@ package org.jolokia.handler;
 import org.jolokia.request.*;
 import org.jolokia.restrictor.AllowAllRestrictor;
 import org.jolokia.restrictor.Restrictor;
+import org.jolokia.util.ConfigKey;
 import org.testng.annotations.*;
 
 import javax.management.*;
@@ -73,9 +74,7 @@ public class ReadHandlerTest {
         String attrs[] = new String[] {"attr0","atrr1","attr2"};
         String vals[]  = new String[] {"val0", "val1", "val2"};
         prepareMBeanInfos(connection, testBeanName, attrs);
-        for (int i=0;i<attrs.length;i++) {
-            expect(connection.getAttribute(testBeanName,attrs[i])).andReturn(vals[i]);
-        }
+        expectBulkAttributes(connection, testBeanName, attrs, vals);
         replay(connection);
 
         Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),request);
@@ -94,8 +93,7 @@ public class ReadHandlerTest {
 
 
         MBeanServerConnection connection = createMock(MBeanServerConnection.class);
-        expect(connection.getAttribute(testBeanName,"attr0")).andReturn("val0");
-        expect(connection.getAttribute(testBeanName,"attr1")).andReturn("val1");
+        expectBulkAttributes(connection, testBeanName, new String[] { "attr0", "attr1" }, new String[] { "val0", "val1" });
         replay(connection);
 
         Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),request);
@@ -104,6 +102,27 @@ public class ReadHandlerTest {
         assertEquals("val1",res.get("attr1"));
     }
 
+    @Test
+    public void singleBeanMultiAttributesWithFallback() throws Exception {
+        JmxReadRequest request = new JmxRequestBuilder(READ, testBeanName.getCanonicalName()).
+                attributes(Arrays.asList("attr0","attr1")).
+                option(ConfigKey.IGNORE_ERRORS,"true").
+                build();
+
+        MBeanServerConnection connection = createMock(MBeanServerConnection.class);
+        // attr1 is missing in the bulk answer and hence fetched on its own
+        AttributeList attributes = new AttributeList();
+        attributes.add(new Attribute("attr0","val0"));
+        expect(connection.getAttributes(eq(testBeanName),aryEq(new String[] { "attr0", "attr1"}))).andReturn(attributes);
+        expect(connection.getAttribute(testBeanName,"attr1")).andThrow(new AttributeNotFoundException("attr1"));
+        replay(connection);
+
+        Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),request);
+        verify(connection);
+        assertEquals("val0",res.get("attr0"));
+        assertTrue(((String) res.get("attr1")).contains("AttributeNotFoundException"));
+    }
+
     // ======================================================================================================
 
     @Test(groups = "java6")
@@ -162,13 +181,12 @@ public class ReadHandlerTest {
                     new ObjectName("java.lang:type=GarbageCollection")
             };
             MBeanServerConnection connection = prepareMultiAttributeTest(patternMBean, beans);
-            expect(connection.getAttribute(beans[0],"mem0")).andReturn("memval0");
-            expect(connection.getAttribute(beans[0],"mem1")).andReturn("memval1");
-            expect(connection.getAttribute(beans[0],"common")).andReturn("commonVal0");
-            expect(connection.getAttribute(beans[1],"gc0")).andReturn("gcval0");
-            expect(connection.getAttribute(beans[1],"gc1")).andReturn("gcval1");
-            expect(connection.getAttribute(beans[1],"gc3")).andReturn("gcval3");
-            expect(connection.getAttribute(beans[1],"common")).andReturn("commonVal1");
+            expectBulkAttributes(connection, beans[0],
+                                 new String[] { "mem0", "mem1", "common" },
+                                 new String[] { "memval0", "memval1", "commonVal0" });
+            expectBulkAttributes(connection, beans[1],
+                                 new String[] { "gc0", "gc1", "gc3", "common" },
+                                 new String[] { "gcval0", "gcval1", "gcval3", "commonVal1" });
             replay(connection);
 
             Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)), request);
@@ -301,6 +319,66 @@ public class ReadHandlerTest {
         assertEquals("com2",((Map) res.get("java.lang:type=GarbageCollection")).get("common"));
     }
 
+    @Test(groups = "java6")
+    public void searchPatternInParallel() throws Exception {
+        ObjectName patternMBean = new ObjectName("java.lang:type=*");
+        JmxReadRequest request = new JmxRequestBuilder(READ, patternMBean).
+                attributes(Arrays.asList("common")).
+                option(ConfigKey.MAX_READ_THREADS,"2").
+                build();
+
+        ObjectName beans[] =  {
+                new ObjectName("java.lang:type=Memory"),
+                new ObjectName("java.lang:type=GarbageCollection")
+        };
+        MBeanServerConnection connection = prepareMultiAttributeTest(patternMBean, beans);
+        expect(connection.getAttribute(beans[0],"common")).andReturn("com1");
+        expect(connection.getAttribute(beans[1],"common")).andReturn("com2");
+        replay(connection);
+
+        handler = new ReadHandler(new AllowAllRestrictor(), new HashMap<ConfigKey, String>());
+        try {
+            Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)), request);
+            verify(connection);
+            assertEquals(2,res.size());
+            assertEquals("com1",((Map) res.get("java.lang:type=Memory")).get("common"));
+            assertEquals("com2",((Map) res.get("java.lang:type=GarbageCollection")).get("common"));
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    @Test(groups = "java6")
+    public void searchPatternInParallelWithError() throws Exception {
+        ObjectName patternMBean = new ObjectName("java.lang:type=*");
+        JmxReadRequest request = new JmxRequestBuilder(READ, patternMBean).
+                attributes(Arrays.asList("common")).
+                option(ConfigKey.MAX_READ_THREADS,"2").
+                build();
+
+        ObjectName beans[] =  {
+                new ObjectName("java.lang:type=Memory"),
+                new ObjectName("java.lang:type=GarbageCollection")
+        };
+        MBeanServerConnection connection = createMock(MBeanServerConnection.class);
+        expect(connection.queryNames(patternMBean,null)).andReturn(new HashSet(Arrays.asList(beans)));
+        for (ObjectName bean : beans) {
+            prepareMBeanInfos(connection, bean, new String[] { "common" });
+            expect(connection.getAttribute(bean,"common")).andThrow(new AttributeNotFoundException("common")).anyTimes();
+        }
+        replay(connection);
+
+        handler = new ReadHandler(new AllowAllRestrictor(), new HashMap<ConfigKey, String>());
+        try {
+            handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)), request);
+            fail("Exception from a worker thread should be rethrown");
+        } catch (AttributeNotFoundException exp) {
+            // expected
+        } finally {
+            handler.destroy();
+        }
+    }
+
     private MBeanServerConnection prepareMultiAttributeTest(ObjectName pPatternMBean, ObjectName[] pBeans)
             throws IOException, MBeanException, AttributeNotFoundException, InstanceNotFoundException, ReflectionException, IntrospectionException {
         MBeanServerConnection connection = createMock(MBeanServerConnection.class);
@@ -359,6 +437,15 @@ public class ReadHandlerTest {
 
     // ==============================================================================================================
 
+    private void expectBulkAttributes(MBeanServerConnection pConnection, ObjectName pObjectName, String pAttrs[], String pVals[])
+            throws InstanceNotFoundException, ReflectionException, IOException {
+        AttributeList attributes = new AttributeList();
+        for (int i=0;i<pAttrs.length;i++) {
+            attributes.add(new Attribute(pAttrs[i],pVals[i]));
+        }
+        expect(pConnection.getAttributes(eq(pObjectName),aryEq(pAttrs))).andReturn(attributes);
+    }
+
     private MBeanAttributeInfo[] prepareMBeanInfos(MBeanServerConnection pConnection, ObjectName pObjectName, String pAttrs[])
             throws MBeanException, AttributeNotFoundException, InstanceNotFoundException, ReflectionException, IOException, IntrospectionException {
         MBeanInfo mBeanInfo = createMock(MBeanInfo.class);
@@ -0,0 +1,194 @@
+package org.jolokia.handler.list;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.*;
+import javax.management.timer.Timer;
+
+import org.testng.annotations.*;
+
+import static org.jolokia.test.util.EnvTestUtil.asSet;
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 23.09.11
+ */
+public class MBeanListCacheTest {
+
+    private MBeanServer server;
+    private MBeanListCache cache;
+    private ObjectName testName;
+
+    @BeforeMethod
+    public void setup() throws MalformedObjectNameException {
+        server = MBeanServerFactory.newMBeanServer();
+        cache = new MBeanListCache();
+        assertTrue(cache.addMBeanServer(server));
+        testName = new ObjectName("jolokia.test:type=Timer");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        cache.removeMBeanServers();
+    }
+
+    @Test
+    public void fullTree() {
+        Map tree = cache.getTree();
+        Map delegate = (Map) ((Map) tree.get("JMImplementation")).get("type=MBeanServerDelegate");
+        assertTrue(delegate.containsKey(DataKeys.ATTRIBUTES.getKey()));
+        assertTrue(delegate.containsKey(DataKeys.DESCRIPTION.getKey()));
+        // Unchanged tree is reused
+        assertSame(cache.getTree(), tree);
+    }
+
+    @Test
+    public void registration() throws Exception {
+        Map before = cache.getTree();
+        long generation = cache.getGeneration();
+        assertNull(before.get("jolokia.test"));
+
+        server.registerMBean(new Timer(), testName);
+        Map after = cache.getTree();
+        assertNotSame(after, before);
+        assertTrue(cache.getGeneration() > generation);
+        Map timer = (Map) ((Map) after.get("jolokia.test")).get("type=Timer");
+        assertTrue(((Map) timer.get(DataKeys.OPERATIONS.getKey())).containsKey("start"));
+        // Previous tree stays untouched, unchanged domains are shared
+        assertNull(before.get("jolokia.test"));
+        assertSame(after.get("JMImplementation"), before.get("JMImplementation"));
+
+        server.unregisterMBean(testName);
+        assertNull(cache.getTree().get("jolokia.test"));
+    }
+
+    @Test
+    public void mutableInfo() throws Exception {
+        cache.removeMBeanServers();
+        cache = new MBeanListCache(0);
+        cache.addMBeanServer(server);
+        ObjectName name = new ObjectName("jolokia.test:type=dynamic");
+        Dynamic dynamic = new Dynamic();
+        server.registerMBean(dynamic, name);
+        Map before = cache.getTree();
+        long generation = cache.getGeneration();
+        long listGeneration = cache.getListGeneration();
+        // Unchanged meta data keeps the tree
+        assertSame(cache.getTree(), before);
+        assertEquals(cache.getListGeneration(), listGeneration);
+
+        dynamic.attributes = new MBeanAttributeInfo[] {
+                new MBeanAttributeInfo("Added", "java.lang.String", "Added attribute", true, false, false)
+        };
+        assertTrue(cache.getListGeneration() > listGeneration);
+        // The registry itself is unchanged
+        assertEquals(cache.getGeneration(), generation);
+        Map mbean = (Map) cache.getTree(name, 0);
+        assertTrue(((Map) mbean.get(DataKeys.ATTRIBUTES.getKey())).containsKey("Added"));
+    }
+
+    @Test
+    public void mutableInfoRefreshInterval() throws Exception {
+        cache.removeMBeanServers();
+        cache = new MBeanListCache(60000);
+        cache.addMBeanServer(server);
+        ObjectName name = new ObjectName("jolokia.test:type=dynamic");
+        Dynamic dynamic = new Dynamic();
+        server.registerMBean(dynamic, name);
+        Map before = cache.getTree();
+        long listGeneration = cache.getListGeneration();
+
+        dynamic.attributes = new MBeanAttributeInfo[] {
+                new MBeanAttributeInfo("Added", "java.lang.String", "Added attribute", true, false, false)
+        };
+        // Not checked again before the interval has passed
+        assertSame(cache.getTree(), before);
+        assertEquals(cache.getListGeneration(), listGeneration);
+    }
+
+    @Test
+    public void subTree() throws Exception {
+        server.registerMBean(new Timer(), testName);
+
+        Map domain = (Map) cache.getTree(new ObjectName("jolokia.test:*"), 0);
+        assertTrue(domain.get("type=Timer") instanceof Map);
+        Map truncated = (Map) cache.getTree(new ObjectName("jolokia.test:*"), 1);
+        assertFalse(truncated.get("type=Timer") instanceof Map);
+
+        Map mbean = (Map) cache.getTree(testName, 0);
+        assertTrue(mbean.containsKey(DataKeys.OPERATIONS.getKey()));
+
+        assertEquals(((Map) cache.getTree(new ObjectName("bullerbue:*"), 0)).size(), 0);
+        assertNull(cache.getTree(new ObjectName("bullerbue:country=sweden"), 0));
+        assertNull(cache.getTree(new ObjectName("jolokia.test:type=Unknown"), 0));
+    }
+
+    @Test
+    public void covers() {
+        assertTrue(cache.covers(asSet(server)));
+        assertFalse(cache.covers(asSet(server, ManagementFactory.getPlatformMBeanServer())));
+        assertFalse(cache.covers(asSet(ManagementFactory.getPlatformMBeanServer())));
+        assertFalse(cache.addMBeanServer(server));
+        cache.removeMBeanServers();
+        assertFalse(cache.covers(asSet(server)));
+    }
+
+    @Test
+    public void noUpdateAfterRemoval() throws Exception {
+        cache.getTree();
+        cache.removeMBeanServers();
+        long generation = cache.getGeneration();
+        server.registerMBean(new Timer(), testName);
+        assertEquals(cache.getGeneration(), generation);
+    }
+
+    // ==================================================================
+
+    // Dynamic MBean, whose info can change
+    public static class Dynamic implements DynamicMBean {
+
+        private MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[0];
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName());
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            return new AttributeList();
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(Dynamic.class.getName(), "Dynamic MBean", attributes, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.jolokia.history;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 02.08.11
+ */
+public class HistoryEntryTest {
+
+    @Test
+    public void numericValues() {
+        HistoryEntry entry = new HistoryEntry(3);
+        for (int i = 0; i < 5; i++) {
+            entry.add(i, 100L + i);
+        }
+        assertValues(entry, 4L, 3L, 2L);
+        assertEquals(((ValueEntry) entry.jsonifyValues().get(0)).getTimestamp(), 104L);
+    }
+
+    @Test
+    public void valuesAsMaps() {
+        HistoryEntry entry = new HistoryEntry(2);
+        entry.add(42, 100L);
+        Map value = (Map) entry.jsonifyValues().get(0);
+        assertEquals(value.size(), 2);
+        assertEquals(value.get("value"), 42L);
+        assertEquals(value.get("timestamp"), 100L);
+        assertNull(value.get("other"));
+
+        JSONObject expected = new JSONObject();
+        expected.put("value", 42L);
+        expected.put("timestamp", 100L);
+        assertEquals(value, expected);
+        assertEquals(((ValueEntry) value).toJSONString(), "{\"value\":42,\"timestamp\":100}");
+    }
+
+    @Test
+    public void doubleValues() {
+        HistoryEntry entry = new HistoryEntry(2);
+        entry.add(1.5, 1);
+        entry.add(2.5, 2);
+        entry.add(3.5, 3);
+        assertValues(entry, 3.5, 2.5);
+    }
+
+    @Test
+    public void switchToObjects() {
+        HistoryEntry entry = new HistoryEntry(4);
+        entry.add(1L, 1);
+        entry.add(2.5, 2);
+        entry.add("three", 3);
+        entry.add(null, 4);
+        assertValues(entry, null, "three", 2.5, 1L);
+    }
+
+    @Test
+    public void changeMaxEntries() {
+        HistoryEntry entry = new HistoryEntry(3);
+        for (int i = 0; i < 5; i++) {
+            entry.add(i, i);
+        }
+        entry.setMaxEntries(5);
+        entry.add(5, 5);
+        assertValues(entry, 5L, 4L, 3L, 2L);
+        entry.setMaxEntries(2);
+        assertValues(entry, 5L, 4L);
+        entry.setMaxEntries(0);
+        entry.add(6, 6);
+        assertValues(entry);
+    }
+
+    @Test
+    public void json() {
+        HistoryEntry entry = new HistoryEntry(2);
+        entry.add(42, 1000);
+        entry.add("bla", 1001);
+        assertEquals(entry.jsonifyValues().toJSONString(),
+                     "[{\"value\":\"bla\",\"timestamp\":1001},{\"value\":42,\"timestamp\":1000}]");
+    }
+
+    @Test
+    public void size() {
+        HistoryEntry entry = new HistoryEntry(2);
+        long empty = entry.getSize();
+        entry.add(1L, 1);
+        long numeric = entry.getSize();
+        assertTrue(numeric > empty);
+        entry.add(2L, 2);
+        entry.add(3L, 3);
+        assertEquals(entry.getSize(), numeric);
+        entry.add("a rather long string value", 4);
+        long withString = entry.getSize();
+        assertTrue(withString > numeric);
+        entry.add("short", 5);
+        entry.add("short", 6);
+        assertTrue(entry.getSize() < withString);
+    }
+
+    private void assertValues(HistoryEntry pEntry, Object ... pValues) {
+        JSONArray values = pEntry.jsonifyValues();
+        assertEquals(values.size(), pValues.length);
+        for (int i = 0; i < pValues.length; i++) {
+            assertEquals(((ValueEntry) values.get(i)).getValue(), pValues[i]);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.jolokia.history;
  */
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 import javax.management.MalformedObjectNameException;
 
@@ -214,6 +215,70 @@ public class HistoryStoreTest {
         assertTrue(store.getSize() > 100);
     }
 
+    @Test
+    public void sizeAccounting() throws Exception {
+        store.configure(new HistoryKey("test:type=read","attr",null,null),3);
+        JmxReadRequest req =
+                new JmxRequestBuilder(READ,"test:type=read")
+                        .attribute("attr")
+                        .build();
+        updateNTimesAsList(req,3,"42");
+        int size = store.getSize();
+        // Values get overwritten, no growth anymore
+        updateNTimesAsList(req,3,"43");
+        assertEquals(store.getSize(),size);
+        store.reset();
+        assertEquals(store.getSize(),0);
+    }
+
+    @Test
+    public void maxSizeEviction() throws Exception {
+        store.configure(new HistoryKey("test:type=read","attr1",null,null),5);
+        store.configure(new HistoryKey("test:type=read","attr2",null,null),5);
+        JmxReadRequest req1 =
+                new JmxRequestBuilder(READ,"test:type=read")
+                        .attribute("attr1")
+                        .build();
+        JmxReadRequest req2 =
+                new JmxRequestBuilder(READ,"test:type=read")
+                        .attribute("attr2")
+                        .build();
+        updateNTimesAsList(req1,5,"value1");
+        updateNTimesAsList(req2,5,"value2");
+        int size = store.getSize();
+
+        // attr1 has been updated least recently and is thrown out
+        store.setMaxSize(size - 1);
+        assertTrue(store.getSize() < size);
+        assertEquals(updateNTimesAsList(req2,1,"value2").size(),5);
+        assertEquals(updateNTimesAsList(req1,1,"value1").size(),0);
+
+        // The latest update is never evicted
+        store.setMaxSize(1);
+        assertEquals(updateNTimesAsList(req2,2,"value2").size(),1);
+    }
+
+    @Test
+    public void evictionInUpdateOrder() throws Exception {
+        JmxReadRequest[] reqs = new JmxReadRequest[3];
+        for (int i = 0; i < reqs.length; i++) {
+            store.configure(new HistoryKey("test:type=read","attr" + i,null,null),5);
+            reqs[i] = new JmxRequestBuilder(READ,"test:type=read").attribute("attr" + i).build();
+        }
+        updateNTimesAsList(reqs[0],3,"value0");
+        updateNTimesAsList(reqs[1],3,"value1");
+        updateNTimesAsList(reqs[2],3,"value2");
+        // attr0 is now more recent than attr1
+        updateNTimesAsList(reqs[0],1,"value0");
+        int size = store.getSize();
+
+        store.setMaxSize(size - 1);
+        assertEquals(updateNTimesAsList(reqs[0],1,"value0").size(),4);
+        assertEquals(updateNTimesAsList(reqs[2],1,"value2").size(),3);
+        // Starts over with an empty history
+        assertEquals(updateNTimesAsList(reqs[1],1,"value1").size(),0);
+    }
+
     @Test(groups = "java6")
     public void patternAttributeRead() throws Exception {
         JmxReadRequest req =
@@ -239,6 +304,57 @@ public class HistoryStoreTest {
     }
 
 
+    @Test
+    public void noHistoryConfigured() throws Exception {
+        JmxReadRequest req =
+                new JmxRequestBuilder(READ,"test:type=read")
+                        .attribute("attr")
+                        .build();
+        JSONObject res = new JSONObject();
+        res.put("value","42");
+        store.updateAndAdd(req,res);
+        assertNotNull(res.get("timestamp"));
+        assertNull(res.get("history"));
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        store.configure(new HistoryKey("test:*","attr",null,null),5);
+        final int nrThreads = 8;
+        Thread[] threads = new Thread[nrThreads];
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < nrThreads; i++) {
+            final JmxReadRequest req =
+                    new JmxRequestBuilder(READ,"test:type=read,idx=" + (i % 2))
+                            .attribute("attr")
+                            .build();
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 500; j++) {
+                            JSONObject res = new JSONObject();
+                            res.put("value",j);
+                            store.updateAndAdd(req,res);
+                            if (j > 10) {
+                                assertEquals(5,((List) res.get("history")).size());
+                            }
+                        }
+                    } catch (Throwable exp) {
+                        errors.add(exp);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.isEmpty(),"Errors: " + errors);
+    }
+
     private JSONArray updateNTimesAsList(JmxRequest pReq, int pNr,Object ... pValue) {
         return (JSONArray) updateNTimes(pReq, pNr,pValue);
     }
@@ -18,11 +18,13 @@ package org.jolokia.http;
 
 import java.io.*;
 import java.util.Vector;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.easymock.Capture;
 import org.jolokia.backend.TestDetector;
 import org.jolokia.restrictor.AllowAllRestrictor;
 import org.jolokia.test.util.HttpTestUtil;
@@ -30,6 +32,7 @@ import org.jolokia.util.ConfigKey;
 import org.testng.annotations.*;
 
 import static org.easymock.EasyMock.*;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -212,6 +215,118 @@ public class AgentServletTest {
     }
 
 
+    @Test
+    public void compressedResponse() throws ServletException, IOException {
+        servlet = new AgentServlet(new AllowAllRestrictor());
+        initConfigMocks(new String[]{ConfigKey.COMPRESSION_MIN_SIZE.getKeyValue(), "10"}, "custom access", null);
+        replay(config, context);
+        servlet.init(config);
+
+        request = createMock(HttpServletRequest.class);
+        response = createMock(HttpServletResponse.class);
+        expect(request.getParameter(ConfigKey.CALLBACK.getKeyValue())).andReturn(null);
+        expect(request.getParameter(ConfigKey.FORMAT.getKeyValue())).andReturn(null);
+        expect(request.getHeader("Accept")).andReturn(null);
+        expect(request.getHeader("Accept-Encoding")).andReturn("gzip, deflate");
+        expect(request.getPathInfo()).andReturn(HttpTestUtil.HEAP_MEMORY_GET_REQUEST);
+        getStandardRequestSetup().run();
+        getStandardResponseSetup().run();
+        response.setHeader("Vary","Accept-Encoding");
+        response.setHeader("Content-Encoding","gzip");
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        expect(response.getOutputStream()).andReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                bos.write(b);
+            }
+        });
+        replay(request, response);
+
+        servlet.doGet(request, response);
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())),"UTF-8"));
+        assertTrue(reader.readLine().contains("used"));
+        servlet.destroy();
+    }
+
+    @Test
+    public void cborResponse() throws ServletException, IOException {
+        prepareStandardInitialisation();
+
+        request = createMock(HttpServletRequest.class);
+        response = createMock(HttpServletResponse.class);
+        expect(request.getParameter(ConfigKey.CALLBACK.getKeyValue())).andReturn(null);
+        expect(request.getParameter(ConfigKey.FORMAT.getKeyValue())).andReturn(null);
+        expect(request.getHeader("Accept")).andReturn("application/json;q=0.5, application/cbor");
+        expect(request.getHeader("Accept-Encoding")).andReturn(null);
+        expect(request.getPathInfo()).andReturn(HttpTestUtil.HEAP_MEMORY_GET_REQUEST);
+        getStandardRequestSetup().run();
+        response.setContentType("application/cbor");
+        response.setStatus(200);
+        response.setHeader("Vary","Accept-Encoding, Accept");
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        expect(response.getOutputStream()).andReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                bos.write(b);
+            }
+        });
+        replay(request, response);
+
+        servlet.doGet(request, response);
+
+        byte[] content = bos.toByteArray();
+        // Major type 5 (map)
+        assertEquals(content[0] & 0xe0, 0xa0);
+        assertTrue(new String(content, "UTF-8").contains("used"));
+        servlet.destroy();
+    }
+
+    @Test
+    public void notModified() throws ServletException, IOException {
+        prepareStandardInitialisation();
+
+        Capture<String> eTag = new Capture<String>();
+        StringWriter sw = initRequestResponseMocks(
+                new Runnable() {
+                    public void run() {
+                        expect(request.getRemoteHost()).andReturn("localhost");
+                        expect(request.getRemoteAddr()).andReturn("127.0.0.1");
+                        expect(request.getRequestURI()).andReturn("/jolokia/");
+                        expect(request.getParameterMap()).andReturn(null);
+                        expect(request.getHeader("If-None-Match")).andReturn(null);
+                    }
+                },
+                getStandardResponseSetup());
+        expect(request.getPathInfo()).andReturn("/version");
+        response.setHeader(eq("ETag"), capture(eTag));
+        replay(request, response);
+
+        servlet.doGet(request, response);
+        assertTrue(sw.toString().contains("protocol"));
+        verify(request, response);
+
+        request = createMock(HttpServletRequest.class);
+        response = createMock(HttpServletResponse.class);
+        expect(request.getParameter(ConfigKey.CALLBACK.getKeyValue())).andReturn(null);
+        expect(request.getParameter(ConfigKey.FORMAT.getKeyValue())).andReturn(null);
+        expect(request.getHeader("Accept")).andReturn(null);
+        expect(request.getRemoteHost()).andReturn("localhost");
+        expect(request.getRemoteAddr()).andReturn("127.0.0.1");
+        expect(request.getRequestURI()).andReturn("/jolokia/");
+        expect(request.getPathInfo()).andReturn("/version");
+        expect(request.getParameterMap()).andReturn(null);
+        expect(request.getHeader("If-None-Match")).andReturn("\"other\", " + eTag.getValue());
+        response.setHeader("ETag", eTag.getValue());
+        response.setStatus(304);
+        response.setHeader("Vary","Accept-Encoding");
+        replay(request, response);
+
+        servlet.doGet(request, response);
+        servlet.destroy();
+    }
+
     @Test
     public void debug() throws IOException, ServletException {
         servlet = new AgentServlet();
@@ -281,8 +396,14 @@ public class AgentServletTest {
         response = createMock(HttpServletResponse.class);
 
         expect(request.getParameter(ConfigKey.CALLBACK.getKeyValue())).andReturn(callback);
+        if (callback == null) {
+            expect(request.getParameter(ConfigKey.FORMAT.getKeyValue())).andReturn(null);
+            expect(request.getHeader("Accept")).andReturn(null);
+        }
+        expect(request.getHeader("Accept-Encoding")).andReturn(null);
         requestSetup.run();
         responseSetup.run();
+        response.setHeader("Vary","Accept-Encoding");
 
         StringWriter sw = new StringWriter();
         PrintWriter writer = new PrintWriter(sw);
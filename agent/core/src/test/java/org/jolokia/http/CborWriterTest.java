@@ -0,0 +1,179 @@
+package org.jolokia.http;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.jolokia.backend.BackendManager;
+import org.jolokia.request.JmxRequestFactory;
+import org.jolokia.util.ConfigKey;
+import org.jolokia.util.LogHandler;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Examples are taken from appendix A of RFC 7049
+ *
+ * @author roland
+ * @since 17.10.11
+ */
+public class CborWriterTest {
+
+    @Test
+    public void isRequested() {
+        assertFalse(CborWriter.isRequested(null, null));
+        assertFalse(CborWriter.isRequested("json", "application/cbor"));
+        assertTrue(CborWriter.isRequested("CBOR", null));
+        assertTrue(CborWriter.isRequested(null, "application/cbor"));
+        assertTrue(CborWriter.isRequested(null, "application/json;q=0.5, application/cbor"));
+        assertFalse(CborWriter.isRequested(null, "text/html, */*"));
+        assertFalse(CborWriter.isRequested(null, "application/cbor;q=0"));
+        assertFalse(CborWriter.isRequested(null, "application/cbor;q=0.5, application/json"));
+    }
+
+    @Test
+    public void integers() throws IOException {
+        assertEncoding(0L, 0x00);
+        assertEncoding(23, 0x17);
+        assertEncoding(24L, 0x18, 0x18);
+        assertEncoding(1000, 0x19, 0x03, 0xe8);
+        assertEncoding(1000000L, 0x1a, 0x00, 0x0f, 0x42, 0x40);
+        assertEncoding(1000000000000L, 0x1b, 0x00, 0x00, 0x00, 0xe8, 0xd4, 0xa5, 0x10, 0x00);
+        assertEncoding(-1L, 0x20);
+        assertEncoding(-100, 0x38, 0x63);
+        assertEncoding(Long.MIN_VALUE, 0x3b, 0x7f, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff);
+    }
+
+    @Test
+    public void bigNumbers() throws IOException {
+        assertEncoding(BigInteger.TEN, 0x0a);
+        assertEncoding(new AtomicLong(5), 0x05);
+        assertEncoding(new BigInteger("18446744073709551616"),
+                       0xc2, 0x49, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00);
+        assertEncoding(new BigInteger("-18446744073709551617"),
+                       0xc3, 0x49, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00);
+        assertEncoding(new BigDecimal("273.15"), 0xc4, 0x82, 0x21, 0x19, 0x6a, 0xb3);
+    }
+
+    @Test
+    public void floatingPoint() throws IOException {
+        assertEncoding(1.1, 0xfb, 0x3f, 0xf1, 0x99, 0x99, 0x99, 0x99, 0x99, 0x9a);
+        assertEncoding(100000.0f, 0xfa, 0x47, 0xc3, 0x50, 0x00);
+        assertEncoding(-4.1, 0xfb, 0xc0, 0x10, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66);
+    }
+
+    @Test
+    public void simpleValues() throws IOException {
+        assertEncoding(false, 0xf4);
+        assertEncoding(true, 0xf5);
+        assertEncoding(null, 0xf6);
+    }
+
+    @Test
+    public void strings() throws IOException {
+        assertEncoding("", 0x60);
+        assertEncoding("IETF", 0x64, 0x49, 0x45, 0x54, 0x46);
+        assertEncoding("\u00fc", 0x62, 0xc3, 0xbc);
+        assertEncoding(new StringBuilder("a"), 0x61, 0x61);
+    }
+
+    @Test
+    public void structures() throws IOException {
+        JSONArray inner = new JSONArray();
+        inner.addAll(Arrays.asList(2L, 3L));
+        JSONArray array = new JSONArray();
+        array.add(1L);
+        array.add(inner);
+        assertEncoding(array, 0x82, 0x01, 0x82, 0x02, 0x03);
+
+        JSONObject map = new JSONObject();
+        map.put("a", 1L);
+        assertEncoding(map, 0xa1, 0x61, 0x61, 0x01);
+        assertEncoding(new JSONObject(), 0xa0);
+    }
+
+    @Test
+    public void historyValues() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.MBEAN_QUALIFIER, "qualifier=cbor");
+        BackendManager manager = new BackendManager(config, createDummyLogHandler());
+        try {
+            ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("jolokia:type=Config,qualifier=cbor"), "setHistoryEntriesForAttribute",
+                    new Object[] { "java.lang:type=Threading", "ThreadCount", null, null, 5 },
+                    new String[] { String.class.getName(), String.class.getName(), String.class.getName(),
+                                   String.class.getName(), int.class.getName() });
+            manager.handleRequest(JmxRequestFactory.createGetRequest("read/java.lang:type=Threading/ThreadCount", null));
+            JSONObject resp = manager.handleRequest(
+                    JmxRequestFactory.createGetRequest("read/java.lang:type=Threading/ThreadCount", null));
+            List history = (List) resp.get("history");
+            assertEquals(history.size(), 1);
+
+            // A map with value and timestamp
+            byte[] entry = encode(history.get(0));
+            assertEquals(entry[0] & 0xff, 0xa2);
+            // The thread count following the key "value" stays an integer
+            assertEquals(new String(entry, 2, 5, "UTF-8"), "value");
+            assertEquals(entry[7] & 0xe0, 0x00);
+            String content = new String(encode(resp), "UTF-8");
+            assertTrue(content.contains("timestamp"));
+            assertFalse(content.contains("ValueEntry"));
+        } finally {
+            manager.destroy();
+        }
+    }
+
+    // ==================================================================
+
+    private void assertEncoding(Object pValue, int... pExpected) throws IOException {
+        byte[] result = encode(pValue);
+        assertEquals(result.length, pExpected.length, "Length for " + pValue);
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(result[i] & 0xff, pExpected[i], "Byte " + i + " for " + pValue);
+        }
+    }
+
+    private byte[] encode(Object pValue) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CborWriter(out).write(pValue);
+        return out.toByteArray();
+    }
+
+    private LogHandler createDummyLogHandler() {
+        return new LogHandler() {
+            public void debug(String message) {
+            }
+
+            public void info(String message) {
+            }
+
+            public void error(String message, Throwable t) {
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package org.jolokia.http;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 23.09.11
+ */
+public class CompressingOutputStreamTest {
+
+    private static final String CONTENT = "{\"value\":\"Jolokia Jolokia Jolokia Jolokia Jolokia\"}";
+
+    @Test
+    public void selectEncoding() {
+        assertNull(CompressingOutputStream.selectEncoding(null));
+        assertNull(CompressingOutputStream.selectEncoding("identity"));
+        assertNull(CompressingOutputStream.selectEncoding("gzip;q=0, deflate; q=0"));
+        assertEquals(CompressingOutputStream.selectEncoding("gzip"), "gzip");
+        assertEquals(CompressingOutputStream.selectEncoding("x-gzip"), "gzip");
+        assertEquals(CompressingOutputStream.selectEncoding("deflate, gzip"), "gzip");
+        assertEquals(CompressingOutputStream.selectEncoding("Deflate"), "deflate");
+        assertEquals(CompressingOutputStream.selectEncoding("gzip;q=0.5, deflate"), "deflate");
+        assertEquals(CompressingOutputStream.selectEncoding("gzip;q=bla, deflate;q=0.1"), "deflate");
+    }
+
+    @Test
+    public void belowMinSize() throws IOException {
+        TestStream out = new TestStream("gzip", 1000);
+        write(out);
+        assertNull(out.contentEncoding);
+        assertEquals(out.length, CONTENT.length());
+        assertEquals(out.target.toString("UTF-8"), CONTENT);
+    }
+
+    @Test
+    public void gzip() throws IOException {
+        TestStream out = new TestStream("gzip", 10);
+        write(out);
+        assertEquals(out.contentEncoding, "gzip");
+        assertEquals(out.length, -1);
+        assertEquals(read(new GZIPInputStream(new ByteArrayInputStream(out.target.toByteArray()))), CONTENT);
+    }
+
+    @Test
+    public void deflate() throws IOException {
+        TestStream out = new TestStream("deflate", 0);
+        write(out);
+        assertEquals(out.contentEncoding, "deflate");
+        assertEquals(read(new InflaterInputStream(new ByteArrayInputStream(out.target.toByteArray()))), CONTENT);
+    }
+
+    @Test
+    public void noEncoding() throws IOException {
+        TestStream out = new TestStream(null, 0);
+        out.write(CONTENT.getBytes("UTF-8"));
+        // Not buffered if never compressed
+        assertEquals(out.target.size(), CONTENT.length());
+        out.close();
+        assertNull(out.contentEncoding);
+        assertEquals(out.length, -1);
+    }
+
+    // ===========================================================================
+
+    private void write(OutputStream pOut) throws IOException {
+        Writer writer = new OutputStreamWriter(pOut, "UTF-8");
+        writer.write(CONTENT.substring(0, 5));
+        writer.flush();
+        writer.write(CONTENT.substring(5));
+        writer.close();
+    }
+
+    private String read(InputStream pIs) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int len;
+        while ((len = pIs.read(buf)) != -1) {
+            bos.write(buf, 0, len);
+        }
+        return bos.toString("UTF-8");
+    }
+
+    private static class TestStream extends CompressingOutputStream {
+
+        private ByteArrayOutputStream target = new ByteArrayOutputStream();
+        private String contentEncoding;
+        private int length;
+        private boolean opened;
+
+        TestStream(String pEncoding, int pMinSize) {
+            super(pEncoding, pMinSize);
+        }
+
+        @Override
+        protected OutputStream openStream(String pContentEncoding, int pLength) throws IOException {
+            assertFalse(opened);
+            opened = true;
+            contentEncoding = pContentEncoding;
+            length = pLength;
+            return target;
+        }
+    }
+}
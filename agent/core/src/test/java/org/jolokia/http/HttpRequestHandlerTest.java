@@ -17,14 +17,19 @@ package org.jolokia.http;
  */
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.*;
 
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.jolokia.backend.BackendManager;
 import org.jolokia.request.JmxReadRequest;
 import org.jolokia.request.JmxRequest;
 import org.jolokia.test.util.HttpTestUtil;
+import org.jolokia.util.ConfigKey;
 import org.jolokia.util.LogHandler;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -71,6 +76,50 @@ public class HttpRequestHandlerTest {
         handler.checkClientIPAccess("localhost","127.0.0.1");
     }
 
+    @Test
+    public void eTag() {
+        expect(backend.getRegistryGeneration(isA(JmxRequest.class))).andReturn(42L).andReturn(-1L);
+        replay(backend);
+
+        String eTag = handler.getETag(handler.parseGetRequest("/jolokia", "/list", null), false);
+        assertTrue(eTag.matches("^W/\".*-2a\"$"));
+        assertNull(handler.getETag(handler.parseGetRequest("/jolokia", "/read/java.lang:type=Memory/HeapMemoryUsage", null), false));
+    }
+
+    @Test
+    public void cborETag() {
+        expect(backend.getRegistryGeneration(isA(JmxRequest.class))).andReturn(42L).times(2);
+        replay(backend);
+
+        JmxRequest request = handler.parseGetRequest("/jolokia", "/list", null);
+        String jsonTag = handler.getETag(request, false);
+        String cborTag = handler.getETag(request, true);
+        assertTrue(cborTag.matches("^W/\".*-2a-cbor\"$"));
+        assertFalse(HttpRequestHandler.matchesETag(jsonTag, cborTag));
+    }
+
+    @Test
+    public void vary() {
+        replay(backend);
+
+        assertEquals(handler.getVary(null, null, null), "Accept-Encoding");
+        assertEquals(handler.getVary(null, null, "application/cbor"), "Accept-Encoding, Accept");
+        assertEquals(handler.getVary(null, "cbor", "application/cbor"), "Accept-Encoding");
+        assertEquals(handler.getVary("cb", null, null), "Accept-Encoding");
+    }
+
+    @Test
+    public void matchesETag() {
+        replay(backend);
+
+        assertTrue(HttpRequestHandler.matchesETag("W/\"1-2\"", "W/\"1-2\""));
+        assertTrue(HttpRequestHandler.matchesETag("\"0-1\", \"1-2\"", "W/\"1-2\""));
+        assertTrue(HttpRequestHandler.matchesETag("*", "W/\"1-2\""));
+        assertFalse(HttpRequestHandler.matchesETag("W/\"1-3\"", "W/\"1-2\""));
+        assertFalse(HttpRequestHandler.matchesETag(null, "W/\"1-2\""));
+        assertFalse(HttpRequestHandler.matchesETag("*", null));
+    }
+
     @Test
     public void get() throws InstanceNotFoundException, IOException, ReflectionException, AttributeNotFoundException, MBeanException {
         JSONObject resp = new JSONObject();
@@ -106,6 +155,116 @@ public class HttpRequestHandlerTest {
         assertTrue(response.get(1) == resp);
     }
 
+    @Test
+    public void bulkPostWithRuntimeException() throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
+        JSONObject resp = new JSONObject();
+        expect(backend.handleRequest(isA(JmxReadRequest.class))).andThrow(new IllegalStateException("Failed"));
+        expect(backend.handleRequest(isA(JmxReadRequest.class))).andReturn(resp);
+        backend.error(find("500"), EasyMock.<Throwable>anyObject());
+        replay(backend);
+
+        InputStream is = HttpTestUtil.createServletInputStream("[" + HttpTestUtil.HEAP_MEMORY_POST_REQUEST + "," + HttpTestUtil.HEAP_MEMORY_POST_REQUEST + "]");
+        JSONArray response = (JSONArray) handler.handlePostRequest("/jolokia", is, "utf-8", null);
+        assertEquals(response.size(),2);
+        assertEquals(((JSONObject) response.get(0)).get("status"),500);
+        assertTrue(response.get(1) == resp);
+    }
+
+    @Test
+    public void parallelPost() throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
+        expect(backend.handleRequest(isA(JmxReadRequest.class))).andAnswer(new IAnswer<JSONObject>() {
+            public JSONObject answer() throws Throwable {
+                JmxReadRequest request = (JmxReadRequest) getCurrentArguments()[0];
+                if ("Error".equals(request.getAttributeName())) {
+                    throw new AttributeNotFoundException("Error");
+                }
+                JSONObject resp = new JSONObject();
+                resp.put("value",request.getAttributeName());
+                return resp;
+            }
+        }).times(10);
+        replay(backend);
+
+        Map<ConfigKey,String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.MAX_BULK_THREADS,"4");
+        HttpRequestHandler parallelHandler = new HttpRequestHandler(backend, createDummyLogHandler(), config);
+        try {
+            StringBuilder requests = new StringBuilder("[");
+            for (int i = 0; i < 10; i++) {
+                requests.append(i > 0 ? "," : "")
+                        .append("{ \"type\": \"read\",\"mbean\": \"java.lang:type=Memory\", \"attribute\": \"")
+                        .append(i == 5 ? "Error" : "attr" + i)
+                        .append("\"}");
+            }
+            requests.append("]");
+            InputStream is = HttpTestUtil.createServletInputStream(requests.toString());
+            JSONArray response = (JSONArray) parallelHandler.handlePostRequest("/jolokia", is, "utf-8", null);
+            assertEquals(response.size(),10);
+            for (int i = 0; i < 10; i++) {
+                JSONObject resp = (JSONObject) response.get(i);
+                if (i == 5) {
+                    assertEquals(resp.get("status"),404);
+                } else {
+                    assertEquals(resp.get("value"),"attr" + i);
+                }
+            }
+        } finally {
+            parallelHandler.destroy();
+        }
+    }
+
+    @Test
+    public void parallelPostGroupedByTarget() throws IOException, InstanceNotFoundException, ReflectionException, AttributeNotFoundException, MBeanException {
+        final Map<String,String> threadsByTarget = new ConcurrentHashMap<String, String>();
+        final Map<String,StringBuffer> attributesByTarget = new ConcurrentHashMap<String, StringBuffer>();
+        expect(backend.handleRequest(isA(JmxReadRequest.class))).andAnswer(new IAnswer<JSONObject>() {
+            public JSONObject answer() throws Throwable {
+                JmxReadRequest request = (JmxReadRequest) getCurrentArguments()[0];
+                String url = request.getTargetConfig().getUrl();
+                String thread = Thread.currentThread().getName();
+                String previous = threadsByTarget.get(url);
+                if (previous == null) {
+                    threadsByTarget.put(url, thread);
+                    attributesByTarget.put(url, new StringBuffer());
+                } else if (!previous.equals(thread)) {
+                    throw new IllegalStateException("Requests for " + url + " executed by different threads");
+                }
+                attributesByTarget.get(url).append(request.getAttributeName());
+                JSONObject resp = new JSONObject();
+                resp.put("value",request.getAttributeName());
+                return resp;
+            }
+        }).times(9);
+        replay(backend);
+
+        Map<ConfigKey,String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.MAX_BULK_THREADS,"3");
+        HttpRequestHandler parallelHandler = new HttpRequestHandler(backend, createDummyLogHandler(), config);
+        try {
+            StringBuilder requests = new StringBuilder("[");
+            for (int i = 0; i < 9; i++) {
+                requests.append(i > 0 ? "," : "")
+                        .append("{ \"type\": \"read\",\"mbean\": \"java.lang:type=Memory\", \"attribute\": \"")
+                        .append(i)
+                        .append("\", \"target\": { \"url\": \"service:jmx:rmi:///jndi/rmi://host")
+                        .append(i % 3)
+                        .append(":9999/jmxrmi\"}}");
+            }
+            requests.append("]");
+            InputStream is = HttpTestUtil.createServletInputStream(requests.toString());
+            JSONArray response = (JSONArray) parallelHandler.handlePostRequest("/jolokia", is, "utf-8", null);
+            assertEquals(response.size(),9);
+            for (int i = 0; i < 9; i++) {
+                assertEquals(((JSONObject) response.get(i)).get("value"),"" + i);
+            }
+            // Requests for the same target are executed in order
+            assertEquals(attributesByTarget.get("service:jmx:rmi:///jndi/rmi://host0:9999/jmxrmi").toString(),"036");
+            assertEquals(attributesByTarget.get("service:jmx:rmi:///jndi/rmi://host1:9999/jmxrmi").toString(),"147");
+        } finally {
+            parallelHandler.destroy();
+        }
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void invalidJson() throws IOException {
         replay(backend);
@@ -148,11 +148,32 @@ public class JmxRequestFactoryTest {
         JmxRequestFactory.createGetRequest("read/bla::blub",null);
     }
 
-    @Test(expectedExceptions = {UnsupportedOperationException.class})
-    public void unsupportedType() {
+    @Test(expectedExceptionsMessageRegExp = ".*pathinfo.*",expectedExceptions = {IllegalArgumentException.class})
+    public void regnotifWithoutMBean() {
         JmxRequestFactory.createGetRequest("regnotif",null);
     }
 
+    @Test
+    public void notificationRequests() {
+        Map<String,String[]> params = new HashMap<String, String[]>();
+        params.put("client",new String[] { "c1" });
+        params.put("filter",new String[] { "jmx.attribute.change, jmx.mbean" });
+        JmxRegisterNotificationRequest reg = JmxRequestFactory.createGetRequest("regnotif/java.lang:type=Memory",params);
+        assertEquals(reg.getType(),RequestType.REGNOTIF);
+        assertEquals(reg.getObjectNameAsString(),"java.lang:type=Memory");
+        assertEquals(reg.getClientId(),"c1");
+        assertEquals(reg.getFilter(),Arrays.asList("jmx.attribute.change","jmx.mbean"));
+
+        reg = JmxRequestFactory.createPostRequest(
+                createMap("type","regnotif","mbean","java.lang:type=Memory","filter",Arrays.asList("jmx.memory")),null);
+        assertNull(reg.getClientId());
+        assertEquals(reg.getFilter(),Arrays.asList("jmx.memory"));
+
+        JmxRemoveNotificationRequest rem = JmxRequestFactory.createGetRequest("remnotif/c1/3",null);
+        assertEquals(rem.getClientId(),"c1");
+        assertEquals(rem.getListenerId(),"3");
+    }
+
     @Test
     public void emptyRequest() {
         JmxVersionRequest req = JmxRequestFactory.createGetRequest("",null);
@@ -199,4 +220,54 @@ public class JmxRequestFactoryTest {
         JmxReadRequest req = JmxRequestFactory.createGetRequest("exec/java.lang:type=Memory/gc", null);
     }
 
+    @Test
+    public void subscribeGet() {
+        Map<String,String[]> params = new HashMap<String, String[]>();
+        params.put("client",new String[] { "c1" });
+        params.put("period",new String[] { "5000" });
+        JmxSubscribeRequest req = JmxRequestFactory.createGetRequest("subscribe/java.lang:type=Memory/HeapMemoryUsage/used",params);
+        assertEquals(req.getType(),RequestType.SUBSCRIBE);
+        assertEquals(req.getClientId(),"c1");
+        assertEquals((int) req.getPeriod(),5000);
+        JmxReadRequest readReq = req.getReadRequest();
+        assertEquals(readReq.getType(),RequestType.READ);
+        assertEquals(readReq.getObjectNameAsString(),"java.lang:type=Memory");
+        assertEquals(readReq.getAttributeName(),"HeapMemoryUsage");
+        assertEquals(readReq.getPath(),"used");
+        assertEquals(req.toJSON().get("type"),"subscribe");
+    }
+
+    @Test
+    public void subscribePost() {
+        JmxSubscribeRequest req = JmxRequestFactory.createPostRequest(
+                createMap("type","subscribe","mbean","java.lang:type=Memory","attribute","HeapMemoryUsage","period",2000L),null);
+        assertNull(req.getClientId());
+        assertEquals((int) req.getPeriod(),2000);
+        assertEquals(req.getReadRequest().getAttributeName(),"HeapMemoryUsage");
+    }
+
+    @Test(expectedExceptions = { IllegalArgumentException.class }, expectedExceptionsMessageRegExp = ".*positive.*")
+    public void subscribeWithInvalidPeriod() {
+        JmxRequestFactory.createPostRequest(
+                createMap("type","subscribe","mbean","java.lang:type=Memory","attribute","HeapMemoryUsage","period",0L),null);
+    }
+
+    @Test
+    public void pollAndUnsubscribe() {
+        Map<String,String[]> params = new HashMap<String, String[]>();
+        params.put("timeout",new String[] { "10" });
+        JmxPollRequest poll = JmxRequestFactory.createGetRequest("poll/c1",params);
+        assertEquals(poll.getClientId(),"c1");
+        assertEquals((int) poll.getTimeout(),10);
+        poll = JmxRequestFactory.createPostRequest(createMap("type","poll","client","c2"),null);
+        assertEquals(poll.getClientId(),"c2");
+        assertNull(poll.getTimeout());
+
+        JmxUnsubscribeRequest unsubscribe = JmxRequestFactory.createGetRequest("unsubscribe/c1/2",null);
+        assertEquals(unsubscribe.getClientId(),"c1");
+        assertEquals(unsubscribe.getSubscriptionId(),"2");
+        unsubscribe = JmxRequestFactory.createPostRequest(createMap("type","unsubscribe","client","c1"),null);
+        assertNull(unsubscribe.getSubscriptionId());
+    }
+
 }
@@ -0,0 +1,147 @@
+package org.jolokia.restrictor;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.*;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.jolokia.util.HttpMethod;
+import org.jolokia.util.LogHandler;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 23.09.11
+ */
+public class ReloadingPolicyRestrictorTest {
+
+    private File policyFile;
+    private ReloadingPolicyRestrictor restrictor;
+    private int errors;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        policyFile = File.createTempFile("jolokia-access", ".xml");
+        copyPolicy("/access-sample1.xml", 0);
+        errors = 0;
+        // Long interval, updates are triggered explicitly
+        restrictor = new ReloadingPolicyRestrictor(policyFile.toURI().toURL(), 3600, new TestLogHandler());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        restrictor.stop();
+        policyFile.delete();
+    }
+
+    @Test
+    public void reload() throws IOException, MalformedObjectNameException {
+        ObjectName memory = new ObjectName("java.lang:type=Memory");
+        assertFalse(restrictor.checkForUpdate());
+        assertTrue(restrictor.isAttributeReadAllowed(memory, "Verbose"));
+        assertFalse(restrictor.isHttpMethodAllowed(HttpMethod.GET));
+
+        copyPolicy("/access-sample2.xml", 1);
+        assertTrue(restrictor.checkForUpdate());
+        assertFalse(restrictor.isAttributeReadAllowed(memory, "Verbose"));
+        assertTrue(restrictor.isHttpMethodAllowed(HttpMethod.GET));
+        assertFalse(restrictor.checkForUpdate());
+        assertEquals(errors, 0);
+    }
+
+    @Test
+    public void brokenPolicyKeepsPrevious() throws IOException, MalformedObjectNameException {
+        copyPolicy("/illegal1.xml", 1);
+        assertFalse(restrictor.checkForUpdate());
+        assertEquals(errors, 1);
+        assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Memory"), "Verbose"));
+        // Reported only once
+        assertFalse(restrictor.checkForUpdate());
+        assertEquals(errors, 1);
+
+        // Missing policy file
+        copyPolicy("/access-sample1.xml", 2);
+        assertTrue(restrictor.checkForUpdate());
+        assertTrue(policyFile.delete());
+        assertFalse(restrictor.checkForUpdate());
+        assertFalse(restrictor.checkForUpdate());
+        assertEquals(errors, 2);
+        assertTrue(restrictor.isAttributeReadAllowed(new ObjectName("java.lang:type=Memory"), "Verbose"));
+    }
+
+    @Test
+    public void fixedPolicyWithSameModificationTime() throws IOException {
+        // E.g. the policy file was read while it was being written
+        copyPolicy("/illegal1.xml", 1);
+        assertFalse(restrictor.checkForUpdate());
+        assertEquals(errors, 1);
+        copyPolicy("/access-sample2.xml", 1);
+        assertTrue(restrictor.checkForUpdate());
+        assertTrue(restrictor.isHttpMethodAllowed(HttpMethod.GET));
+        assertFalse(restrictor.checkForUpdate());
+        assertEquals(errors, 1);
+    }
+
+    @Test
+    public void factory() throws IOException {
+        Restrictor ret = RestrictorFactory.lookupPolicyRestrictor("classpath:/access-sample1.xml", 0, new TestLogHandler());
+        assertTrue(ret instanceof PolicyRestrictor);
+        assertNull(RestrictorFactory.lookupPolicyRestrictor("classpath:/not-there.xml", 10, new TestLogHandler()));
+        ret = RestrictorFactory.lookupPolicyRestrictor(policyFile.toURI().toString(), 10, new TestLogHandler());
+        assertTrue(ret instanceof ReloadingPolicyRestrictor);
+        ((ReloadingPolicyRestrictor) ret).stop();
+    }
+
+    // ==================================================================================
+
+    // Copy a policy from the classpath and set its modification time to a distinct value
+    private void copyPolicy(String pResource, int pVersion) throws IOException {
+        InputStream is = getClass().getResourceAsStream(pResource);
+        OutputStream os = new FileOutputStream(policyFile);
+        try {
+            byte[] buf = new byte[1024];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                os.write(buf, 0, len);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+        // Timestamps of some file systems have a resolution of only a second
+        assertTrue(policyFile.setLastModified(1000000000000L + pVersion * 10000L));
+    }
+
+    private class TestLogHandler implements LogHandler {
+        /** {@inheritDoc} */
+        public void debug(String message) {
+        }
+
+        /** {@inheritDoc} */
+        public void info(String message) {
+        }
+
+        /** {@inheritDoc} */
+        public void error(String message, Throwable t) {
+            errors++;
+        }
+    }
+}
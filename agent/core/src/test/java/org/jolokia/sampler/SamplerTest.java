@@ -0,0 +1,232 @@
+package org.jolokia.sampler;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.*;
+
+import org.jolokia.backend.BackendManager;
+import org.jolokia.request.JmxRequestFactory;
+import org.jolokia.request.JmxSampleRequest;
+import org.jolokia.restrictor.AllowAllRestrictor;
+import org.jolokia.restrictor.DenyAllRestrictor;
+import org.jolokia.util.*;
+import org.json.simple.JSONObject;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 06.10.11
+ */
+public class SamplerTest implements LogHandler {
+
+    private static final String NAME = "jolokia.test:type=Sampled";
+
+    private Sampled sampled;
+    private BackendManager backendManager;
+    private Sampler sampler;
+    private int debugMessages;
+
+    @BeforeMethod
+    public void setup() throws JMException {
+        sampled = new Sampled();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(sampled, new ObjectName(NAME));
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.SAMPLER_INTERVAL, "60");
+        config.put(ConfigKey.SAMPLER_MAX_ATTRIBUTES, "2");
+        sampler = new Sampler(backendManager, new AllowAllRestrictor(), config);
+    }
+
+    @AfterMethod
+    public void tearDown() throws JMException {
+        sampler.destroy();
+        backendManager.destroy();
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(NAME));
+    }
+
+    @Test
+    public void sample() throws Exception {
+        sampler.configure(NAME, "Value", null, null, true);
+        for (int value : new int[] { 10, 30, 20 }) {
+            sampled.setValue(value);
+            sampler.sampleAll();
+            // Rate needs distinct sample times
+            Thread.sleep(5);
+        }
+
+        Map value = (Map) sampler.handleRequest(request("sample/" + NAME + "/Value")).get("value");
+        assertEquals(value.get("interval"), 60);
+        for (String window : new String[] { "1m", "5m", "15m" }) {
+            Map stats = (Map) value.get(window);
+            assertEquals(stats.get("count"), 3);
+            assertEquals(stats.get("min"), 10.0);
+            assertEquals(stats.get("max"), 30.0);
+            assertEquals(stats.get("avg"), 20.0);
+            assertEquals(stats.get("last"), 20.0);
+            assertNotNull(stats.get("rate"));
+        }
+        assertNull(value.get("error"));
+    }
+
+    @Test
+    public void sampleWithPath() throws Exception {
+        sampler.configure("java.lang:type=Memory", "HeapMemoryUsage", "used", null, true);
+        sampler.sampleAll();
+        Map value = (Map) sampler.handleRequest(request("sample/java.lang:type=Memory/HeapMemoryUsage/used")).get("value");
+        Map stats = (Map) value.get("1m");
+        assertEquals(stats.get("count"), 1);
+        assertTrue((Double) stats.get("last") > 0);
+        assertNull(stats.get("rate"));
+    }
+
+    @Test
+    public void errors() throws Exception {
+        sampler.configure(NAME, "Name", null, null, true);
+        sampler.sampleAll();
+        Map value = (Map) sampler.handleRequest(request("sample/" + NAME + "/Name")).get("value");
+        assertTrue(((String) value.get("error")).contains("not a number"));
+        assertEquals(((Map) value.get("1m")).get("count"), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*not sampled.*")
+    public void notSampled() throws Exception {
+        sampler.configure(NAME, "Value", null, null, true);
+        sampler.configure(NAME, "Value", null, null, false);
+        sampler.handleRequest(request("sample/" + NAME + "/Value"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*Maximum.*")
+    public void maxAttributes() throws Exception {
+        sampler.configure(NAME, "Value", null, null, true);
+        sampler.configure(NAME, "Name", null, null, true);
+        sampler.configure("java.lang:type=Memory", "HeapMemoryUsage", "used", null, true);
+    }
+
+    @Test(expectedExceptions = SecurityException.class)
+    public void notAllowed() throws Exception {
+        Sampler restricted = new Sampler(backendManager, new DenyAllRestrictor(), new HashMap<ConfigKey, String>());
+        restricted.handleRequest(request("sample/" + NAME + "/Value"));
+    }
+
+    @Test
+    public void viaBackendManager() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.MBEAN_QUALIFIER, "qualifier=sampler");
+        BackendManager manager = new BackendManager(config, this);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.invoke(new ObjectName("jolokia:type=Config,qualifier=sampler"), "setSamplingForAttribute",
+                          new Object[] { NAME, "Value", null, null, true },
+                          new String[] { String.class.getName(), String.class.getName(), String.class.getName(),
+                                         String.class.getName(), boolean.class.getName() });
+            JSONObject resp = manager.handleRequest(JmxRequestFactory.createGetRequest("sample/" + NAME + "/Value", null));
+            assertEquals(resp.get("status"), 200);
+            assertEquals(((Map) ((Map) resp.get("value")).get("15m")).get("count"), 0);
+        } finally {
+            manager.destroy();
+        }
+    }
+
+    @Test
+    public void samplesNotLogged() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.DEBUG, "true");
+        config.put(ConfigKey.MBEAN_QUALIFIER, "qualifier=debug");
+        BackendManager manager = new BackendManager(config, this);
+        Sampler debugSampler = new Sampler(manager, new AllowAllRestrictor(), new HashMap<ConfigKey, String>());
+        try {
+            debugSampler.configure(NAME, "Value", null, null, true);
+            debugMessages = 0;
+            debugSampler.sampleAll();
+            assertEquals(debugMessages, 0);
+            // In contrast to reads of a client
+            manager.handleRequest(JmxRequestFactory.createGetRequest("read/" + NAME + "/Value", null));
+            assertTrue(debugMessages > 0);
+        } finally {
+            debugSampler.destroy();
+            manager.destroy();
+        }
+    }
+
+    @Test
+    public void ringBuffer() {
+        SampleBuffer buffer = new SampleBuffer(3);
+        long now = 1000000L;
+        buffer.add(now - 400000, 100);
+        buffer.add(now - 200000, 1);
+        buffer.add(now - 30000, 2);
+        buffer.add(now, 5);
+
+        // Oldest sample has been overwritten
+        Map stats = buffer.aggregate(now, 900000);
+        assertEquals(stats.get("count"), 3);
+        assertEquals(stats.get("max"), 5.0);
+        assertEquals(stats.get("min"), 1.0);
+
+        stats = buffer.aggregate(now, 60000);
+        assertEquals(stats.get("count"), 2);
+        assertEquals(stats.get("avg"), 3.5);
+        assertEquals(stats.get("rate"), 0.1);
+
+        stats = buffer.aggregate(now + 120000, 60000);
+        assertEquals(stats.get("count"), 0);
+        assertNull(stats.get("min"));
+    }
+
+    // ==========================================================================================
+
+    private JmxSampleRequest request(String pPath) {
+        return JmxRequestFactory.createGetRequest(pPath, null);
+    }
+
+    public void debug(String message) {
+        debugMessages++;
+    }
+
+    public void info(String message) {
+    }
+
+    public void error(String message, Throwable t) {
+    }
+
+    public interface SampledMBean {
+        int getValue();
+        String getName();
+    }
+
+    public static class Sampled implements SampledMBean {
+        private volatile int value;
+
+        public int getValue() {
+            return value;
+        }
+
+        public void setValue(int pValue) {
+            value = pValue;
+        }
+
+        public String getName() {
+            return "sampled";
+        }
+    }
+}
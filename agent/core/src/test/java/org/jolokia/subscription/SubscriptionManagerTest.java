@@ -0,0 +1,313 @@
+package org.jolokia.subscription;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+import org.jolokia.backend.BackendManager;
+import org.jolokia.request.JmxRequest;
+import org.jolokia.request.JmxRequestFactory;
+import org.jolokia.restrictor.DenyAllRestrictor;
+import org.jolokia.util.*;
+import org.json.simple.JSONObject;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 23.09.11
+ */
+public class SubscriptionManagerTest implements LogHandler {
+
+    private static final String NAME = "jolokia.test:type=Counter";
+
+    private Counter counter;
+    private BackendManager backendManager;
+
+    @BeforeMethod
+    public void setup() throws JMException {
+        counter = new Counter();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(counter, new ObjectName(NAME));
+    }
+
+    @AfterMethod
+    public void tearDown() throws JMException {
+        if (backendManager != null) {
+            backendManager.destroy();
+            backendManager = null;
+        }
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(NAME));
+    }
+
+    @Test
+    public void subscribeAndPoll() throws Exception {
+        backendManager = new BackendManager(createConfig(ConfigKey.SUBSCRIPTION_MIN_PERIOD, "10"), this);
+        Map subscription = subscribe(null);
+        String client = (String) subscription.get("client");
+        assertNotNull(client);
+        assertEquals(subscription.get("id"), "1");
+        assertEquals(subscription.get("value"), 0);
+
+        counter.setCount(5);
+        Map result = poll(client, 5);
+        assertEquals(result.get("client"), client);
+        assertEquals(result.get("dropped"), 0L);
+        List events = (List) result.get("events");
+        assertEquals(events.size(), 1);
+        Map event = (Map) events.get(0);
+        assertEquals(event.get("id"), "1");
+        assertEquals(event.get("value"), 5);
+        assertNotNull(event.get("timestamp"));
+
+        // A second subscription for the same client
+        subscription = subscribe(client);
+        assertEquals(subscription.get("client"), client);
+        assertEquals(subscription.get("id"), "2");
+    }
+
+    @Test
+    public void pollWithoutChange() throws Exception {
+        backendManager = new BackendManager(createConfig(ConfigKey.SUBSCRIPTION_MIN_PERIOD, "10"), this);
+        String client = (String) subscribe(null).get("client");
+        long start = System.currentTimeMillis();
+        Map result = poll(client, 1);
+        assertTrue(System.currentTimeMillis() - start >= 900);
+        assertEquals(((List) result.get("events")).size(), 0);
+    }
+
+    @Test
+    public void unsubscribe() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        String client = (String) subscribe(null).get("client");
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("unsubscribe/" + client + "/1", null));
+        try {
+            backendManager.handleRequest(JmxRequestFactory.createGetRequest("unsubscribe/" + client + "/1", null));
+            fail("Subscription already removed");
+        } catch (IllegalArgumentException exp) {
+            assertTrue(exp.getMessage().contains("No subscription"));
+        }
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("unsubscribe/" + client, null));
+        try {
+            poll(client, 0);
+            fail("Client already removed");
+        } catch (IllegalArgumentException exp) {
+            assertTrue(exp.getMessage().contains("Unknown client"));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*Maximum.*")
+    public void maxClients() throws Exception {
+        backendManager = new BackendManager(createConfig(ConfigKey.SUBSCRIPTION_MAX_CLIENTS, "1"), this);
+        subscribe(null);
+        subscribe(null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*Maximum.*subscriptions.*")
+    public void maxSubscriptionsPerClient() throws Exception {
+        backendManager = new BackendManager(createConfig(ConfigKey.SUBSCRIPTION_MAX_PER_CLIENT, "1"), this);
+        String client = (String) subscribe(null).get("client");
+        subscribe(client);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = ".*shutdown.*")
+    public void subscribeAfterDestroy() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        backendManager.destroy();
+        subscribe(null);
+    }
+
+    @Test
+    public void subscriptionOfRemovedClient() {
+        Client client = new Client("test", 10, 10);
+        ReadSubscription subscription = new ReadSubscription(null, 1);
+        client.addSubscription(subscription);
+        // Client expires before the read gets scheduled
+        for (Subscription removed : client.close()) {
+            removed.cancel();
+        }
+        ScheduledExecutorService scheduler = ExecutorUtil.createScheduledExecutor("jolokia-test-");
+        try {
+            ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                }
+            }, 1, 1, TimeUnit.HOURS);
+            subscription.setFuture(future);
+            assertTrue(future.isCancelled());
+        } finally {
+            scheduler.shutdownNow();
+        }
+        try {
+            client.addSubscription(new ReadSubscription(null, 1));
+            fail("Client already removed");
+        } catch (IllegalArgumentException exp) {
+            assertTrue(exp.getMessage().contains("Unknown client"));
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void switchedOff() throws Exception {
+        backendManager = new BackendManager(createConfig(ConfigKey.SUBSCRIPTION_MAX_CLIENTS, "0"), this);
+        subscribe(null);
+    }
+
+    @Test(expectedExceptions = SecurityException.class)
+    public void notAllowed() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this, new DenyAllRestrictor());
+        subscribe(null);
+    }
+
+    @Test(expectedExceptions = InstanceNotFoundException.class)
+    public void initialReadFails() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("subscribe/jolokia.test:type=NotThere/Count", null));
+    }
+
+    @Test
+    public void notifications() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        Map registration = (Map) backendManager.handleRequest(
+                JmxRequestFactory.createGetRequest("regnotif/" + NAME, null)).get("value");
+        String client = (String) registration.get("client");
+        assertEquals(registration.get("id"), "1");
+
+        // Only for another notification type
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("client", new String[] { client });
+        params.put("filter", new String[] { "jmx.other" });
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("regnotif/" + NAME, params));
+
+        counter.setCount(3);
+        List events = (List) poll(client, 0).get("events");
+        assertEquals(events.size(), 1);
+        Map event = (Map) events.get(0);
+        assertEquals(event.get("id"), "1");
+        Map notification = (Map) event.get("notification");
+        assertEquals(notification.get("type"), AttributeChangeNotification.ATTRIBUTE_CHANGE);
+        assertEquals(notification.get("message"), "Count changed");
+        assertEquals(notification.get("sequenceNumber"), 1L);
+        assertEquals(notification.get("userData"), 3);
+
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("remnotif/" + client + "/1", null));
+        counter.setCount(4);
+        assertEquals(((List) poll(client, 0).get("events")).size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*notifications.*")
+    public void noNotificationBroadcaster() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("regnotif/java.lang:type=Runtime", null));
+    }
+
+    @Test(expectedExceptions = InstanceNotFoundException.class)
+    public void notificationsForUnknownMBean() throws Exception {
+        backendManager = new BackendManager(new HashMap<ConfigKey, String>(), this);
+        backendManager.handleRequest(JmxRequestFactory.createGetRequest("regnotif/jolokia.test:type=NotThere", null));
+    }
+
+    @Test
+    public void droppedEvents() throws InterruptedException {
+        Client client = new Client("test", 2, 10);
+        for (int i = 0; i < 5; i++) {
+            client.addEvent(ReadSubscription.createEvent("1", i, null));
+        }
+        JSONObject result = client.fetchEvents(0);
+        assertEquals(result.get("dropped"), 3L);
+        List events = (List) result.get("events");
+        assertEquals(events.size(), 2);
+        assertEquals(((Map) events.get(0)).get("value"), 3);
+        assertEquals(((Map) events.get(1)).get("value"), 4);
+
+        result = client.fetchEvents(0);
+        assertEquals(result.get("dropped"), 0L);
+        assertEquals(((List) result.get("events")).size(), 0);
+    }
+
+    @Test
+    public void changeDetection() {
+        ReadSubscription subscription = new ReadSubscription(null, 1);
+        assertFalse(subscription.updateValue(1));
+        assertTrue(subscription.updateValue(2));
+        assertTrue(subscription.updateError("failed"));
+        assertFalse(subscription.updateError("failed"));
+        assertTrue(subscription.updateValue(2));
+        assertTrue(subscription.updateValue(null));
+        assertFalse(subscription.updateValue(null));
+    }
+
+    // ==========================================================================================
+
+    private Map subscribe(String pClient) throws Exception {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        if (pClient != null) {
+            params.put("client", new String[] { pClient });
+        }
+        JmxRequest req = JmxRequestFactory.createGetRequest("subscribe/" + NAME + "/Count", params);
+        JSONObject resp = backendManager.handleRequest(req);
+        assertEquals(resp.get("status"), 200);
+        return (Map) resp.get("value");
+    }
+
+    private Map poll(String pClient, int pTimeout) throws Exception {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("timeout", new String[] { Integer.toString(pTimeout) });
+        JmxRequest req = JmxRequestFactory.createGetRequest("poll/" + pClient, params);
+        return (Map) backendManager.handleRequest(req).get("value");
+    }
+
+    private Map<ConfigKey, String> createConfig(ConfigKey pKey, String pValue) {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(pKey, pValue);
+        return config;
+    }
+
+    public void debug(String message) {
+    }
+
+    public void info(String message) {
+    }
+
+    public void error(String message, Throwable t) {
+    }
+
+    public interface CounterMBean {
+        int getCount();
+        void setCount(int pCount);
+    }
+
+    public static class Counter extends NotificationBroadcasterSupport implements CounterMBean {
+        private volatile int count;
+        private long sequence;
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int pCount) {
+            int old = count;
+            count = pCount;
+            Notification notification = new AttributeChangeNotification(
+                    this, ++sequence, System.currentTimeMillis(), "Count changed", "Count", "int", old, pCount);
+            notification.setUserData(pCount);
+            sendNotification(notification);
+        }
+    }
+}
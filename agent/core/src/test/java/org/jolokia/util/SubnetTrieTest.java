@@ -0,0 +1,86 @@
+package org.jolokia.util;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 23.09.11
+ */
+public class SubnetTrieTest {
+
+    @Test
+    public void ipv4() {
+        SubnetTrie trie = new SubnetTrie();
+        assertFalse(trie.contains(addr("10.0.0.1")));
+        trie.add(addr("10.0.0.1"), 16);
+        trie.add(addr("192.168.15.3"), 32);
+        assertTrue(trie.contains(addr("10.0.255.255")));
+        assertFalse(trie.contains(addr("10.1.0.0")));
+        assertTrue(trie.contains(addr("192.168.15.3")));
+        assertFalse(trie.contains(addr("192.168.15.2")));
+        // IPv6 addresses are separate
+        assertFalse(trie.contains(addr("::a00:1")));
+    }
+
+    @Test
+    public void ipv6() {
+        SubnetTrie trie = new SubnetTrie();
+        trie.add(addr("2001:db8::"), 32);
+        trie.add(addr("::1"), 128);
+        assertTrue(trie.contains(addr("2001:db8:ffff::1")));
+        assertFalse(trie.contains(addr("2001:db9::1")));
+        assertTrue(trie.contains(addr("0:0:0:0:0:0:0:1")));
+        assertFalse(trie.contains(addr("::2")));
+    }
+
+    @Test
+    public void nestedSubnets() {
+        SubnetTrie trie = new SubnetTrie();
+        trie.add(addr("10.1.2.3"), 32);
+        trie.add(addr("10.1.0.0"), 16);
+        trie.add(addr("10.1.3.0"), 24);
+        assertTrue(trie.contains(addr("10.1.2.3")));
+        assertTrue(trie.contains(addr("10.1.200.1")));
+        assertFalse(trie.contains(addr("10.2.0.1")));
+    }
+
+    @Test
+    public void everything() {
+        SubnetTrie trie = new SubnetTrie();
+        trie.add(addr("0.0.0.0"), 0);
+        assertTrue(trie.contains(addr("255.1.2.3")));
+        assertFalse(trie.contains(addr("::1")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidPrefixLength() {
+        new SubnetTrie().add(addr("10.0.0.1"), 33);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidAddress() {
+        new SubnetTrie().contains(new byte[] { 10, 0, 0 });
+    }
+
+    private byte[] addr(String pAddress) {
+        return IpChecker.parseAddress(pAddress);
+    }
+}
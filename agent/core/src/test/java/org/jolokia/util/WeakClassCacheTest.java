@@ -0,0 +1,57 @@
+package org.jolokia.util;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 02.08.11
+ */
+public class WeakClassCacheTest {
+
+    @Test
+    public void simple() {
+        WeakClassCache<String> cache = new WeakClassCache<String>();
+        assertNull(cache.get(String.class));
+        assertEquals(cache.put(String.class, "string"), "string");
+        assertEquals(cache.put(Integer.class, "integer"), "integer");
+        assertEquals(cache.get(String.class), "string");
+        assertEquals(cache.get(Integer.class), "integer");
+        assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void firstPutWins() {
+        WeakClassCache<String> cache = new WeakClassCache<String>();
+        cache.put(String.class, "first");
+        assertEquals(cache.put(String.class, "second"), "first");
+        assertEquals(cache.get(String.class), "first");
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void clear() {
+        WeakClassCache<String> cache = new WeakClassCache<String>();
+        cache.put(String.class, "string");
+        cache.clear();
+        assertNull(cache.get(String.class));
+        assertEquals(cache.size(), 0);
+    }
+}
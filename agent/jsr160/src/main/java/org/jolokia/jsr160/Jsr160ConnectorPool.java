@@ -0,0 +1,339 @@
+package org.jolokia.jsr160;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import org.jolokia.util.ExecutorUtil;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * Pool of connected {@link JMXConnector}s, keyed by their target (i.e. service URL and
+ * credentials). A connector is used exclusively by a single request and put back into
+ * the pool afterwards, so that subsequent requests to the same target don't need to
+ * connect again.
+ *
+ * At most <code>maxIdlePerTarget</code> idle connectors are kept per target, superfluous
+ * ones are closed when released. Connectors which have been idle for longer than the
+ * idle timeout are closed, too. This is checked whenever a connector is taken from or
+ * returned to the pool and periodically by a background thread, which is started as soon as
+ * the first connector is kept idle, so that connections don't stay open after the traffic
+ * has stopped. A connector whose connection is reported as closed or failed by a
+ * {@link JMXConnectionNotification} is never handed out again.
+ *
+ * The number of connectors in use for a target at the same time is not limited, every
+ * request which doesn't find an idle connector opens a new one. Requests of a bulk request
+ * for the same target are executed one after another, though.
+ *
+ * @author roland
+ * @since 02.08.11
+ */
+public class Jsr160ConnectorPool implements Jsr160ConnectorPoolMBean {
+
+    // Maximum number of idle connectors per target
+    private final int maxIdlePerTarget;
+
+    // Time in ms after which idle connectors are closed
+    private final long idleTimeout;
+
+    // Idle connectors per target, the most recently used one first. Guarded by 'this'.
+    private final Map<Object, LinkedList<PooledConnector>> idleConnectors = new HashMap<Object, LinkedList<PooledConnector>>();
+
+    // Minimum period in ms of the background check for expired connectors
+    private static final long MIN_SWEEP_PERIOD = 1000L;
+
+    // Background thread closing expired connectors, created lazily. Guarded by 'this'.
+    private ScheduledExecutorService sweeper;
+
+    // Statistics
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param pMaxIdlePerTarget maximum number of idle connectors to keep per target. If 0,
+     *        connectors are closed right after they have been used.
+     * @param pIdleTimeout time in milliseconds after which an idle connector gets closed
+     */
+    public Jsr160ConnectorPool(int pMaxIdlePerTarget, long pIdleTimeout) {
+        maxIdlePerTarget = pMaxIdlePerTarget;
+        idleTimeout = pIdleTimeout;
+    }
+
+    /**
+     * Take an idle connector for the given target from the pool
+     *
+     * @param pTarget target for which to lookup a connector
+     * @return a connector or null if there is no idle connector for the given target
+     */
+    public PooledConnector borrow(Object pTarget) {
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        PooledConnector ret = null;
+        synchronized (this) {
+            collectExpired(toClose);
+            LinkedList<PooledConnector> connectors = idleConnectors.get(pTarget);
+            while (connectors != null && !connectors.isEmpty()) {
+                PooledConnector connector = connectors.removeFirst();
+                if (connector.isBroken()) {
+                    toClose.add(connector);
+                } else {
+                    ret = connector;
+                    break;
+                }
+            }
+            if (connectors != null && connectors.isEmpty()) {
+                idleConnectors.remove(pTarget);
+            }
+        }
+        closeAll(toClose);
+        if (ret != null) {
+            reused.incrementAndGet();
+            active.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Put a freshly connected connector under the control of this pool. It is considered
+     * to be in use and must be given back with {@link #release(PooledConnector, boolean)}.
+     *
+     * @param pTarget target to which the connector is connected
+     * @param pConnector connected connector
+     * @return the pooled connector
+     */
+    public PooledConnector add(Object pTarget, JMXConnector pConnector) {
+        PooledConnector ret = new PooledConnector(pTarget, pConnector);
+        pConnector.addConnectionNotificationListener(ret, null, null);
+        created.incrementAndGet();
+        active.incrementAndGet();
+        return ret;
+    }
+
+    /**
+     * Give back a connector after usage. It is kept as an idle connector if it is still
+     * usable and there is room left in the pool, otherwise it is closed.
+     *
+     * @param pConnector connector to give back
+     * @param pFailed whether the connection failed during usage, in which case the connector
+     *        is closed in any case
+     */
+    public void release(PooledConnector pConnector, boolean pFailed) {
+        active.decrementAndGet();
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (this) {
+            collectExpired(toClose);
+            LinkedList<PooledConnector> connectors = idleConnectors.get(pConnector.target);
+            if (pFailed || pConnector.isBroken() ||
+                maxIdlePerTarget <= 0 || (connectors != null && connectors.size() >= maxIdlePerTarget)) {
+                toClose.add(pConnector);
+            } else {
+                if (connectors == null) {
+                    connectors = new LinkedList<PooledConnector>();
+                    idleConnectors.put(pConnector.target, connectors);
+                }
+                pConnector.lastUsed = System.currentTimeMillis();
+                connectors.addFirst(pConnector);
+                startSweeper();
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /** {@inheritDoc} */
+    public void clear() {
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (this) {
+            for (List<PooledConnector> connectors : idleConnectors.values()) {
+                toClose.addAll(connectors);
+            }
+            idleConnectors.clear();
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Stop the background check for expired connectors and close all idle connectors
+     */
+    public void destroy() {
+        synchronized (this) {
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+                sweeper = null;
+            }
+        }
+        clear();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getIdleConnectors() {
+        int ret = 0;
+        for (List<PooledConnector> connectors : idleConnectors.values()) {
+            ret += connectors.size();
+        }
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    public int getActiveConnectors() {
+        return active.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getCreatedConnectors() {
+        return created.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getReusedConnectors() {
+        return reused.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getClosedConnectors() {
+        return closed.get();
+    }
+
+    /** {@inheritDoc} */
+    public int getMaxIdlePerTarget() {
+        return maxIdlePerTarget;
+    }
+
+    /** {@inheritDoc} */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Close all connectors which have been idle for longer than the idle timeout. This is
+     * called periodically in the background.
+     */
+    void closeExpired() {
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (this) {
+            collectExpired(toClose);
+        }
+        closeAll(toClose);
+    }
+
+    // Start the periodic check for expired connectors if not already running. Must be called
+    // with the lock held.
+    private void startSweeper() {
+        if (sweeper == null) {
+            long period = Math.max(idleTimeout / 2, MIN_SWEEP_PERIOD);
+            sweeper = ExecutorUtil.createScheduledExecutor("jolokia-jsr160-pool-");
+            sweeper.scheduleWithFixedDelay(new Runnable() {
+                /** {@inheritDoc} */
+                public void run() {
+                    closeExpired();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Remove all connectors which have been idle for too long. Must be called with the lock held.
+    private void collectExpired(List<PooledConnector> pToClose) {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        Iterator<LinkedList<PooledConnector>> it = idleConnectors.values().iterator();
+        while (it.hasNext()) {
+            LinkedList<PooledConnector> connectors = it.next();
+            // Oldest connectors are at the end
+            while (!connectors.isEmpty() && connectors.getLast().lastUsed < limit) {
+                pToClose.add(connectors.removeLast());
+            }
+            if (connectors.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    // Close connectors outside the lock since this might involve network traffic
+    private void closeAll(List<PooledConnector> pConnectors) {
+        for (PooledConnector connector : pConnectors) {
+            connector.close();
+            closed.incrementAndGet();
+        }
+    }
+
+    // ======================================================================================
+
+    /**
+     * A connector managed by this pool. It listens on its connection state for detecting
+     * broken connections.
+     */
+    public static final class PooledConnector implements NotificationListener {
+        private final Object target;
+        private final JMXConnector connector;
+
+        // Set when the connection has been closed or failed
+        private volatile boolean broken;
+
+        // Last time this connector was given back to the pool, guarded by the pool
+        private long lastUsed;
+
+        private PooledConnector(Object pTarget, JMXConnector pConnector) {
+            target = pTarget;
+            connector = pConnector;
+        }
+
+        /**
+         * Get the connector
+         *
+         * @return the connected connector
+         */
+        public JMXConnector getConnector() {
+            return connector;
+        }
+
+        /** {@inheritDoc} */
+        public void handleNotification(Notification pNotification, Object pHandback) {
+            String type = pNotification.getType();
+            if (JMXConnectionNotification.CLOSED.equals(type) || JMXConnectionNotification.FAILED.equals(type)) {
+                broken = true;
+            }
+        }
+
+        private boolean isBroken() {
+            return broken;
+        }
+
+        private void close() {
+            try {
+                connector.removeConnectionNotificationListener(this);
+            } catch (ListenerNotFoundException exp) {
+                // Already removed, doesn't matter since we close anyway
+            }
+            try {
+                connector.close();
+            } catch (IOException exp) {
+                // The connection is gone anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.jolokia.jsr160;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * MBean interface for monitoring the pool of JSR-160 connectors used
+ * when running as a proxy.
+ *
+ * @author roland
+ * @since 02.08.11
+ */
+public interface Jsr160ConnectorPoolMBean {
+
+    /**
+     * Name under which the pool is registered
+     */
+    String OBJECT_NAME = "jolokia:type=Jsr160ConnectorPool";
+
+    /**
+     * Close all idle connectors
+     */
+    void clear();
+
+    /**
+     * Number of connectors which are currently idle in the pool
+     *
+     * @return idle connectors
+     */
+    int getIdleConnectors();
+
+    /**
+     * Number of connectors which are currently used for a request
+     *
+     * @return active connectors
+     */
+    int getActiveConnectors();
+
+    /**
+     * Number of connectors created so far
+     *
+     * @return created connectors
+     */
+    long getCreatedConnectors();
+
+    /**
+     * Number of requests which could reuse an idle connector
+     *
+     * @return reused connectors
+     */
+    long getReusedConnectors();
+
+    /**
+     * Number of connectors closed so far, either because they were idle for too long,
+     * were broken or didn't fit into the pool anymore
+     *
+     * @return closed connectors
+     */
+    long getClosedConnectors();
+
+    /**
+     * Maximum number of idle connectors kept per target
+     *
+     * @return maximum idle connectors per target
+     */
+    int getMaxIdlePerTarget();
+
+    /**
+     * Time in milliseconds after which an idle connector gets closed
+     *
+     * @return idle timeout
+     */
+    long getIdleTimeout();
+}
@@ -24,6 +24,7 @@ import org.jolokia.handler.JsonRequestHandler;
 import org.jolokia.handler.RequestHandlerManager;
 import org.jolokia.request.ProxyTargetConfig;
 import org.jolokia.restrictor.Restrictor;
+import org.jolokia.util.ConfigKey;
 
 import javax.management.*;
 import javax.management.remote.JMXConnector;
@@ -31,10 +32,12 @@ import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import javax.naming.Context;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 
 /**
- * Dispatcher for calling JSR-160 connectors
+ * Dispatcher for calling JSR-160 connectors. Connectors are kept in a {@link Jsr160ConnectorPool}
+ * for reuse by subsequent requests to the same target.
  *
  * @author roland
  * @since Nov 11, 2009
@@ -43,6 +46,12 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
 
     private RequestHandlerManager requestHandlerManager;
 
+    // Pool of connected connectors
+    private Jsr160ConnectorPool connectorPool;
+
+    // Name under which the pool is registered as MBean, null if not registered
+    private ObjectName poolMBeanName;
+
     /**
      * Constructor
      *
@@ -53,7 +62,25 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
     public Jsr160RequestDispatcher(Converters pConverters,
                                    ServerHandle serverInfo,
                                    Restrictor restrictor) {
+        this(pConverters, serverInfo, restrictor, new HashMap<ConfigKey, String>());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pConverters object/string converters
+     * @param serverInfo server info for dealing with version information
+     * @param restrictor restrictor for restricting access to certain MBeans
+     * @param pConfig agent configuration, used for setting up the connector pool
+     */
+    public Jsr160RequestDispatcher(Converters pConverters,
+                                   ServerHandle serverInfo,
+                                   Restrictor restrictor,
+                                   Map<ConfigKey, String> pConfig) {
         requestHandlerManager = new RequestHandlerManager(pConverters, serverInfo, restrictor);
+        connectorPool = new Jsr160ConnectorPool(ConfigKey.JSR160_POOL_MAX_IDLE.getIntValue(pConfig),
+                                                ConfigKey.JSR160_POOL_IDLE_TIMEOUT.getIntValue(pConfig) * 1000L);
+        poolMBeanName = registerPoolMBean(pConfig.get(ConfigKey.MBEAN_QUALIFIER));
     }
 
     /**
@@ -72,36 +99,43 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
             throws InstanceNotFoundException, AttributeNotFoundException, ReflectionException, MBeanException, IOException {
 
         JsonRequestHandler handler = requestHandlerManager.getRequestHandler(pJmxReq.getType());
-        JMXConnector connector = getConnector(pJmxReq);
+        Jsr160ConnectorPool.PooledConnector connector = getConnector(pJmxReq);
+        // JMX exceptions like a missing MBean and request errors like a denied access leave the
+        // connection intact. A connection which has failed without an IOException is detected
+        // by the pool via connection notifications.
+        boolean failed = false;
         try {
-            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            MBeanServerConnection connection = connector.getConnector().getMBeanServerConnection();
             if (handler.handleAllServersAtOnce(pJmxReq)) {
                 // There is no way to get remotely all MBeanServers ...
                 return handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),pJmxReq);
             } else {
                 return handler.handleRequest(connection,pJmxReq);
             }
+        } catch (IOException exp) {
+            failed = true;
+            throw exp;
         } finally {
-            releaseConnector(connector);
+            connectorPool.release(connector, failed);
         }
     }
 
-    // TODO: Add connector to a pool and release it on demand. For now, simply close it.
-    private JMXConnector getConnector(JmxRequest pJmxReq) throws IOException {
+    // Get a pooled connector or create a new one if the pool has none for this target
+    private Jsr160ConnectorPool.PooledConnector getConnector(JmxRequest pJmxReq) throws IOException {
         ProxyTargetConfig targetConfig = pJmxReq.getTargetConfig();
         if (targetConfig == null) {
             throw new IllegalArgumentException("No proxy configuration in request " + pJmxReq);
         }
+        Jsr160ConnectorPool.PooledConnector pooled = connectorPool.borrow(targetConfig);
+        if (pooled != null) {
+            return pooled;
+        }
         String urlS = targetConfig.getUrl();
         JMXServiceURL url = new JMXServiceURL(urlS);
         Map<String,Object> env = prepareEnv(targetConfig.getEnv());
         JMXConnector ret = JMXConnectorFactory.newJMXConnector(url,env);
         ret.connect();
-        return ret;
-    }
-
-    private void releaseConnector(JMXConnector pConnector) throws IOException {
-        pConnector.close();
+        return connectorPool.add(targetConfig, ret);
     }
 
     /**
@@ -125,6 +159,19 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
         return ret;
     }
 
+    /**
+     * Close all pooled connectors and unregister the pool's MBean
+     *
+     * {@inheritDoc}
+     */
+    public void destroy() throws JMException {
+        connectorPool.destroy();
+        if (poolMBeanName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(poolMBeanName);
+            poolMBeanName = null;
+        }
+    }
+
     /**
      * The request can be handled when a target configuration is given.
      *
@@ -139,4 +186,21 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
         JsonRequestHandler handler = requestHandlerManager.getRequestHandler(pJmxRequest.getType());
         return handler.useReturnValueWithPath();
     }
+
+    // Pool used by this dispatcher, for testing
+    Jsr160ConnectorPool getConnectorPool() {
+        return connectorPool;
+    }
+
+    // Register the pool for monitoring. Failing to do so (e.g. since another agent without
+    // a distinct qualifier has already registered its pool) doesn't prevent the pool from working.
+    private ObjectName registerPoolMBean(String pQualifier) {
+        try {
+            ObjectName name = new ObjectName(Jsr160ConnectorPoolMBean.OBJECT_NAME +
+                                             (pQualifier != null ? "," + pQualifier : ""));
+            return ManagementFactory.getPlatformMBeanServer().registerMBean(connectorPool, name).getObjectName();
+        } catch (JMException exp) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package org.jolokia.jsr160;
+
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.IOException;
+
+import javax.management.*;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import org.testng.annotations.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 02.08.11
+ */
+public class Jsr160ConnectorPoolTest {
+
+    @Test
+    public void reuse() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(2, 60000);
+        assertNull(pool.borrow("target"));
+        JMXConnector connector = createConnector(false);
+        Jsr160ConnectorPool.PooledConnector pooled = pool.add("target", connector);
+        assertEquals(pool.getActiveConnectors(), 1);
+        pool.release(pooled, false);
+        assertEquals(pool.getActiveConnectors(), 0);
+        assertEquals(pool.getIdleConnectors(), 1);
+
+        assertNull(pool.borrow("otherTarget"));
+        assertSame(pool.borrow("target"), pooled);
+        assertEquals(pool.getReusedConnectors(), 1);
+        assertEquals(pool.getCreatedConnectors(), 1);
+        assertEquals(pool.getIdleConnectors(), 0);
+        verify(connector);
+    }
+
+    @Test
+    public void maxIdle() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(1, 60000);
+        Jsr160ConnectorPool.PooledConnector c1 = pool.add("target", createConnector(false));
+        JMXConnector connector = createConnector(true);
+        Jsr160ConnectorPool.PooledConnector c2 = pool.add("target", connector);
+        pool.release(c1, false);
+        pool.release(c2, false);
+        assertEquals(pool.getIdleConnectors(), 1);
+        assertEquals(pool.getClosedConnectors(), 1);
+        verify(connector);
+    }
+
+    @Test
+    public void failed() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(2, 60000);
+        JMXConnector connector = createConnector(true);
+        pool.release(pool.add("target", connector), true);
+        assertEquals(pool.getIdleConnectors(), 0);
+        verify(connector);
+    }
+
+    @Test
+    public void brokenConnection() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(2, 60000);
+        JMXConnector connector = createConnector(true);
+        Jsr160ConnectorPool.PooledConnector pooled = pool.add("target", connector);
+        pool.release(pooled, false);
+        pooled.handleNotification(new JMXConnectionNotification(JMXConnectionNotification.FAILED, this, "1", 1L, null, null), null);
+        assertNull(pool.borrow("target"));
+        assertEquals(pool.getClosedConnectors(), 1);
+        verify(connector);
+    }
+
+    @Test
+    public void idleTimeout() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(2, 1);
+        JMXConnector connector = createConnector(true);
+        pool.release(pool.add("target", connector), false);
+        Thread.sleep(20);
+        assertNull(pool.borrow("target"));
+        assertEquals(pool.getIdleConnectors(), 0);
+        verify(connector);
+    }
+
+    @Test
+    public void backgroundSweep() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(2, 1);
+        try {
+            JMXConnector connector = createConnector(true);
+            pool.release(pool.add("target", connector), false);
+            // Checked at least once per second without any further pool access
+            for (int i = 0; i < 50 && pool.getClosedConnectors() == 0; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(pool.getClosedConnectors(), 1);
+            verify(connector);
+        } finally {
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void clear() throws Exception {
+        Jsr160ConnectorPool pool = new Jsr160ConnectorPool(2, 60000);
+        JMXConnector connector = createConnector(true);
+        pool.release(pool.add("target", connector), false);
+        pool.clear();
+        assertEquals(pool.getIdleConnectors(), 0);
+        verify(connector);
+    }
+
+    // ===========================================================================
+
+    private JMXConnector createConnector(boolean pExpectClose) throws IOException, ListenerNotFoundException {
+        JMXConnector connector = createMock(JMXConnector.class);
+        connector.addConnectionNotificationListener((NotificationListener) anyObject(), (NotificationFilter) isNull(), isNull());
+        if (pExpectClose) {
+            connector.removeConnectionNotificationListener((NotificationListener) anyObject());
+            connector.close();
+        }
+        replay(connector);
+        return connector;
+    }
+}
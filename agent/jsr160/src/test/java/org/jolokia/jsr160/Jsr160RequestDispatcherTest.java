@@ -26,6 +26,8 @@ import org.jolokia.converter.Converters;
 import org.jolokia.detector.ServerHandle;
 import org.jolokia.request.*;
 import org.jolokia.restrictor.AllowAllRestrictor;
+import org.jolokia.restrictor.DenyAllRestrictor;
+import org.jolokia.restrictor.Restrictor;
 import org.json.simple.JSONObject;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
@@ -93,6 +95,27 @@ public class Jsr160RequestDispatcherTest {
         }
     }
 
+    @Test
+    public void requestErrorKeepsConnection() throws Exception {
+        Jsr160RequestDispatcher denying = createDispatcherPointingToLocalMBeanServer(new DenyAllRestrictor());
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    denying.dispatchRequest(preparePostReadRequest(null));
+                    fail("Access should be denied");
+                } catch (SecurityException exp) {
+                    // Expected
+                }
+            }
+            Jsr160ConnectorPool pool = denying.getConnectorPool();
+            assertEquals(pool.getCreatedConnectors(), 1);
+            assertEquals(pool.getReusedConnectors(), 1);
+            assertEquals(pool.getClosedConnectors(), 0);
+            assertEquals(pool.getIdleConnectors(), 1);
+        } finally {
+            denying.destroy();
+        }
+    }
 
     // =========================================================================================================
 
@@ -115,9 +138,13 @@ public class Jsr160RequestDispatcherTest {
     }
 
     private Jsr160RequestDispatcher createDispatcherPointingToLocalMBeanServer() {
+        return createDispatcherPointingToLocalMBeanServer(new AllowAllRestrictor());
+    }
+
+    private Jsr160RequestDispatcher createDispatcherPointingToLocalMBeanServer(Restrictor pRestrictor) {
         Converters converters = new Converters(null);
         ServerHandle handle = new ServerHandle(null,null,null,null,null);
-        return  new Jsr160RequestDispatcher(converters,handle,new AllowAllRestrictor()) {
+        return  new Jsr160RequestDispatcher(converters,handle,pRestrictor) {
             @Override
             protected Map<String, Object> prepareEnv(Map<String, String> pTargetConfig) {
                 Map ret = super.prepareEnv(pTargetConfig);
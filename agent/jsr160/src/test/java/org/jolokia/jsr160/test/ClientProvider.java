@@ -20,6 +20,9 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Map;
 
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.remote.*;
 import javax.naming.Context;
 
@@ -40,7 +43,15 @@ public class ClientProvider implements JMXConnectorProvider {
         expectLastCall().anyTimes();
         connector.close();
         expectLastCall().anyTimes();
-        expect(connector.getMBeanServerConnection()).andReturn(ManagementFactory.getPlatformMBeanServer());
+        expect(connector.getMBeanServerConnection()).andReturn(ManagementFactory.getPlatformMBeanServer()).anyTimes();
+        connector.addConnectionNotificationListener((NotificationListener) anyObject(), (NotificationFilter) isNull(), isNull());
+        expectLastCall().anyTimes();
+        try {
+            connector.removeConnectionNotificationListener((NotificationListener) anyObject());
+        } catch (ListenerNotFoundException e) {
+            throw new IllegalStateException("Cannot happen for a mock",e);
+        }
+        expectLastCall().anyTimes();
         replay(connector);
         String user = System.getProperty("TEST_WITH_USER");
         if (user != null) {
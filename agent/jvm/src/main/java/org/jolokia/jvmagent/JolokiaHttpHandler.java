@@ -1,11 +1,12 @@
 package org.jolokia.jvmagent;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,11 +19,15 @@ import com.sun.net.httpserver.HttpHandler;
 import org.jolokia.backend.BackendManager;
 import org.jolokia.util.ConfigKey;
 import org.jolokia.restrictor.RestrictorFactory;
+import org.jolokia.http.CborWriter;
+import org.jolokia.http.CompressingOutputStream;
 import org.jolokia.http.HttpRequestHandler;
+import org.jolokia.request.JmxRequest;
 import org.jolokia.restrictor.*;
 import org.jolokia.util.LogHandler;
 import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -64,6 +69,16 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     // Configuration of this handler
     private Map<ConfigKey, String> configuration;
 
+    // Size of the buffer used when streaming out the answer
+    private static final int RESPONSE_BUFFER_SIZE = 8192;
+
+    // Restrictor created on start
+    private Restrictor restrictor;
+
+    // Executor for processing requests decoupled from the HTTP server's threads, null if requests
+    // are processed directly
+    private Executor requestExecutor;
+
 
     /**
      * Create a new HttpHandler for processing HTTP request
@@ -71,7 +86,22 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
      * @param pConfig jolokia specific config tuning the processing behaviour
      */
     public JolokiaHttpHandler(Map<ConfigKey,String> pConfig) {
+        this(pConfig,null);
+    }
+
+    /**
+     * Create a new HttpHandler for processing HTTP request. If an executor is given, the HTTP
+     * server's thread only hands over the exchange to this executor, which then processes the
+     * request and sends the response. This way, slow requests (e.g. to remote JSR-160 targets)
+     * don't block the threads of the HTTP server.
+     *
+     * @param pConfig jolokia specific config tuning the processing behaviour
+     * @param pRequestExecutor executor for processing requests or null if requests
+     *        should be processed directly by the calling thread
+     */
+    public JolokiaHttpHandler(Map<ConfigKey,String> pConfig, Executor pRequestExecutor) {
         configuration = pConfig;
+        requestExecutor = pRequestExecutor;
         context = pConfig.get(ConfigKey.AGENT_CONTEXT);
         if (!context.endsWith("/")) {
             context += "/";
@@ -83,17 +113,23 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
      * Start the handler
      */
     public void start() {
-        backendManager = new BackendManager(configuration,this, createRestrictor(configuration));
-        requestHandler = new HttpRequestHandler(backendManager,this);
+        restrictor = createRestrictor(configuration);
+        backendManager = new BackendManager(configuration,this, restrictor);
+        requestHandler = new HttpRequestHandler(backendManager,this,configuration);
     }
 
     /**
      * Stop the handler
      */
     public void stop() {
+        requestHandler.destroy();
         backendManager.destroy();
+        if (restrictor instanceof ReloadingPolicyRestrictor) {
+            ((ReloadingPolicyRestrictor) restrictor).stop();
+        }
         backendManager = null;
         requestHandler = null;
+        restrictor = null;
     }
 
     /**
@@ -104,15 +140,53 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
      * @throws IllegalStateException if the handler has not yet been started
      */
     @Override
-    @SuppressWarnings({ "PMD.AvoidCatchingThrowable", "PMD.AvoidInstanceofChecksInCatchClause" })
     public void handle(HttpExchange pExchange) throws IOException {
         if (requestHandler == null) {
             throw new IllegalStateException("Handler not yet started");
         }
+        if (requestExecutor == null) {
+            doHandle(pExchange);
+            return;
+        }
+        try {
+            requestExecutor.execute(new RequestTask(pExchange));
+        } catch (RejectedExecutionException exp) {
+            // All workers busy and no more room for waiting requests or already shutting down
+            sendServiceUnavailable(pExchange,"Too many concurrent requests, please try again later");
+        }
+    }
 
+    /**
+     * Answer requests which have been handed over to the request executor but which will never
+     * be processed because the executor has been shut down. Must be called before the handler
+     * is stopped.
+     *
+     * @param pTasks tasks as returned by {@link java.util.concurrent.ExecutorService#shutdownNow()}
+     */
+    void rejectRequests(List<Runnable> pTasks) {
+        for (Runnable task : pTasks) {
+            if (task instanceof RequestTask) {
+                HttpExchange exchange = ((RequestTask) task).exchange;
+                try {
+                    sendServiceUnavailable(exchange,"Agent is shutting down");
+                } catch (IOException exp) {
+                    exchange.close();
+                }
+            }
+        }
+    }
+
+    private void sendServiceUnavailable(HttpExchange pExchange, String pMessage) throws IOException {
+        JSONObject error = requestHandler.getErrorJSON(503,new RejectedExecutionException(pMessage));
+        sendResponse(pExchange,new ParsedUri(pExchange.getRequestURI(),context),pExchange.getRequestHeaders(),503,error);
+    }
+
+    @SuppressWarnings({ "PMD.AvoidCatchingThrowable", "PMD.AvoidInstanceofChecksInCatchClause" })
+    private void doHandle(HttpExchange pExchange) throws IOException {
         JSONAware json = null;
         URI uri = pExchange.getRequestURI();
         ParsedUri parsedUri = new ParsedUri(uri,context);
+        Headers requestHeaders = pExchange.getRequestHeaders();
         try {
             // Check access policy
             InetSocketAddress address = pExchange.getRemoteAddress();
@@ -121,13 +195,13 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
 
             // Dispatch for the proper HTTP request method
             if ("GET".equalsIgnoreCase(method)) {
-                json = executeGetRequest(parsedUri);
+                json = executeGetRequest(pExchange, parsedUri, requestHeaders);
             } else if ("POST".equalsIgnoreCase(method)) {
-                json = executePostRequest(pExchange, parsedUri);
+                json = executePostRequest(pExchange, parsedUri, requestHeaders);
             } else {
                 throw new IllegalArgumentException("HTTP Method " + method + " is not supported.");
             }
-            if (backendManager.isDebug()) {
+            if (backendManager.isDebug() && json != null) {
                 backendManager.info("Response: " + json);
             }
         } catch (Throwable exp) {
@@ -135,7 +209,11 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
                     exp instanceof RuntimeMBeanException ? ((RuntimeMBeanException) exp).getTargetException() : exp);
             json = error;
         } finally {
-            sendResponse(pExchange,parsedUri, json.toJSONString());
+            if (json == null) {
+                sendNotModified(pExchange,parsedUri,requestHeaders);
+            } else {
+                sendResponse(pExchange,parsedUri,requestHeaders,200,json);
+            }
         }
     }
 
@@ -144,7 +222,7 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     private Restrictor createRestrictor(Map<ConfigKey, String> pConfig) {
         String location = ConfigKey.POLICY_LOCATION.getValue(pConfig);
         try {
-            Restrictor ret = RestrictorFactory.lookupPolicyRestrictor(location);
+            Restrictor ret = RestrictorFactory.lookupPolicyRestrictor(location, ConfigKey.POLICY_RELOAD_INTERVAL.getIntValue(pConfig), this);
             if (ret != null) {
                 info("Using access restrictor " + location);
                 return ret;
@@ -160,14 +238,27 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     }
 
 
-    private JSONAware executeGetRequest(ParsedUri parsedUri) {
-        return requestHandler.handleGetRequest(parsedUri.getUri().toString(),parsedUri.getPathInfo(), parsedUri.getParameterMap());
+    // Returns null if the client's copy of the answer, identified by an entity tag, is still valid
+    private JSONAware executeGetRequest(HttpExchange pExchange, ParsedUri parsedUri, Headers pRequestHeaders) {
+        JmxRequest jmxReq = requestHandler.parseGetRequest(parsedUri.getUri().toString(), parsedUri.getPathInfo(),
+                                                           parsedUri.getParameterMap());
+        // Calculated before executing the request so that it is never newer than the answer
+        String eTag = requestHandler.getETag(jmxReq, isCborRequested(parsedUri, pRequestHeaders));
+        if (eTag != null && HttpRequestHandler.matchesETag(pRequestHeaders.getFirst("If-None-Match"), eTag)) {
+            pExchange.getResponseHeaders().set("ETag", eTag);
+            return null;
+        }
+        JSONAware json = requestHandler.handleGetRequest(jmxReq);
+        if (eTag != null && HttpRequestHandler.isSuccess(json)) {
+            pExchange.getResponseHeaders().set("ETag", eTag);
+        }
+        return json;
     }
 
-    private JSONAware executePostRequest(HttpExchange pExchange, ParsedUri pUri) throws MalformedObjectNameException, IOException {
+    private JSONAware executePostRequest(HttpExchange pExchange, ParsedUri pUri, Headers pRequestHeaders)
+            throws MalformedObjectNameException, IOException {
         String encoding = null;
-        Headers headers = pExchange.getRequestHeaders();
-        String cType =  headers.getFirst("Content-Type");
+        String cType =  pRequestHeaders.getFirst("Content-Type");
         if (cType != null) {
             Matcher matcher = contentTypePattern.matcher(cType);
             if (matcher.matches()) {
@@ -179,17 +270,51 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     }
 
 
-    private void sendResponse(HttpExchange pExchange, ParsedUri pParsedUri, String pJson) throws IOException {
+    private void sendResponse(final HttpExchange pExchange, ParsedUri pParsedUri, Headers pRequestHeaders,
+                              final int pStatus, JSONAware pJson) throws IOException {
         OutputStream out = null;
         String callback = pParsedUri.getParameter(ConfigKey.CALLBACK.getKeyValue());
+        boolean cbor = isCborRequested(pParsedUri, pRequestHeaders);
         try {
-            Headers headers = pExchange.getResponseHeaders();
-            headers.set("Content-Type",(callback == null ? "text/plain" : "text/javascript") + "; charset=utf-8");
-            String content = callback == null ? pJson : callback + "(" + pJson + ");";
-            byte[] response = content.getBytes();
-            pExchange.sendResponseHeaders(200,response.length);
-            out = pExchange.getResponseBody();
-            out.write(response);
+            final Headers headers = pExchange.getResponseHeaders();
+            if (cbor) {
+                headers.set("Content-Type",CborWriter.MIME_TYPE);
+            } else {
+                headers.set("Content-Type",(callback == null ? "text/plain" : "text/javascript") + "; charset=utf-8");
+            }
+            setVary(headers, pParsedUri, pRequestHeaders);
+            String encoding = requestHandler.getResponseEncoding(pRequestHeaders.getFirst("Accept-Encoding"));
+            // The response headers are sent only when it is clear whether the answer gets compressed
+            out = new CompressingOutputStream(encoding,requestHandler.getCompressionMinSize()) {
+                @Override
+                protected OutputStream openStream(String pContentEncoding, int pLength) throws IOException {
+                    if (pContentEncoding != null) {
+                        headers.set("Content-Encoding",pContentEncoding);
+                    }
+                    pExchange.sendResponseHeaders(pStatus,getResponseLength(pLength));
+                    return pExchange.getResponseBody();
+                }
+            };
+            if (cbor) {
+                OutputStream bufferedOut = new BufferedOutputStream(out,RESPONSE_BUFFER_SIZE);
+                new CborWriter(bufferedOut).write(pJson);
+                bufferedOut.flush();
+                return;
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out,"UTF-8"),RESPONSE_BUFFER_SIZE);
+            if (callback != null) {
+                writer.write(callback);
+                writer.write("(");
+            }
+            if (pJson instanceof JSONStreamAware) {
+                ((JSONStreamAware) pJson).writeJSONString(writer);
+            } else {
+                writer.write(pJson.toJSONString());
+            }
+            if (callback != null) {
+                writer.write(");");
+            }
+            writer.flush();
         } finally {
             if (out != null) {
                 // Always close in order to finish the request.
@@ -199,6 +324,40 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
         }
     }
 
+    // Tell the client that its copy of the answer is still valid
+    private void sendNotModified(HttpExchange pExchange, ParsedUri pParsedUri, Headers pRequestHeaders) throws IOException {
+        setVary(pExchange.getResponseHeaders(), pParsedUri, pRequestHeaders);
+        pExchange.sendResponseHeaders(304,-1);
+        pExchange.close();
+    }
+
+    // Whether the answer is sent as CBOR instead of JSON. JSONP answers are always JSON.
+    private boolean isCborRequested(ParsedUri pParsedUri, Headers pRequestHeaders) {
+        return pParsedUri.getParameter(ConfigKey.CALLBACK.getKeyValue()) == null &&
+               CborWriter.isRequested(pParsedUri.getParameter(ConfigKey.FORMAT.getKeyValue()),
+                                      pRequestHeaders.getFirst("Accept"));
+    }
+
+    // Name the request headers which select the representation of the answer
+    private void setVary(Headers pResponseHeaders, ParsedUri pParsedUri, Headers pRequestHeaders) {
+        String vary = requestHandler.getVary(pParsedUri.getParameter(ConfigKey.CALLBACK.getKeyValue()),
+                                             pParsedUri.getParameter(ConfigKey.FORMAT.getKeyValue()),
+                                             pRequestHeaders.getFirst("Accept"));
+        if (vary != null) {
+            pResponseHeaders.set("Vary",vary);
+        }
+    }
+
+    // Length as given to HttpExchange.sendResponseHeaders(). If unknown, a length of 0 switches to
+    // chunked encoding, so the answer is streamed out while being serialized and never held
+    // completely in memory. An empty answer is indicated by -1.
+    private long getResponseLength(int pLength) {
+        if (pLength < 0) {
+            return 0;
+        }
+        return pLength == 0 ? -1 : pLength;
+    }
+
     @Override
     @SuppressWarnings("PMD.SystemPrintln")
     public final void debug(String message) {
@@ -216,4 +375,24 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     public final void error(String message, Throwable t) {
         System.err.println("ERROR: " + message);
     }
+
+    // Processing of a request handed over to the request executor
+    private final class RequestTask implements Runnable {
+        private final HttpExchange exchange;
+
+        private RequestTask(HttpExchange pExchange) {
+            exchange = pExchange;
+        }
+
+        @Override
+        public void run() {
+            try {
+                doHandle(exchange);
+            } catch (IOException exp) {
+                // Nobody else can take care of it, so at least log it
+                error("Cannot send response: " + exp,exp);
+                exchange.close();
+            }
+        }
+    }
 }
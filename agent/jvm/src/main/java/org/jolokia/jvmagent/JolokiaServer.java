@@ -18,15 +18,23 @@ package org.jolokia.jvmagent;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.security.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.*;
 
 import com.sun.net.httpserver.*;
+import org.jolokia.util.ConfigKey;
+import org.jolokia.util.ExecutorUtil;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -55,6 +63,12 @@ public class JolokiaServer {
     // Handler for jolokia requests
     private JolokiaHttpHandler jolokiaHttpHandler;
 
+    // Executor processing the requests handed over by the HTTP server's threads (if configured)
+    private ExecutorService workerExecutor;
+
+    // Seconds to wait for running requests to finish when stopping
+    private static final long WORKER_SHUTDOWN_TIMEOUT = 5L;
+
     // the thread factory
     private ThreadFactory threadFactory = new SimpleThreadFactory();
 
@@ -96,6 +110,10 @@ public class JolokiaServer {
      * Stop the HTTP server
      */
     public void stop() {
+        if (workerExecutor != null) {
+            // The handler must still be alive while the workers finish their requests
+            stopWorkerExecutor();
+        }
         jolokiaHttpHandler.stop();
 
         if (cleaner != null) {
@@ -104,6 +122,21 @@ public class JolokiaServer {
         }
     }
 
+    // Let running and waiting requests finish. If they don't finish in time, waiting requests
+    // are answered with an error and running ones get interrupted
+    private void stopWorkerExecutor() {
+        workerExecutor.shutdown();
+        try {
+            if (!workerExecutor.awaitTermination(WORKER_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                jolokiaHttpHandler.rejectRequests(workerExecutor.shutdownNow());
+                workerExecutor.awaitTermination(WORKER_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException exp) {
+            jolokiaHttpHandler.rejectRequests(workerExecutor.shutdownNow());
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * URL how this agent can be reached from the outsid.
      *
@@ -117,6 +150,9 @@ public class JolokiaServer {
 
     private void initServer() throws IOException {
 
+        // Create the executor first since this might fail for an unsupported executor model
+        Executor executor = createExecutor();
+
         int port = config.getPort();
         InetAddress address = config.getAddress();
         String protocol = config.getProtocol();
@@ -131,12 +167,13 @@ public class JolokiaServer {
 
         // Create proper context along with handler
         final String contextPath = config.getContextPath();
-        jolokiaHttpHandler = new JolokiaHttpHandler(config.getJolokiaConfig());
+        workerExecutor = createWorkerExecutor();
+        jolokiaHttpHandler = new JolokiaHttpHandler(getHandlerConfig(),workerExecutor);
         HttpContext context = httpServer.createContext(contextPath, jolokiaHttpHandler);
 
         // Special customizations
         addAuthenticatorIfNeeded(config.getUser(),config.getPassword(),context);
-        initializeExecutor();
+        httpServer.setExecutor(executor);
 
         url = String.format("%s://%s:%d%s",protocol,address.getCanonicalHostName(),port,contextPath);
     }
@@ -158,17 +195,60 @@ public class JolokiaServer {
 	}
     }
 
-    private void initializeExecutor() {
+    private Executor createExecutor() {
         Executor executor;
         String mode = config.getExecutor();
         if ("fixed".equalsIgnoreCase(mode)) {
             executor = Executors.newFixedThreadPool(config.getThreadNr(), threadFactory);
         } else if ("cached".equalsIgnoreCase(mode)) {
             executor = Executors.newCachedThreadPool(threadFactory);
+        } else if ("virtual".equalsIgnoreCase(mode)) {
+            executor = createVirtualThreadExecutor();
         } else {
+            // Also used for "bounded", where the HTTP thread only hands over the requests to the workers
             executor = Executors.newSingleThreadExecutor(threadFactory);
         }
-        httpServer.setExecutor(executor);
+        return executor;
+    }
+
+    // Configuration for the handler. Without worker threads, a waiting poll request would block
+    // the only thread of the HTTP server, so poll requests never wait in this case.
+    private Map<ConfigKey, String> getHandlerConfig() {
+        Map<ConfigKey, String> ret = new HashMap<ConfigKey, String>(config.getJolokiaConfig());
+        if (workerExecutor == null && "single".equalsIgnoreCase(config.getExecutor())) {
+            ret.put(ConfigKey.POLL_MAX_TIMEOUT, "0");
+        }
+        return ret;
+    }
+
+    // Executor for processing the requests handed over by the HTTP server's threads or null
+    // if the HTTP server's threads should process the requests directly
+    private ExecutorService createWorkerExecutor() {
+        if ("bounded".equalsIgnoreCase(config.getExecutor())) {
+            // Requests exceeding the limits get rejected
+            return ExecutorUtil.createBoundedExecutor(config.getThreadNr(), config.getQueueSize(), "jolokia-worker-");
+        } else if (config.getWorkerThreads() > 0) {
+            // If all workers are busy, requests wait for the next free worker
+            return ExecutorUtil.createQueueingExecutor(config.getWorkerThreads(), "jolokia-worker-");
+        } else {
+            return null;
+        }
+    }
+
+    // Executor which starts a new virtual thread for every task. Virtual threads
+    // are available since Java 21 only, so the executor is looked up dynamically.
+    private Executor createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Executor model 'virtual' is not supported by this JVM " +
+                                               "(virtual threads require Java 21 or later)",e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create executor for virtual threads: " + e,e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create executor for virtual threads: " + e.getCause(),e.getCause());
+        }
     }
 
 
@@ -48,6 +48,8 @@ public class ServerConfig {
     private InetAddress address;
     private String executor;
     private int threadNr;
+    private int workerThreads;
+    private int queueSize;
     private String keystore;
     private String context;
 
@@ -145,20 +147,40 @@ public class ServerConfig {
 
     /**
      * Executor to use as provided by the 'executor' option or "single" as default
-     * @return the executor model ("fixed", "single" or "cached")
+     * @return the executor model ("fixed", "single", "cached", "virtual" or "bounded")
      */
     public String getExecutor() {
         return executor;
     }
 
     /**
-     * Thread number to use when executor model is "fixed"
+     * Thread number to use when executor model is "fixed" or "bounded"
      * @return number of fixed threads
      */
     public int getThreadNr() {
         return threadNr;
     }
 
+    /**
+     * Number of threads which process requests after they have been handed over by the HTTP
+     * server's threads as given by the 'workerThreads' option
+     *
+     * @return number of worker threads or 0 if requests are processed by the HTTP server's threads directly
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Maximum number of requests waiting for a thread when the executor model is "bounded"
+     * as given by the 'queueSize' option
+     *
+     * @return queue size
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
     /**
      * When the protocol is 'https' then this property indicates whether SSL client certificate
      * authentication should be used or not
@@ -243,15 +265,21 @@ public class ServerConfig {
         // Thread-Nr
         String threadNrS =  agentConfig.get("threadNr");
         threadNr = threadNrS != null ? Integer.parseInt(threadNrS) : 5;
+        String workerThreadsS = agentConfig.get("workerThreads");
+        workerThreads = workerThreadsS != null ? Integer.parseInt(workerThreadsS) : 0;
+        String queueSizeS = agentConfig.get("queueSize");
+        queueSize = queueSizeS != null ? Integer.parseInt(queueSizeS) : 10;
     }
 
     private void initExecutor() {
         executor = agentConfig.containsKey("executor") ? agentConfig.get("executor") : "single";
         if (!"single".equalsIgnoreCase(executor) &&
                 !"fixed".equalsIgnoreCase(executor) &&
-                !"cached".equalsIgnoreCase(executor)) {
+                !"cached".equalsIgnoreCase(executor) &&
+                !"virtual".equalsIgnoreCase(executor) &&
+                !"bounded".equalsIgnoreCase(executor)) {
             throw new IllegalArgumentException("Executor model can be '" + executor +
-                                               "' but most be either 'single', 'fixed' or 'cached'");
+                                               "' but most be either 'single', 'fixed', 'cached', 'virtual' or 'bounded'");
         }
     }
 
@@ -77,7 +77,11 @@ public class HelpCommand extends AbstractBaseCommand {
 "                                  \"fixed\"  -- Thread pool with a fixed number of threads (default: 5)\n" +
 "                                  \"cached\" -- Cached Thread Pool, creates threads on demand\n" +
 "                                  \"single\" -- Single Thread\n" +
-"    --threadNr <nr threads>       Number of fixed threads if \"fixed\" is used as executor\n" +
+"                                  \"virtual\" -- A virtual thread per request (Java 21 or later)\n" +
+"                                  \"bounded\" -- Fixed number of worker threads, rejects requests when saturated\n" +
+"    --threadNr <nr threads>       Number of fixed threads if \"fixed\" or \"bounded\" is used as executor\n" +
+"    --queueSize <size>            Number of requests waiting for a thread if \"bounded\" is used as executor (default: 10)\n" +
+"    --workerThreads <nr threads>  Number of threads processing requests handed over by the HTTP threads (default: 0)\n" +
 "    --backlog <backlog>           How many request to keep in the backlog (default: 10)\n" +
 "    --protocol <http|https>       Protocol which must be either \"http\" or \"https\" (default: http)\n" +
 "    --keystore <keystore>         Path to keystore (https only)\n" +
@@ -89,6 +93,7 @@ public class HelpCommand extends AbstractBaseCommand {
 "    --maxCollectionSize <size>    Maximum number of element in collections to keep when serializing the response (default: " + ConfigKey.MAX_COLLECTION_SIZE.getDefaultValue() + ")\n" +
 "    --maxObjects <nr>             Maximum number of objects to consider for serialization (default: " + ConfigKey.MAX_OBJECTS + ")\n" +
 "    --policyLocation <url>        Location of a Jolokia policy file\n" +
+"    --policyReloadInterval <sec>  Interval for checking the policy file for changes (default: 0, never reloaded)\n" +
 "    --mbeanQualifier <qualifier>  Qualifier to use when registering Jolokia internal MBeans\n" +
 "    --config <configfile>         Path to a property file from where to read the configuration\n" +
 "    --help                        This help documentation\n" +
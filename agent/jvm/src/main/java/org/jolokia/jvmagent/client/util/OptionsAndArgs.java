@@ -39,12 +39,13 @@ public final class OptionsAndArgs {
                 // JVM Agent options:
                 "host", "port", "agentContext", "user", "password",
                 "quiet!", "verbose!", "version!", "executor", "threadNr",
+                "workerThreads", "queueSize",
                 "backlog", "protocol", "keystore", "keystorePassword",
                 "useSslClientAuthentication!",
                 // Jolokia options:
                 "historyMaxEntries","debug!","debugMaxEntries",
                 "dispatcherClasses", "maxDepth", "maxCollectionSize",
-                "maxObjects", "policyLocation", "mbeanQualifier",
+                "maxObjects", "policyLocation", "policyReloadInterval", "mbeanQualifier",
                 // Others:
                 "config", "help!"));
 
@@ -21,6 +21,7 @@ import com.sun.net.httpserver.HttpExchange;
 import org.easymock.EasyMock;
 import org.jolokia.jvmagent.JolokiaHttpHandler;
 import org.jolokia.util.ConfigKey;
+import org.jolokia.util.ExecutorUtil;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -32,9 +33,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
 
 import static org.easymock.EasyMock.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -147,6 +151,122 @@ public class JolokiaHttpHandlerTest {
         assertTrue(((String) resp.get("error")).contains("not allowed"));
     }
 
+    @Test
+    public void compressedResponse() throws URISyntaxException, IOException, ParseException {
+        Map<ConfigKey,String> config = getConfig();
+        config.put(ConfigKey.COMPRESSION_MIN_SIZE,"0");
+        JolokiaHttpHandler newHandler = new JolokiaHttpHandler(config);
+        HttpExchange exchange = prepareExchange("http://localhost:8080/jolokia/read/java.lang:type=Memory/HeapMemoryUsage");
+        expect(exchange.getRequestMethod()).andReturn("GET");
+        Headers reqHeaders = new Headers();
+        reqHeaders.add("Accept-Encoding","deflate;q=0.5, gzip");
+        expect(exchange.getRequestHeaders()).andReturn(reqHeaders);
+        Headers header = new Headers();
+        ByteArrayOutputStream out = prepareResponse(handler, exchange, header);
+        newHandler.start();
+        try {
+            newHandler.handle(exchange);
+        } finally {
+            newHandler.stop();
+        }
+        assertEquals(header.getFirst("Content-Encoding"),"gzip");
+        assertEquals(header.getFirst("Vary"),"Accept-Encoding");
+        Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())),"UTF-8");
+        JSONObject resp = (JSONObject) new JSONParser().parse(reader);
+        assertTrue(resp.containsKey("value"));
+    }
+
+    @Test
+    public void cborResponse() throws URISyntaxException, IOException {
+        HttpExchange exchange = prepareExchange("http://localhost:8080/jolokia/read/java.lang:type=Memory/HeapMemoryUsage");
+        expect(exchange.getRequestMethod()).andReturn("GET");
+        Headers reqHeaders = new Headers();
+        reqHeaders.add("Accept","application/json;q=0.5, application/cbor");
+        expect(exchange.getRequestHeaders()).andReturn(reqHeaders);
+        Headers header = new Headers();
+        ByteArrayOutputStream out = prepareResponse(handler, exchange, header);
+
+        handler.handle(exchange);
+
+        assertEquals(header.getFirst("Content-Type"),"application/cbor");
+        assertEquals(header.getFirst("Vary"),"Accept-Encoding, Accept");
+        byte[] content = out.toByteArray();
+        // Major type 5 (map)
+        assertEquals(content[0] & 0xe0, 0xa0);
+    }
+
+    @Test
+    public void notModified() throws URISyntaxException, IOException {
+        HttpExchange exchange = prepareExchange("http://localhost:8080/jolokia/version");
+        expect(exchange.getRequestMethod()).andReturn("GET");
+        Headers header = new Headers();
+        expect(exchange.getResponseHeaders()).andReturn(header).anyTimes();
+        expect(exchange.getRequestHeaders()).andReturn(new Headers()).anyTimes();
+        exchange.sendResponseHeaders(eq(200),anyLong());
+        expect(exchange.getResponseBody()).andReturn(new ByteArrayOutputStream());
+        replay(exchange);
+
+        handler.handle(exchange);
+        String eTag = header.getFirst("ETag");
+        assertNotNull(eTag);
+
+        exchange = prepareExchange("http://localhost:8080/jolokia/version");
+        expect(exchange.getRequestMethod()).andReturn("GET");
+        header = new Headers();
+        expect(exchange.getResponseHeaders()).andReturn(header).anyTimes();
+        Headers reqHeaders = new Headers();
+        reqHeaders.add("If-None-Match",eTag);
+        expect(exchange.getRequestHeaders()).andReturn(reqHeaders).anyTimes();
+        exchange.sendResponseHeaders(304,-1);
+        exchange.close();
+        replay(exchange);
+
+        handler.handle(exchange);
+        verify(exchange);
+        assertEquals(header.getFirst("ETag"),eTag);
+    }
+
+    @Test
+    public void tooManyRequests() throws URISyntaxException, IOException, ParseException, InterruptedException {
+        ThreadPoolExecutor executor = ExecutorUtil.createBoundedExecutor(1, 1, "jolokia-test-");
+        final CountDownLatch latch = new CountDownLatch(1);
+        Runnable blocker = new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // One busy worker and one waiting request
+        executor.execute(blocker);
+        executor.execute(blocker);
+
+        JolokiaHttpHandler newHandler = new JolokiaHttpHandler(getConfig(),executor);
+        HttpExchange exchange = prepareExchange("http://localhost:8080/jolokia/read/java.lang:type=Memory/HeapMemoryUsage");
+        Headers header = new Headers();
+        expect(exchange.getResponseHeaders()).andReturn(header).anyTimes();
+        expect(exchange.getRequestHeaders()).andReturn(new Headers()).anyTimes();
+        exchange.sendResponseHeaders(eq(503),anyLong());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        expect(exchange.getResponseBody()).andReturn(out);
+        replay(exchange);
+        newHandler.start();
+        try {
+            newHandler.handle(exchange);
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            newHandler.stop();
+        }
+        JSONObject resp = (JSONObject) new JSONParser().parse(out.toString("utf-8"));
+        assertEquals(resp.get("status"),503L);
+        assertEquals(resp.get("error_type"),RejectedExecutionException.class.getName());
+        assertTrue(((String) resp.get("error")).contains("Too many"));
+    }
+
     private HttpExchange prepareExchange(String pUri) throws URISyntaxException {
         HttpExchange exchange = EasyMock.createMock(HttpExchange.class);
         URI uri = new URI(pUri);
@@ -157,6 +277,8 @@ public class JolokiaHttpHandlerTest {
 
     private ByteArrayOutputStream prepareResponse(JolokiaHttpHandler handler, HttpExchange exchange, Headers header) throws IOException {
         expect(exchange.getResponseHeaders()).andReturn(header);
+        // Looked up for the Accept-Encoding
+        expect(exchange.getRequestHeaders()).andReturn(new Headers()).anyTimes();
         exchange.sendResponseHeaders(anyInt(),anyLong());
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
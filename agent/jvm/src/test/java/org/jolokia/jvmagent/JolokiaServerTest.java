@@ -39,7 +39,9 @@ public class JolokiaServerTest {
                 null,
                 "executor=fixed,threadNr=5",
                 "executor=cached",
-                "executor=single"
+                "executor=single",
+                "executor=single,workerThreads=3",
+                "executor=bounded,threadNr=2,queueSize=2"
         };
 
         for (String c : configs) {
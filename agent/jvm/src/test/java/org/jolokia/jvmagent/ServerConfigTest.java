@@ -55,6 +55,8 @@ public class ServerConfigTest {
         assertEquals(config.getContextPath(),"/jolokia/");
         assertEquals(config.getExecutor(),"single");
         assertEquals(config.getThreadNr(),5);
+        assertEquals(config.getWorkerThreads(),0);
+        assertEquals(config.getQueueSize(),10);
         assertFalse(config.useClientAuthentication());
         assertNull(config.getKeystore());
         assertEquals(config.getKeystorePassword().length, 0);
@@ -112,6 +114,19 @@ public class ServerConfigTest {
         new ServerConfig("port=bla");
     }
 
+    @Test
+    public void boundedExecutor() {
+        ServerConfig config = new ServerConfig("executor=bounded,threadNr=3,queueSize=20");
+        assertEquals(config.getExecutor(),"bounded");
+        assertEquals(config.getThreadNr(),3);
+        assertEquals(config.getQueueSize(),20);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,expectedExceptionsMessageRegExp = ".*blub.*")
+    public void invalidExecutor() {
+        new ServerConfig("executor=blub");
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class,expectedExceptionsMessageRegExp = ".*blub.*")
     public void invalidMode() {
         new ServerConfig("mode=blub");
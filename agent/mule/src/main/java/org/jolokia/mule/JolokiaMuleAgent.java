@@ -135,6 +135,7 @@ public class JolokiaMuleAgent extends AbstractAgent implements MuleAgentConfig {
     private int maxDepth = 5;
     private int maxCollectionSize = 0;
     private int maxObjects = 10000;
+    private int policyReloadInterval = 0;
 
     public String getHost() {
         return host;
@@ -216,4 +217,12 @@ public class JolokiaMuleAgent extends AbstractAgent implements MuleAgentConfig {
         maxObjects = pMaxObjects;
     }
 
+    public int getPolicyReloadInterval() {
+        return policyReloadInterval;
+    }
+
+    public void setPolicyReloadInterval(int pPolicyReloadInterval) {
+        policyReloadInterval = pPolicyReloadInterval;
+    }
+
 }
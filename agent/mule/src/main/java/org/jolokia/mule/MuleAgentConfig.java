@@ -88,4 +88,11 @@ public interface MuleAgentConfig {
      * @return true if debug is switched on
      */
     boolean isDebug();
+
+    /**
+     * Interval in seconds for checking the policy file for changes,
+     * 0 if the policy should be read only once
+     * @return reload interval in seconds
+     */
+    int getPolicyReloadInterval();
 }
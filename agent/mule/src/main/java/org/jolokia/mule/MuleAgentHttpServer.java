@@ -151,6 +151,7 @@ public class MuleAgentHttpServer {
         ret.put("maxDepth","" + pConfig.getMaxDepth());
         ret.put("maxObjects", "" + pConfig.getMaxObjects());
         ret.put("debug","" + pConfig.isDebug());
+        ret.put("policyReloadInterval","" + pConfig.getPolicyReloadInterval());
         return ret;
     }
 
@@ -49,6 +49,7 @@ public class JolokiaMuleAgentTest {
         agent.setMaxCollectionSize(3);
         agent.setMaxDepth(4);
         agent.setMaxObjects(5);
+        agent.setPolicyReloadInterval(10);
         agent.setUser("roland");
         agent.setPassword("s!cr!t");
 
@@ -59,6 +60,7 @@ public class JolokiaMuleAgentTest {
         assertEquals(agent.getMaxCollectionSize(),3);
         assertEquals(agent.getMaxDepth(),4);
         assertEquals(agent.getMaxObjects(),5);
+        assertEquals(agent.getPolicyReloadInterval(),10);
         assertEquals(agent.getUser(),"roland");
         assertEquals(agent.getPassword(),"s!cr!t");
     }
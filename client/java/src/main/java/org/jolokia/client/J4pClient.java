@@ -22,6 +22,8 @@ import java.util.*;
 
 import org.apache.http.*;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.*;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.params.HttpParams;
@@ -46,6 +48,13 @@ public class J4pClient extends J4pClientBuilderFactory {
     // Creating and parsing HTTP-Requests and Responses
     private J4pRequestHandler requestHandler;
 
+    // Maximum number of answers kept in the response cache
+    private static final int MAX_CACHED_RESPONSES = 100;
+
+    // Answers to GET requests along with their entity tags, keyed by request URI.
+    // Null if responses are not cached.
+    private Map<URI, CachedResponse> responseCache;
+
     /**
      * Construct a new client for a given server url
      *
@@ -68,8 +77,31 @@ public class J4pClient extends J4pClientBuilderFactory {
      * @param pHttpClient HTTP client to use for the connecting to the agent
      */
     public J4pClient(String pJ4pServerUrl, HttpClient pHttpClient) {
+        this(pJ4pServerUrl, pHttpClient, false);
+    }
+
+    /**
+     * Constructor using a given HttpClient and optionally caching answers. If caching is switched on,
+     * answers to GET requests which the agent marks with an entity tag (these are <code>list</code>,
+     * <code>search</code> and <code>version</code> requests) are remembered. When the same request is
+     * executed again, the agent is asked whether the answer has changed and the cached answer is returned
+     * if not. In this case the response carries the timestamp of the original answer.
+     *
+     * @param pJ4pServerUrl the agent URL for how to contact the server.
+     * @param pHttpClient HTTP client to use for the connecting to the agent
+     * @param pCacheResponses whether to cache answers
+     */
+    public J4pClient(String pJ4pServerUrl, HttpClient pHttpClient, boolean pCacheResponses) {
         requestHandler = new J4pRequestHandler(pJ4pServerUrl);
         httpClient = pHttpClient;
+        if (pCacheResponses) {
+            responseCache = new LinkedHashMap<URI, CachedResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<URI, CachedResponse> pEldest) {
+                    return size() > MAX_CACHED_RESPONSES;
+                }
+            };
+        }
     }
 
     /**
@@ -139,8 +171,10 @@ public class J4pClient extends J4pClientBuilderFactory {
                                                                      Map<J4pQueryParameter,String> pProcessingOptions)
             throws J4pException {
         try {
-            HttpResponse response = httpClient.execute(requestHandler.getHttpRequest(pRequest,pMethod,pProcessingOptions));
-            JSONAware jsonResponse = extractJsonResponse(pRequest,response);
+            HttpUriRequest httpRequest = requestHandler.getHttpRequest(pRequest,pMethod,pProcessingOptions);
+            JSONAware jsonResponse = responseCache != null && HttpGet.METHOD_NAME.equals(httpRequest.getMethod()) ?
+                    executeWithCache(pRequest, httpRequest) :
+                    extractJsonResponse(pRequest, httpClient.execute(httpRequest));
             if (! (jsonResponse instanceof JSONObject)) {
                 throw new J4pException("Invalid JSON answer for a single request (expected a map but got a " + jsonResponse.getClass() + ")");
             }
@@ -203,6 +237,39 @@ public class J4pClient extends J4pClientBuilderFactory {
 
     // =====================================================================================================
 
+    // Execute a GET request and revalidate a cached answer, if there is any. An answer
+    // carrying an entity tag is put into the cache.
+    private <T extends J4pRequest> JSONAware executeWithCache(T pRequest, HttpUriRequest pHttpRequest)
+            throws IOException, J4pException {
+        URI uri = pHttpRequest.getURI();
+        CachedResponse cached;
+        synchronized (responseCache) {
+            cached = responseCache.get(uri);
+        }
+        if (cached != null) {
+            pHttpRequest.setHeader("If-None-Match", cached.eTag);
+        }
+        HttpResponse response = httpClient.execute(pHttpRequest);
+        if (cached != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                // Release the connection
+                entity.consumeContent();
+            }
+            return cached.json;
+        }
+        JSONAware jsonResponse = extractJsonResponse(pRequest, response);
+        Header eTag = response.getFirstHeader("ETag");
+        synchronized (responseCache) {
+            if (eTag != null && jsonResponse instanceof JSONObject) {
+                responseCache.put(uri, new CachedResponse(eTag.getValue(), (JSONObject) jsonResponse));
+            } else {
+                responseCache.remove(uri);
+            }
+        }
+        return jsonResponse;
+    }
+
     @SuppressWarnings("PMD.PreserveStackTrace")
     private <T extends J4pRequest> JSONAware extractJsonResponse(T pRequest, HttpResponse pResponse) throws J4pException {
         try {
@@ -322,6 +389,18 @@ public class J4pClient extends J4pClientBuilderFactory {
         return this.<R,T>execute(Arrays.asList(pRequests));
     }
 
+    /**
+     * Remove all answers from the response cache, so that the next requests are answered by the agent
+     * in any case. Does nothing if responses are not cached.
+     */
+    public void clearResponseCache() {
+        if (responseCache != null) {
+            synchronized (responseCache) {
+                responseCache.clear();
+            }
+        }
+    }
+
     /**
      * Expose the embedded {@link org.apache.http.client.HttpClient} for tuning connection parameters.
      *
@@ -331,5 +410,14 @@ public class J4pClient extends J4pClientBuilderFactory {
         return httpClient;
     }
 
+    // An answer of the agent along with its entity tag
+    private static final class CachedResponse {
+        private final String eTag;
+        private final JSONObject json;
 
+        private CachedResponse(String pETag, JSONObject pJson) {
+            eTag = pETag;
+            json = pJson;
+        }
+    }
 }
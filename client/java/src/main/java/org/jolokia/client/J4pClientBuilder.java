@@ -53,6 +53,9 @@ public class J4pClientBuilder {
     // Password to use for authentication
     private String password;
 
+    // Whether to cache answers which can be revalidated
+    private boolean cacheResponses;
+
     /**
      * Package access constructor, user static method on J4pClient for creating
      * the
@@ -219,6 +222,18 @@ public class J4pClientBuilder {
         return this;
     }
 
+    /**
+     * Cache the answers to <code>list</code>, <code>search</code> and <code>version</code> requests.
+     * When such a request is repeated, the agent is only asked whether the answer has changed
+     * and the cached answer is used if not.
+     *
+     * @param pCache whether to cache answers
+     */
+    public final J4pClientBuilder cacheResponses(boolean pCache) {
+        cacheResponses = pCache;
+        return this;
+    }
+
     // =====================================================================================
 
     /**
@@ -233,7 +248,7 @@ public class J4pClientBuilder {
             httpClient.getCredentialsProvider().setCredentials(AuthScope.ANY,
                                                                new UsernamePasswordCredentials(user,password));
         }
-        return new J4pClient(url,httpClient);
+        return new J4pClient(url,httpClient,cacheResponses);
     }
 
     ClientConnectionManager createClientConnectionManager() {
@@ -90,4 +90,9 @@ public abstract class J4pClientBuilderFactory {
     public static J4pClientBuilder socketBufferSize(int pSize) {
         return new J4pClientBuilder().socketBufferSize(pSize);
     }
+
+    /** See {@link J4pClientBuilder#cacheResponses(boolean)} */
+    public static J4pClientBuilder cacheResponses(boolean pCache) {
+        return new J4pClientBuilder().cacheResponses(pCache);
+    }
 }
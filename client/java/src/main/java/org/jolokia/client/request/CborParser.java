@@ -0,0 +1,256 @@
+package org.jolokia.client.request;
+
+/*
+ *  Copyright 2009-2011 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Parser for answers in the binary CBOR format (RFC 7049) as sent by the agent when the
+ * processing parameter <code>format</code> is set to <code>cbor</code>. The result has the
+ * same types as when the JSON answer gets parsed: maps become {@link JSONObject}s, arrays
+ * {@link JSONArray}s, integers {@link Long}s and floating point numbers {@link Double}s.
+ * Bignums (tags 2 and 3) become {@link BigInteger}s and decimal fractions (tag 4)
+ * {@link BigDecimal}s.
+ *
+ * Only the definite length items of the JSON data model are supported. Other tags are skipped.
+ *
+ * @author roland
+ * @since 17.10.11
+ */
+class CborParser {
+
+    // Major types
+    private static final int UNSIGNED_INT = 0;
+    private static final int NEGATIVE_INT = 1;
+    private static final int BYTE_STRING = 2;
+    private static final int TEXT_STRING = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE = 7;
+
+    // Tags with a meaning for numbers
+    private static final long POSITIVE_BIGNUM = 2;
+    private static final long NEGATIVE_BIGNUM = 3;
+    private static final long DECIMAL_FRACTION = 4;
+
+    // Stream to read from
+    private InputStream in;
+
+    // Number of bytes read so far, used for error messages
+    private int position;
+
+    /**
+     * Parse a single CBOR item from a stream
+     *
+     * @param pIn stream to read from, should be buffered
+     * @return the item parsed
+     * @throws IOException if reading fails or the stream ends prematurely
+     * @throws ParseException if the content is no valid CBOR or contains unsupported items
+     */
+    Object parse(InputStream pIn) throws IOException, ParseException {
+        in = pIn;
+        position = 0;
+        return readItem();
+    }
+
+    // ==========================================================================================
+
+    private Object readItem() throws IOException, ParseException {
+        int initial = readByte();
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case UNSIGNED_INT:
+                return readArgument(info);
+            case NEGATIVE_INT:
+                return -1 - readArgument(info);
+            case TEXT_STRING:
+                return new String(readBytes(readLength(info)),"UTF-8");
+            case ARRAY:
+                return readArray(readLength(info));
+            case MAP:
+                return readMap(readLength(info));
+            case TAG:
+                return readTagged(readArgument(info));
+            case SIMPLE:
+                return readSimple(info);
+            default:
+                // Byte strings
+                throw unexpected(initial);
+        }
+    }
+
+    private Object readTagged(long pTag) throws IOException, ParseException {
+        if (pTag == POSITIVE_BIGNUM || pTag == NEGATIVE_BIGNUM) {
+            int initial = readByte();
+            if (initial >>> 5 != BYTE_STRING) {
+                throw unexpected(initial);
+            }
+            BigInteger magnitude = new BigInteger(1,readBytes(readLength(initial & 0x1f)));
+            return pTag == POSITIVE_BIGNUM ? magnitude : magnitude.not();
+        } else if (pTag == DECIMAL_FRACTION) {
+            Object fraction = readItem();
+            if (!(fraction instanceof JSONArray) || ((JSONArray) fraction).size() != 2 ||
+                !(((JSONArray) fraction).get(0) instanceof Long)) {
+                throw unexpected(fraction);
+            }
+            long exponent = (Long) ((JSONArray) fraction).get(0);
+            Object mantissa = ((JSONArray) fraction).get(1);
+            if (mantissa instanceof Long) {
+                return new BigDecimal(BigInteger.valueOf((Long) mantissa),(int) -exponent);
+            } else if (mantissa instanceof BigInteger) {
+                return new BigDecimal((BigInteger) mantissa,(int) -exponent);
+            } else {
+                throw unexpected(mantissa);
+            }
+        } else {
+            // The meaning of other tags is not needed for a JSON like answer
+            return readItem();
+        }
+    }
+
+    private JSONArray readArray(int pSize) throws IOException, ParseException {
+        JSONArray ret = new JSONArray();
+        for (int i = 0; i < pSize; i++) {
+            ret.add(readItem());
+        }
+        return ret;
+    }
+
+    private JSONObject readMap(int pSize) throws IOException, ParseException {
+        JSONObject ret = new JSONObject();
+        for (int i = 0; i < pSize; i++) {
+            Object key = readItem();
+            ret.put(String.valueOf(key), readItem());
+        }
+        return ret;
+    }
+
+    private Object readSimple(int pInfo) throws IOException, ParseException {
+        switch (pInfo) {
+            case 20:
+                return Boolean.FALSE;
+            case 21:
+                return Boolean.TRUE;
+            case 22:
+            case 23:
+                // null and undefined
+                return null;
+            case 25:
+                return (double) halfToFloat((int) readUnsigned(2));
+            case 26:
+                return (double) Float.intBitsToFloat((int) readUnsigned(4));
+            case 27:
+                return Double.longBitsToDouble(readUnsigned(8));
+            default:
+                throw unexpected((SIMPLE << 5) | pInfo);
+        }
+    }
+
+    // Read the argument of a data item, which follows the initial byte unless it is small enough
+    // to be contained in the initial byte itself
+    private long readArgument(int pInfo) throws IOException, ParseException {
+        if (pInfo < 24) {
+            return pInfo;
+        }
+        switch (pInfo) {
+            case 24:
+                return readUnsigned(1);
+            case 25:
+                return readUnsigned(2);
+            case 26:
+                return readUnsigned(4);
+            case 27:
+                long ret = readUnsigned(8);
+                if (ret < 0) {
+                    // Does not fit into a long
+                    throw unexpected(ret);
+                }
+                return ret;
+            default:
+                // Indefinite lengths and reserved values
+                throw unexpected(pInfo);
+        }
+    }
+
+    private int readLength(int pInfo) throws IOException, ParseException {
+        long length = readArgument(pInfo);
+        if (length > Integer.MAX_VALUE) {
+            throw unexpected(length);
+        }
+        return (int) length;
+    }
+
+    private long readUnsigned(int pNrOfBytes) throws IOException {
+        long ret = 0;
+        for (int i = 0; i < pNrOfBytes; i++) {
+            ret = (ret << 8) | readByte();
+        }
+        return ret;
+    }
+
+    private byte[] readBytes(int pLength) throws IOException {
+        byte[] ret = new byte[pLength];
+        int offset = 0;
+        while (offset < pLength) {
+            int read = in.read(ret, offset, pLength - offset);
+            if (read < 0) {
+                throw new EOFException("Premature end of CBOR answer at position " + (position + offset));
+            }
+            offset += read;
+        }
+        position += pLength;
+        return ret;
+    }
+
+    private int readByte() throws IOException {
+        int ret = in.read();
+        if (ret < 0) {
+            throw new EOFException("Premature end of CBOR answer at position " + position);
+        }
+        position++;
+        return ret;
+    }
+
+    // Convert an IEEE 754 half precision number
+    private float halfToFloat(int pHalf) {
+        int exponent = (pHalf >> 10) & 0x1f;
+        int mantissa = pHalf & 0x3ff;
+        float value;
+        if (exponent == 0) {
+            value = (float) (mantissa * Math.pow(2,-24));
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (float) ((mantissa + 1024) * Math.pow(2,exponent - 25));
+        }
+        return (pHalf & 0x8000) != 0 ? -value : value;
+    }
+
+    private ParseException unexpected(Object pValue) {
+        return new ParseException(position,ParseException.ERROR_UNEXPECTED_TOKEN,pValue);
+    }
+}
@@ -47,6 +47,20 @@ public enum J4pQueryParameter {
      * This works only for certain operations like pattern reads.
      */
     IGNORE_ERRORS("ignoreErrors"),
+
+    /**
+     * Time in seconds since the epoch (e.g. from {@link J4pResponse#getRequestDate()} of a
+     * previous response). If no MBean has been registered or unregistered since then, a list
+     * request fails with a {@link org.jolokia.client.exception.J4pRemoteException} with status 304.
+     */
+    IF_MODIFIED_SINCE("ifModifiedSince"),
+
+    /**
+     * Format of the answer. With <code>cbor</code>, the agent answers in the binary CBOR format
+     * which is smaller and faster to parse than JSON. The answer is converted transparently, so
+     * the responses are the same as for JSON answers.
+     */
+    FORMAT("format"),
     ;
 
     // =======================================================================
@@ -20,9 +20,10 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.http.*;
 import org.apache.http.client.methods.*;
@@ -43,6 +44,16 @@ public class J4pRequestHandler {
     // j4p agent URL for the agent server
     private URI j4pServerUrl;
 
+    // Content encodings for compressed responses
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    // Content type of an answer in the binary CBOR format
+    private static final String CBOR_MIME_TYPE = "application/cbor";
+
+    // Charset used by the agent for its answers
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
     /**
      * Constructor
      *
@@ -87,7 +98,7 @@ public class J4pRequestHandler {
                     requestPath.append("/");
                     requestPath.append(escape(p));
                 }
-                return new HttpGet(createRequestURI(requestPath.toString(),queryParams));
+                return acceptCompression(new HttpGet(createRequestURI(requestPath.toString(),queryParams)));
             }
         }
 
@@ -96,7 +107,7 @@ public class J4pRequestHandler {
         JSONObject requestContent = pRequest.toJson();
         HttpPost postReq = new HttpPost(createRequestURI(j4pServerUrl.getPath(),queryParams));
         postReq.setEntity(new StringEntity(requestContent.toJSONString(),"utf-8"));
-        return postReq;
+        return acceptCompression(postReq);
     }
 
     private String prepareBaseUrl(URI pUri) {
@@ -127,12 +138,15 @@ public class J4pRequestHandler {
             bulkRequest.add(requestContent);
         }
         postReq.setEntity(new StringEntity(bulkRequest.toJSONString(),"utf-8"));
-        return postReq;
+        return acceptCompression(postReq);
     }
 
 
     /**
-     * Extract the complete JSON response out of a HTTP response
+     * Extract the complete JSON response out of a HTTP response. A response compressed
+     * with gzip or deflate is decompressed on the fly. An answer in the binary CBOR format
+     * (requested with {@link J4pQueryParameter#FORMAT}) is converted to the same JSON
+     * structure as a JSON answer.
      *
      * @param pHttpResponse the resulting http response
      * @return JSON content of the answer
@@ -143,7 +157,12 @@ public class J4pRequestHandler {
         try {
             JSONParser parser = new JSONParser();
             Header contentEncoding = entity.getContentEncoding();
-            if (contentEncoding != null) {
+            String encoding = contentEncoding != null ? contentEncoding.getValue().trim().toLowerCase(Locale.ENGLISH) : null;
+            if (isCbor(entity)) {
+                return (JSONAware) new CborParser().parse(new BufferedInputStream(getContent(entity, encoding)));
+            } else if (isCompressed(encoding)) {
+                return (JSONAware) parser.parse(new InputStreamReader(getContent(entity, encoding),UTF_8));
+            } else if (contentEncoding != null) {
                 return (JSONAware) parser.parse(new InputStreamReader(entity.getContent(), Charset.forName(contentEncoding.getValue())));
             } else {
                 return (JSONAware) parser.parse(new InputStreamReader(entity.getContent()));
@@ -178,6 +197,35 @@ public class J4pRequestHandler {
 
     // =============================================================================================================
 
+    // Check whether the agent answered with CBOR instead of JSON
+    private boolean isCbor(HttpEntity pEntity) {
+        Header contentType = pEntity.getContentType();
+        return contentType != null &&
+               contentType.getValue().trim().toLowerCase(Locale.ENGLISH).startsWith(CBOR_MIME_TYPE);
+    }
+
+    // Get the content of the answer, decompressing it if required
+    private InputStream getContent(HttpEntity pEntity, String pEncoding) throws IOException {
+        if (!isCompressed(pEncoding)) {
+            return pEntity.getContent();
+        } else if (DEFLATE.equals(pEncoding)) {
+            return new InflaterInputStream(pEntity.getContent());
+        } else {
+            return new GZIPInputStream(pEntity.getContent());
+        }
+    }
+
+    private boolean isCompressed(String pEncoding) {
+        return GZIP.equals(pEncoding) || "x-gzip".equals(pEncoding) || DEFLATE.equals(pEncoding);
+    }
+
+    // Ask the agent for a compressed response. The agent compresses only answers which
+    // exceed a certain size.
+    private HttpUriRequest acceptCompression(HttpUriRequest pRequest) {
+        pRequest.setHeader("Accept-Encoding", GZIP + ", " + DEFLATE);
+        return pRequest;
+    }
+
     // Escape a part for usage as part of URI path: / -> \/, \ -> \\
     private static final String ESCAPE = "!";
     private static final Pattern ESCAPE_PATTERN = Pattern.compile(ESCAPE);
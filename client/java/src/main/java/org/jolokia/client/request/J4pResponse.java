@@ -42,8 +42,9 @@ public abstract class J4pResponse<T extends J4pRequest> {
     protected J4pResponse(T pRequest, JSONObject pJsonResponse) {
         request = pRequest;
         jsonResponse = pJsonResponse;
+        // The agent sends the time in seconds since the epoch
         Long timestamp = (Long) jsonResponse.get("timestamp");
-        requestDate = timestamp != null ? new Date(timestamp) : new Date();
+        requestDate = timestamp != null ? new Date(timestamp * 1000) : new Date();
     }
 
     /**
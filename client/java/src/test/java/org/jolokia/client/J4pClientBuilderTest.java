@@ -45,6 +45,7 @@ public class J4pClientBuilderTest {
                         .pooledConnections()
                         .socketBufferSize(8192)
                         .socketTimeout(5000)
+                        .cacheResponses(true)
                         .build();
         DefaultHttpClient hc = (DefaultHttpClient) client.getHttpClient();
         assertNotNull(hc.getCredentialsProvider());
@@ -68,6 +69,7 @@ public class J4pClientBuilderTest {
         assertNotNull(J4pClient.pooledConnections());
         assertNotNull(J4pClient.socketBufferSize(8192));
         assertNotNull(J4pClient.socketTimeout(5000));
+        assertNotNull(J4pClient.cacheResponses(true));
     }
 
 }
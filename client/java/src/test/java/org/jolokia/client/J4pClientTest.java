@@ -17,9 +17,11 @@ package org.jolokia.client;
  */
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 import javax.management.MalformedObjectNameException;
 
@@ -28,6 +30,9 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.jolokia.client.exception.*;
 import org.jolokia.client.request.*;
@@ -48,6 +53,10 @@ public class J4pClientTest {
             "\"request\":{\"mbean\":\"java.lang:type=Memory\",\"attribute\":\"HeapMemoryUsage\",\"type\":\"read\"}," +
             "\"value\":{\"max\":530186240,\"committed\":85000192,\"init\":0,\"used\":17962568}}";
 
+    private static String VERSION_RESPONSE =
+            "{\"timestamp\":1316801201,\"status\":200,\"request\":{\"type\":\"version\"}," +
+            "\"value\":{\"agent\":\"1.0.0\",\"protocol\":\"6.0\"}}";
+
     private static String EMPTY_RESPONSE = "{}";
 
     private static String ARRAY_RESPONSE = "[ " + MEMORY_RESPONSE + "]";
@@ -71,6 +80,50 @@ public class J4pClientTest {
         assertEquals(((Map) resp.getValue()).get("max"), 530186240L);
     }
 
+    @Test
+    public void compressedResponse() throws MalformedObjectNameException, J4pException, IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bos);
+        gzip.write(MEMORY_RESPONSE.getBytes("utf-8"));
+        gzip.close();
+
+        Capture<HttpUriRequest> request = new Capture<HttpUriRequest>();
+        HttpClient client = prepareMocks(request, "gzip", bos.toByteArray());
+
+        J4pClient j4p = new J4pClient(TEST_URL,client);
+        J4pReadResponse resp = j4p.execute(TEST_REQUEST);
+        assertEquals(((Map) resp.getValue()).get("max"), 530186240L);
+        assertTrue(request.getValue().getFirstHeader("Accept-Encoding").getValue().contains("gzip"));
+    }
+
+    @Test
+    public void cachedResponse() throws J4pException, IOException {
+        HttpClient client = createMock(HttpClient.class);
+        HttpResponse response = createMock(HttpResponse.class);
+        HttpResponse notModified = createMock(HttpResponse.class);
+        HttpEntity entity = createMock(HttpEntity.class);
+        Capture<HttpUriRequest> requests = new Capture<HttpUriRequest>(CaptureType.ALL);
+        expect(client.execute(capture(requests))).andReturn(response).andReturn(notModified);
+        expect(response.getEntity()).andReturn(entity);
+        expect(response.getFirstHeader("ETag")).andReturn(new BasicHeader("ETag","W/\"1-2\""));
+        expect(entity.getContentEncoding()).andReturn(null);
+        expect(entity.getContent()).andReturn(new ByteArrayInputStream(VERSION_RESPONSE.getBytes()));
+        entity.consumeContent();
+        expect(notModified.getStatusLine()).andReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 304, "Not Modified"));
+        expect(notModified.getEntity()).andReturn(null);
+        replay(client, response, notModified, entity);
+
+        J4pClient j4p = new J4pClient(TEST_URL,client,true);
+        J4pVersionResponse resp = j4p.execute(new J4pVersionRequest());
+        assertEquals(resp.getAgentVersion(),"1.0.0");
+        resp = j4p.execute(new J4pVersionRequest());
+        assertEquals(resp.getAgentVersion(),"1.0.0");
+
+        assertNull(requests.getValues().get(0).getFirstHeader("If-None-Match"));
+        assertEquals(requests.getValues().get(1).getFirstHeader("If-None-Match").getValue(),"W/\"1-2\"");
+        verify(client, response, notModified, entity);
+    }
+
     @Test(expectedExceptions = J4pException.class,expectedExceptionsMessageRegExp = ".*JSONArray.*")
     public void invalidArrayResponse() throws MalformedObjectNameException, J4pException, IOException {
         HttpClient client = prepareMocks(null,ARRAY_RESPONSE);
@@ -148,15 +201,19 @@ public class J4pClientTest {
     }
 
     private HttpClient prepareMocks(String encoding,String jsonResp) throws IOException {
+        return prepareMocks(new Capture<HttpUriRequest>(),encoding,jsonResp.getBytes());
+    }
+
+    private HttpClient prepareMocks(Capture<HttpUriRequest> request,String encoding,byte[] content) throws IOException {
         HttpClient client = createMock(HttpClient.class);
         HttpResponse response  = createMock(HttpResponse.class);
         HttpEntity entity = createMock(HttpEntity.class);
-        expect(client.execute(EasyMock.<HttpUriRequest>anyObject())).andReturn(response);
+        expect(client.execute(capture(request))).andReturn(response);
         expect(response.getEntity()).andReturn(entity);
         expect(entity.getContentEncoding()).andReturn(encoding != null ? new BasicHeader("Content-Encoding",encoding) : null);
 
         final ByteArrayInputStream bis =
-                new ByteArrayInputStream(jsonResp.getBytes());
+                new ByteArrayInputStream(content);
         expect(entity.getContent()).andReturn(bis);
         entity.consumeContent();
         replay(client, response, entity);
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2009-2011 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jolokia.client.request;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.jolokia.http.CborWriter;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since 17.10.11
+ */
+public class CborParserTest {
+
+    @Test
+    public void roundTrip() throws IOException, ParseException {
+        JSONObject answer = createReadAnswer(3);
+        Object result = parse(encode(answer));
+        assertEquals(result, answer);
+        JSONObject value = (JSONObject) ((JSONObject) result).get("value");
+        assertTrue(value.get("count") instanceof Long);
+        assertTrue(value.get("load") instanceof Double);
+    }
+
+    @Test
+    public void sameTypesAsJson() throws IOException, ParseException {
+        JSONArray array = new JSONArray();
+        array.add(42);
+        array.add(-1000000000000L);
+        array.add(1.5f);
+        array.add(null);
+        array.add(false);
+        array.add("\u00fc");
+        JSONArray result = (JSONArray) parse(encode(array));
+        assertEquals(result.get(0), 42L);
+        assertEquals(result.get(1), -1000000000000L);
+        assertEquals(result.get(2), 1.5);
+        assertNull(result.get(3));
+        assertEquals(result.get(4), Boolean.FALSE);
+        assertEquals(result.get(5), "\u00fc");
+    }
+
+    @Test
+    public void halfPrecisionAndTags() throws IOException, ParseException {
+        // 0.5 and -4.0 as half precision, 1 tagged as epoch time
+        assertEquals(parse(new byte[] { (byte) 0xf9, 0x38, 0x00 }), 0.5);
+        assertEquals(parse(new byte[] { (byte) 0xf9, (byte) 0xc4, 0x00 }), -4.0);
+        assertEquals(parse(new byte[] { (byte) 0xc1, 0x01 }), 1L);
+    }
+
+    @Test
+    public void bigNumbers() throws IOException, ParseException {
+        BigInteger big = new BigInteger("18446744073709551616");
+        JSONArray array = new JSONArray();
+        array.add(big);
+        array.add(big.negate());
+        array.add(BigInteger.TEN);
+        array.add(new BigDecimal("273.15"));
+        array.add(new BigDecimal("-1e40"));
+        array.add(new BigDecimal(big, 3));
+        JSONArray result = (JSONArray) parse(encode(array));
+        assertEquals(result.get(0), big);
+        assertEquals(result.get(1), big.negate());
+        assertEquals(result.get(2), 10L);
+        assertEquals(result.get(3), new BigDecimal("273.15"));
+        assertEquals(result.get(4), new BigDecimal("-1e40"));
+        assertEquals(result.get(5), new BigDecimal(big, 3));
+    }
+
+    @Test(expectedExceptions = ParseException.class)
+    public void bignumWithoutByteString() throws IOException, ParseException {
+        parse(new byte[] { (byte) 0xc2, 0x01 });
+    }
+
+    @Test
+    public void smallerThanJson() throws IOException, ParseException {
+        JSONObject answer = createReadAnswer(100);
+        byte[] cbor = encode(answer);
+        byte[] json = answer.toJSONString().getBytes("UTF-8");
+        assertTrue(cbor.length < json.length, "CBOR: " + cbor.length + ", JSON: " + json.length);
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void prematureEnd() throws IOException, ParseException {
+        parse(new byte[] { (byte) 0x82, 0x01 });
+    }
+
+    @Test(expectedExceptions = ParseException.class)
+    public void byteString() throws IOException, ParseException {
+        parse(new byte[] { 0x41, 0x01 });
+    }
+
+    @Test(expectedExceptions = ParseException.class)
+    public void indefiniteLength() throws IOException, ParseException {
+        parse(new byte[] { (byte) 0x9f, 0x01, (byte) 0xff });
+    }
+
+    // ==================================================================
+
+    private JSONObject createReadAnswer(int pNrOfSamples) {
+        JSONArray samples = new JSONArray();
+        for (int i = 0; i < pNrOfSamples; i++) {
+            samples.add(1318800000000L + i * 10000L);
+            samples.add(i * 0.37);
+        }
+        JSONObject value = new JSONObject();
+        value.put("count", 123456789L);
+        value.put("load", 0.75);
+        value.put("samples", samples);
+        JSONObject answer = new JSONObject();
+        answer.put("status", 200L);
+        answer.put("timestamp", 1318800000L);
+        answer.put("value", value);
+        return answer;
+    }
+
+    private byte[] encode(Object pValue) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CborWriter(out).write(pValue);
+        return out.toByteArray();
+    }
+
+    private Object parse(byte[] pData) throws IOException, ParseException {
+        return new CborParser().parse(new ByteArrayInputStream(pData));
+    }
+}